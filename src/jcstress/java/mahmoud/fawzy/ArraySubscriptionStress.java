@@ -0,0 +1,222 @@
+package mahmoud.fawzy;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Arbiter;
+import org.openjdk.jcstress.annotations.Description;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.III_Result;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.openjdk.jcstress.annotations.Expect.ACCEPTABLE;
+import static org.openjdk.jcstress.annotations.Expect.ACCEPTABLE_INTERESTING;
+import static org.openjdk.jcstress.annotations.Expect.FORBIDDEN;
+
+// Races on ArraySubscription.request(n) and cancel(), every test reports (elements received, onComplete calls, onError calls)
+// Elements received is -1 when two signals overlapped or an element came twice or out of order,
+// so any broken serialization or lost/duplicated demand shows up as a FORBIDDEN outcome
+public class ArraySubscriptionStress {
+
+    static Integer[] elements(int count) {
+        Integer[] array = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            array[i] = i;
+        }
+        return array;
+    }
+
+    @JCStressTest
+    @Description("Two threads request(1) the two elements, the loser of the WIP race hands its demand to the winner")
+    @Outcome(id = "2, 1, 0", expect = ACCEPTABLE, desc = "Both elements, in order, then one onComplete")
+    @Outcome(expect = FORBIDDEN, desc = "Demand lost or signals not serialized")
+    @State
+    public static class ConcurrentRequests {
+        final RecordingSubscriber subscriber = new RecordingSubscriber();
+        final ArrayPublisher.ArraySubscription<Integer> subscription =
+                new ArrayPublisher.ArraySubscription<>(subscriber, elements(2));
+
+        @Actor
+        public void actor1() {
+            subscription.request(1);
+        }
+
+        @Actor
+        public void actor2() {
+            subscription.request(1);
+        }
+
+        @Arbiter
+        public void arbiter(III_Result r) {
+            subscriber.report(r);
+        }
+    }
+
+    @JCStressTest
+    @Description("The two requests add up past Long.MAX_VALUE, the demand has to stay capped instead of turning negative")
+    @Outcome(id = "3, 1, 0", expect = ACCEPTABLE, desc = "Everything delivered once, then one onComplete")
+    @Outcome(expect = FORBIDDEN, desc = "Demand overflowed or signals not serialized")
+    @State
+    public static class RequestOverflow {
+        final RecordingSubscriber subscriber = new RecordingSubscriber();
+        final ArrayPublisher.ArraySubscription<Integer> subscription =
+                new ArrayPublisher.ArraySubscription<>(subscriber, elements(3));
+
+        @Actor
+        public void actor1() {
+            subscription.request(Long.MAX_VALUE - 1);
+        }
+
+        @Actor
+        public void actor2() {
+            subscription.request(2);
+        }
+
+        @Arbiter
+        public void arbiter(III_Result r) {
+            subscriber.report(r);
+        }
+    }
+
+    @JCStressTest
+    @Description("Unbounded demand arrives while the bounded loop is running, the loop switches over to the fast path")
+    @Outcome(id = "3, 1, 0", expect = ACCEPTABLE, desc = "Everything delivered once, then one onComplete")
+    @Outcome(expect = FORBIDDEN, desc = "Elements lost or delivered twice on the switch")
+    @State
+    public static class BoundedThenUnbounded {
+        final RecordingSubscriber subscriber = new RecordingSubscriber();
+        final ArrayPublisher.ArraySubscription<Integer> subscription =
+                new ArrayPublisher.ArraySubscription<>(subscriber, elements(3));
+
+        @Actor
+        public void actor1() {
+            subscription.request(1);
+        }
+
+        @Actor
+        public void actor2() {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Arbiter
+        public void arbiter(III_Result r) {
+            subscriber.report(r);
+        }
+    }
+
+    @JCStressTest
+    @Description("More demand than elements from three threads, the stream must complete exactly once")
+    @Outcome(id = "2, 1, 0", expect = ACCEPTABLE, desc = "Both elements, then one onComplete")
+    @Outcome(expect = FORBIDDEN, desc = "Missing, duplicated or concurrent onComplete")
+    @State
+    public static class CompletionRace {
+        final RecordingSubscriber subscriber = new RecordingSubscriber();
+        final ArrayPublisher.ArraySubscription<Integer> subscription =
+                new ArrayPublisher.ArraySubscription<>(subscriber, elements(2));
+
+        @Actor
+        public void actor1() {
+            subscription.request(1);
+        }
+
+        @Actor
+        public void actor2() {
+            subscription.request(1);
+        }
+
+        @Actor
+        public void actor3() {
+            subscription.request(1);
+        }
+
+        @Arbiter
+        public void arbiter(III_Result r) {
+            subscriber.report(r);
+        }
+    }
+
+    @JCStressTest
+    @Description("cancel() races with the emission loop, it may stop it anywhere but must never cause an error or a late onComplete")
+    @Outcome(id = "0, 0, 0", expect = ACCEPTABLE, desc = "Canceled before the loop started")
+    @Outcome(id = "1, 0, 0", expect = ACCEPTABLE_INTERESTING, desc = "Canceled between the two elements")
+    @Outcome(id = "2, 0, 0", expect = ACCEPTABLE_INTERESTING, desc = "Canceled after the last element, before onComplete")
+    @Outcome(id = "2, 1, 0", expect = ACCEPTABLE, desc = "Canceled after the stream completed")
+    @Outcome(expect = FORBIDDEN, desc = "onComplete without all the elements, or an error")
+    @State
+    public static class RequestAndCancel {
+        final RecordingSubscriber subscriber = new RecordingSubscriber();
+        final ArrayPublisher.ArraySubscription<Integer> subscription =
+                new ArrayPublisher.ArraySubscription<>(subscriber, elements(2));
+
+        @Actor
+        public void actor1() {
+            subscription.request(2);
+        }
+
+        @Actor
+        public void actor2() {
+            subscription.cancel();
+        }
+
+        @Arbiter
+        public void arbiter(III_Result r) {
+            subscriber.report(r);
+        }
+    }
+
+    // Flags any two signals running at the same time, the arbiter reads the plain fields after all actors are done
+    static final class RecordingSubscriber implements Subscriber<Integer> {
+        final AtomicInteger inside = new AtomicInteger();
+        boolean broken;
+        int received;
+        int completions;
+        int errors;
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+        }
+
+        @Override
+        public void onNext(Integer value) {
+            enter();
+            if (value != received) {
+                broken = true;
+            }
+            received++;
+            exit();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            enter();
+            errors++;
+            exit();
+        }
+
+        @Override
+        public void onComplete() {
+            enter();
+            completions++;
+            exit();
+        }
+
+        private void enter() {
+            if (inside.getAndIncrement() != 0) {
+                broken = true;
+            }
+        }
+
+        private void exit() {
+            inside.decrementAndGet();
+        }
+
+        void report(III_Result r) {
+            r.r1 = broken ? -1 : received;
+            r.r2 = completions;
+            r.r3 = errors;
+        }
+    }
+}
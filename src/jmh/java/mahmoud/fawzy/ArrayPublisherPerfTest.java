@@ -0,0 +1,182 @@
+package mahmoud.fawzy;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import mahmoud.fawzy.ArrayPublisher;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.RunnerException;
+import org.reactivestreams.Subscription;
+
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3, time = 3, timeUnit = TimeUnit.SECONDS)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1)
+@State(Scope.Thread)
+public class ArrayPublisherPerfTest {
+    @Param({ "1000000" })
+    public int times;
+
+    ArrayPublisher<Integer> arrayPublisherOptimized;
+    ArrayPublisherUnoptimized<Integer> arrayPublisher;
+    IntFlow intFlow;
+    IntFlow intFilter;
+
+    @Setup
+    public void setup() {
+        Integer[] array = new Integer[times];
+        Arrays.fill(array, 777);
+        arrayPublisherOptimized = new ArrayPublisher<>(array);
+        arrayPublisher = new ArrayPublisherUnoptimized<>(array);
+
+        int[] primitives = new int[times];
+        Arrays.fill(primitives, 777);
+        intFlow = IntFlow.fromArray(primitives);
+
+        // Drops 90% of the elements, like FusionPerfTest's filters
+        int[] mixed = new int[times];
+        for (int i = 0; i < times; i++) {
+            mixed[i] = i;
+        }
+        intFilter = IntFlow.fromArray(mixed).filter(v -> v % 10 == 0);
+    }
+
+    @Benchmark
+    public Object publisherPerformance(Blackhole bh) {
+        PerfSubscriber lo = new PerfSubscriber(bh);
+
+        arrayPublisher.subscribe(lo);
+
+        return lo;
+    }
+
+    @Benchmark
+    public Object optimizedPerformance(Blackhole bh) {
+        PerfSubscriber lo = new PerfSubscriber(bh);
+
+        arrayPublisherOptimized.subscribe(lo);
+
+        return lo;
+    }
+
+    @Benchmark
+    public Object optimizedRequestOne(Blackhole bh) {
+        PerfSubscriber lo = new PerfSubscriber(bh, 1);
+
+        arrayPublisherOptimized.subscribe(lo);
+
+        return lo;
+    }
+
+    @Benchmark
+    public Object optimizedRequestBatch(Blackhole bh) {
+        PerfSubscriber lo = new PerfSubscriber(bh, 128);
+
+        arrayPublisherOptimized.subscribe(lo);
+
+        return lo;
+    }
+
+    @Benchmark
+    public Object optimizedRequestUnbounded(Blackhole bh) {
+        PerfSubscriber lo = new PerfSubscriber(bh, Long.MAX_VALUE);
+
+        arrayPublisherOptimized.subscribe(lo);
+
+        return lo;
+    }
+
+    // Same as optimizedRequestUnbounded but over an int[], no Integer is ever allocated or dereferenced
+    @Benchmark
+    public Object primitiveRequestUnbounded(Blackhole bh) {
+        IntSubscriber lo = new IntSubscriber() {
+            @Override
+            public void onSubscribe(Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(int value) {
+                bh.consume(value);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                bh.consume(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                bh.consume(true);
+            }
+        };
+
+        intFlow.subscribe(lo);
+
+        return lo;
+    }
+
+    // A filter dropping 90% of an int[] under bounded demand, every dropped element must be replaced without
+    // the subscriber asking for it
+    @Benchmark
+    public Object primitiveFilterRequestBatch(Blackhole bh) {
+        PerfIntSubscriber lo = new PerfIntSubscriber(bh, 128);
+
+        intFilter.subscribe(lo);
+
+        return lo;
+    }
+
+    @Benchmark
+    public Object primitiveFilterRequestUnbounded(Blackhole bh) {
+        PerfIntSubscriber lo = new PerfIntSubscriber(bh, Long.MAX_VALUE);
+
+        intFilter.subscribe(lo);
+
+        return lo;
+    }
+
+    // PerfSubscriber for an IntFlow, same batch replenishment
+    static final class PerfIntSubscriber implements IntSubscriber {
+        final Blackhole bh;
+        final long batch;
+        Subscription subscription;
+        long consumed;
+
+        PerfIntSubscriber(Blackhole bh, long batch) {
+            this.bh = bh;
+            this.batch = batch;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(batch);
+        }
+
+        @Override
+        public void onNext(int value) {
+            bh.consume(value);
+            if (batch != Long.MAX_VALUE && ++consumed == batch) {
+                consumed = 0;
+                subscription.request(batch);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            bh.consume(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            bh.consume(true);
+        }
+    }
+
+    public static void main(String[] args) throws IOException, RunnerException {
+        org.openjdk.jmh.Main.main(args);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,50 @@
+package mahmoud.fawzy;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Records the regression baseline: the source size, map chain and cross thread benchmarks with the GC profiler on,
+// written as JSON so two runs can be compared side by side (any JMH result viewer takes the files as they are)
+//
+// java -cp target/benchmarks.jar mahmoud.fawzy.BenchmarkBaseline baseline.json
+// java -cp target/benchmarks.jar mahmoud.fawzy.BenchmarkBaseline candidate.json MapChain
+//
+// Record the baseline on the commit before an optimization and the candidate on the same machine right after.
+// Next to the score, compare gc.alloc.rate.norm (bytes allocated per operation): it doesn't depend on the machine's noise,
+// so any increase there is a regression even when the scores are within each other's error
+public final class BenchmarkBaseline {
+    static final String[] BENCHMARKS = {
+            SourceSizePerfTest.class.getSimpleName(),
+            MapChainPerfTest.class.getSimpleName(),
+            CrossThreadPerfTest.class.getSimpleName()
+    };
+
+    private BenchmarkBaseline() {
+    }
+
+    // First argument is the result file, baseline.json by default, the others replace the default benchmark regexes
+    public static void main(String[] args) throws RunnerException {
+        String result = args.length > 0 ? args[0] : "baseline.json";
+
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(result);
+
+        if (args.length > 1) {
+            for (int i = 1; i < args.length; i++) {
+                options.include(args[i]);
+            }
+        } else {
+            for (String benchmark : BENCHMARKS) {
+                options.include(benchmark);
+            }
+        }
+
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,63 @@
+package mahmoud.fawzy;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.RunnerException;
+
+// buffer(1000) fed with array slices (BatchSubscriber) against the same source hidden behind a plain Subscription
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3, time = 3, timeUnit = TimeUnit.SECONDS)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1)
+@State(Scope.Thread)
+public class BufferPerfTest {
+    @Param({ "1000000" })
+    public int times;
+
+    Flow<List<Integer>> sliced;
+    Flow<List<Integer>> elementByElement;
+
+    @Setup
+    public void setup() {
+        Integer[] array = new Integer[times];
+        Arrays.fill(array, 777);
+        sliced = new ArrayPublisher<>(array).buffer(1000);
+        elementByElement = new BufferFlow<>(FusionPerfTest.hide(new ArrayPublisher<>(array)), 1000);
+    }
+
+    @Benchmark
+    public Object slicedUnbounded(Blackhole bh) {
+        PerfSubscriber lo = new PerfSubscriber(bh, Long.MAX_VALUE);
+
+        sliced.subscribe(lo);
+
+        return lo;
+    }
+
+    @Benchmark
+    public Object elementByElementUnbounded(Blackhole bh) {
+        PerfSubscriber lo = new PerfSubscriber(bh, Long.MAX_VALUE);
+
+        elementByElement.subscribe(lo);
+
+        return lo;
+    }
+
+    @Benchmark
+    public Object slicedRequestOne(Blackhole bh) {
+        PerfSubscriber lo = new PerfSubscriber(bh, 1);
+
+        sliced.subscribe(lo);
+
+        return lo;
+    }
+
+    public static void main(String[] args) throws IOException, RunnerException {
+        org.openjdk.jmh.Main.main(args);
+    }
+}
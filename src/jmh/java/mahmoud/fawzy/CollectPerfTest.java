@@ -0,0 +1,87 @@
+package mahmoud.fawzy;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.RunnerException;
+
+// The terminals on an array with a map in between, one operation is one whole aggregation
+// fused  - fromArray(..).map(..).toList(), pulled in a single poll() loop and the list sized up front
+// hidden - the same pipeline with the fusion hidden, the usual onNext per element and a list growing as it goes
+// forLoop is the floor, what the same work costs written by hand
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3, time = 3, timeUnit = TimeUnit.SECONDS)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1)
+@State(Scope.Thread)
+public class CollectPerfTest {
+    @Param({ "1000", "1000000" })
+    public int times;
+
+    Integer[] array;
+    Flow<Integer> fused;
+    Flow<Integer> hidden;
+
+    @Setup
+    public void setup() {
+        array = new Integer[times];
+        Arrays.fill(array, 777);
+
+        fused = Flow.fromArray(array).map(v -> v + 1);
+        hidden = new MapFlow<>(FusionPerfTest.hide(new ArrayPublisher<>(array)), v -> v + 1);
+    }
+
+    @Benchmark
+    public void forLoop(Blackhole bh) {
+        List<Integer> list = new ArrayList<>(array.length);
+        for (Integer value : array) {
+            list.add(value + 1);
+        }
+        bh.consume(list);
+    }
+
+    @Benchmark
+    public Object fusedToList(Blackhole bh) {
+        PerfSubscriber lo = new PerfSubscriber(bh, Long.MAX_VALUE);
+
+        fused.toList().subscribe(lo);
+
+        return lo;
+    }
+
+    @Benchmark
+    public Object hiddenToList(Blackhole bh) {
+        PerfSubscriber lo = new PerfSubscriber(bh, Long.MAX_VALUE);
+
+        hidden.toList().subscribe(lo);
+
+        return lo;
+    }
+
+    @Benchmark
+    public Object fusedReduce(Blackhole bh) {
+        PerfSubscriber lo = new PerfSubscriber(bh, Long.MAX_VALUE);
+
+        fused.reduce(Integer::sum).subscribe(lo);
+
+        return lo;
+    }
+
+    @Benchmark
+    public Object hiddenReduce(Blackhole bh) {
+        PerfSubscriber lo = new PerfSubscriber(bh, Long.MAX_VALUE);
+
+        hidden.reduce(Integer::sum).subscribe(lo);
+
+        return lo;
+    }
+
+    public static void main(String[] args) throws IOException, RunnerException {
+        org.openjdk.jmh.Main.main(args);
+    }
+}
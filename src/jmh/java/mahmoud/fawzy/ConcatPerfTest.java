@@ -0,0 +1,71 @@
+package mahmoud.fawzy;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.RunnerException;
+
+// Many short array segments emitted one after the other, one operation is all of them
+// concatMap           - the segments are polled by the switching loop, no request(n) per segment
+// concatMapQueued     - the same segments with their fusion hidden, each one subscribed and requested the usual way
+// flatMapOneAtATime   - flatMap(.., 1, ..), also in order, for comparison
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3, time = 3, timeUnit = TimeUnit.SECONDS)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1)
+@State(Scope.Thread)
+public class ConcatPerfTest {
+    @Param({ "10000" })
+    public int segments;
+
+    @Param({ "4", "64" })
+    public int segmentSize;
+
+    Flow<Integer> concatMap;
+    Flow<Integer> concatMapQueued;
+    Flow<Integer> flatMapOneAtATime;
+
+    @Setup
+    public void setup() {
+        Integer[] segment = new Integer[segmentSize];
+        Arrays.fill(segment, 777);
+
+        concatMap = Flow.range(0, segments).concatMap(i -> new ArrayPublisher<>(segment));
+        concatMapQueued = Flow.range(0, segments).concatMap(i -> FusionPerfTest.hide(new ArrayPublisher<>(segment)));
+        flatMapOneAtATime = Flow.range(0, segments).flatMap(i -> FusionPerfTest.hide(new ArrayPublisher<>(segment)), 1, segmentSize);
+    }
+
+    @Benchmark
+    public Object concatMap(Blackhole bh) {
+        PerfSubscriber lo = new PerfSubscriber(bh, Long.MAX_VALUE);
+
+        concatMap.subscribe(lo);
+
+        return lo;
+    }
+
+    @Benchmark
+    public Object concatMapQueued(Blackhole bh) {
+        PerfSubscriber lo = new PerfSubscriber(bh, Long.MAX_VALUE);
+
+        concatMapQueued.subscribe(lo);
+
+        return lo;
+    }
+
+    @Benchmark
+    public Object flatMapOneAtATime(Blackhole bh) {
+        PerfSubscriber lo = new PerfSubscriber(bh, Long.MAX_VALUE);
+
+        flatMapOneAtATime.subscribe(lo);
+
+        return lo;
+    }
+
+    public static void main(String[] args) throws IOException, RunnerException {
+        org.openjdk.jmh.Main.main(args);
+    }
+}
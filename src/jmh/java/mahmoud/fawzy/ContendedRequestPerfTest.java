@@ -0,0 +1,125 @@
+package mahmoud.fawzy;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.RunnerException;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+// Several threads calling request(n) on the same ArraySubscription, like our consumers issuing demand from their I/O threads
+// One thread wins the WIP race and emits, the others only add their demand with a CAS and leave (work stealing)
+// The score counts request(n) calls, what the I/O threads pay. Losers return right away while the winner is still emitting,
+// so demand piles up and the score says nothing about delivery: the "delivered" secondary result is the elements that
+// actually went out per second, see Delivery
+//
+// Every group has its own subscription, uncontended is the same calls from a single thread
+// The thread counts are only defaults, -tg 8 runs every group with 8 threads
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3, time = 3, timeUnit = TimeUnit.SECONDS)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1)
+@State(Scope.Group)
+public class ContendedRequestPerfTest {
+    @Param({ "1048576" })
+    public int times;
+
+    ArrayPublisher<Integer> publisher;
+    volatile Subscription subscription;
+
+    // Written by whichever thread holds the emission loop, one at a time, and taken by Delivery after the iteration
+    long delivered;
+
+    @Setup
+    public void setup() {
+        Integer[] array = new Integer[times];
+        Arrays.fill(array, 777);
+        publisher = new ArrayPublisher<>(array);
+    }
+
+    @Setup(Level.Iteration)
+    public void subscribe() {
+        delivered = 0;
+        publisher.subscribe(new Resubscriber());
+    }
+
+    @TearDown(Level.Iteration)
+    public void cancel() {
+        subscription.cancel();
+    }
+
+    // Only one of the group's threads gets the count, JMH adds up the counters of all threads into one rate
+    synchronized long takeDelivered() {
+        long d = delivered;
+        delivered = 0;
+        return d;
+    }
+
+    // Reported next to the score as elements per second, whichever thread ended up emitting them
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Delivery {
+        public long delivered;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            delivered = 0;
+        }
+
+        @TearDown(Level.Iteration)
+        public void collect(ContendedRequestPerfTest benchmark) {
+            delivered = benchmark.takeDelivered();
+        }
+    }
+
+    @Benchmark
+    @Group("uncontended")
+    @GroupThreads(1)
+    public void uncontendedRequestOne(Delivery delivery) {
+        subscription.request(1);
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(4)
+    public void contendedRequestOne(Delivery delivery) {
+        subscription.request(1);
+    }
+
+    @Benchmark
+    @Group("contendedBatch")
+    @GroupThreads(4)
+    public void contendedRequestBatch(Delivery delivery) {
+        subscription.request(128);
+    }
+
+    // Subscribes again when the array runs out, so the benchmark threads never request on a finished subscription for long
+    // A fresh subscriber every time, a Subscriber may only be subscribed once
+    final class Resubscriber implements Subscriber<Integer> {
+        @Override
+        public void onSubscribe(Subscription s) {
+            subscription = s;
+        }
+
+        @Override
+        public void onNext(Integer integer) {
+            delivered++;
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            throw new IllegalStateException(t);
+        }
+
+        @Override
+        public void onComplete() {
+            publisher.subscribe(new Resubscriber());
+        }
+    }
+
+    public static void main(String[] args) throws IOException, RunnerException {
+        org.openjdk.jmh.Main.main(args);
+    }
+}
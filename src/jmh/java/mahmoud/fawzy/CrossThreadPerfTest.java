@@ -0,0 +1,151 @@
+package mahmoud.fawzy;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.RunnerException;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+// Elements produced on the benchmark thread and consumed on another one, against the JDK's SubmissionPublisher
+// publishOn       - our source emits into the 256 slot queue of publishOn, the executor thread drains it
+// subscribeOn     - the whole pipeline moves to the executor, with bounded requests every request(n) is a task
+// submission      - SubmissionPublisher.submit(..) from the benchmark thread, its default 256 slot buffer in between
+// One operation is one whole stream, the benchmark thread waits for onComplete before the next one
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3, time = 3, timeUnit = TimeUnit.SECONDS)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1)
+@State(Scope.Thread)
+public class CrossThreadPerfTest {
+    @Param({ "1000", "1000000" })
+    public int times;
+
+    @Param({ "1", "128", "unbounded" })
+    public String request;
+
+    long batch;
+    Integer[] array;
+    ExecutorService executor;
+    Flow<Integer> publishOn;
+    Flow<Integer> subscribeOn;
+
+    @Setup
+    public void setup() {
+        batch = PerfSubscriber.batch(request);
+
+        array = new Integer[times];
+        Arrays.fill(array, 777);
+
+        executor = Schedulers.bounded(1);
+        publishOn = Flow.fromArray(array).publishOn(executor);
+        subscribeOn = Flow.fromArray(array).subscribeOn(executor);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public Object publishOn(Blackhole bh) throws InterruptedException {
+        LatchSubscriber lo = new LatchSubscriber(bh, batch);
+
+        publishOn.subscribe(lo);
+        lo.await();
+
+        return lo;
+    }
+
+    @Benchmark
+    public Object subscribeOn(Blackhole bh) throws InterruptedException {
+        LatchSubscriber lo = new LatchSubscriber(bh, batch);
+
+        subscribeOn.subscribe(lo);
+        lo.await();
+
+        return lo;
+    }
+
+    @Benchmark
+    public Object submission(Blackhole bh) throws InterruptedException {
+        LatchSubscriber lo = new LatchSubscriber(bh, batch);
+
+        // submit(..) blocks the benchmark thread while the buffer is full, like our source waits for demand
+        try (SubmissionPublisher<Integer> publisher = new SubmissionPublisher<>(executor, java.util.concurrent.Flow.defaultBufferSize())) {
+            publisher.subscribe(lo);
+            for (Integer value : array) {
+                publisher.submit(value);
+            }
+        }
+        lo.await();
+
+        return lo;
+    }
+
+    // PerfSubscriber for both Reactive Streams and java.util.concurrent.Flow, counting down once the stream is over
+    static final class LatchSubscriber implements Subscriber<Object>, java.util.concurrent.Flow.Subscriber<Object> {
+        final Blackhole bh;
+        final long batch;
+        final CountDownLatch done = new CountDownLatch(1);
+
+        Subscription subscription;
+        java.util.concurrent.Flow.Subscription jdkSubscription;
+        long consumed;
+
+        LatchSubscriber(Blackhole bh, long batch) {
+            this.bh = bh;
+            this.batch = batch;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(batch);
+        }
+
+        @Override
+        public void onSubscribe(java.util.concurrent.Flow.Subscription subscription) {
+            this.jdkSubscription = subscription;
+            subscription.request(batch);
+        }
+
+        @Override
+        public void onNext(Object item) {
+            bh.consume(item);
+            if (batch != Long.MAX_VALUE && ++consumed == batch) {
+                consumed = 0;
+                if (subscription != null) {
+                    subscription.request(batch);
+                } else {
+                    jdkSubscription.request(batch);
+                }
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            bh.consume(throwable);
+            done.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            done.countDown();
+        }
+
+        void await() throws InterruptedException {
+            done.await();
+        }
+    }
+
+    public static void main(String[] args) throws IOException, RunnerException {
+        org.openjdk.jmh.Main.main(args);
+    }
+}
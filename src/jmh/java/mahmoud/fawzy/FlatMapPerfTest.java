@@ -0,0 +1,72 @@
+package mahmoud.fawzy;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.RunnerException;
+
+// flatMap over single element arrays (the scalar fast path), small fused arrays (polled in place),
+// and the same small arrays hidden behind a plain Subscription (queued in the inner's SpscArrayQueue)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3, time = 3, timeUnit = TimeUnit.SECONDS)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1)
+@State(Scope.Thread)
+public class FlatMapPerfTest {
+    @Param({ "100000" })
+    public int times;
+
+    Flow<Integer> source;
+    Integer[] inner;
+
+    @Setup
+    public void setup() {
+        Integer[] array = new Integer[times];
+        Arrays.fill(array, 777);
+        source = new ArrayPublisher<>(array);
+        inner = new Integer[] { 1, 2, 3, 4 };
+    }
+
+    @Benchmark
+    public Object scalarInners(Blackhole bh) {
+        PerfSubscriber lo = new PerfSubscriber(bh, Long.MAX_VALUE);
+
+        source.flatMap(v -> Flow.fromArray(v)).subscribe(lo);
+
+        return lo;
+    }
+
+    @Benchmark
+    public Object fusedInners(Blackhole bh) {
+        PerfSubscriber lo = new PerfSubscriber(bh, Long.MAX_VALUE);
+
+        source.flatMap(v -> Flow.fromArray(inner)).subscribe(lo);
+
+        return lo;
+    }
+
+    @Benchmark
+    public Object queuedInners(Blackhole bh) {
+        PerfSubscriber lo = new PerfSubscriber(bh, Long.MAX_VALUE);
+
+        source.<Integer>flatMap(v -> FusionPerfTest.hide(Flow.fromArray(inner))).subscribe(lo);
+
+        return lo;
+    }
+
+    @Benchmark
+    public Object fusedInnersRequestBatch(Blackhole bh) {
+        PerfSubscriber lo = new PerfSubscriber(bh, 128);
+
+        source.flatMap(v -> Flow.fromArray(inner)).subscribe(lo);
+
+        return lo;
+    }
+
+    public static void main(String[] args) throws IOException, RunnerException {
+        org.openjdk.jmh.Main.main(args);
+    }
+}
@@ -0,0 +1,149 @@
+package mahmoud.fawzy;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.RunnerException;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+// Compares a map stage pulling from a fused ArraySubscription against the same stage
+// receiving onNext signals from a source that hides its QueueSubscription, with a plain for-loop as the floor
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3, time = 3, timeUnit = TimeUnit.SECONDS)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1)
+@State(Scope.Thread)
+public class FusionPerfTest {
+    @Param({ "1000000" })
+    public int times;
+
+    Integer[] array;
+    ArrayPublisher<Integer> fuseable;
+    Publisher<Integer> hidden;
+    Function<Integer, Integer> mapper = v -> v + 1;
+    Flow<Integer> conditionalFilter;
+    Flow<Integer> replenishingFilter;
+
+    @Setup
+    public void setup() {
+        array = new Integer[times];
+        Arrays.fill(array, 777);
+        fuseable = new ArrayPublisher<>(array);
+        hidden = hide(fuseable);
+
+        // Drops 90% of the elements, like our event filtering pipelines
+        Integer[] mixed = new Integer[times];
+        for (int i = 0; i < times; i++) {
+            mixed[i] = i;
+        }
+        conditionalFilter = new ArrayPublisher<>(mixed).filter(v -> v % 10 == 0);
+        replenishingFilter = new FilterFlow<>(hide(new ArrayPublisher<>(mixed)), v -> v % 10 == 0);
+    }
+
+    @Benchmark
+    public void forLoop(Blackhole bh) {
+        Integer[] array = this.array;
+        for (Integer value : array) {
+            bh.consume(mapper.apply(value));
+        }
+    }
+
+    @Benchmark
+    public Object fusedUnbounded(Blackhole bh) {
+        PerfSubscriber lo = new PerfSubscriber(bh, Long.MAX_VALUE);
+
+        new MapFlow<>(fuseable, mapper).subscribe(lo);
+
+        return lo;
+    }
+
+    @Benchmark
+    public Object unfusedUnbounded(Blackhole bh) {
+        PerfSubscriber lo = new PerfSubscriber(bh, Long.MAX_VALUE);
+
+        new MapFlow<>(hidden, mapper).subscribe(lo);
+
+        return lo;
+    }
+
+    @Benchmark
+    public Object fusedRequestBatch(Blackhole bh) {
+        PerfSubscriber lo = new PerfSubscriber(bh, 128);
+
+        new MapFlow<>(fuseable, mapper).subscribe(lo);
+
+        return lo;
+    }
+
+    @Benchmark
+    public Object unfusedRequestBatch(Blackhole bh) {
+        PerfSubscriber lo = new PerfSubscriber(bh, 128);
+
+        new MapFlow<>(hidden, mapper).subscribe(lo);
+
+        return lo;
+    }
+
+    @Benchmark
+    public Object conditionalFilterRequestOne(Blackhole bh) {
+        PerfSubscriber lo = new PerfSubscriber(bh, 1);
+
+        conditionalFilter.subscribe(lo);
+
+        return lo;
+    }
+
+    @Benchmark
+    public Object replenishingFilterRequestOne(Blackhole bh) {
+        PerfSubscriber lo = new PerfSubscriber(bh, 1);
+
+        replenishingFilter.subscribe(lo);
+
+        return lo;
+    }
+
+    // Hands out a plain Subscription so the MapProcessor can't fuse with the source
+    static <T> Publisher<T> hide(Publisher<T> source) {
+        return subscriber -> source.subscribe(new Subscriber<T>() {
+            @Override
+            public void onSubscribe(Subscription s) {
+                subscriber.onSubscribe(new Subscription() {
+                    @Override
+                    public void request(long n) {
+                        s.request(n);
+                    }
+
+                    @Override
+                    public void cancel() {
+                        s.cancel();
+                    }
+                });
+            }
+
+            @Override
+            public void onNext(T t) {
+                subscriber.onNext(t);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                subscriber.onError(t);
+            }
+
+            @Override
+            public void onComplete() {
+                subscriber.onComplete();
+            }
+        });
+    }
+
+    public static void main(String[] args) throws IOException, RunnerException {
+        org.openjdk.jmh.Main.main(args);
+    }
+}
@@ -0,0 +1,106 @@
+package mahmoud.fawzy;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.RunnerException;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+// A Subscriber requesting 1 at a time from within onNext, one operation is the whole array
+// direct   - straight on the (unfused) array source
+// limited  - limitRate(256) in between, the request(1) calls stay inside our loop and the source sees batches
+// adaptive - limitRateAdaptive(256)
+// source   - sync: the source emits on the caller's thread, every request(1) it sees is a CAS and a drain loop re-entry
+//            subscribeOn: the same behind subscribeOn(..), everything runs on its executor and the caller waits
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3, time = 3, timeUnit = TimeUnit.SECONDS)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1)
+@State(Scope.Thread)
+public class LimitRatePerfTest {
+    @Param({ "100000" })
+    public int times;
+
+    @Param({ "sync", "subscribeOn" })
+    public String source;
+
+    ExecutorService executor;
+    Publisher<Integer> direct;
+    Flow<Integer> limited;
+    Flow<Integer> adaptive;
+
+    @Setup
+    public void setup() {
+        Integer[] array = new Integer[times];
+        Arrays.fill(array, 777);
+
+        executor = Executors.newSingleThreadExecutor();
+        Publisher<Integer> hidden = FusionPerfTest.hide(new ArrayPublisher<>(array));
+        direct = "sync".equals(source) ? hidden : new SubscribeOnFlow<>(hidden, executor);
+        limited = new LimitRateFlow<>(direct, 256, 192, false);
+        adaptive = new LimitRateFlow<>(direct, 256, 256, true);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public void direct(Blackhole bh) throws InterruptedException {
+        oneByOne(direct, bh);
+    }
+
+    @Benchmark
+    public void limited(Blackhole bh) throws InterruptedException {
+        oneByOne(limited, bh);
+    }
+
+    @Benchmark
+    public void adaptive(Blackhole bh) throws InterruptedException {
+        oneByOne(adaptive, bh);
+    }
+
+    static void oneByOne(Publisher<Integer> publisher, Blackhole bh) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        publisher.subscribe(new Subscriber<Integer>() {
+            Subscription subscription;
+
+            @Override
+            public void onSubscribe(Subscription s) {
+                subscription = s;
+                s.request(1);
+            }
+
+            @Override
+            public void onNext(Integer integer) {
+                bh.consume(integer);
+                subscription.request(1);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                bh.consume(t);
+                latch.countDown();
+            }
+
+            @Override
+            public void onComplete() {
+                latch.countDown();
+            }
+        });
+        latch.await();
+    }
+
+    public static void main(String[] args) throws IOException, RunnerException {
+        org.openjdk.jmh.Main.main(args);
+    }
+}
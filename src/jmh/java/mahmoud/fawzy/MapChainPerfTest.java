@@ -0,0 +1,98 @@
+package mahmoud.fawzy;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.RunnerException;
+import org.reactivestreams.Publisher;
+
+// Cost of every extra map stage, the same depth built three ways:
+// composed - fromArray(..).map(..)..., folded at assembly time into one MapArrayPublisher, depth only adds function calls
+// fused    - depth separate MapFlows, each MapProcessor pulling from the one above with poll()
+// hidden   - depth separate MapFlows with the fusion hidden between them, one onNext hop and one request(n) per stage
+// Every chain is assembled once in setup, a subscribe(..) only allocates the per-subscription operators
+// Only depths 1, 2, 4 and 8 run by default, -p depth=1,2,3,4,5,6,7,8 gives the whole curve
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3, time = 3, timeUnit = TimeUnit.SECONDS)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1)
+@State(Scope.Thread)
+public class MapChainPerfTest {
+    @Param({ "1000000" })
+    public int times;
+
+    @Param({ "1", "2", "4", "8" })
+    public int depth;
+
+    @Param({ "1", "128", "unbounded" })
+    public String request;
+
+    long batch;
+    ArrayPublisher<Integer> source;
+    Flow<Integer> composed;
+    Publisher<Integer> fused;
+    Publisher<Integer> hidden;
+    Function<Integer, Integer> mapper = v -> v + 1;
+
+    @Setup
+    public void setup() {
+        batch = PerfSubscriber.batch(request);
+
+        Integer[] array = new Integer[times];
+        Arrays.fill(array, 777);
+        source = new ArrayPublisher<>(array);
+
+        Flow<Integer> flow = source;
+        for (int i = 0; i < depth; i++) {
+            flow = flow.map(mapper);
+        }
+        composed = flow;
+
+        Publisher<Integer> chain = source;
+        for (int i = 0; i < depth; i++) {
+            chain = new MapFlow<>(chain, mapper);
+        }
+        fused = chain;
+
+        chain = source;
+        for (int i = 0; i < depth; i++) {
+            chain = new MapFlow<>(FusionPerfTest.hide(chain), mapper);
+        }
+        hidden = chain;
+    }
+
+    @Benchmark
+    public Object composed(Blackhole bh) {
+        PerfSubscriber lo = new PerfSubscriber(bh, batch);
+
+        composed.subscribe(lo);
+
+        return lo;
+    }
+
+    @Benchmark
+    public Object fused(Blackhole bh) {
+        PerfSubscriber lo = new PerfSubscriber(bh, batch);
+
+        fused.subscribe(lo);
+
+        return lo;
+    }
+
+    @Benchmark
+    public Object hidden(Blackhole bh) {
+        PerfSubscriber lo = new PerfSubscriber(bh, batch);
+
+        hidden.subscribe(lo);
+
+        return lo;
+    }
+
+    public static void main(String[] args) throws IOException, RunnerException {
+        org.openjdk.jmh.Main.main(args);
+    }
+}
@@ -0,0 +1,64 @@
+package mahmoud.fawzy;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.RunnerException;
+
+// Cost of leaving a metrics(..) stage in a pipeline, with the default sampling and with every element timed
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3, time = 3, timeUnit = TimeUnit.SECONDS)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1)
+@State(Scope.Thread)
+public class MetricsPerfTest {
+    @Param({ "1000000" })
+    public int times;
+
+    Flow<Integer> plain;
+    Flow<Integer> sampled;
+    Flow<Integer> everyElement;
+
+    @Setup
+    public void setup() {
+        Integer[] array = new Integer[times];
+        Arrays.fill(array, 777);
+        plain = new ArrayPublisher<>(array);
+        sampled = plain.metrics(new FlowMetrics("sampled", FlowMetrics.DEFAULT_SAMPLE_INTERVAL));
+        everyElement = plain.metrics(new FlowMetrics("everyElement", 1));
+    }
+
+    @Benchmark
+    public Object plainRequestBatch(Blackhole bh) {
+        PerfSubscriber lo = new PerfSubscriber(bh, 128);
+
+        plain.subscribe(lo);
+
+        return lo;
+    }
+
+    @Benchmark
+    public Object sampledRequestBatch(Blackhole bh) {
+        PerfSubscriber lo = new PerfSubscriber(bh, 128);
+
+        sampled.subscribe(lo);
+
+        return lo;
+    }
+
+    @Benchmark
+    public Object everyElementRequestBatch(Blackhole bh) {
+        PerfSubscriber lo = new PerfSubscriber(bh, 128);
+
+        everyElement.subscribe(lo);
+
+        return lo;
+    }
+
+    public static void main(String[] args) throws IOException, RunnerException {
+        org.openjdk.jmh.Main.main(args);
+    }
+}
@@ -0,0 +1,102 @@
+package mahmoud.fawzy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.RunnerException;
+
+// The sources built on IndexedSubscription share its demand accounting, so in an application that uses several of them
+// whatever sits in that shared code sees several receiver types. "alone" measures each source in a fresh JVM like
+// the other benchmarks do, "mixed" first runs all of them through every path, the way a real application would,
+// before the JIT compiles anything. The two should stay close, see IndexedSubscription.emit(..)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3)
+@Measurement(iterations = 4, time = 2, timeUnit = TimeUnit.SECONDS)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 2)
+@State(Scope.Thread)
+public class MixedSourcesPerfTest {
+    @Param({ "1000" })
+    public int size;
+
+    @Param({ "128", "unbounded" })
+    public String request;
+
+    @Param({ "alone", "mixed" })
+    public String profile;
+
+    long batch;
+    Flow<Integer> range;
+    Flow<Integer> list;
+    Flow<Integer> mappedArray;
+    Flow<Record> records;
+
+    @Setup
+    public void setup(Blackhole bh) {
+        batch = PerfSubscriber.batch(request);
+
+        Integer[] values = new Integer[size];
+        Arrays.fill(values, 777);
+        List<Integer> asList = Arrays.asList(values);
+
+        range = Flow.range(0, size);
+        list = Flow.fromIterable(asList);
+        mappedArray = Flow.fromArray(values).map(v -> v + 1);
+        records = Flow.fromRecords(ByteBuffer.allocate(size * Long.BYTES), Long.BYTES);
+
+        if ("mixed".equals(profile)) {
+            // Every source through the bounded, unbounded and conditional loops, enough times to reach the JIT
+            for (int i = 0; i < 5_000; i++) {
+                for (Flow<?> source : List.of(range, list, mappedArray, records)) {
+                    source.subscribe(new PerfSubscriber(bh, 128));
+                    source.subscribe(new PerfSubscriber(bh, Long.MAX_VALUE));
+                    source.filter(v -> true).subscribe(new PerfSubscriber(bh, 128));
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public Object range(Blackhole bh) {
+        PerfSubscriber lo = new PerfSubscriber(bh, batch);
+
+        range.subscribe(lo);
+
+        return lo;
+    }
+
+    @Benchmark
+    public Object list(Blackhole bh) {
+        PerfSubscriber lo = new PerfSubscriber(bh, batch);
+
+        list.subscribe(lo);
+
+        return lo;
+    }
+
+    @Benchmark
+    public Object mappedArray(Blackhole bh) {
+        PerfSubscriber lo = new PerfSubscriber(bh, batch);
+
+        mappedArray.subscribe(lo);
+
+        return lo;
+    }
+
+    @Benchmark
+    public Object records(Blackhole bh) {
+        PerfSubscriber lo = new PerfSubscriber(bh, batch);
+
+        records.subscribe(lo);
+
+        return lo;
+    }
+
+    public static void main(String[] args) throws IOException, RunnerException {
+        org.openjdk.jmh.Main.main(args);
+    }
+}
@@ -23,22 +23,41 @@ import org.reactivestreams.Subscription;
 public final class PerfSubscriber implements Subscriber<Object> {
     final Blackhole bh;
 
+    final long batch;
+
     Subscription subscription;
 
+    long consumed;
+
     public PerfSubscriber(Blackhole bh) {
+        this(bh, 1);
+    }
+
+    // Requests batch elements at a time and replenishes once the whole batch has arrived,
+    // a batch of Long.MAX_VALUE requests everything upfront and never replenishes
+    public PerfSubscriber(Blackhole bh, long batch) {
         this.bh = bh;
+        this.batch = batch;
+    }
+
+    // Request pattern parameter of the benchmarks: a number, or "unbounded" for Long.MAX_VALUE
+    static long batch(String request) {
+        return "unbounded".equals(request) ? Long.MAX_VALUE : Long.parseLong(request);
     }
 
     @Override
     public void onSubscribe(Subscription subscription) {
         this.subscription = subscription;
-        subscription.request(1);
+        subscription.request(batch);
     }
 
     @Override
     public void onNext(Object item) {
         bh.consume(item);
-        subscription.request(1);
+        if (batch != Long.MAX_VALUE && ++consumed == batch) {
+            consumed = 0;
+            subscription.request(batch);
+        }
     }
 
     @Override
@@ -0,0 +1,76 @@
+package mahmoud.fawzy;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.RunnerException;
+
+// Sources on their own, from a single element (where subscribe and the first request(n) dominate)
+// up to 10M elements (where only the emission loop matters), under the three request patterns we care about
+// One operation is one whole stream, elements per second is the score times the size
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3, time = 3, timeUnit = TimeUnit.SECONDS)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1)
+@State(Scope.Thread)
+public class SourceSizePerfTest {
+    @Param({ "1", "1000", "1000000", "10000000" })
+    public int size;
+
+    @Param({ "1", "128", "unbounded" })
+    public String request;
+
+    long batch;
+    Flow<Integer> array;
+    Flow<Integer> range;
+    Flow<Integer> list;
+
+    @Setup
+    public void setup() {
+        batch = PerfSubscriber.batch(request);
+
+        // Same boxed value everywhere, 10M distinct Integers would measure cache misses instead of the source
+        Integer[] values = new Integer[size];
+        Arrays.fill(values, 777);
+        List<Integer> asList = Arrays.asList(values);
+
+        array = Flow.fromArray(values);
+        range = Flow.range(0, size);
+        list = Flow.fromIterable(asList);
+    }
+
+    @Benchmark
+    public Object array(Blackhole bh) {
+        PerfSubscriber lo = new PerfSubscriber(bh, batch);
+
+        array.subscribe(lo);
+
+        return lo;
+    }
+
+    @Benchmark
+    public Object range(Blackhole bh) {
+        PerfSubscriber lo = new PerfSubscriber(bh, batch);
+
+        range.subscribe(lo);
+
+        return lo;
+    }
+
+    @Benchmark
+    public Object list(Blackhole bh) {
+        PerfSubscriber lo = new PerfSubscriber(bh, batch);
+
+        list.subscribe(lo);
+
+        return lo;
+    }
+
+    public static void main(String[] args) throws IOException, RunnerException {
+        org.openjdk.jmh.Main.main(args);
+    }
+}
@@ -0,0 +1,98 @@
+package mahmoud.fawzy;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.RunnerException;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+// Cost of scheduling a small pipeline with subscribeOn(..), one operation is one pipeline
+// direct is the same pipeline running on the benchmark thread, the difference is the scheduling overhead
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3, time = 3, timeUnit = TimeUnit.SECONDS)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1)
+@State(Scope.Thread)
+public class SubscribeOnPerfTest {
+    static final int PIPELINES = 1000;
+
+    @Param({ "10" })
+    public int times;
+
+    Flow<Integer> pipeline;
+    ExecutorService bounded;
+    ExecutorService virtualThreads;
+
+    @Setup
+    public void setup() {
+        Integer[] array = new Integer[times];
+        for (int i = 0; i < times; i++) {
+            array[i] = i;
+        }
+        pipeline = Flow.fromArray(array).map(v -> v + 1);
+        bounded = Schedulers.bounded(Runtime.getRuntime().availableProcessors());
+        virtualThreads = Schedulers.virtualThreads();
+    }
+
+    @TearDown
+    public void tearDown() {
+        bounded.shutdownNow();
+        virtualThreads.shutdownNow();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIPELINES)
+    public void direct(Blackhole bh) throws InterruptedException {
+        fanOut(pipeline, bh);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIPELINES)
+    public void virtualThreads(Blackhole bh) throws InterruptedException {
+        fanOut(pipeline.subscribeOn(virtualThreads), bh);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIPELINES)
+    public void boundedPlatformThreads(Blackhole bh) throws InterruptedException {
+        fanOut(pipeline.subscribeOn(bounded), bh);
+    }
+
+    static void fanOut(Flow<Integer> flow, Blackhole bh) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(PIPELINES);
+        for (int i = 0; i < PIPELINES; i++) {
+            flow.subscribe(new Subscriber<Integer>() {
+                @Override
+                public void onSubscribe(Subscription s) {
+                    s.request(Long.MAX_VALUE);
+                }
+
+                @Override
+                public void onNext(Integer integer) {
+                    bh.consume(integer);
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    bh.consume(t);
+                    latch.countDown();
+                }
+
+                @Override
+                public void onComplete() {
+                    latch.countDown();
+                }
+            });
+        }
+        latch.await();
+    }
+
+    public static void main(String[] args) throws IOException, RunnerException {
+        org.openjdk.jmh.Main.main(args);
+    }
+}
@@ -0,0 +1,73 @@
+package mahmoud.fawzy;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.RunnerException;
+
+// Three aligned columns joined into rows, one operation is one whole pass over the columns
+// fused  - zip over the arrays themselves, every column is polled in place and nothing is queued
+// queued - the same columns with the fusion hidden, every element goes through its column's SpscArrayQueue
+// manual - what we did before zip, materialize the columns and build the rows by index
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3, time = 3, timeUnit = TimeUnit.SECONDS)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1)
+@State(Scope.Thread)
+public class ZipPerfTest {
+    @Param({ "1000", "1000000" })
+    public int times;
+
+    Long[] timestamps;
+    Double[] prices;
+    Integer[] volumes;
+    Flow<Object[]> fused;
+    Flow<Object[]> queued;
+
+    @Setup
+    public void setup() {
+        timestamps = new Long[times];
+        prices = new Double[times];
+        volumes = new Integer[times];
+        Arrays.fill(timestamps, 777L);
+        Arrays.fill(prices, 7.77);
+        Arrays.fill(volumes, 77);
+
+        fused = Flow.zip(row -> row, Flow.DEFAULT_PREFETCH,
+                Flow.fromArray(timestamps), Flow.fromArray(prices), Flow.fromArray(volumes));
+        queued = Flow.zip(row -> row, Flow.DEFAULT_PREFETCH, FusionPerfTest.hide(new ArrayPublisher<>(timestamps)),
+                FusionPerfTest.hide(new ArrayPublisher<>(prices)), FusionPerfTest.hide(new ArrayPublisher<>(volumes)));
+    }
+
+    @Benchmark
+    public void manual(Blackhole bh) {
+        for (int i = 0; i < timestamps.length; i++) {
+            bh.consume(new Object[]{timestamps[i], prices[i], volumes[i]});
+        }
+    }
+
+    @Benchmark
+    public Object fusedZip(Blackhole bh) {
+        PerfSubscriber lo = new PerfSubscriber(bh, Long.MAX_VALUE);
+
+        fused.subscribe(lo);
+
+        return lo;
+    }
+
+    @Benchmark
+    public Object queuedZip(Blackhole bh) {
+        PerfSubscriber lo = new PerfSubscriber(bh, Long.MAX_VALUE);
+
+        queued.subscribe(lo);
+
+        return lo;
+    }
+
+    public static void main(String[] args) throws IOException, RunnerException {
+        org.openjdk.jmh.Main.main(args);
+    }
+}
@@ -1,9 +1,11 @@
 package mahmoud.fawzy;
 
 import org.reactivestreams.Subscriber;
-import org.reactivestreams.Subscription;
 
-import java.util.concurrent.atomic.AtomicLong;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
 
 public class ArrayPublisher<T> extends Flow<T> {
     private final T[] array;
@@ -12,103 +14,213 @@ public class ArrayPublisher<T> extends Flow<T> {
         this.array = array;
     }
 
+    // A map directly on top of the array doesn't need its own processor, the mapper is applied inside the emission loop
+    @Override
+    public <R> MapArrayPublisher<T, R> map(Function<T, R> mapper) {
+        return new MapArrayPublisher<>(array, mapper);
+    }
+
+    // Every rail walks its own index range of the array
+    public ParallelFlow<T> parallel(int rails, ForkJoinPool pool) {
+        return ParallelFlow.fromArray(array, rails, pool);
+    }
+
+    public ParallelFlow<T> parallel(int rails) {
+        return parallel(rails, ForkJoinPool.commonPool());
+    }
+
+    // Let flatMap(..) skip subscribing to empty and single element arrays
+    int length() {
+        return array.length;
+    }
+
+    T first() {
+        return array[0];
+    }
+
     @Override
     public void subscribe(Subscriber<? super T> subscriber) {
         // Publisher is just a thin wrapper around subscription, subscription does all the work
         // So to debug Reactive Streams, put break points inside the for loop of subscription's request(..) method
+        FlowEvents.SubscribeEvent event = FlowEvents.beginSubscribe(); // null unless the JFR event is enabled
         subscriber.onSubscribe(new ArraySubscription<>(subscriber, array));
+        if (event != null) {
+            FlowEvents.endSubscribe(event, this, subscriber, array.length);
+        }
     }
 
-    public static class ArraySubscription<T> implements Subscription {
-        private final Subscriber<? super T> subscriber;
+    // requested is inherited from the padding classes at the bottom of this file, it sits alone on its cache line
+    // because request(n) may hammer it from many threads while the emission loop reads the fields below
+    public static class ArraySubscription<T> extends ArraySubscriptionRequestedPad implements QueueSubscription<T> {
+        static final VarHandle REQUESTED = VarHandles.find(MethodHandles.lookup(), ArraySubscriptionRequested.class, "requested", long.class);
+
+        // Not final, cancel() drops them so that a canceled subscription someone still holds on to doesn't keep
+        // the array and the whole downstream pipeline reachable
+        private Subscriber<? super T> subscriber;
+        private ConditionalSubscriber<? super T> conditionalSubscriber; // Same object as subscriber, null if it isn't conditional
+        private BatchSubscriber<? super T> batchSubscriber; // Same object as subscriber, null if it doesn't take batches
         volatile boolean canceled;
         volatile boolean completed;
 
-        final T[] array;
+        T[] array;
+        final int end; // Exclusive, array.length unless we only emit a slice of the array (one rail of a ParallelFlow)
 
         int index; // Doesn't even need to be volatile because the requested field gets written after it and read before it, which is a volatile read and write so the happens-before guarantee means any changes to index are published to all other threads (acquire + release)
 
-        AtomicLong requested; // We can use an atomic long field updater so that multiple publishers all use the same object, and just have primitive volatile long s
+        boolean workStolen; // Set by the emission loop when it keeps going with demand added meanwhile, only read by the JFR request event
 
         public ArraySubscription(Subscriber<? super T> subscriber, T[] array) {
+            this(subscriber, array, 0, array.length);
+        }
+
+        // Emits array[from] to array[to - 1] only
+        public ArraySubscription(Subscriber<? super T> subscriber, T[] array, int from, int to) {
             this.subscriber = subscriber;
+            this.conditionalSubscriber = subscriber instanceof ConditionalSubscriber
+                    ? (ConditionalSubscriber<? super T>) subscriber
+                    : null;
+            this.batchSubscriber = subscriber instanceof BatchSubscriber
+                    ? (BatchSubscriber<? super T>) subscriber
+                    : null;
             this.array = array;
-            requested = new AtomicLong();
+            this.index = from;
+            this.end = to;
         }
 
-        // We can also do a fastpath and slowpath optimization if someone requests Long.MAX_VALUE
-
         // request method can be called from any number of threads concurrently, it SHOULD be non-blocking
         @Override
         public void request(long n) {
             if (n <= 0 && !canceled) {
+                Subscriber<? super T> subscriber = this.subscriber;
                 cancel(); // Cancel to prevent sending onError signal multiple times
-                subscriber.onError(new IllegalArgumentException());
+                if (subscriber != null) {
+                    subscriber.onError(new IllegalArgumentException());
+                }
             }
 
             if (canceled) return;
 
+            FlowEvents.RequestEvent event = FlowEvents.beginRequest(); // null unless the JFR event is enabled
 
-//                long initialRequested = requested.getAndAdd(n); too simplistic, vulnerable to overflow
+            long initialRequested = Demand.add(REQUESTED, this, n);
 
-            long initialRequested;
-            long newRequested;
-            do {
-                initialRequested = requested.get();
-
-                if (initialRequested == Long.MAX_VALUE) {
-                    // We are already sending data that would take 292 years to send
-                    // So just return, let the work stealing continue
-                    return;
+            // If there's already work in progress, return (WIP guard, only one thread may pass)
+            if (initialRequested > 0) {
+                if (event != null) {
+                    FlowEvents.endRequest(event, subscriber, n, 0, false, false);
                 }
+                return;
+            }
 
-                newRequested = initialRequested + n;
+            if (event == null) {
+                emit(n);
+                return;
+            }
 
-                if (n <= 0) { // if overflow
-                    n = Long.MAX_VALUE;
-                }
-            } while (!requested.compareAndSet(initialRequested, newRequested));
+            int from = index;
+            workStolen = false;
+            int to = emit(n);
+            FlowEvents.endRequest(event, subscriber, n, to - from, true, workStolen);
+        }
 
+        // Picks the emission loop, every loop returns the index it stopped at
+        // A cancel() racing with us may already have dropped the references, the loops read them once and leave if they are gone
+        private int emit(long n) {
+            if (batchSubscriber != null) {
+                return batchPath(n);
+            } else if (conditionalSubscriber != null) {
+                return n == Long.MAX_VALUE ? fastPathConditional() : slowPathConditional(n);
+            } else if (n == Long.MAX_VALUE) { // We won the WIP race, so requested went from 0 to exactly n
+                return fastPath();
+            } else {
+                return slowPath(n);
+            }
+        }
 
-            // If there's already work in progress, return (WIP guard, only one thread may pass)
-            if (initialRequested > 0) {
-                return;
+        // Unbounded demand, nobody can ever request more than Long.MAX_VALUE so there is no accounting to do,
+        // just walk the array and check for cancellation
+        int fastPath() {
+            final T[] array = this.array;
+            final int end = this.end;
+            final Subscriber<? super T> subscriber = this.subscriber;
+
+            int i = index;
+            if (array == null || subscriber == null) return i;
+
+            for (; i < end; i++) {
+                if (canceled) return i;
+
+                T element = array[i];
+
+                if (element == null) {
+                    subscriber.onError(new NullPointerException());
+                    return i;
+                }
+
+                subscriber.onNext(element);
             }
 
-            int sent = 0;
+            if (canceled) return i;
+
+            completed = true;
+            subscriber.onComplete();
+            return i;
+        }
+
+        // Bounded demand, emit at most n elements then try to leave, unless other threads added more demand meanwhile
+        int slowPath(long n) {
+            final T[] array = this.array;
+            final int end = this.end;
+            final Subscriber<? super T> subscriber = this.subscriber;
+            int i = index; // Keep the index in a local, it is only published back to the field before leaving the loop
+            long sent = 0;
+
+            if (array == null || subscriber == null) return i;
+
             while (true) {
-                for (; sent < n && index < array.length; sent++) {
-                    if (canceled) return;
+                for (; sent < n && i < end; sent++) {
+                    if (canceled) return i;
 
-                    T element = array[index];
+                    T element = array[i];
 
                     if (element == null) {
                         subscriber.onError(new NullPointerException());
-                        return;
+                        return i;
                     }
 
                     subscriber.onNext(element);
                     // All signals must be serialized,
                     // you can't have two simultaneous invocations of onNext(), or any two signals concurrently
                     // otherwise the complexity of handling concurrency falls on the shoulder of the subscriber
-                    index++;
+                    i++;
                 }
 
-                if (canceled) return;
+                if (canceled) return i;
 
-                if (index == array.length && !completed) {
-                    subscriber.onComplete();
+                if (i == end && !completed) {
                     completed = true;
-                    return;
+                    subscriber.onComplete();
+                    return i;
+                }
+
+                n = requested;
+                if (n == Long.MAX_VALUE) {
+                    // Someone switched us to unbounded mode while we were emitting, no need to count anymore
+                    index = i;
+                    workStolen = true;
+                    return fastPath();
                 }
 
-                long currentRequested = requested.addAndGet(-sent);
-                if (currentRequested == 0) {
-                    return; // otherwise, repeat while loop to steal work
+                if (n == sent) {
+                    index = i; // Must be written before the requested field, see the comment on the index field
+                    n = Demand.produced(REQUESTED, this, sent);
+                    if (n == 0) {
+                        return i; // otherwise, repeat while loop to steal work
+                    }
+                    sent = 0;
                 }
 
-                n = currentRequested;
-                sent = 0;
+                workStolen = true;
 
                 // If this completes after an Add from a competing thread, no one will send data anymore!
                 // Must add -sent, can't just set to 0 because you have to re-get the requested field otherwise
@@ -120,12 +232,209 @@ public class ArrayPublisher<T> extends Flow<T> {
             }
         }
 
+        // The conditional versions only count the elements the subscriber accepted against demand,
+        // rejected ones are skipped without consuming demand and without the subscriber having to request(1) again
+        int fastPathConditional() {
+            final T[] array = this.array;
+            final int end = this.end;
+            final ConditionalSubscriber<? super T> subscriber = this.conditionalSubscriber;
+
+            int i = index;
+            if (array == null || subscriber == null) return i;
+
+            for (; i < end; i++) {
+                if (canceled) return i;
+
+                T element = array[i];
+
+                if (element == null) {
+                    subscriber.onError(new NullPointerException());
+                    return i;
+                }
+
+                subscriber.tryOnNext(element);
+            }
+
+            if (canceled) return i;
+
+            completed = true;
+            subscriber.onComplete();
+            return i;
+        }
+
+        int slowPathConditional(long n) {
+            final T[] array = this.array;
+            final int end = this.end;
+            final ConditionalSubscriber<? super T> subscriber = this.conditionalSubscriber;
+            int i = index;
+            long sent = 0;
+
+            if (array == null || subscriber == null) return i;
+
+            while (true) {
+                for (; sent < n && i < end; i++) {
+                    if (canceled) return i;
+
+                    T element = array[i];
+
+                    if (element == null) {
+                        subscriber.onError(new NullPointerException());
+                        return i;
+                    }
+
+                    if (subscriber.tryOnNext(element)) {
+                        sent++;
+                    }
+                }
+
+                if (canceled) return i;
+
+                if (i == end && !completed) {
+                    completed = true;
+                    subscriber.onComplete();
+                    return i;
+                }
+
+                n = requested;
+                if (n == Long.MAX_VALUE) {
+                    index = i;
+                    workStolen = true;
+                    return fastPathConditional();
+                }
+
+                if (n == sent) {
+                    index = i;
+                    n = Demand.produced(REQUESTED, this, sent);
+                    if (n == 0) {
+                        return i;
+                    }
+                    sent = 0;
+                }
+
+                workStolen = true;
+            }
+        }
+
+        // Hands the whole demanded slice over in one signal, unbounded demand gets the rest of the array at once
+        // The slice is checked for nulls first, the elements before a null are still delivered like in the other paths
+        int batchPath(long n) {
+            final T[] array = this.array;
+            final int end = this.end;
+            final BatchSubscriber<? super T> subscriber = this.batchSubscriber;
+            int i = index;
+
+            if (array == null || subscriber == null) return i;
+
+            while (true) {
+                if (canceled) return i;
+
+                int to = n >= end - i ? end : i + (int) n;
+                for (int j = i; j < to; j++) {
+                    if (array[j] == null) {
+                        if (j > i) {
+                            subscriber.onNextBatch(array, i, j);
+                            if (canceled) return j;
+                        }
+                        subscriber.onError(new NullPointerException());
+                        return j;
+                    }
+                }
+
+                if (to > i) {
+                    subscriber.onNextBatch(array, i, to);
+                }
+
+                if (canceled) return to;
+
+                if (to == end && !completed) {
+                    completed = true;
+                    subscriber.onComplete();
+                    return to;
+                }
+
+                long sent = to - i;
+                i = to;
+                index = i; // Must be written before the requested field, see the comment on the index field
+                n = Demand.produced(REQUESTED, this, sent);
+                if (n == 0) {
+                    return i; // otherwise, more demand came in while we were emitting, send the next slice
+                }
+                workStolen = true;
+            }
+        }
+
+        // We hold every element already, so synchronous fusion is always possible
+        // In this mode the subscriber walks the array through poll() and never calls request(n)
+        @Override
+        public int requestFusion(int mode) {
+            return (mode & SYNC) != 0 ? SYNC : NONE;
+        }
+
+        @Override
+        public T poll() {
+            int i = index;
+            final T[] array = this.array;
+            if (i == end || array == null) {
+                return null;
+            }
+
+            T element = array[i];
+            if (element == null) {
+                throw new NullPointerException();
+            }
+
+            index = i + 1;
+            return element;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return index == end;
+        }
+
+        @Override
+        public int size() {
+            return end - index;
+        }
+
+        @Override
+        public void clear() {
+            index = end;
+        }
+
         // cancel method MUST be non-blocking, imagine this is a WebSocketPublisher and we want to close the WebSocket
         // a potentially long-running operation, so we want to perform it in a non-blocking manner
         // ( don't block the calling thread of cancel() )
         @Override
         public void cancel() {
             canceled = true;
+            Subscriber<? super T> subscriber = this.subscriber;
+            if (subscriber != null) {
+                FlowEvents.cancel(subscriber, index, end);
+            }
+            // After the volatile write above, an emission loop that still reads the fields sees canceled too
+            this.subscriber = null;
+            this.conditionalSubscriber = null;
+            this.batchSubscriber = null;
+            this.array = null;
         }
     }
 }
+
+// The JVM lays out superclass fields before subclass fields, so these classes keep a cache line of unused longs between
+// requested and the object header on one side and ArraySubscription's own fields on the other, like SpscArrayQueue's indexes
+// Requesting threads CAS requested, the emission loop reads index, array and canceled for every element: without the padding
+// each of those CASes would also invalidate the line the loop is reading from (false sharing)
+// That's 128 more bytes per subscription, only the subscriptions that expect request(n) from many threads pay for it
+
+abstract class ArraySubscriptionHeaderPad {
+    long p00, p01, p02, p03, p04, p05, p06, p07;
+}
+
+abstract class ArraySubscriptionRequested extends ArraySubscriptionHeaderPad {
+    volatile long requested;
+}
+
+abstract class ArraySubscriptionRequestedPad extends ArraySubscriptionRequested {
+    long p10, p11, p12, p13, p14, p15, p16, p17;
+}
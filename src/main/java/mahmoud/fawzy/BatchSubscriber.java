@@ -0,0 +1,13 @@
+package mahmoud.fawzy;
+
+import org.reactivestreams.Subscriber;
+
+// A Subscriber that can take a contiguous run of elements in one call
+// Sources backed by an array (ArraySubscription) call onNextBatch(..) once per slice instead of onNext(..) once per element,
+// demand is still counted in elements, a batch of to - from elements consumes to - from units of demand
+public interface BatchSubscriber<T> extends Subscriber<T> {
+
+    // Receives array[from] to array[to - 1], none of them null
+    // The array belongs to the source, copy what you need to keep and never write to it
+    void onNextBatch(T[] array, int from, int to);
+}
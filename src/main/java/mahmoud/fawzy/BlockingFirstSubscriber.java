@@ -0,0 +1,68 @@
+package mahmoud.fawzy;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+
+// Requests a single element, cancels once it has it and hands it to the thread waiting in await()
+final class BlockingFirstSubscriber<T> implements Subscriber<T> {
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile Subscription upstream;
+    private T value; // Published by the latch
+    private Throwable error;
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+        upstream = subscription;
+        subscription.request(1);
+    }
+
+    @Override
+    public void onNext(T t) {
+        if (value != null) return; // Anything after the cancel
+        value = t;
+        upstream.cancel();
+        done.countDown();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        if (value != null) return;
+        error = throwable;
+        done.countDown();
+    }
+
+    @Override
+    public void onComplete() {
+        done.countDown();
+    }
+
+    T await() {
+        if (done.getCount() != 0) {
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Subscription s = upstream;
+                if (s != null) {
+                    s.cancel();
+                }
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the first element", e);
+            }
+        }
+
+        Throwable e = error;
+        if (e != null) {
+            if (e instanceof RuntimeException) throw (RuntimeException) e;
+            if (e instanceof Error) throw (Error) e;
+            throw new IllegalStateException(e);
+        }
+        T v = value;
+        if (v == null) {
+            throw new NoSuchElementException("The flow completed without any element");
+        }
+        return v;
+    }
+}
@@ -0,0 +1,148 @@
+package mahmoud.fawzy;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.Arrays;
+import java.util.List;
+
+// Groups the elements into lists of size elements, the last list holds whatever is left and may be shorter
+// Demand is counted in lists, request(n) asks the upstream for n * size elements
+//
+// On top of an ArrayPublisher the elements arrive as slices (see BatchSubscriber), a full list is then a single
+// array copy instead of size onNext calls, which is where most of the time went when we rebatched for bulk inserts
+public class BufferFlow<T> extends Flow<List<T>> {
+    private final Publisher<? extends T> upstreamPublisher;
+    private final int size;
+
+    public BufferFlow(Publisher<? extends T> upstreamPublisher, int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("size must be positive but was " + size);
+        }
+        this.upstreamPublisher = upstreamPublisher;
+        this.size = size;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super List<T>> subscriber) {
+        upstreamPublisher.subscribe(new BufferSubscriber<>(subscriber, size));
+    }
+
+    static final class BufferSubscriber<T> implements BatchSubscriber<T>, Subscription {
+        private final Subscriber<? super List<T>> downstream;
+        private final int size;
+        private Subscription upstream;
+        private Object[] buffer; // The list being filled, null between lists
+        private int count;
+        private boolean terminated;
+        private volatile boolean canceled;
+
+        BufferSubscriber(Subscriber<? super List<T>> downstream, int size) {
+            this.downstream = downstream;
+            this.size = size;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            upstream = subscription;
+            downstream.onSubscribe(this);
+        }
+
+        @Override
+        public void onNext(T t) {
+            if (terminated) return;
+
+            Object[] buffer = this.buffer;
+            if (buffer == null) {
+                buffer = new Object[size];
+                this.buffer = buffer;
+            }
+
+            buffer[count] = t;
+            if (++count == size) {
+                emit(buffer);
+            }
+        }
+
+        // Completes the pending list first, then copies whole lists straight out of the source's array,
+        // and keeps the leftover for the next slice
+        @Override
+        public void onNextBatch(T[] array, int from, int to) {
+            if (terminated) return;
+
+            final int size = this.size;
+
+            if (count != 0) {
+                int n = Math.min(size - count, to - from);
+                System.arraycopy(array, from, buffer, count, n);
+                count += n;
+                from += n;
+                if (count == size) {
+                    emit(buffer);
+                }
+            }
+
+            while (to - from >= size) {
+                if (canceled) return;
+                downstream.onNext(asList(Arrays.copyOfRange(array, from, from + size, Object[].class)));
+                from += size;
+            }
+
+            if (from < to && !canceled) {
+                Object[] buffer = new Object[size];
+                System.arraycopy(array, from, buffer, 0, to - from);
+                this.buffer = buffer;
+                count = to - from;
+            }
+        }
+
+        private void emit(Object[] buffer) {
+            this.buffer = null;
+            count = 0;
+            downstream.onNext(asList(buffer));
+        }
+
+        @SuppressWarnings("unchecked")
+        private List<T> asList(Object[] elements) {
+            return (List<T>) Arrays.asList(elements);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            if (terminated) return;
+            terminated = true;
+            buffer = null;
+            downstream.onError(throwable);
+        }
+
+        // There is always demand left for the last list: we got fewer elements than the size * lists we asked for
+        @Override
+        public void onComplete() {
+            if (terminated) return;
+            terminated = true;
+
+            Object[] buffer = this.buffer;
+            if (buffer != null && !canceled) {
+                this.buffer = null;
+                downstream.onNext(asList(Arrays.copyOf(buffer, count)));
+            }
+            downstream.onComplete();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                upstream.request(n); // Let the upstream signal the error
+                return;
+            }
+            upstream.request(n > Long.MAX_VALUE / size ? Long.MAX_VALUE : n * size);
+        }
+
+        @Override
+        public void cancel() {
+            canceled = true;
+            upstream.cancel();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package mahmoud.fawzy;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+// Terminal aggregation behind reduce(..), collect(..), toList() and count(): folds the whole upstream into a container
+// and emits the finished result as a single value, once the stream is over and the downstream requested it
+//
+// When the upstream agrees to SYNC fusion (an array or a range, also through fused maps and filters) there is no protocol
+// at all: the elements are pulled with poll() in one loop right inside onSubscribe, and the container can be created
+// with the exact number of elements the source still holds. Otherwise the upstream is requested unbounded
+public class CollectFlow<T, A, R> extends Flow<R> {
+    private final Publisher<? extends T> upstreamPublisher;
+    private final IntFunction<A> containerFactory; // Gets the number of elements, or -1 when the source doesn't know
+    private final BiConsumer<A, ? super T> accumulator;
+    private final Function<A, R> finisher; // A null result completes without emitting anything (reduce of nothing)
+
+    public CollectFlow(Publisher<? extends T> upstreamPublisher, IntFunction<A> containerFactory,
+                       BiConsumer<A, ? super T> accumulator, Function<A, R> finisher) {
+        this.upstreamPublisher = upstreamPublisher;
+        this.containerFactory = containerFactory;
+        this.accumulator = accumulator;
+        this.finisher = finisher;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super R> subscriber) {
+        upstreamPublisher.subscribe(new CollectSubscriber<>(subscriber, containerFactory, accumulator, finisher));
+    }
+
+    static final class CollectSubscriber<T, A, R> extends SingleValueSubscription<R> implements Subscriber<T> {
+        private final IntFunction<A> containerFactory;
+        private final BiConsumer<A, ? super T> accumulator;
+        private final Function<A, R> finisher;
+
+        private Subscription upstream;
+        private A container;
+        private boolean terminated;
+
+        CollectSubscriber(Subscriber<? super R> downstream, IntFunction<A> containerFactory,
+                          BiConsumer<A, ? super T> accumulator, Function<A, R> finisher) {
+            super(downstream);
+            this.containerFactory = containerFactory;
+            this.accumulator = accumulator;
+            this.finisher = finisher;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            upstream = subscription;
+            downstream.onSubscribe(this);
+            if (isDone()) return; // Canceled in onSubscribe
+
+            if (subscription instanceof QueueSubscription) {
+                @SuppressWarnings("unchecked")
+                QueueSubscription<? extends T> queueSubscription = (QueueSubscription<? extends T>) subscription;
+                if (queueSubscription.requestFusion(QueueSubscription.SYNC) == QueueSubscription.SYNC) {
+                    drainFused(queueSubscription);
+                    return;
+                }
+            }
+
+            try {
+                container = containerFactory.apply(-1);
+            } catch (Throwable e) {
+                subscription.cancel();
+                terminated = true;
+                error(e);
+                return;
+            }
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        // The whole aggregation in one loop, a volatile read every 1024 elements to notice a cancel()
+        private void drainFused(QueueSubscription<? extends T> upstream) {
+            final BiConsumer<A, ? super T> accumulator = this.accumulator;
+            R result;
+            try {
+                A container = containerFactory.apply(upstream.size());
+                int polled = 0;
+                for (T t = upstream.poll(); t != null; t = upstream.poll()) {
+                    accumulator.accept(container, t);
+                    if ((++polled & 1023) == 0 && isDone()) {
+                        upstream.clear();
+                        return;
+                    }
+                }
+                result = finisher.apply(container);
+            } catch (Throwable e) {
+                upstream.clear();
+                error(e);
+                return;
+            }
+            complete(result);
+        }
+
+        @Override
+        public void onNext(T t) {
+            if (terminated) return;
+
+            try {
+                accumulator.accept(container, t);
+            } catch (Throwable e) {
+                upstream.cancel();
+                onError(e);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            if (terminated) return;
+            terminated = true;
+            container = null;
+            error(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            if (terminated) return;
+            terminated = true;
+
+            R result;
+            try {
+                result = finisher.apply(container);
+            } catch (Throwable e) {
+                error(e);
+                return;
+            } finally {
+                container = null;
+            }
+            complete(result);
+        }
+
+        @Override
+        void cancelUpstream() {
+            upstream.cancel();
+        }
+    }
+}
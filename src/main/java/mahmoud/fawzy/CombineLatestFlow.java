@@ -0,0 +1,145 @@
+package mahmoud.fawzy;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.Function;
+
+// Once every source emitted at least once, emits zipper([latest of every source]) for every element of any source
+// Completes when all sources completed, or right away when a source completes without ever emitting
+//
+// Same queues, fusion and batched replenishing as ZipFlow (see JoinCoordinator). The drain loop takes the sources
+// round robin, one element at a time, so a fused source can't hog the loop. Elements are only taken off the queues
+// when they can be emitted (or only update the latest values while some source hasn't emitted yet), which is what
+// keeps a fast source backpressured rather than overwriting its latest value unseen
+public class CombineLatestFlow<R> extends Flow<R> {
+    private final Publisher<?>[] sources;
+    private final Function<? super Object[], ? extends R> combiner; // Gets a copy of the latest values, it may keep it
+    private final int prefetch;
+
+    public CombineLatestFlow(Publisher<?>[] sources, Function<? super Object[], ? extends R> combiner, int prefetch) {
+        if (sources.length == 0) {
+            throw new IllegalArgumentException("At least one source is needed");
+        }
+        if (prefetch <= 0) {
+            throw new IllegalArgumentException("prefetch must be positive but was " + prefetch);
+        }
+        this.sources = sources.clone();
+        this.combiner = combiner;
+        this.prefetch = prefetch;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super R> subscriber) {
+        new CombineLatestCoordinator<R>(subscriber, combiner, sources.length, prefetch).subscribe(sources);
+    }
+
+    static final class CombineLatestCoordinator<R> extends ZipFlow.JoinCoordinator<R> {
+        // Everything below is only touched while holding wip
+        private final Object[] latest;
+        private int filled; // How many sources emitted at least once
+        private int lastIndex; // Round robin position in inners
+
+        CombineLatestCoordinator(Subscriber<? super R> downstream, Function<? super Object[], ? extends R> combiner,
+                                 int n, int prefetch) {
+            super(downstream, combiner, n, prefetch);
+            this.latest = new Object[n];
+        }
+
+        @Override
+        void drainLoop() {
+            final Subscriber<? super R> downstream = this.downstream;
+            final ZipFlow.JoinInner[] inners = this.inners;
+            final Object[] latest = this.latest;
+            final int n = inners.length;
+            int missed = 1;
+
+            while (true) {
+                long r = requested;
+                long emitted = 0;
+
+                while (true) {
+                    if (checkTerminated()) return;
+
+                    // Without demand only the elements that can't complete a combination are taken
+                    boolean noDemand = emitted == r;
+                    int index = -1;
+                    Object value = null;
+                    int finished = 0;
+                    int j = lastIndex;
+                    for (int k = 0; k < n; k++) {
+                        ZipFlow.JoinInner inner = inners[j];
+                        boolean d = inner.done;
+                        boolean emits = filled == n || (filled == n - 1 && latest[j] == null);
+                        boolean empty;
+                        if (noDemand && emits) {
+                            empty = inner.isEmpty();
+                        } else {
+                            value = poll(inner);
+                            if (value != null) {
+                                index = j;
+                                break;
+                            }
+                            if (checkTerminated()) return; // A fused source may have failed in poll()
+                            empty = true;
+                        }
+                        if (d && empty) {
+                            if (latest[j] == null) {
+                                complete(); // This source never emitted, nothing can ever be combined
+                                return;
+                            }
+                            finished++;
+                        }
+                        if (++j == n) {
+                            j = 0;
+                        }
+                    }
+
+                    if (index < 0) {
+                        if (finished == n) {
+                            complete();
+                            return;
+                        }
+                        break;
+                    }
+
+                    lastIndex = index + 1 == n ? 0 : index + 1;
+                    inners[index].consumedOne();
+                    if (latest[index] == null) {
+                        filled++;
+                    }
+                    latest[index] = value;
+                    if (filled != n) continue;
+
+                    R result;
+                    try {
+                        result = Objects.requireNonNull(zipper.apply(latest.clone()), "The combiner returned a null value");
+                    } catch (Throwable e) {
+                        ERROR.compareAndSet(this, null, e);
+                        continue;
+                    }
+
+                    downstream.onNext(result);
+                    emitted++;
+                }
+
+                if (emitted != 0 && r != Long.MAX_VALUE) {
+                    Demand.produced(REQUESTED, this, emitted);
+                }
+
+                missed = (int) WIP.getAndAdd(this, -missed) - missed;
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        @Override
+        void clear() {
+            super.clear();
+            Arrays.fill(latest, null);
+        }
+    }
+}
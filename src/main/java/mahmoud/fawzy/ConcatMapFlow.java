@@ -0,0 +1,398 @@
+package mahmoud.fawzy;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Objects;
+import java.util.function.Function;
+
+// Maps every element to an inner Publisher and emits the inners one after the other, in order, never two at a time
+//
+// The upstream is prefetched into a SpscArrayQueue (or polled in place when it agrees on SYNC fusion, which is what
+// concat(..) over an array of sources does), so the next source is already there when the current one completes
+//
+// Switching to the next source happens in one WIP guarded loop, like the emission loop of ArraySubscription.request:
+// an inner completing synchronously inside subscribe(..) only increments wip and the loop picks the next source up,
+// so thousands of short inners never pile up on the stack
+//
+// The inner Subscriber is reused for every source, and the outstanding demand carries over from one to the next:
+// - an inner that agrees on SYNC fusion (ArrayPublisher, ranges, maps over them) is polled by the loop itself,
+//   it never sees a request(n)
+// - any other inner gets whatever is still outstanding when it subscribes, and every later request(n) while it's active
+//
+// Errors from the upstream wait for the active inner to finish (it may be emitting on another thread), errors from an
+// inner or the mapper end the stream right away
+public class ConcatMapFlow<T, R> extends Flow<R> {
+    private final Publisher<? extends T> upstreamPublisher;
+    private final Function<T, ? extends Publisher<? extends R>> mapper;
+    private final int prefetch;
+
+    public ConcatMapFlow(Publisher<? extends T> upstreamPublisher, Function<T, ? extends Publisher<? extends R>> mapper,
+                         int prefetch) {
+        if (prefetch <= 0) {
+            throw new IllegalArgumentException("prefetch must be positive but was " + prefetch);
+        }
+        this.upstreamPublisher = upstreamPublisher;
+        this.mapper = mapper;
+        this.prefetch = prefetch;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super R> subscriber) {
+        upstreamPublisher.subscribe(new ConcatMapSubscriber<>(subscriber, mapper, prefetch));
+    }
+
+    static final class ConcatMapSubscriber<T, R> implements Subscriber<T>, Subscription {
+        static final VarHandle WIP = VarHandles.find(MethodHandles.lookup(), ConcatMapSubscriber.class, "wip", int.class);
+        static final VarHandle MISSED_REQUESTED = VarHandles.find(MethodHandles.lookup(), ConcatMapSubscriber.class, "missedRequested", long.class);
+        static final VarHandle ERROR = VarHandles.find(MethodHandles.lookup(), ConcatMapSubscriber.class, "error", Throwable.class);
+
+        private final Subscriber<? super R> downstream;
+        private final Function<T, ? extends Publisher<? extends R>> mapper;
+        private final int prefetch;
+        private final int limit;
+        private final ConcatInner<R> inner;
+
+        private volatile int wip;
+        private volatile long missedRequested; // request(n) calls the loop hasn't accounted for yet
+        private volatile Throwable error;
+        private volatile boolean done;
+        private volatile boolean canceled;
+
+        private Subscription upstream;
+        // Exactly one of them is set in onSubscribe, before the downstream can request anything
+        private SpscArrayQueue<T> queue;
+        private QueueSubscription<? extends T> fusedUpstream;
+
+        // Everything below is only touched while holding wip
+        private long requested; // Outstanding downstream demand, Long.MAX_VALUE means unbounded
+        private boolean active; // An inner was subscribed and didn't finish yet
+        private int consumed;
+
+        ConcatMapSubscriber(Subscriber<? super R> downstream, Function<T, ? extends Publisher<? extends R>> mapper, int prefetch) {
+            this.downstream = downstream;
+            this.mapper = mapper;
+            this.prefetch = prefetch;
+            this.limit = prefetch - (prefetch >> 2);
+            this.inner = new ConcatInner<>(this);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void onSubscribe(Subscription subscription) {
+            upstream = subscription;
+
+            if (subscription instanceof QueueSubscription) {
+                QueueSubscription<? extends T> qs = (QueueSubscription<? extends T>) subscription;
+                if (qs.requestFusion(QueueSubscription.SYNC) == QueueSubscription.SYNC) {
+                    fusedUpstream = qs;
+                    done = true; // A SYNC source already holds everything, poll() returning null is its completion
+                    downstream.onSubscribe(this);
+                    drain(); // Completes an empty upstream even without a request
+                    return;
+                }
+            }
+
+            queue = new SpscArrayQueue<>(prefetch);
+            downstream.onSubscribe(this);
+            subscription.request(prefetch);
+        }
+
+        @Override
+        public void onNext(T t) {
+            if (done) return;
+
+            if (!queue.offer(t)) {
+                upstream.cancel();
+                onError(new IllegalStateException("Queue is full, the upstream ignored backpressure"));
+                return;
+            }
+            drain();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            if (ERROR.compareAndSet(this, null, throwable)) {
+                done = true;
+                drain();
+            }
+        }
+
+        @Override
+        public void onComplete() {
+            if (done) return;
+            done = true;
+            drain();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                innerError(new IllegalArgumentException());
+                return;
+            }
+            Demand.add(MISSED_REQUESTED, this, n);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            if (canceled) return;
+            canceled = true;
+            upstream.cancel();
+            inner.cancel();
+            if ((int) WIP.getAndAdd(this, 1) == 0) {
+                clear(); // No drain loop running, we own the consumer side of the queue
+            }
+        }
+
+        // Ends the stream as soon as the loop sees it, the active inner is canceled and counts as finished
+        void innerError(Throwable throwable) {
+            if (ERROR.compareAndSet(this, null, throwable)) {
+                upstream.cancel();
+                inner.cancel();
+            }
+            inner.fused = null; // A fused inner would otherwise keep being polled, the loop has to see it as finished
+            inner.done = true;
+            drain();
+        }
+
+        void drain() {
+            if ((int) WIP.getAndAdd(this, 1) == 0) {
+                drainLoop();
+            }
+        }
+
+        private void drainLoop() {
+            final Subscriber<? super R> downstream = this.downstream;
+            final ConcatInner<R> inner = this.inner;
+            int missed = 1;
+
+            while (true) {
+                if (canceled) {
+                    inner.cancel(); // It may have subscribed after cancel() looked
+                    clear();
+                    return;
+                }
+
+                long mr = (long) MISSED_REQUESTED.getAndSet(this, 0L);
+                if (mr != 0) {
+                    long r = requested + mr;
+                    requested = r < 0 ? Long.MAX_VALUE : r;
+                    if (active && inner.started) {
+                        inner.subscription.request(mr);
+                    }
+                }
+
+                if (active) {
+                    QueueSubscription<? extends R> fused = inner.fused;
+                    if (fused != null) {
+                        if (!drainFused(fused)) return;
+                    } else if (inner.done) {
+                        active = false;
+                        if (requested != Long.MAX_VALUE) {
+                            requested -= inner.produced;
+                        }
+                    } else if (!inner.started && inner.subscription != null) {
+                        inner.started = true; // Hand over what is still outstanding, later request(n) calls follow
+                        if (requested != 0) {
+                            inner.subscription.request(requested);
+                        }
+                    }
+                }
+
+                if (!active) {
+                    Throwable e = error;
+                    if (e != null) {
+                        terminate();
+                        downstream.onError(e);
+                        return;
+                    }
+
+                    boolean d = done;
+                    T t;
+                    try {
+                        t = pollUpstream();
+                    } catch (Throwable ex) {
+                        upstream.cancel();
+                        ERROR.compareAndSet(this, null, ex);
+                        continue;
+                    }
+
+                    if (t == null) {
+                        if (d) {
+                            terminate();
+                            downstream.onComplete();
+                            return;
+                        }
+                    } else {
+                        upstreamConsumedOne();
+
+                        Publisher<? extends R> publisher;
+                        try {
+                            publisher = Objects.requireNonNull(mapper.apply(t), "The mapper returned a null Publisher");
+                        } catch (Throwable ex) {
+                            upstream.cancel();
+                            ERROR.compareAndSet(this, null, ex);
+                            continue;
+                        }
+
+                        if (publisher instanceof ArrayPublisher && ((ArrayPublisher<? extends R>) publisher).length() == 0) {
+                            continue; // Nothing to emit, not even worth a subscribe
+                        }
+
+                        active = true;
+                        inner.reset();
+                        publisher.subscribe(inner);
+                        continue; // A fused or synchronous inner is ready right away, its drain() only bumped wip
+                    }
+                }
+
+                missed = (int) WIP.getAndAdd(this, -missed) - missed;
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        // Emits from a fused inner as far as the demand goes, false if the stream ended in here
+        private boolean drainFused(QueueSubscription<? extends R> fused) {
+            long r = requested;
+            long emitted = 0;
+            while (emitted != r) {
+                if (canceled) {
+                    clear();
+                    return false;
+                }
+
+                R value;
+                try {
+                    value = fused.poll();
+                } catch (Throwable e) {
+                    ERROR.compareAndSet(this, null, e);
+                    terminate();
+                    downstream.onError(error);
+                    return false;
+                }
+                if (value == null) {
+                    active = false;
+                    break;
+                }
+
+                downstream.onNext(value);
+                emitted++;
+            }
+
+            if (active && fused.isEmpty()) {
+                active = false; // Out of demand right at the end of the inner, move on without waiting for a request
+            }
+            if (emitted != 0 && r != Long.MAX_VALUE) {
+                requested = r - emitted;
+            }
+            return true;
+        }
+
+        private T pollUpstream() {
+            QueueSubscription<? extends T> fused = fusedUpstream;
+            if (fused != null) {
+                return fused.poll();
+            }
+            return queue.poll();
+        }
+
+        // Replenishes the upstream in batches of 75% of prefetch, a fused upstream is polled, there is nothing to request
+        private void upstreamConsumedOne() {
+            if (fusedUpstream != null) return;
+            if (++consumed == limit) {
+                consumed = 0;
+                upstream.request(limit);
+            }
+        }
+
+        private void terminate() {
+            canceled = true;
+            upstream.cancel();
+            inner.cancel();
+            clear();
+        }
+
+        private void clear() {
+            QueueSubscription<? extends T> fused = fusedUpstream;
+            if (fused != null) {
+                fused.clear();
+                return;
+            }
+            SpscArrayQueue<T> queue = this.queue;
+            if (queue != null) {
+                queue.clear();
+            }
+        }
+    }
+
+    // Subscribed to every inner in turn, reset() by the parent's loop before each subscribe(..)
+    static final class ConcatInner<R> implements Subscriber<R> {
+        private final ConcatMapSubscriber<?, R> parent;
+
+        volatile Subscription subscription;
+        volatile QueueSubscription<? extends R> fused;
+        volatile boolean done;
+        boolean started; // The outstanding demand was handed to subscription, only touched while holding the parent's wip
+        long produced; // Written by onNext, read by the parent's loop once done is set
+
+        ConcatInner(ConcatMapSubscriber<?, R> parent) {
+            this.parent = parent;
+        }
+
+        void reset() {
+            subscription = null;
+            fused = null;
+            done = false;
+            started = false;
+            produced = 0;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void onSubscribe(Subscription subscription) {
+            if (subscription instanceof QueueSubscription) {
+                QueueSubscription<? extends R> qs = (QueueSubscription<? extends R>) subscription;
+                if (qs.requestFusion(QueueSubscription.SYNC) == QueueSubscription.SYNC) {
+                    this.fused = qs;
+                    this.subscription = subscription;
+                    parent.drain();
+                    return;
+                }
+            }
+
+            this.subscription = subscription;
+            parent.drain(); // The loop requests, it is the one that knows the outstanding demand
+        }
+
+        @Override
+        public void onNext(R r) {
+            produced++;
+            parent.downstream.onNext(r);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            parent.innerError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            done = true;
+            parent.drain();
+        }
+
+        void cancel() {
+            Subscription s = subscription;
+            if (s != null) {
+                s.cancel();
+            }
+        }
+    }
+}
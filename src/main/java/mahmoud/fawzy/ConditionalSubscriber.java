@@ -0,0 +1,12 @@
+package mahmoud.fawzy;
+
+import org.reactivestreams.Subscriber;
+
+// A Subscriber that can tell its source whether it actually kept an element
+// Sources that know about it call tryOnNext(..) instead of onNext(..) and only count accepted elements against demand,
+// so an operator dropping an element (a filter for example) doesn't have to request(1) a replacement from upstream
+public interface ConditionalSubscriber<T> extends Subscriber<T> {
+
+    // Returns true if the element was delivered downstream and consumed one unit of demand, false if it was dropped
+    boolean tryOnNext(T t);
+}
@@ -0,0 +1,42 @@
+package mahmoud.fawzy;
+
+import java.lang.invoke.VarHandle;
+
+// Shared request(n) accounting, every source and operator that keeps track of outstanding demand goes through here
+// requested is the VarHandle of a volatile long field of owner, see VarHandles
+final class Demand {
+
+    private Demand() {
+    }
+
+    // Adds n to requested, capping at Long.MAX_VALUE which means unbounded, and returns the previous value
+    // If the previous value is 0, the caller won the WIP race and must emit, otherwise somebody else is already emitting
+    static long add(VarHandle requested, Object owner, long n) {
+//        long initialRequested = requested.getAndAdd(n); too simplistic, vulnerable to overflow
+
+        long initialRequested;
+        long newRequested;
+        do {
+            initialRequested = (long) requested.getVolatile(owner);
+
+            if (initialRequested == Long.MAX_VALUE) {
+                // We are already sending data that would take 292 years to send
+                // So just return, let the work stealing continue
+                return Long.MAX_VALUE;
+            }
+
+            newRequested = initialRequested + n;
+
+            if (newRequested <= 0) { // if overflow, cap at Long.MAX_VALUE which means unbounded
+                newRequested = Long.MAX_VALUE;
+            }
+        } while (!requested.compareAndSet(owner, initialRequested, newRequested));
+
+        return initialRequested;
+    }
+
+    // Takes what an emission loop sent off requested and returns the demand left, 0 means the loop must leave
+    static long produced(VarHandle requested, Object owner, long sent) {
+        return (long) requested.getAndAdd(owner, -sent) - sent;
+    }
+}
@@ -0,0 +1,315 @@
+package mahmoud.fawzy;
+
+import org.reactivestreams.Subscriber;
+
+import java.util.Objects;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleFunction;
+import java.util.function.DoublePredicate;
+import java.util.function.DoubleUnaryOperator;
+
+// Flow specialized for double values, elements travel as primitives from the double[] to the DoubleSubscriber, nothing is boxed
+// Same protocol as Flow (onSubscribe, request(n), onNext, cancel), only the element type differs
+// Use boxed() or mapToObj(..) to go back to a regular Flow, that's the only place where allocation per element happens
+// IntFlow, LongFlow and DoubleFlow only differ by their value type: the demand accounting, the terminal signals and
+// the reduce state machine live in PrimitiveArraySubscription, PrimitiveStage, PrimitiveToObjStage and
+// PrimitiveReduceSubscriber, the classes below only hold what touches a value (see IntFlow for why)
+public abstract class DoubleFlow {
+
+    public abstract void subscribe(DoubleSubscriber subscriber);
+
+    public DoubleFlow map(DoubleUnaryOperator mapper) {
+        return new MapDoubleFlow(this, mapper);
+    }
+
+    public DoubleFlow filter(DoublePredicate predicate) {
+        return new FilterDoubleFlow(this, predicate);
+    }
+
+    // Emits a single value once the upstream completes, the identity if the upstream was empty
+    public DoubleFlow reduce(double identity, DoubleBinaryOperator reducer) {
+        return new ReduceDoubleFlow(this, identity, reducer);
+    }
+
+    public DoubleFlow sum() {
+        return reduce(0, Double::sum);
+    }
+
+    public Flow<Double> boxed() {
+        return mapToObj(Double::valueOf);
+    }
+
+    public <R> Flow<R> mapToObj(DoubleFunction<R> mapper) {
+        return new MapToObjDoubleFlow<>(this, mapper);
+    }
+
+    public static DoubleFlow fromArray(double... array) {
+        return new DoubleArrayPublisher(array);
+    }
+
+    static final class DoubleArrayPublisher extends DoubleFlow {
+        private final double[] array;
+
+        DoubleArrayPublisher(double[] array) {
+            this.array = array;
+        }
+
+        @Override
+        public void subscribe(DoubleSubscriber subscriber) {
+            subscriber.onSubscribe(new DoubleArraySubscription(subscriber, array));
+        }
+    }
+
+    static final class DoubleArraySubscription extends PrimitiveArraySubscription<DoubleSubscriber> {
+        private double[] array;
+
+        DoubleArraySubscription(DoubleSubscriber subscriber, double[] array) {
+            super(subscriber, subscriber instanceof DoubleSubscriber.Conditional, array.length);
+            this.array = array;
+        }
+
+        @Override
+        int emit(DoubleSubscriber subscriber, int i, int to) {
+            final double[] array = this.array;
+            if (array == null) return -1; // Canceled, see release()
+
+            for (; i < to; i++) {
+                if (canceled) return -1;
+
+                subscriber.onNext(array[i]);
+            }
+            return i;
+        }
+
+        @Override
+        int emitConditional(DoubleSubscriber subscriber, int i, int to, long wanted) {
+            final double[] array = this.array;
+            if (array == null) return -1;
+            final DoubleSubscriber.Conditional target = (DoubleSubscriber.Conditional) subscriber;
+
+            long accepted = 0;
+            for (; i < to && accepted != wanted; i++) {
+                if (canceled) return -1;
+
+                if (target.tryOnNext(array[i])) {
+                    accepted++;
+                }
+            }
+            this.accepted = accepted;
+            return i;
+        }
+
+        @Override
+        void release() {
+            this.array = null;
+        }
+    }
+
+    static final class MapDoubleFlow extends DoubleFlow {
+        private final DoubleFlow upstream;
+        private final DoubleUnaryOperator mapper;
+
+        MapDoubleFlow(DoubleFlow upstream, DoubleUnaryOperator mapper) {
+            this.upstream = upstream;
+            this.mapper = mapper;
+        }
+
+        // Consecutive maps compose into one stage, like MapProcessor
+        @Override
+        public DoubleFlow map(DoubleUnaryOperator mapper) {
+            return new MapDoubleFlow(upstream, this.mapper.andThen(mapper));
+        }
+
+        @Override
+        public void subscribe(DoubleSubscriber subscriber) {
+            upstream.subscribe(new MapSubscriber(subscriber, mapper));
+        }
+    }
+
+    // Mapping never drops anything, so like MapProcessor we are as conditional as our downstream is
+    static final class MapSubscriber extends PrimitiveStage<DoubleSubscriber> implements DoubleSubscriber.Conditional {
+        private final DoubleSubscriber.Conditional conditionalDownstream; // null if the downstream isn't conditional
+        private final DoubleUnaryOperator mapper;
+
+        MapSubscriber(DoubleSubscriber downstream, DoubleUnaryOperator mapper) {
+            super(downstream);
+            this.conditionalDownstream = downstream instanceof DoubleSubscriber.Conditional
+                    ? (DoubleSubscriber.Conditional) downstream
+                    : null;
+            this.mapper = mapper;
+        }
+
+        // Only reached when the upstream doesn't know about DoubleSubscriber.Conditional
+        @Override
+        public void onNext(double value) {
+            if (!tryOnNext(value)) {
+                upstream.request(1); // A filter downstream dropped it
+            }
+        }
+
+        @Override
+        public boolean tryOnNext(double value) {
+            if (terminated) return true;
+
+            double result;
+            try {
+                result = mapper.applyAsDouble(value);
+            } catch (Throwable t) {
+                fail(t);
+                return true;
+            }
+
+            if (conditionalDownstream != null) {
+                return conditionalDownstream.tryOnNext(result);
+            }
+
+            downstream.onNext(result);
+            return true;
+        }
+    }
+
+    static final class FilterDoubleFlow extends DoubleFlow {
+        private final DoubleFlow upstream;
+        private final DoublePredicate predicate;
+
+        FilterDoubleFlow(DoubleFlow upstream, DoublePredicate predicate) {
+            this.upstream = upstream;
+            this.predicate = predicate;
+        }
+
+        @Override
+        public void subscribe(DoubleSubscriber subscriber) {
+            upstream.subscribe(new FilterSubscriber(subscriber, predicate));
+        }
+    }
+
+    static final class FilterSubscriber extends PrimitiveStage<DoubleSubscriber> implements DoubleSubscriber.Conditional {
+        private final DoubleSubscriber.Conditional conditionalDownstream; // null if the downstream isn't conditional
+        private final DoublePredicate predicate;
+
+        FilterSubscriber(DoubleSubscriber downstream, DoublePredicate predicate) {
+            super(downstream);
+            this.conditionalDownstream = downstream instanceof DoubleSubscriber.Conditional
+                    ? (DoubleSubscriber.Conditional) downstream
+                    : null;
+            this.predicate = predicate;
+        }
+
+        // Only reached when the upstream doesn't know about DoubleSubscriber.Conditional,
+        // then every dropped value costs a request(1) to get a replacement
+        @Override
+        public void onNext(double value) {
+            if (!tryOnNext(value)) {
+                upstream.request(1);
+            }
+        }
+
+        @Override
+        public boolean tryOnNext(double value) {
+            if (terminated) return true; // Nothing is delivered anymore, don't ask for replacements
+
+            boolean pass;
+            try {
+                pass = predicate.test(value);
+            } catch (Throwable t) {
+                fail(t);
+                return true;
+            }
+
+            if (!pass) {
+                return false;
+            }
+
+            if (conditionalDownstream != null) {
+                return conditionalDownstream.tryOnNext(value); // Another filter downstream may still drop it
+            }
+
+            downstream.onNext(value);
+            return true;
+        }
+    }
+
+    static final class ReduceDoubleFlow extends DoubleFlow {
+        private final DoubleFlow upstream;
+        private final double identity;
+        private final DoubleBinaryOperator reducer;
+
+        ReduceDoubleFlow(DoubleFlow upstream, double identity, DoubleBinaryOperator reducer) {
+            this.upstream = upstream;
+            this.identity = identity;
+            this.reducer = reducer;
+        }
+
+        @Override
+        public void subscribe(DoubleSubscriber subscriber) {
+            upstream.subscribe(new ReduceSubscriber(subscriber, identity, reducer));
+        }
+    }
+
+    static final class ReduceSubscriber extends PrimitiveReduceSubscriber<DoubleSubscriber> implements DoubleSubscriber {
+        private final DoubleBinaryOperator reducer;
+        private double accumulator; // Published to the requesting thread through the state field
+
+        ReduceSubscriber(DoubleSubscriber downstream, double identity, DoubleBinaryOperator reducer) {
+            super(downstream);
+            this.accumulator = identity;
+            this.reducer = reducer;
+        }
+
+        @Override
+        public void onNext(double value) {
+            if (terminated) return;
+
+            try {
+                accumulator = reducer.applyAsDouble(accumulator, value);
+            } catch (Throwable t) {
+                fail(t);
+            }
+        }
+
+        @Override
+        void emit() {
+            downstream.onNext(accumulator);
+            downstream.onComplete();
+        }
+    }
+
+    static final class MapToObjDoubleFlow<R> extends Flow<R> {
+        private final DoubleFlow upstream;
+        private final DoubleFunction<R> mapper;
+
+        MapToObjDoubleFlow(DoubleFlow upstream, DoubleFunction<R> mapper) {
+            this.upstream = upstream;
+            this.mapper = mapper;
+        }
+
+        @Override
+        public void subscribe(Subscriber<? super R> subscriber) {
+            upstream.subscribe(new MapToObjSubscriber<>(subscriber, mapper));
+        }
+    }
+
+    static final class MapToObjSubscriber<R> extends PrimitiveToObjStage<R> implements DoubleSubscriber {
+        private final DoubleFunction<R> mapper;
+
+        MapToObjSubscriber(Subscriber<? super R> downstream, DoubleFunction<R> mapper) {
+            super(downstream);
+            this.mapper = mapper;
+        }
+
+        @Override
+        public void onNext(double value) {
+            if (terminated) return;
+
+            R result;
+            try {
+                result = Objects.requireNonNull(mapper.apply(value));
+            } catch (Throwable t) {
+                fail(t);
+                return;
+            }
+
+            downstream.onNext(result);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package mahmoud.fawzy;
+
+// Subscriber of a DoubleFlow, the same four signals as org.reactivestreams.Subscriber but onNext takes a double
+public interface DoubleSubscriber extends PrimitiveSubscriber {
+
+    void onNext(double value);
+
+    // The DoubleSubscriber flavour of ConditionalSubscriber: fromArray(..) calls tryOnNext(..) instead of onNext(..)
+    // and only counts accepted values against demand, so a filter doesn't request(1) for every value it drops
+    interface Conditional extends DoubleSubscriber {
+
+        // Returns true if the value was delivered downstream and consumed one unit of demand, false if it was dropped
+        boolean tryOnNext(double value);
+    }
+}
@@ -0,0 +1,18 @@
+package mahmoud.fawzy;
+
+import org.reactivestreams.Subscription;
+
+// Handed to a Subscriber that is about to receive onError right away, the spec requires onSubscribe to come first
+enum EmptySubscription implements Subscription {
+    INSTANCE;
+
+    @Override
+    public void request(long n) {
+        // Nothing to emit
+    }
+
+    @Override
+    public void cancel() {
+        // Nothing to stop
+    }
+}
@@ -0,0 +1,144 @@
+package mahmoud.fawzy;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.function.Predicate;
+
+// Keeps the elements matching the predicate
+// Like ArrayPublisher this is only a thin wrapper, every subscribe(..) gets its own FilterSubscriber
+public class FilterFlow<T> extends Flow<T> {
+    private final Publisher<? extends T> upstreamPublisher;
+    private final Predicate<T> predicate;
+
+    public FilterFlow(Publisher<? extends T> upstreamPublisher, Predicate<T> predicate) {
+        this.upstreamPublisher = upstreamPublisher;
+        this.predicate = predicate;
+    }
+
+    // filter(..) on a filter(..) tests both predicates in a single stage
+    @Override
+    public Flow<T> filter(Predicate<T> predicate) {
+        Predicate<T> first = this.predicate;
+        return new FilterFlow<>(upstreamPublisher, t -> first.test(t) && predicate.test(t));
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber) {
+        upstreamPublisher.subscribe(new FilterSubscriber<>(subscriber, predicate));
+    }
+
+    static final class FilterSubscriber<T> implements ConditionalSubscriber<T>, QueueSubscription<T> {
+        private final Subscriber<? super T> downstream;
+        private final ConditionalSubscriber<? super T> conditionalDownstream; // null if the downstream is a plain Subscriber
+        private final Predicate<T> predicate;
+        private Subscription upstream;
+        private QueueSubscription<T> queueUpstream; // null if the upstream can't be fused
+        private boolean terminated;
+
+        FilterSubscriber(Subscriber<? super T> downstream, Predicate<T> predicate) {
+            this.downstream = downstream;
+            this.conditionalDownstream = downstream instanceof ConditionalSubscriber
+                    ? (ConditionalSubscriber<? super T>) downstream
+                    : null;
+            this.predicate = predicate;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void onSubscribe(Subscription subscription) {
+            upstream = subscription;
+            if (subscription instanceof QueueSubscription) {
+                queueUpstream = (QueueSubscription<T>) subscription;
+            }
+            downstream.onSubscribe(this);
+        }
+
+        // Only reached when the upstream doesn't know about ConditionalSubscriber,
+        // then every dropped element costs a request(1) to get a replacement
+        @Override
+        public void onNext(T t) {
+            if (!tryOnNext(t)) {
+                upstream.request(1);
+            }
+        }
+
+        @Override
+        public boolean tryOnNext(T t) {
+            if (terminated) return true; // Nothing is delivered anymore, don't ask for replacements
+
+            boolean pass;
+            try {
+                pass = predicate.test(t);
+            } catch (Throwable e) {
+                cancel();
+                onError(e);
+                return true;
+            }
+
+            if (!pass) {
+                return false;
+            }
+
+            if (conditionalDownstream != null) {
+                return conditionalDownstream.tryOnNext(t); // Another filter downstream may still drop it
+            }
+
+            downstream.onNext(t);
+            return true;
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            if (terminated) return;
+            terminated = true;
+            downstream.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            if (terminated) return;
+            terminated = true;
+            downstream.onComplete();
+        }
+
+        @Override
+        public void request(long n) {
+            upstream.request(n);
+        }
+
+        @Override
+        public void cancel() {
+            upstream.cancel();
+        }
+
+        // Fusion passes through, poll() skips the elements that don't match
+        @Override
+        public int requestFusion(int mode) {
+            return queueUpstream != null ? queueUpstream.requestFusion(mode) : NONE;
+        }
+
+        @Override
+        public T poll() {
+            final QueueSubscription<T> queue = this.queueUpstream;
+            T t;
+            while ((t = queue.poll()) != null) {
+                if (predicate.test(t)) {
+                    return t;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return queueUpstream.isEmpty();
+        }
+
+        @Override
+        public void clear() {
+            queueUpstream.clear();
+        }
+    }
+}
@@ -0,0 +1,536 @@
+package mahmoud.fawzy;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.Function;
+
+// Maps every element to an inner Publisher and merges at most maxConcurrency of them at a time
+//
+// Every inner gets its own SpscArrayQueue: an inner is a Subscriber, so its onNext calls never overlap (single producer),
+// and only the WIP guarded drain loop polls (single consumer). A shared MPSC queue would need a CAS per offer
+// and would lose track of which inner an element came from, so we couldn't replenish the right inner
+//
+// Fast paths, all of them skip the queues:
+// - an empty ArrayPublisher is never subscribed to, we just ask the upstream for the next element
+// - a single element ArrayPublisher is never subscribed to either, its element is emitted right away if nobody is draining
+// - any inner that agrees on SYNC fusion (ArrayPublisher, MapArrayPublisher, map over them) is polled directly by the drain loop
+// - an inner's onNext emits directly when nobody is draining and its queue is empty
+public class FlatMapFlow<T, R> extends Flow<R> {
+    private final Publisher<? extends T> upstreamPublisher;
+    private final Function<T, ? extends Publisher<? extends R>> mapper;
+    private final int maxConcurrency;
+    private final int prefetch;
+
+    public FlatMapFlow(Publisher<? extends T> upstreamPublisher, Function<T, ? extends Publisher<? extends R>> mapper,
+                       int maxConcurrency, int prefetch) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("maxConcurrency must be positive but was " + maxConcurrency);
+        }
+        if (prefetch <= 0) {
+            throw new IllegalArgumentException("prefetch must be positive but was " + prefetch);
+        }
+        this.upstreamPublisher = upstreamPublisher;
+        this.mapper = mapper;
+        this.maxConcurrency = maxConcurrency;
+        this.prefetch = prefetch;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super R> subscriber) {
+        upstreamPublisher.subscribe(new FlatMapSubscriber<>(subscriber, mapper, maxConcurrency, prefetch));
+    }
+
+    static final class FlatMapSubscriber<T, R> implements Subscriber<T>, Subscription {
+        static final VarHandle INNERS = VarHandles.find(MethodHandles.lookup(), FlatMapSubscriber.class, "inners", InnerSubscriber[].class);
+        static final VarHandle WIP = VarHandles.find(MethodHandles.lookup(), FlatMapSubscriber.class, "wip", int.class);
+        static final VarHandle REQUESTED = VarHandles.find(MethodHandles.lookup(), FlatMapSubscriber.class, "requested", long.class);
+        static final VarHandle ERROR = VarHandles.find(MethodHandles.lookup(), FlatMapSubscriber.class, "error", Throwable.class);
+
+        @SuppressWarnings("rawtypes")
+        private static final InnerSubscriber[] EMPTY = new InnerSubscriber[0];
+        @SuppressWarnings("rawtypes")
+        private static final InnerSubscriber[] TERMINATED = new InnerSubscriber[0];
+
+        private final Subscriber<? super R> downstream;
+        private final Function<T, ? extends Publisher<? extends R>> mapper;
+        private final int maxConcurrency;
+        private final int limit;
+        private final int prefetch;
+
+        // Copy on write, written by onNext (add) and the drain loop (remove), read by the drain loop
+        private volatile InnerSubscriber<R>[] inners;
+        private volatile int wip;
+        private volatile long requested;
+        private volatile Throwable error;
+
+        private Subscription upstream;
+        private volatile boolean done;
+        private volatile boolean canceled;
+
+        // Single element inners that couldn't be emitted right away, there can't be more than maxConcurrency of them
+        // because every one of them is an upstream element we requested. Created on first use, most flows never need it
+        private volatile SpscArrayQueue<R> scalarQueue;
+
+        private int upstreamConsumed; // Only touched while holding wip
+        private int lastIndex; // Round robin position in inners, only touched by the drain loop
+
+        @SuppressWarnings("unchecked")
+        FlatMapSubscriber(Subscriber<? super R> downstream, Function<T, ? extends Publisher<? extends R>> mapper,
+                          int maxConcurrency, int prefetch) {
+            this.downstream = downstream;
+            this.mapper = mapper;
+            this.maxConcurrency = maxConcurrency;
+            this.limit = maxConcurrency - (maxConcurrency >> 2);
+            this.prefetch = prefetch;
+            this.inners = EMPTY;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            upstream = subscription;
+            downstream.onSubscribe(this);
+            subscription.request(maxConcurrency);
+        }
+
+        @Override
+        public void onNext(T t) {
+            if (done) return;
+
+            Publisher<? extends R> publisher;
+            try {
+                publisher = Objects.requireNonNull(mapper.apply(t), "The mapper returned a null Publisher");
+            } catch (Throwable e) {
+                upstream.cancel();
+                onError(e);
+                return;
+            }
+
+            if (publisher instanceof ArrayPublisher) {
+                ArrayPublisher<? extends R> array = (ArrayPublisher<? extends R>) publisher;
+                int length = array.length();
+                if (length == 0) {
+                    upstream.request(1); // Nothing to merge, the slot is free again
+                    return;
+                }
+                if (length == 1) {
+                    R value = array.first();
+                    if (value == null) {
+                        upstream.cancel();
+                        onError(new NullPointerException());
+                        return;
+                    }
+                    tryEmitScalar(value);
+                    return;
+                }
+            }
+
+            InnerSubscriber<R> inner = new InnerSubscriber<>(this, prefetch);
+            if (add(inner)) {
+                publisher.subscribe(inner);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            if (ERROR.compareAndSet(this, null, throwable)) {
+                done = true;
+                drain();
+            }
+        }
+
+        @Override
+        public void onComplete() {
+            if (done) return;
+            done = true;
+            drain();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                onError(new IllegalArgumentException());
+                return;
+            }
+            Demand.add(REQUESTED, this, n);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            if (canceled) return;
+            canceled = true;
+            upstream.cancel();
+            cancelInners();
+            if ((int) WIP.getAndAdd(this, 1) == 0) {
+                clearScalars(); // No drain loop running, we own the consumer side of the queue
+            }
+        }
+
+        private void tryEmitScalar(R value) {
+            if (wip == 0 && WIP.compareAndSet(this, 0, 1)) {
+                long r = requested;
+                SpscArrayQueue<R> queue = scalarQueue;
+                if (r != 0 && (queue == null || queue.isEmpty())) {
+                    downstream.onNext(value);
+                    if (r != Long.MAX_VALUE) {
+                        Demand.produced(REQUESTED, this, 1);
+                    }
+                    upstreamConsumedOne();
+                } else {
+                    offerScalar(value);
+                }
+                if ((int) WIP.getAndAdd(this, -1) == 1) {
+                    return;
+                }
+                drainLoop();
+            } else {
+                offerScalar(value);
+                drain();
+            }
+        }
+
+        private void offerScalar(R value) {
+            SpscArrayQueue<R> queue = scalarQueue;
+            if (queue == null) {
+                queue = new SpscArrayQueue<>(maxConcurrency);
+                scalarQueue = queue;
+            }
+            if (!queue.offer(value)) {
+                upstream.cancel();
+                onError(new IllegalStateException("Queue is full, the upstream ignored backpressure"));
+            }
+        }
+
+        // Same as tryEmitScalar(..) but for an element of a subscribed inner, which must not overtake the inner's queue
+        void tryEmit(InnerSubscriber<R> inner, R value) {
+            if (wip == 0 && WIP.compareAndSet(this, 0, 1)) {
+                long r = requested;
+                SpscArrayQueue<R> queue = inner.queue;
+                if (r != 0 && queue.isEmpty()) {
+                    downstream.onNext(value);
+                    if (r != Long.MAX_VALUE) {
+                        Demand.produced(REQUESTED, this, 1);
+                    }
+                    inner.consumedOne();
+                } else if (!queue.offer(value)) {
+                    inner.overflow();
+                }
+                if ((int) WIP.getAndAdd(this, -1) == 1) {
+                    return;
+                }
+                drainLoop();
+            } else {
+                if (!inner.queue.offer(value)) {
+                    inner.overflow();
+                }
+                drain();
+            }
+        }
+
+        void innerError(Throwable throwable) {
+            if (ERROR.compareAndSet(this, null, throwable)) {
+                drain();
+            }
+        }
+
+        private boolean add(InnerSubscriber<R> inner) {
+            while (true) {
+                InnerSubscriber<R>[] current = inners;
+                if (current == TERMINATED) {
+                    inner.cancel();
+                    return false;
+                }
+                InnerSubscriber<R>[] next = Arrays.copyOf(current, current.length + 1);
+                next[current.length] = inner;
+                if (INNERS.compareAndSet(this, current, next)) {
+                    return true;
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void remove(InnerSubscriber<R> inner) {
+            while (true) {
+                InnerSubscriber<R>[] current = inners;
+                int index = -1;
+                for (int i = 0; i < current.length; i++) {
+                    if (current[i] == inner) {
+                        index = i;
+                        break;
+                    }
+                }
+                if (index < 0) {
+                    return; // Already removed or terminated
+                }
+
+                InnerSubscriber<R>[] next;
+                if (current.length == 1) {
+                    next = EMPTY;
+                } else {
+                    next = Arrays.copyOf(current, current.length - 1); // Typed like current, and already holds [0, index)
+                    System.arraycopy(current, index + 1, next, index, current.length - index - 1);
+                }
+                if (INNERS.compareAndSet(this, current, next)) {
+                    return;
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void cancelInners() {
+            InnerSubscriber<R>[] current = (InnerSubscriber<R>[]) INNERS.getAndSet(this, TERMINATED);
+            for (InnerSubscriber<R> inner : current) {
+                inner.cancel();
+            }
+        }
+
+        private void clearScalars() {
+            SpscArrayQueue<R> queue = scalarQueue;
+            if (queue != null) {
+                queue.clear();
+            }
+        }
+
+        // An upstream element was fully consumed (its inner completed, or its scalar got emitted),
+        // replenish in batches of 75% of maxConcurrency like publishOn does with its prefetch
+        private void upstreamConsumedOne() {
+            if (++upstreamConsumed == limit) {
+                upstreamConsumed = 0;
+                upstream.request(limit);
+            }
+        }
+
+        void drain() {
+            if ((int) WIP.getAndAdd(this, 1) == 0) {
+                drainLoop();
+            }
+        }
+
+        // Scalars first, then the inners round robin, each one drained as far as the demand goes before moving to the next
+        private void drainLoop() {
+            final Subscriber<? super R> downstream = this.downstream;
+            int missed = 1;
+
+            while (true) {
+                long r = requested;
+                long emitted = 0;
+
+                if (checkTerminated()) return;
+
+                SpscArrayQueue<R> scalars = scalarQueue;
+                if (scalars != null) {
+                    while (emitted != r) {
+                        R value = scalars.poll();
+                        if (value == null) break;
+
+                        downstream.onNext(value);
+                        emitted++;
+                        upstreamConsumedOne();
+
+                        if (checkTerminated()) return;
+                    }
+                }
+
+                InnerSubscriber<R>[] inners = this.inners;
+                int n = inners.length;
+                if (n != 0) {
+                    int j = lastIndex < n ? lastIndex : 0;
+                    for (int k = 0; k < n; k++) {
+                        InnerSubscriber<R> inner = inners[j];
+
+                        while (true) {
+                            if (checkTerminated()) return;
+
+                            boolean d = inner.done;
+                            if (emitted == r) {
+                                // Out of demand, but a finished inner still frees its slot
+                                if (d && inner.isEmpty()) {
+                                    remove(inner);
+                                    upstreamConsumedOne();
+                                }
+                                break;
+                            }
+
+                            R value;
+                            try {
+                                value = inner.poll();
+                            } catch (Throwable e) {
+                                // Only fused inners can throw, the mapper of a MapArrayPublisher for example
+                                inner.cancel();
+                                ERROR.compareAndSet(this, null, e);
+                                continue;
+                            }
+
+                            if (value == null) {
+                                if (d) {
+                                    remove(inner);
+                                    upstreamConsumedOne();
+                                }
+                                break;
+                            }
+
+                            downstream.onNext(value);
+                            emitted++;
+                            inner.consumedOne();
+                        }
+
+                        if (emitted == r) {
+                            break; // Resume from this inner next time
+                        }
+                        if (++j == n) {
+                            j = 0;
+                        }
+                    }
+                    lastIndex = j;
+                }
+
+                // done is read first, once the upstream completed no inner or scalar can be added anymore
+                boolean d = done;
+                scalars = scalarQueue;
+                if (d && this.inners.length == 0 && (scalars == null || scalars.isEmpty())) {
+                    if (checkTerminated()) return; // The upstream failed rather than completed
+                    canceled = true;
+                    downstream.onComplete();
+                    return;
+                }
+
+                if (emitted != 0 && r != Long.MAX_VALUE) {
+                    Demand.produced(REQUESTED, this, emitted);
+                }
+
+                missed = (int) WIP.getAndAdd(this, -missed) - missed;
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        // Errors cut ahead of queued elements, from the upstream and from any inner alike
+        private boolean checkTerminated() {
+            if (canceled) {
+                clearScalars();
+                return true;
+            }
+
+            Throwable e = error;
+            if (e != null) {
+                canceled = true;
+                upstream.cancel();
+                cancelInners();
+                clearScalars();
+                downstream.onError(e);
+                return true;
+            }
+
+            return false;
+        }
+    }
+
+    static final class InnerSubscriber<R> implements Subscriber<R> {
+        private final FlatMapSubscriber<?, R> parent;
+        private final int prefetch;
+        private final int limit;
+
+        // Only created when the inner refuses fusion, written in onSubscribe before the first request
+        volatile SpscArrayQueue<R> queue;
+        // Set when the inner agreed on SYNC fusion, the drain loop then polls it in place of our queue
+        private volatile QueueSubscription<? extends R> fused;
+        volatile boolean done;
+
+        private volatile Subscription upstream;
+        private volatile boolean canceled;
+        private int consumed; // Only touched while holding the parent's wip
+
+        InnerSubscriber(FlatMapSubscriber<?, R> parent, int prefetch) {
+            this.parent = parent;
+            this.prefetch = prefetch;
+            this.limit = prefetch - (prefetch >> 2);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void onSubscribe(Subscription subscription) {
+            upstream = subscription;
+            if (canceled) {
+                subscription.cancel();
+                return;
+            }
+
+            if (subscription instanceof QueueSubscription) {
+                QueueSubscription<? extends R> qs = (QueueSubscription<? extends R>) subscription;
+                if (qs.requestFusion(QueueSubscription.SYNC) == QueueSubscription.SYNC) {
+                    fused = qs;
+                    done = true; // A SYNC source already holds everything, poll() returning null is its completion
+                    parent.drain();
+                    return;
+                }
+            }
+
+            queue = new SpscArrayQueue<>(prefetch);
+            subscription.request(prefetch);
+        }
+
+        @Override
+        public void onNext(R r) {
+            parent.tryEmit(this, r);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            parent.innerError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            done = true;
+            parent.drain();
+        }
+
+        R poll() {
+            QueueSubscription<? extends R> fused = this.fused;
+            if (fused != null) {
+                return fused.poll();
+            }
+            SpscArrayQueue<R> queue = this.queue;
+            return queue == null ? null : queue.poll();
+        }
+
+        boolean isEmpty() {
+            QueueSubscription<? extends R> fused = this.fused;
+            if (fused != null) {
+                return fused.isEmpty();
+            }
+            SpscArrayQueue<R> queue = this.queue;
+            return queue == null || queue.isEmpty();
+        }
+
+        // Called for every element taken from this inner while holding wip, replenishes in batches of 75% of prefetch
+        // Fused inners are polled, there is nothing to request
+        void consumedOne() {
+            if (fused != null) return;
+            if (++consumed == limit) {
+                consumed = 0;
+                upstream.request(limit);
+            }
+        }
+
+        void overflow() {
+            cancel();
+            parent.innerError(new IllegalStateException("Queue is full, the inner Publisher ignored backpressure"));
+        }
+
+        void cancel() {
+            canceled = true;
+            Subscription s = upstream;
+            if (s != null) {
+                s.cancel();
+            }
+        }
+    }
+}
@@ -2,15 +2,241 @@ package mahmoud.fawzy;
 
 import org.reactivestreams.Publisher;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 public abstract class Flow<T> implements Publisher<T> {
 
+    static final int DEFAULT_PREFETCH = 256;
+    static final int DEFAULT_INNER_PREFETCH = 32;
+
     public <R> Flow<R> map(Function<T, R> mapper) {
-        return new MapProcessor<>(this, mapper);
+        return new MapFlow<>(this, mapper);
+    }
+
+    public Flow<T> filter(Predicate<T> predicate) {
+        return new FilterFlow<>(this, predicate);
+    }
+
+    public <R> Flow<R> flatMap(Function<T, ? extends Publisher<? extends R>> mapper) {
+        return flatMap(mapper, DEFAULT_PREFETCH, DEFAULT_INNER_PREFETCH);
+    }
+
+    // At most maxConcurrency inner Publishers are subscribed at the same time, each one with prefetch elements of demand
+    public <R> Flow<R> flatMap(Function<T, ? extends Publisher<? extends R>> mapper, int maxConcurrency, int prefetch) {
+        return new FlatMapFlow<>(this, mapper, maxConcurrency, prefetch);
+    }
+
+    public <R> Flow<R> concatMap(Function<T, ? extends Publisher<? extends R>> mapper) {
+        return concatMap(mapper, DEFAULT_INNER_PREFETCH);
+    }
+
+    // Inner Publishers are subscribed one at a time, in order, while up to prefetch elements wait for their turn
+    public <R> Flow<R> concatMap(Function<T, ? extends Publisher<? extends R>> mapper, int prefetch) {
+        return new ConcatMapFlow<>(this, mapper, prefetch);
+    }
+
+    // Emits lists of size elements, the last one may be shorter
+    public Flow<List<T>> buffer(int size) {
+        return new BufferFlow<>(this, size);
+    }
+
+    // Records throughput, demand, stalls and sampled onNext latency of this point of the pipeline,
+    // read them with FlowMetrics.named(name).snapshot() and let go of them with FlowMetrics.remove(name)
+    public MetricsFlow<T> metrics(String name) {
+        return metrics(FlowMetrics.named(name));
+    }
+
+    public MetricsFlow<T> metrics(FlowMetrics metrics) {
+        return new MetricsFlow<>(this, metrics);
+    }
+
+    public Flow<T> publishOn(Executor executor) {
+        return publishOn(executor, DEFAULT_PREFETCH);
+    }
+
+    // Downstream signals are delivered on the executor, at most prefetch elements are buffered in between
+    public Flow<T> publishOn(Executor executor, int prefetch) {
+        return new PublishOnFlow<>(this, executor, prefetch);
+    }
+
+    // The upstream is requested highTide elements first, then 75% of it at a time, whatever the downstream requests
+    public Flow<T> limitRate(int highTide) {
+        return limitRate(highTide, highTide - (highTide >> 2));
+    }
+
+    // highTide elements first, then lowTide every time lowTide of them went downstream, see LimitRateFlow
+    public Flow<T> limitRate(int highTide, int lowTide) {
+        return new LimitRateFlow<>(this, highTide, lowTide, false);
+    }
+
+    // Like limitRate(..), but the amount requested ahead follows how fast the downstream consumes, up to highTide
+    public Flow<T> limitRateAdaptive(int highTide) {
+        return new LimitRateFlow<>(this, highTide, highTide, true);
+    }
+
+    // One upstream subscription for all subscribers, started by connect(), see PublishFlow
+    public PublishFlow<T> publish() {
+        return publish(DEFAULT_PREFETCH);
+    }
+
+    // At most prefetch elements are kept for the slowest subscriber
+    public PublishFlow<T> publish(int prefetch) {
+        return new PublishFlow<>(this, prefetch, false);
+    }
+
+    // publish() that connects on the first subscriber and cancels the upstream when the last one cancels
+    public Flow<T> share() {
+        return new PublishFlow<>(this, DEFAULT_PREFETCH, true);
+    }
+
+    // Subscribes to this flow once and replays everything to every subscriber, see ReplayFlow
+    public Flow<T> cache() {
+        return new ReplayFlow<>(this, Integer.MAX_VALUE);
+    }
+
+    // Like cache(), but late subscribers only get the last history elements before the live ones
+    public Flow<T> replay(int history) {
+        return new ReplayFlow<>(this, history);
+    }
+
+    // Combines the elements left to right and emits the result, completes empty if there are no elements
+    @SuppressWarnings("unchecked")
+    public Flow<T> reduce(BinaryOperator<T> reducer) {
+        return new CollectFlow<T, Object[], T>(this, size -> new Object[1], (holder, t) -> {
+            T current = (T) holder[0];
+            holder[0] = current == null ? t : Objects.requireNonNull(reducer.apply(current, t));
+        }, holder -> (T) holder[0]);
     }
 
-    public static <T> Flow<T> fromArray(T... array) {
+    // Adds every element to the container and emits it once the upstream completes
+    public <C> Flow<C> collect(Supplier<C> containerSupplier, BiConsumer<C, ? super T> accumulator) {
+        return new CollectFlow<T, C, C>(this, size -> containerSupplier.get(), accumulator, Function.identity());
+    }
+
+    // Sized up front when the source knows how many elements it has (arrays, ranges and lists, through maps as well)
+    public Flow<List<T>> toList() {
+        return new CollectFlow<T, List<T>, List<T>>(this, size -> size >= 0 ? new ArrayList<>(size) : new ArrayList<>(),
+                List::add, Function.identity());
+    }
+
+    public Flow<Long> count() {
+        return new CollectFlow<T, long[], Long>(this, size -> new long[1], (counter, t) -> counter[0]++, counter -> counter[0]);
+    }
+
+    // Blocks the calling thread until the first element arrives, then cancels the rest
+    // Throws NoSuchElementException if the flow is empty, errors are rethrown (wrapped if they are checked)
+    public T blockingFirst() {
+        BlockingFirstSubscriber<T> subscriber = new BlockingFirstSubscriber<>();
+        subscribe(subscriber);
+        return subscriber.await();
+    }
+
+    // Same as blockingFirst() on reduce(..), so an array source is walked in a single loop without any signal per element
+    public T blockingLast() {
+        return reduce((previous, next) -> next).blockingFirst();
+    }
+
+    // subscribe(..) and request(n) run on the executor, see Schedulers for virtual thread and bounded executors
+    public Flow<T> subscribeOn(Executor executor) {
+        return new SubscribeOnFlow<>(this, executor);
+    }
+
+    // Declared as ArrayPublisher so that parallel(..) is available on it, see ParallelFlow
+    // The array is only ever read, so a generic caller's Object[] can't pollute anything: safe varargs,
+    // and the varargs lint that flags handing the array over to ArrayPublisher is a false positive
+    @SafeVarargs
+    @SuppressWarnings("varargs")
+    public static <T> ArrayPublisher<T> fromArray(T... array) {
         return new ArrayPublisher<>(array);
     }
+
+    // Lists with random access are walked by index, other iterables through their iterator, nothing is copied
+    public static <T> Flow<T> fromIterable(Iterable<? extends T> iterable) {
+        return new IterablePublisher<>(iterable);
+    }
+
+    // Lines of a UTF-8 text file, read out of a memory mapping as the downstream requests them
+    public static Flow<String> fromFile(Path path) {
+        return MappedFileReader.flow(path, (byte) '\n', StandardCharsets.UTF_8, true, MappedFileReader.DEFAULT_WINDOW_SIZE);
+    }
+
+    // Records separated by a single byte delimiter, decoded with the given charset (which must not use that byte otherwise)
+    public static Flow<String> fromFile(Path path, byte delimiter, Charset charset) {
+        return MappedFileReader.flow(path, delimiter, charset, false, MappedFileReader.DEFAULT_WINDOW_SIZE);
+    }
+
+    // Fixed width binary records, each element is the same flyweight Record moved along the buffer, see Record
+    public static Flow<Record> fromRecords(ByteBuffer buffer, int recordSize) {
+        return new RecordPublisher(buffer, recordSize);
+    }
+
+    public static Flow<Record> fromRecords(Path path, int recordSize, ByteOrder order) {
+        return new RecordPublisher(path, recordSize, order);
+    }
+
+    // All elements of the first source, then all of the second, ... without recursion from one source to the next
+    // Safe for the same reason as fromArray(..), which it goes through
+    @SafeVarargs
+    @SuppressWarnings("varargs")
+    public static <T> Flow<T> concat(Publisher<? extends T>... sources) {
+        return new ConcatMapFlow<Publisher<? extends T>, T>(fromArray(sources), Function.identity(), DEFAULT_INNER_PREFETCH);
+    }
+
+    // Pairs the n-th elements of both sources, completes as soon as one of them runs out
+    @SuppressWarnings("unchecked")
+    public static <A, B, R> Flow<R> zip(Publisher<? extends A> first, Publisher<? extends B> second,
+                                        BiFunction<? super A, ? super B, ? extends R> zipper) {
+        return zip(values -> zipper.apply((A) values[0], (B) values[1]), DEFAULT_PREFETCH, first, second);
+    }
+
+    // The zipper gets one array per row, the n-th element of every source in the order of the sources
+    // At most prefetch elements are buffered per source, array and range sources are read in place, see ZipFlow
+    public static <R> Flow<R> zip(Function<? super Object[], ? extends R> zipper, int prefetch, Publisher<?>... sources) {
+        return new ZipFlow<>(sources, zipper, prefetch);
+    }
+
+    // Combines the latest elements of both sources whenever one of them emits, once both emitted at least once
+    @SuppressWarnings("unchecked")
+    public static <A, B, R> Flow<R> combineLatest(Publisher<? extends A> first, Publisher<? extends B> second,
+                                                  BiFunction<? super A, ? super B, ? extends R> combiner) {
+        return combineLatest(values -> combiner.apply((A) values[0], (B) values[1]), DEFAULT_PREFETCH, first, second);
+    }
+
+    // The combiner gets a copy of the latest element of every source, in the order of the sources, see CombineLatestFlow
+    public static <R> Flow<R> combineLatest(Function<? super Object[], ? extends R> combiner, int prefetch,
+                                            Publisher<?>... sources) {
+        return new CombineLatestFlow<>(sources, combiner, prefetch);
+    }
+
+    // start, start + 1, ..., start + count - 1, computed on demand
+    public static RangePublisher range(int start, int count) {
+        return new RangePublisher(start, count);
+    }
+
+    // The generator is called once per requested element with the current state, and returns the next state
+    public static <T, S> Flow<T> generate(Supplier<S> stateSupplier, BiFunction<S, Sink<T>, S> generator) {
+        return generate(stateSupplier, generator, state -> {
+        });
+    }
+
+    // stateCleanup gets the last state once the stream completes, fails or gets canceled (to close a reader for example)
+    public static <T, S> Flow<T> generate(Supplier<S> stateSupplier, BiFunction<S, Sink<T>, S> generator,
+                                          Consumer<? super S> stateCleanup) {
+        return new GeneratePublisher<>(stateSupplier, generator, stateCleanup);
+    }
 }
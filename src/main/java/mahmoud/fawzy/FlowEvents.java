@@ -0,0 +1,172 @@
+package mahmoud.fawzy;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// Java Flight Recorder events, they show up next to the GC and lock events of the same recording
+// Only MapError is on by default in any recording, it is rare. Subscribe, Request and Cancel fire per subscription or
+// per request(n), millions of times a minute in a busy service, so they are opt-in and record no stack trace:
+// enable "mahmoud.fawzy.Subscribe" (and so on) in a .jfc file or with Recording.enable(..)
+//
+// Every helper checks EventType.isEnabled() first and returns null / does nothing when the event is off,
+// so a disabled event costs a boolean read and a null check, no allocation and no System.nanoTime()
+final class FlowEvents {
+    private static final EventType SUBSCRIBE = EventType.getEventType(SubscribeEvent.class);
+    private static final EventType REQUEST = EventType.getEventType(RequestEvent.class);
+    private static final EventType CANCEL = EventType.getEventType(CancelEvent.class);
+    private static final EventType MAP_ERROR = EventType.getEventType(MapErrorEvent.class);
+
+    private FlowEvents() {
+    }
+
+    static SubscribeEvent beginSubscribe() {
+        if (!SUBSCRIBE.isEnabled()) {
+            return null;
+        }
+        SubscribeEvent event = new SubscribeEvent();
+        event.begin();
+        return event;
+    }
+
+    static void endSubscribe(SubscribeEvent event, Object publisher, Object subscriber, int elements) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.publisher = name(publisher);
+            event.subscriber = name(subscriber);
+            event.elements = elements;
+            event.commit();
+        }
+    }
+
+    static RequestEvent beginRequest() {
+        if (!REQUEST.isEnabled()) {
+            return null;
+        }
+        RequestEvent event = new RequestEvent();
+        event.begin();
+        return event;
+    }
+
+    static void endRequest(RequestEvent event, Object subscriber, long n, long emitted, boolean drained, boolean workStolen) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.subscriber = name(subscriber);
+            event.requested = n;
+            event.emitted = emitted;
+            event.drained = drained;
+            event.workStolen = workStolen;
+            event.commit();
+        }
+    }
+
+    static void cancel(Object subscriber, long position, long end) {
+        if (!CANCEL.isEnabled()) {
+            return;
+        }
+        CancelEvent event = new CancelEvent();
+        if (event.shouldCommit()) {
+            event.subscriber = name(subscriber);
+            event.position = position;
+            event.remaining = end - position;
+            event.commit();
+        }
+    }
+
+    static void mapError(Object mapper, Throwable error) {
+        if (!MAP_ERROR.isEnabled()) {
+            return;
+        }
+        MapErrorEvent event = new MapErrorEvent();
+        if (event.shouldCommit()) {
+            event.mapper = name(mapper);
+            event.exception = error.getClass().getName();
+            event.message = error.getMessage();
+            event.commit();
+        }
+    }
+
+    // A subscription's references are dropped by cancel(), an event ending after a concurrent cancel has no subscriber anymore
+    private static String name(Object object) {
+        return object == null ? null : object.getClass().getName();
+    }
+
+    @Name("mahmoud.fawzy.Subscribe")
+    @Label("Subscribe")
+    @Category("Reactive Streams")
+    @Description("ArrayPublisher.subscribe, lasts as long as the subscriber's onSubscribe (which may run the whole emission)")
+    @StackTrace(false)
+    @Enabled(false)
+    static final class SubscribeEvent extends Event {
+        @Label("Publisher")
+        String publisher;
+
+        @Label("Subscriber")
+        String subscriber;
+
+        @Label("Elements")
+        int elements;
+    }
+
+    @Name("mahmoud.fawzy.Request")
+    @Label("Request")
+    @Category("Reactive Streams")
+    @Description("ArraySubscription.request(n), with what the emission loop did if this call ran it")
+    @StackTrace(false)
+    @Enabled(false)
+    static final class RequestEvent extends Event {
+        @Label("Subscriber")
+        String subscriber;
+
+        @Label("Requested")
+        long requested;
+
+        @Label("Emitted")
+        @Description("Elements the emission loop walked during this call, 0 if another call was already emitting")
+        long emitted;
+
+        @Label("Drained")
+        @Description("False when the demand was handed over to an emission loop already running (WIP guard)")
+        boolean drained;
+
+        @Label("Work Stolen")
+        @Description("The emission loop kept going with demand added by other request(n) calls while it was emitting")
+        boolean workStolen;
+    }
+
+    @Name("mahmoud.fawzy.Cancel")
+    @Label("Cancel")
+    @Category("Reactive Streams")
+    @StackTrace(false)
+    @Enabled(false)
+    static final class CancelEvent extends Event {
+        @Label("Subscriber")
+        String subscriber;
+
+        @Label("Position")
+        long position;
+
+        @Label("Remaining")
+        long remaining;
+    }
+
+    @Name("mahmoud.fawzy.MapError")
+    @Label("Map Error")
+    @Category("Reactive Streams")
+    @Description("A map(..) function threw, the stream was terminated with onError")
+    static final class MapErrorEvent extends Event {
+        @Label("Mapper")
+        String mapper;
+
+        @Label("Exception")
+        String exception;
+
+        @Label("Message")
+        String message;
+    }
+}
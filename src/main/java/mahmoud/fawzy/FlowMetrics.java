@@ -0,0 +1,226 @@
+package mahmoud.fawzy;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Counters filled by Flow.metrics(..) stages, read with snapshot()
+// Stages with the same name share the same FlowMetrics, so a pipeline subscribed many times reports as one
+// Names stay registered until remove(name), code that builds names on the fly (one per request, per user...) must
+// remove them or hold on to a FlowMetrics of its own and pass it to Flow.metrics(FlowMetrics) instead
+//
+// Built to stay on in production: the counters are LongAdders (striped, no contention between subscriptions),
+// and the per element work is a plain field increment, see MetricsFlow for what gets sampled
+public final class FlowMetrics {
+    static final int DEFAULT_SAMPLE_INTERVAL = 64;
+    private static final ConcurrentMap<String, FlowMetrics> REGISTRY = new ConcurrentHashMap<>();
+
+    final String name;
+    final int sampleMask;
+    private final long createdNanos = System.nanoTime();
+
+    final LongAdder elements = new LongAdder();
+    final LongAdder requestCalls = new LongAdder();
+    final LongAdder stallNanos = new LongAdder();
+    final LongAdder subscriptions = new LongAdder();
+    final LongAdder completions = new LongAdder();
+    final LongAdder errors = new LongAdder();
+    final LongAdder cancellations = new LongAdder();
+
+    // Bucket i counts latencies in [2^i, 2^(i+1)) nanoseconds, bucket 0 also gets 0
+    private final LongAdder[] latency = new LongAdder[64];
+
+    // Live subscriptions, for the outstanding demand and the stalls still going on at snapshot time
+    final Set<MetricsFlow.MetricsSubscriber<?>> live = ConcurrentHashMap.newKeySet();
+
+    // sampleInterval must be a power of 2, the latency of one element out of sampleInterval is measured
+    // and the element counter is flushed every sampleInterval elements
+    public FlowMetrics(String name, int sampleInterval) {
+        if (sampleInterval <= 0 || Integer.bitCount(sampleInterval) != 1) {
+            throw new IllegalArgumentException("sampleInterval must be a power of 2 but was " + sampleInterval);
+        }
+        this.name = name;
+        this.sampleMask = sampleInterval - 1;
+        for (int i = 0; i < latency.length; i++) {
+            latency[i] = new LongAdder();
+        }
+    }
+
+    public static FlowMetrics named(String name) {
+        return REGISTRY.computeIfAbsent(name, n -> new FlowMetrics(n, DEFAULT_SAMPLE_INTERVAL));
+    }
+
+    // Drops name from the registry and returns its FlowMetrics, or null if there was none
+    // Stages already built keep counting into the removed FlowMetrics, the next named(name) starts from zero
+    public static FlowMetrics remove(String name) {
+        return REGISTRY.remove(name);
+    }
+
+    void recordLatency(long nanos) {
+        latency[nanos <= 0 ? 0 : 63 - Long.numberOfLeadingZeros(nanos)].increment();
+    }
+
+    public String name() {
+        return name;
+    }
+
+    // Counters are read one by one, not atomically, a snapshot taken while elements flow may be off by a few elements
+    public Snapshot snapshot() {
+        long now = System.nanoTime();
+        long outstanding = 0;
+        long unbounded = 0;
+        long stalled = stallNanos.sum();
+        for (MetricsFlow.MetricsSubscriber<?> subscriber : live) {
+            long demand = subscriber.outstandingDemand();
+            if (demand == Long.MAX_VALUE) {
+                unbounded++;
+            } else {
+                outstanding += demand;
+            }
+            stalled += subscriber.currentStallNanos(now);
+        }
+
+        long[] buckets = new long[latency.length];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = latency[i].sum();
+        }
+
+        return new Snapshot(name, now - createdNanos, elements.sum(), requestCalls.sum(), outstanding, unbounded,
+                stalled, subscriptions.sum(), completions.sum(), errors.sum(), cancellations.sum(), buckets);
+    }
+
+    public static final class Snapshot {
+        private final String name;
+        private final long elapsedNanos;
+        private final long elements;
+        private final long requestCalls;
+        private final long outstandingDemand;
+        private final long unboundedSubscribers;
+        private final long stallNanos;
+        private final long subscriptions;
+        private final long completions;
+        private final long errors;
+        private final long cancellations;
+        private final long[] latencyBuckets;
+
+        Snapshot(String name, long elapsedNanos, long elements, long requestCalls, long outstandingDemand,
+                 long unboundedSubscribers, long stallNanos, long subscriptions, long completions, long errors,
+                 long cancellations, long[] latencyBuckets) {
+            this.name = name;
+            this.elapsedNanos = elapsedNanos;
+            this.elements = elements;
+            this.requestCalls = requestCalls;
+            this.outstandingDemand = outstandingDemand;
+            this.unboundedSubscribers = unboundedSubscribers;
+            this.stallNanos = stallNanos;
+            this.subscriptions = subscriptions;
+            this.completions = completions;
+            this.errors = errors;
+            this.cancellations = cancellations;
+            this.latencyBuckets = latencyBuckets;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        // Since the FlowMetrics was created
+        public long elapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public long elements() {
+            return elements;
+        }
+
+        public double elementsPerSecond() {
+            return elapsedNanos == 0 ? 0 : elements * 1e9 / elapsedNanos;
+        }
+
+        public long requestCalls() {
+            return requestCalls;
+        }
+
+        // Requested but not emitted yet, summed over the live subscriptions that have bounded demand
+        public long outstandingDemand() {
+            return outstandingDemand;
+        }
+
+        // Live subscriptions that requested Long.MAX_VALUE, they can't stall and have no meaningful outstanding demand
+        public long unboundedSubscribers() {
+            return unboundedSubscribers;
+        }
+
+        // Total time subscriptions spent with zero demand while not terminated, the downstream was the bottleneck
+        public long stallNanos() {
+            return stallNanos;
+        }
+
+        public long subscriptions() {
+            return subscriptions;
+        }
+
+        public long completions() {
+            return completions;
+        }
+
+        public long errors() {
+            return errors;
+        }
+
+        public long cancellations() {
+            return cancellations;
+        }
+
+        // Sampled time spent in the downstream's onNext, bucket i counts latencies in [2^i, 2^(i+1)) nanoseconds
+        public long[] latencyBuckets() {
+            return latencyBuckets.clone();
+        }
+
+        public long latencySamples() {
+            long samples = 0;
+            for (long bucket : latencyBuckets) {
+                samples += bucket;
+            }
+            return samples;
+        }
+
+        // Upper bound of the bucket holding the given percentile (0 to 100), within a factor of 2 of the real value
+        public long latencyPercentileNanos(double percentile) {
+            long samples = latencySamples();
+            if (samples == 0) {
+                return 0;
+            }
+
+            long rank = (long) Math.ceil(samples * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < latencyBuckets.length; i++) {
+                seen += latencyBuckets[i];
+                if (seen >= Math.max(rank, 1)) {
+                    return i == 63 ? Long.MAX_VALUE : (2L << i) - 1;
+                }
+            }
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public String toString() {
+            return name + "{elements=" + elements
+                    + ", elementsPerSecond=" + (long) elementsPerSecond()
+                    + ", requestCalls=" + requestCalls
+                    + ", outstandingDemand=" + outstandingDemand
+                    + ", unboundedSubscribers=" + unboundedSubscribers
+                    + ", stallMillis=" + stallNanos / 1_000_000
+                    + ", subscriptions=" + subscriptions
+                    + ", completions=" + completions
+                    + ", errors=" + errors
+                    + ", cancellations=" + cancellations
+                    + ", p50Nanos=" + latencyPercentileNanos(50)
+                    + ", p99Nanos=" + latencyPercentileNanos(99)
+                    + ", latencyBuckets=" + Arrays.toString(latencyBuckets)
+                    + "}";
+        }
+    }
+}
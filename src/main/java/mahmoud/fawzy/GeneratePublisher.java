@@ -0,0 +1,191 @@
+package mahmoud.fawzy;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+// Produces elements one generator call at a time, the generator gets the current state and returns the next one
+// Every subscribe(..) gets a fresh state from the supplier, the cleanup runs once the stream is over or canceled
+public class GeneratePublisher<T, S> extends Flow<T> {
+    private final Supplier<S> stateSupplier;
+    private final BiFunction<S, Sink<T>, S> generator;
+    private final Consumer<? super S> stateCleanup;
+
+    public GeneratePublisher(Supplier<S> stateSupplier, BiFunction<S, Sink<T>, S> generator, Consumer<? super S> stateCleanup) {
+        this.stateSupplier = stateSupplier;
+        this.generator = generator;
+        this.stateCleanup = stateCleanup;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber) {
+        S state;
+        try {
+            state = stateSupplier.get();
+        } catch (Throwable e) {
+            subscriber.onSubscribe(EmptySubscription.INSTANCE);
+            subscriber.onError(e);
+            return;
+        }
+        subscriber.onSubscribe(new GenerateSubscription<>(subscriber, generator, stateCleanup, state));
+    }
+
+    static final class GenerateSubscription<T, S> implements Subscription, Sink<T> {
+        static final VarHandle REQUESTED = VarHandles.find(MethodHandles.lookup(), GenerateSubscription.class, "requested", long.class);
+
+        private Subscriber<? super T> subscriber; // Released by cancel(), like ArraySubscription's
+        private final BiFunction<S, Sink<T>, S> generator;
+        private final Consumer<? super S> stateCleanup;
+        volatile boolean canceled;
+
+        S state; // Published through the requested field, like ArraySubscription's index
+
+        // Only touched by the emission loop, reset before every generator call
+        private boolean hasValue;
+        private boolean terminated;
+
+        volatile long requested;
+
+        GenerateSubscription(Subscriber<? super T> subscriber, BiFunction<S, Sink<T>, S> generator,
+                             Consumer<? super S> stateCleanup, S state) {
+            this.subscriber = subscriber;
+            this.generator = generator;
+            this.stateCleanup = stateCleanup;
+            this.state = state;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0 && !canceled) {
+                Subscriber<? super T> subscriber = this.subscriber;
+                cancel();
+                if (subscriber != null) {
+                    subscriber.onError(new IllegalArgumentException());
+                }
+            }
+
+            if (canceled) return;
+
+            if (Demand.add(REQUESTED, this, n) > 0) {
+                return;
+            }
+
+            emit(n);
+        }
+
+        // One loop for bounded and unbounded demand, with Long.MAX_VALUE sent never catches up with n
+        // so no accounting is done, the generator call dwarfs the counter anyway
+        // cancel() sets canceled before dropping subscriber, so a loop that reads null here cleans up before using it
+        void emit(long n) {
+            final Subscriber<? super T> subscriber = this.subscriber;
+            final BiFunction<S, Sink<T>, S> generator = this.generator;
+            S state = this.state;
+            long sent = 0;
+
+            while (true) {
+                for (; sent != n; sent++) {
+                    if (canceled) {
+                        cleanup(state);
+                        return;
+                    }
+
+                    hasValue = false;
+                    try {
+                        state = generator.apply(state, this);
+                    } catch (Throwable e) {
+                        canceled = true;
+                        cleanup(state);
+                        subscriber.onError(e);
+                        return;
+                    }
+
+                    if (terminated) {
+                        canceled = true;
+                        cleanup(state);
+                        return;
+                    }
+
+                    if (!hasValue) {
+                        canceled = true;
+                        cleanup(state);
+                        subscriber.onError(new IllegalStateException("The generator returned without calling next, complete or error"));
+                        return;
+                    }
+                }
+
+                this.state = state; // Must be written before the requested field
+                n = Demand.produced(REQUESTED, this, sent);
+                if (n == 0) {
+                    return;
+                }
+                sent = 0;
+            }
+        }
+
+        @Override
+        public void next(T t) {
+            if (terminated) {
+                return;
+            }
+            if (hasValue) {
+                error(new IllegalStateException("next was called more than once in a single generator call"));
+                return;
+            }
+            if (t == null) {
+                error(new NullPointerException());
+                return;
+            }
+            hasValue = true;
+            Subscriber<? super T> subscriber = this.subscriber;
+            if (subscriber != null) { // Canceled from within an earlier onNext of the same generator call
+                subscriber.onNext(t);
+            }
+        }
+
+        @Override
+        public void complete() {
+            if (terminated) return;
+            terminated = true;
+            Subscriber<? super T> subscriber = this.subscriber;
+            if (subscriber != null) {
+                subscriber.onComplete();
+            }
+        }
+
+        @Override
+        public void error(Throwable throwable) {
+            if (terminated) return;
+            terminated = true;
+            Subscriber<? super T> subscriber = this.subscriber;
+            if (subscriber != null) {
+                subscriber.onError(throwable);
+            }
+        }
+
+        // If no emission loop is running we own the state and clean it up here,
+        // otherwise the loop sees canceled before its next generator call and does it
+        @Override
+        public void cancel() {
+            if (canceled) return;
+            canceled = true;
+            subscriber = null;
+            if (Demand.add(REQUESTED, this, 1) == 0) {
+                cleanup(state);
+            }
+        }
+
+        private void cleanup(S state) {
+            this.state = null;
+            try {
+                stateCleanup.accept(state);
+            } catch (Throwable ignored) {
+                // The stream is already over, there is nobody left to tell
+            }
+        }
+    }
+}
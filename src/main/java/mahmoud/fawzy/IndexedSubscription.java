@@ -0,0 +1,282 @@
+package mahmoud.fawzy;
+
+import org.reactivestreams.Subscriber;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+// The demand accounting and emission loops of ArrayPublisher.ArraySubscription, for every source that can compute
+// its i-th element on demand: a mapped array, a range, a random access list, a buffer of records...
+// Subclasses implement elementAt(i), the two small emit loops around it (see emit(..) for why those aren't in here),
+// and release() if they hold on to something cancel() should drop
+//
+// ArraySubscription keeps its own copy of these loops: its requested field is padded against the threads hammering
+// request(n) (ContendedRequestPerfTest), it hands slices to BatchSubscribers, splits into ParallelFlow rails and
+// reports JFR events, none of which the other sources pay for
+abstract class IndexedSubscription<T> implements QueueSubscription<T> {
+    static final VarHandle REQUESTED = VarHandles.find(MethodHandles.lookup(), IndexedSubscription.class, "requested", long.class);
+
+    // Not final, cancel() drops them so that a canceled subscription someone still holds on to doesn't keep
+    // the downstream pipeline reachable
+    private Subscriber<? super T> subscriber;
+    private ConditionalSubscriber<? super T> conditionalSubscriber; // Same object as subscriber, null if it isn't conditional
+    volatile boolean canceled;
+    volatile boolean completed;
+
+    final long end; // Exclusive, a long so that a range ending at Integer.MAX_VALUE doesn't overflow
+
+    long index; // Published through the requested field, see ArraySubscription
+
+    volatile long requested;
+
+    IndexedSubscription(Subscriber<? super T> subscriber, long start, long end) {
+        this.subscriber = subscriber;
+        this.conditionalSubscriber = subscriber instanceof ConditionalSubscriber
+                ? (ConditionalSubscriber<? super T>) subscriber
+                : null;
+        this.index = start;
+        this.end = end;
+    }
+
+    // The element at index i, start <= i < end, only called by the thread holding the emission loop (or polling)
+    // null ends the stream with failure(i). There is no try/catch around it in the loops, a subclass calling user code
+    // catches what it throws itself and returns null
+    // May be called after cancel() by a loop that hasn't seen canceled yet, it must not throw then either
+    abstract T elementAt(long i);
+
+    // Why elementAt(i) returned null, called once, right after it did
+    Throwable failure(long i) {
+        return new NullPointerException();
+    }
+
+    // The per element loops, the only part every subclass repeats, with the same few lines around its own elementAt(i)
+    // Written once in here, all subclasses would share the bytecode of the elementAt(i) call, the JIT sees several
+    // receiver types there and stops inlining it: 25 to 35% slower once an application uses three of these sources
+    // (MixedSourcesPerfTest). In the final subclass the call binds statically, and the demand accounting around
+    // it only calls emit(..) once per batch
+    //
+    // Emits elementAt(from) to elementAt(to - 1) and returns to, or -1 when the stream ended in there:
+    // canceled, or elementAt(i) returned null and fail(..) signalled the error
+    abstract long emit(Subscriber<? super T> subscriber, long from, long to);
+
+    // The same for a conditional subscriber, stops early once wanted elements were accepted
+    // Returns the index it got to and leaves the number of accepted elements in accepted, or returns -1 like emit(..)
+    abstract long emitConditional(ConditionalSubscriber<? super T> subscriber, long from, long to, long wanted);
+
+    long accepted; // Written by emitConditional(..), read right after it returns by the same thread
+
+    // Drops whatever the subclass holds on to, called by cancel() after canceled is set
+    void release() {
+    }
+
+    @Override
+    public final void request(long n) {
+        if (n <= 0 && !canceled) {
+            Subscriber<? super T> subscriber = this.subscriber;
+            cancel(); // Cancel to prevent sending onError signal multiple times
+            if (subscriber != null) {
+                subscriber.onError(new IllegalArgumentException());
+            }
+        }
+
+        if (canceled) return;
+
+        long initialRequested = Demand.add(REQUESTED, this, n);
+
+        // If there's already work in progress, return (WIP guard, only one thread may pass)
+        if (initialRequested > 0) {
+            return;
+        }
+
+        if (conditionalSubscriber != null) {
+            if (n == Long.MAX_VALUE) {
+                fastPathConditional();
+            } else {
+                slowPathConditional(n);
+            }
+        } else if (n == Long.MAX_VALUE) { // We won the WIP race, so requested went from 0 to exactly n
+            fastPath();
+        } else {
+            slowPath(n);
+        }
+    }
+
+    // Unbounded demand, no accounting to do, just walk the indexes and check for cancellation
+    final void fastPath() {
+        final Subscriber<? super T> subscriber = this.subscriber;
+        if (subscriber == null) return; // Canceled, see cancel()
+
+        if (emit(subscriber, index, end) < 0) return;
+
+        if (canceled) return;
+
+        completed = true;
+        subscriber.onComplete();
+    }
+
+    // Bounded demand, emit at most n elements then try to leave, unless other threads added more demand meanwhile
+    final void slowPath(long n) {
+        final long end = this.end;
+        final Subscriber<? super T> subscriber = this.subscriber;
+        long i = index; // Keep the index in a local, it is only published back to the field before leaving the loop
+        long sent = 0;
+
+        if (subscriber == null) return; // Canceled, see cancel()
+
+        while (true) {
+            if (sent < n && i < end) {
+                long to = n - sent >= end - i ? end : i + (n - sent);
+                long reached = emit(subscriber, i, to);
+                if (reached < 0) return;
+                sent += reached - i;
+                i = reached;
+            }
+
+            if (canceled) return;
+
+            if (i == end && !completed) {
+                completed = true;
+                subscriber.onComplete();
+                return;
+            }
+
+            n = requested;
+            if (n == Long.MAX_VALUE) {
+                // Someone switched us to unbounded mode while we were emitting, no need to count anymore
+                index = i;
+                fastPath();
+                return;
+            }
+
+            if (n == sent) {
+                index = i; // Must be written before the requested field, see the comment on the index field
+                n = Demand.produced(REQUESTED, this, sent);
+                if (n == 0) {
+                    return; // otherwise, repeat while loop to steal work
+                }
+                sent = 0;
+            }
+        }
+    }
+
+    // The conditional versions only count the elements the subscriber accepted against demand,
+    // rejected ones are skipped without consuming demand and without the subscriber having to request(1) again
+    final void fastPathConditional() {
+        final ConditionalSubscriber<? super T> subscriber = this.conditionalSubscriber;
+        if (subscriber == null) return; // Canceled, see cancel()
+
+        if (emitConditional(subscriber, index, end, Long.MAX_VALUE) < 0) return;
+
+        if (canceled) return;
+
+        completed = true;
+        subscriber.onComplete();
+    }
+
+    final void slowPathConditional(long n) {
+        final long end = this.end;
+        final ConditionalSubscriber<? super T> subscriber = this.conditionalSubscriber;
+        long i = index;
+        long sent = 0;
+
+        if (subscriber == null) return; // Canceled, see cancel()
+
+        while (true) {
+            if (sent < n && i < end) {
+                long reached = emitConditional(subscriber, i, end, n - sent);
+                if (reached < 0) return;
+                sent += accepted;
+                i = reached;
+            }
+
+            if (canceled) return;
+
+            if (i == end && !completed) {
+                completed = true;
+                subscriber.onComplete();
+                return;
+            }
+
+            n = requested;
+            if (n == Long.MAX_VALUE) {
+                index = i;
+                fastPathConditional();
+                return;
+            }
+
+            if (n == sent) {
+                index = i;
+                n = Demand.produced(REQUESTED, this, sent);
+                if (n == 0) {
+                    return;
+                }
+                sent = 0;
+            }
+        }
+    }
+
+    // Ends the stream when elementAt(i) returned null, returns -1 for emit(..) to return
+    final long fail(Subscriber<? super T> subscriber, long i) {
+        if (canceled) return -1; // Raced with cancel(), the subscription doesn't have to tell anyone
+        Throwable e = failure(i);
+        cancel();
+        subscriber.onError(e);
+        return -1;
+    }
+
+    // We can compute every element ourselves, so synchronous fusion is always possible
+    // In this mode the subscriber walks the indexes through poll() and never calls request(n)
+    @Override
+    public int requestFusion(int mode) {
+        return (mode & SYNC) != 0 ? SYNC : NONE;
+    }
+
+    @Override
+    public final T poll() {
+        long i = index;
+        if (i == end || canceled) {
+            return null;
+        }
+
+        T element = elementAt(i);
+        if (element == null) {
+            Throwable e = failure(i);
+            if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            }
+            if (e instanceof Error) {
+                throw (Error) e;
+            }
+            throw new IllegalStateException(e);
+        }
+
+        index = i + 1;
+        return element;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return index == end;
+    }
+
+    // -1 (unknown) for sources that don't fit an int, a record file for example
+    @Override
+    public int size() {
+        long size = end - index;
+        return size <= Integer.MAX_VALUE ? (int) size : -1;
+    }
+
+    @Override
+    public void clear() {
+        index = end;
+    }
+
+    @Override
+    public final void cancel() {
+        canceled = true;
+        // After the volatile write above, an emission loop that still reads the fields sees canceled too
+        this.subscriber = null;
+        this.conditionalSubscriber = null;
+        release();
+    }
+}
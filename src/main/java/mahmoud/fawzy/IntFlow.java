@@ -0,0 +1,317 @@
+package mahmoud.fawzy;
+
+import org.reactivestreams.Subscriber;
+
+import java.util.Objects;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+
+// Flow specialized for int values, elements travel as primitives from the int[] to the IntSubscriber, nothing is boxed
+// Same protocol as Flow (onSubscribe, request(n), onNext, cancel), only the element type differs
+// Use boxed() or mapToObj(..) to go back to a regular Flow, that's the only place where allocation per element happens
+// IntFlow, LongFlow and DoubleFlow only differ by their value type: the demand accounting, the terminal signals and
+// the reduce state machine live in PrimitiveArraySubscription, PrimitiveStage, PrimitiveToObjStage and
+// PrimitiveReduceSubscriber, the classes below only hold what touches a value. Sharing those too would take a
+// generic value type, and with it a boxed element per onNext: ArrayPublisherPerfTest.primitiveRequestUnbounded
+// against optimizedRequestUnbounded measures what that costs
+public abstract class IntFlow {
+
+    public abstract void subscribe(IntSubscriber subscriber);
+
+    public IntFlow map(IntUnaryOperator mapper) {
+        return new MapIntFlow(this, mapper);
+    }
+
+    public IntFlow filter(IntPredicate predicate) {
+        return new FilterIntFlow(this, predicate);
+    }
+
+    // Emits a single value once the upstream completes, the identity if the upstream was empty
+    public IntFlow reduce(int identity, IntBinaryOperator reducer) {
+        return new ReduceIntFlow(this, identity, reducer);
+    }
+
+    public IntFlow sum() {
+        return reduce(0, Integer::sum);
+    }
+
+    public Flow<Integer> boxed() {
+        return mapToObj(Integer::valueOf);
+    }
+
+    public <R> Flow<R> mapToObj(IntFunction<R> mapper) {
+        return new MapToObjIntFlow<>(this, mapper);
+    }
+
+    public static IntFlow fromArray(int... array) {
+        return new IntArrayPublisher(array);
+    }
+
+    static final class IntArrayPublisher extends IntFlow {
+        private final int[] array;
+
+        IntArrayPublisher(int[] array) {
+            this.array = array;
+        }
+
+        @Override
+        public void subscribe(IntSubscriber subscriber) {
+            subscriber.onSubscribe(new IntArraySubscription(subscriber, array));
+        }
+    }
+
+    static final class IntArraySubscription extends PrimitiveArraySubscription<IntSubscriber> {
+        private int[] array;
+
+        IntArraySubscription(IntSubscriber subscriber, int[] array) {
+            super(subscriber, subscriber instanceof IntSubscriber.Conditional, array.length);
+            this.array = array;
+        }
+
+        @Override
+        int emit(IntSubscriber subscriber, int i, int to) {
+            final int[] array = this.array;
+            if (array == null) return -1; // Canceled, see release()
+
+            for (; i < to; i++) {
+                if (canceled) return -1;
+
+                subscriber.onNext(array[i]);
+            }
+            return i;
+        }
+
+        @Override
+        int emitConditional(IntSubscriber subscriber, int i, int to, long wanted) {
+            final int[] array = this.array;
+            if (array == null) return -1;
+            final IntSubscriber.Conditional target = (IntSubscriber.Conditional) subscriber;
+
+            long accepted = 0;
+            for (; i < to && accepted != wanted; i++) {
+                if (canceled) return -1;
+
+                if (target.tryOnNext(array[i])) {
+                    accepted++;
+                }
+            }
+            this.accepted = accepted;
+            return i;
+        }
+
+        @Override
+        void release() {
+            this.array = null;
+        }
+    }
+
+    static final class MapIntFlow extends IntFlow {
+        private final IntFlow upstream;
+        private final IntUnaryOperator mapper;
+
+        MapIntFlow(IntFlow upstream, IntUnaryOperator mapper) {
+            this.upstream = upstream;
+            this.mapper = mapper;
+        }
+
+        // Consecutive maps compose into one stage, like MapProcessor
+        @Override
+        public IntFlow map(IntUnaryOperator mapper) {
+            return new MapIntFlow(upstream, this.mapper.andThen(mapper));
+        }
+
+        @Override
+        public void subscribe(IntSubscriber subscriber) {
+            upstream.subscribe(new MapSubscriber(subscriber, mapper));
+        }
+    }
+
+    // Mapping never drops anything, so like MapProcessor we are as conditional as our downstream is
+    static final class MapSubscriber extends PrimitiveStage<IntSubscriber> implements IntSubscriber.Conditional {
+        private final IntSubscriber.Conditional conditionalDownstream; // null if the downstream isn't conditional
+        private final IntUnaryOperator mapper;
+
+        MapSubscriber(IntSubscriber downstream, IntUnaryOperator mapper) {
+            super(downstream);
+            this.conditionalDownstream = downstream instanceof IntSubscriber.Conditional
+                    ? (IntSubscriber.Conditional) downstream
+                    : null;
+            this.mapper = mapper;
+        }
+
+        // Only reached when the upstream doesn't know about IntSubscriber.Conditional
+        @Override
+        public void onNext(int value) {
+            if (!tryOnNext(value)) {
+                upstream.request(1); // A filter downstream dropped it
+            }
+        }
+
+        @Override
+        public boolean tryOnNext(int value) {
+            if (terminated) return true;
+
+            int result;
+            try {
+                result = mapper.applyAsInt(value);
+            } catch (Throwable t) {
+                fail(t);
+                return true;
+            }
+
+            if (conditionalDownstream != null) {
+                return conditionalDownstream.tryOnNext(result);
+            }
+
+            downstream.onNext(result);
+            return true;
+        }
+    }
+
+    static final class FilterIntFlow extends IntFlow {
+        private final IntFlow upstream;
+        private final IntPredicate predicate;
+
+        FilterIntFlow(IntFlow upstream, IntPredicate predicate) {
+            this.upstream = upstream;
+            this.predicate = predicate;
+        }
+
+        @Override
+        public void subscribe(IntSubscriber subscriber) {
+            upstream.subscribe(new FilterSubscriber(subscriber, predicate));
+        }
+    }
+
+    static final class FilterSubscriber extends PrimitiveStage<IntSubscriber> implements IntSubscriber.Conditional {
+        private final IntSubscriber.Conditional conditionalDownstream; // null if the downstream isn't conditional
+        private final IntPredicate predicate;
+
+        FilterSubscriber(IntSubscriber downstream, IntPredicate predicate) {
+            super(downstream);
+            this.conditionalDownstream = downstream instanceof IntSubscriber.Conditional
+                    ? (IntSubscriber.Conditional) downstream
+                    : null;
+            this.predicate = predicate;
+        }
+
+        // Only reached when the upstream doesn't know about IntSubscriber.Conditional,
+        // then every dropped value costs a request(1) to get a replacement
+        @Override
+        public void onNext(int value) {
+            if (!tryOnNext(value)) {
+                upstream.request(1);
+            }
+        }
+
+        @Override
+        public boolean tryOnNext(int value) {
+            if (terminated) return true; // Nothing is delivered anymore, don't ask for replacements
+
+            boolean pass;
+            try {
+                pass = predicate.test(value);
+            } catch (Throwable t) {
+                fail(t);
+                return true;
+            }
+
+            if (!pass) {
+                return false;
+            }
+
+            if (conditionalDownstream != null) {
+                return conditionalDownstream.tryOnNext(value); // Another filter downstream may still drop it
+            }
+
+            downstream.onNext(value);
+            return true;
+        }
+    }
+
+    static final class ReduceIntFlow extends IntFlow {
+        private final IntFlow upstream;
+        private final int identity;
+        private final IntBinaryOperator reducer;
+
+        ReduceIntFlow(IntFlow upstream, int identity, IntBinaryOperator reducer) {
+            this.upstream = upstream;
+            this.identity = identity;
+            this.reducer = reducer;
+        }
+
+        @Override
+        public void subscribe(IntSubscriber subscriber) {
+            upstream.subscribe(new ReduceSubscriber(subscriber, identity, reducer));
+        }
+    }
+
+    static final class ReduceSubscriber extends PrimitiveReduceSubscriber<IntSubscriber> implements IntSubscriber {
+        private final IntBinaryOperator reducer;
+        private int accumulator; // Published to the requesting thread through the state field
+
+        ReduceSubscriber(IntSubscriber downstream, int identity, IntBinaryOperator reducer) {
+            super(downstream);
+            this.accumulator = identity;
+            this.reducer = reducer;
+        }
+
+        @Override
+        public void onNext(int value) {
+            if (terminated) return;
+
+            try {
+                accumulator = reducer.applyAsInt(accumulator, value);
+            } catch (Throwable t) {
+                fail(t);
+            }
+        }
+
+        @Override
+        void emit() {
+            downstream.onNext(accumulator);
+            downstream.onComplete();
+        }
+    }
+
+    static final class MapToObjIntFlow<R> extends Flow<R> {
+        private final IntFlow upstream;
+        private final IntFunction<R> mapper;
+
+        MapToObjIntFlow(IntFlow upstream, IntFunction<R> mapper) {
+            this.upstream = upstream;
+            this.mapper = mapper;
+        }
+
+        @Override
+        public void subscribe(Subscriber<? super R> subscriber) {
+            upstream.subscribe(new MapToObjSubscriber<>(subscriber, mapper));
+        }
+    }
+
+    static final class MapToObjSubscriber<R> extends PrimitiveToObjStage<R> implements IntSubscriber {
+        private final IntFunction<R> mapper;
+
+        MapToObjSubscriber(Subscriber<? super R> downstream, IntFunction<R> mapper) {
+            super(downstream);
+            this.mapper = mapper;
+        }
+
+        @Override
+        public void onNext(int value) {
+            if (terminated) return;
+
+            R result;
+            try {
+                result = Objects.requireNonNull(mapper.apply(value));
+            } catch (Throwable t) {
+                fail(t);
+                return;
+            }
+
+            downstream.onNext(result);
+        }
+    }
+}
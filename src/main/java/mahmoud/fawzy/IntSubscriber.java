@@ -0,0 +1,15 @@
+package mahmoud.fawzy;
+
+// Subscriber of a IntFlow, the same four signals as org.reactivestreams.Subscriber but onNext takes a int
+public interface IntSubscriber extends PrimitiveSubscriber {
+
+    void onNext(int value);
+
+    // The IntSubscriber flavour of ConditionalSubscriber: fromArray(..) calls tryOnNext(..) instead of onNext(..)
+    // and only counts accepted values against demand, so a filter doesn't request(1) for every value it drops
+    interface Conditional extends IntSubscriber {
+
+        // Returns true if the value was delivered downstream and consumed one unit of demand, false if it was dropped
+        boolean tryOnNext(int value);
+    }
+}
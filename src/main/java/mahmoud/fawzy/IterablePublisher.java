@@ -0,0 +1,289 @@
+package mahmoud.fawzy;
+
+import org.reactivestreams.Subscriber;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.RandomAccess;
+
+// Streams an Iterable element by element, nothing gets copied into an array
+// Lists with random access (ArrayList, Arrays.asList, List.of) are walked by index like ArraySubscription walks its array,
+// everything else goes through the Iterator. Every subscribe(..) starts from the first element again
+public class IterablePublisher<T> extends Flow<T> {
+    private final Iterable<? extends T> iterable;
+
+    public IterablePublisher(Iterable<? extends T> iterable) {
+        this.iterable = iterable;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber) {
+        if (iterable instanceof List && iterable instanceof RandomAccess) {
+            List<? extends T> list = (List<? extends T>) iterable;
+            subscriber.onSubscribe(new ListSubscription<>(subscriber, list, list.size()));
+            return;
+        }
+
+        Iterator<? extends T> iterator;
+        boolean hasNext;
+        try {
+            iterator = iterable.iterator();
+            hasNext = iterator.hasNext();
+        } catch (Throwable e) {
+            subscriber.onSubscribe(EmptySubscription.INSTANCE);
+            subscriber.onError(e);
+            return;
+        }
+
+        // The emission loops check hasNext() right after every element so they can complete without waiting
+        // for another request(n), that only works if they never start on an exhausted iterator
+        if (!hasNext) {
+            subscriber.onSubscribe(EmptySubscription.INSTANCE);
+            subscriber.onComplete();
+            return;
+        }
+
+        subscriber.onSubscribe(new IteratorSubscription<>(subscriber, iterator));
+    }
+
+    // list.get(i) in place of array[i], the size is read once at subscribe time, like the length of an array
+    static final class ListSubscription<T> extends IndexedSubscription<T> {
+        private List<? extends T> list; // Released by cancel(), like ArraySubscription's array
+        private Throwable failure; // What list.get(i) threw, handed to fail(..) through failure(i)
+
+        ListSubscription(Subscriber<? super T> subscriber, List<? extends T> list, int end) {
+            super(subscriber, 0, end);
+            this.list = list;
+        }
+
+        @Override
+        long emit(Subscriber<? super T> subscriber, long i, long to) {
+            for (; i < to; i++) {
+                if (canceled) return -1;
+
+                T element = elementAt(i);
+                if (element == null) return fail(subscriber, i);
+
+                subscriber.onNext(element);
+            }
+            return i;
+        }
+
+        @Override
+        long emitConditional(ConditionalSubscriber<? super T> subscriber, long i, long to, long wanted) {
+            long accepted = 0;
+            for (; i < to && accepted != wanted; i++) {
+                if (canceled) return -1;
+
+                T element = elementAt(i);
+                if (element == null) return fail(subscriber, i);
+
+                if (subscriber.tryOnNext(element)) {
+                    accepted++;
+                }
+            }
+            this.accepted = accepted;
+            return i;
+        }
+
+        @Override
+        T elementAt(long i) {
+            final List<? extends T> list = this.list;
+            if (list == null) return null; // Canceled, see cancel()
+
+            // The list is user code, it can shrink after subscribe(..) or throw from get(i) like an Iterator throws
+            // from next(), whatever it throws ends the stream with onError, see IteratorSubscription.emitNext(..)
+            try {
+                return list.get((int) i);
+            } catch (Throwable e) {
+                failure = e;
+                return null;
+            }
+        }
+
+        @Override
+        Throwable failure(long i) {
+            Throwable e = failure;
+            failure = null;
+            return e != null ? e : new NullPointerException();
+        }
+
+        @Override
+        void release() {
+            this.list = null;
+        }
+    }
+
+    // Starts on an iterator that has at least one element, and completes as soon as hasNext() turns false
+    static final class IteratorSubscription<T> implements QueueSubscription<T> {
+        static final VarHandle REQUESTED = VarHandles.find(MethodHandles.lookup(), IteratorSubscription.class, "requested", long.class);
+
+        // Both released by cancel(), like ArraySubscription's. The iterator is otherwise only replaced by clear(),
+        // it is published through the requested field
+        private Subscriber<? super T> subscriber;
+        private Iterator<? extends T> iterator;
+        volatile boolean canceled;
+
+        volatile long requested;
+
+        IteratorSubscription(Subscriber<? super T> subscriber, Iterator<? extends T> iterator) {
+            this.subscriber = subscriber;
+            this.iterator = iterator;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0 && !canceled) {
+                Subscriber<? super T> subscriber = this.subscriber;
+                cancel();
+                if (subscriber != null) {
+                    subscriber.onError(new IllegalArgumentException());
+                }
+            }
+
+            if (canceled) return;
+
+            long initialRequested = Demand.add(REQUESTED, this, n);
+
+            if (initialRequested > 0) {
+                return;
+            }
+
+            if (n == Long.MAX_VALUE) {
+                fastPath();
+            } else {
+                slowPath(n);
+            }
+        }
+
+        void fastPath() {
+            final Iterator<? extends T> iterator = this.iterator;
+            final Subscriber<? super T> subscriber = this.subscriber;
+            if (iterator == null || subscriber == null) return; // Canceled, see cancel()
+
+            while (true) {
+                if (canceled) return;
+
+                if (!emitNext(iterator, subscriber)) return;
+
+                if (canceled) return;
+
+                if (!hasNext(iterator, subscriber)) return;
+            }
+        }
+
+        void slowPath(long n) {
+            final Iterator<? extends T> iterator = this.iterator;
+            final Subscriber<? super T> subscriber = this.subscriber;
+            long sent = 0;
+            if (iterator == null || subscriber == null) return; // Canceled, see cancel()
+
+            while (true) {
+                for (; sent < n; sent++) {
+                    if (canceled) return;
+
+                    if (!emitNext(iterator, subscriber)) return;
+
+                    if (canceled) return;
+
+                    if (!hasNext(iterator, subscriber)) return;
+                }
+
+                n = requested;
+                if (n == Long.MAX_VALUE) {
+                    fastPath();
+                    return;
+                }
+
+                if (n == sent) {
+                    n = Demand.produced(REQUESTED, this, sent);
+                    if (n == 0) {
+                        return;
+                    }
+                    sent = 0;
+                }
+            }
+        }
+
+        // Iterator code is user code, anything it throws ends the stream with onError
+        private boolean emitNext(Iterator<? extends T> iterator, Subscriber<? super T> subscriber) {
+            T element;
+            try {
+                element = iterator.next();
+            } catch (Throwable e) {
+                canceled = true;
+                subscriber.onError(e);
+                return false;
+            }
+
+            if (element == null) {
+                canceled = true;
+                subscriber.onError(new NullPointerException());
+                return false;
+            }
+
+            subscriber.onNext(element);
+            return true;
+        }
+
+        // Returns false once the stream is over, after signalling onComplete or onError
+        private boolean hasNext(Iterator<? extends T> iterator, Subscriber<? super T> subscriber) {
+            boolean hasNext;
+            try {
+                hasNext = iterator.hasNext();
+            } catch (Throwable e) {
+                canceled = true;
+                subscriber.onError(e);
+                return false;
+            }
+
+            if (!hasNext) {
+                canceled = true;
+                subscriber.onComplete();
+            }
+            return hasNext;
+        }
+
+        @Override
+        public int requestFusion(int mode) {
+            return (mode & SYNC) != 0 ? SYNC : NONE;
+        }
+
+        @Override
+        public T poll() {
+            Iterator<? extends T> iterator = this.iterator;
+            if (iterator == null || !iterator.hasNext()) {
+                return null;
+            }
+
+            T element = iterator.next();
+            if (element == null) {
+                throw new NullPointerException();
+            }
+            return element;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            Iterator<? extends T> iterator = this.iterator;
+            return iterator == null || !iterator.hasNext();
+        }
+
+        @Override
+        public void clear() {
+            if (iterator != null) {
+                iterator = Collections.emptyIterator();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            canceled = true;
+            this.subscriber = null;
+            this.iterator = null;
+        }
+    }
+}
@@ -0,0 +1,358 @@
+package mahmoud.fawzy;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+// Decouples the downstream's request pattern from what the upstream sees: the upstream is asked for highTide elements
+// up front and then lowTide at a time, once lowTide of them went downstream, whatever the downstream asks for
+// The elements wait in a SpscArrayQueue of highTide in between, drained by a WIP guarded loop on the calling thread
+//
+// The point is Subscribers that request(1) from within onNext: such a request comes from the thread running our drain
+// loop, so it only bumps a plain counter the loop picks up after onNext returns. No CAS and no drain loop re-entry
+// per element, on our side or on the upstream's. Requests from any other thread take the usual Demand.add(..) path
+// The same goes for a synchronous upstream emitting from within our replenishing request(n): its onNext goes straight
+// downstream when nothing is queued and there is demand, and is only queued otherwise
+//
+// In adaptive mode the amount in flight (requested from the upstream but not emitted yet) follows the consumer:
+// at every replenishment we measure how fast the last batch went out and keep about ADAPTIVE_WINDOW_NANOS worth
+// of elements in flight, between MIN_WINDOW and highTide. Fast consumers get big batches, slow ones don't have
+// hundreds of elements produced for them ahead of time. It costs one System.nanoTime() per batch
+//
+// An upstream that agrees on SYNC fusion is polled in place of the queue and never requested at all
+public class LimitRateFlow<T> extends Flow<T> {
+    static final long ADAPTIVE_WINDOW_NANOS = 1_000_000;
+    static final int MIN_WINDOW = 8;
+
+    private final Publisher<? extends T> upstreamPublisher;
+    private final int highTide;
+    private final int lowTide;
+    private final boolean adaptive;
+
+    public LimitRateFlow(Publisher<? extends T> upstreamPublisher, int highTide, int lowTide, boolean adaptive) {
+        if (highTide <= 0) {
+            throw new IllegalArgumentException("highTide must be positive but was " + highTide);
+        }
+        if (lowTide <= 0 || lowTide > highTide) {
+            throw new IllegalArgumentException("lowTide must be between 1 and highTide (" + highTide + ") but was " + lowTide);
+        }
+        this.upstreamPublisher = upstreamPublisher;
+        this.highTide = highTide;
+        this.lowTide = lowTide;
+        this.adaptive = adaptive;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber) {
+        upstreamPublisher.subscribe(new LimitRateSubscriber<>(subscriber, highTide, lowTide, adaptive));
+    }
+
+    static final class LimitRateSubscriber<T> implements Subscriber<T>, Subscription {
+        static final VarHandle WIP = VarHandles.find(MethodHandles.lookup(), LimitRateSubscriber.class, "wip", int.class);
+        static final VarHandle REQUESTED = VarHandles.find(MethodHandles.lookup(), LimitRateSubscriber.class, "requested", long.class);
+        static final VarHandle ERROR = VarHandles.find(MethodHandles.lookup(), LimitRateSubscriber.class, "error", Throwable.class);
+
+        private final Subscriber<? super T> downstream;
+        private final int highTide;
+        private final boolean adaptive;
+
+        private volatile int wip;
+        private volatile long requested;
+
+        private Subscription upstream;
+        // Exactly one of them is set in onSubscribe, before the downstream can request anything
+        private SpscArrayQueue<T> queue;
+        private QueueSubscription<? extends T> fused;
+        private volatile boolean done;
+        private volatile boolean canceled;
+        // Set by the upstream, a throwing fused poll() or an invalid request(n) from any thread, first one wins
+        private volatile Throwable error;
+
+        // The thread running the drain loop, null outside of it. A plain field is enough: a thread always sees its own
+        // writes, so it only ever finds itself in here while it's actually inside the loop
+        private Thread drainThread;
+        private long reentrantRequested; // Requested from within onNext, only touched by the drain thread
+        // The demand of the running loop, in fields rather than locals so that onNext can emit right away when the
+        // upstream emits from within our request(n). Only touched by the drain thread
+        private long loopRequested;
+        private long loopEmitted;
+        private long loopCredited; // The part of loopRequested that came from reentrantRequested
+
+        // Everything below is only touched while holding wip
+        private boolean started; // The first highTide elements were requested from the upstream
+        private int batch; // Replenish after this many emitted elements
+        private int consumed;
+        private long inFlight; // Adaptive mode, requested from the upstream and not emitted yet
+        private long lastReplenish; // Adaptive mode, System.nanoTime() of the previous replenishment
+
+        LimitRateSubscriber(Subscriber<? super T> downstream, int highTide, int lowTide, boolean adaptive) {
+            this.downstream = downstream;
+            this.highTide = highTide;
+            this.adaptive = adaptive;
+            this.batch = adaptive ? highTide - (highTide >> 2) : lowTide;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void onSubscribe(Subscription subscription) {
+            upstream = subscription;
+
+            if (subscription instanceof QueueSubscription) {
+                QueueSubscription<? extends T> qs = (QueueSubscription<? extends T>) subscription;
+                if (qs.requestFusion(QueueSubscription.SYNC) == QueueSubscription.SYNC) {
+                    fused = qs;
+                    done = true; // A SYNC source already holds everything, poll() returning null is its completion
+                    downstream.onSubscribe(this);
+                    drain(); // Completes an empty upstream even without a request
+                    return;
+                }
+            }
+
+            queue = new SpscArrayQueue<>(highTide);
+            downstream.onSubscribe(this);
+            drain(); // Makes the first request, unless the downstream's request(n) already did
+        }
+
+        @Override
+        public void onNext(T t) {
+            if (done) return;
+
+            boolean inLoop = drainThread == Thread.currentThread();
+            if (inLoop && !canceled && queue.isEmpty() && hasDemand()) {
+                // Emitted synchronously from our replenishing request(n) and nothing is waiting, skip the queue
+                downstream.onNext(t);
+                loopEmitted++;
+                replenish();
+                return;
+            }
+
+            if (!queue.offer(t)) {
+                // Can't happen with a well behaved upstream, we never request more than the queue can hold
+                upstream.cancel();
+                ERROR.compareAndSet(this, null, new IllegalStateException("Queue is full, the upstream ignored backpressure"));
+                done = true;
+            }
+            if (!inLoop) {
+                drain();
+            } // Else the loop we are called from polls it right after
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            if (done) return;
+            ERROR.compareAndSet(this, null, throwable);
+            done = true;
+            drain();
+        }
+
+        @Override
+        public void onComplete() {
+            if (done) return;
+            done = true;
+            drain();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                if (canceled) return; // Rule 3.6, nothing is signalled after cancel()
+                // Another thread may be in the drain loop's downstream.onNext(..), the loop signals it like onError(..)
+                if (ERROR.compareAndSet(this, null, new IllegalArgumentException())) {
+                    upstream.cancel();
+                }
+                done = true;
+                drain();
+                return;
+            }
+
+            if (drainThread == Thread.currentThread()) {
+                long r = reentrantRequested + n;
+                reentrantRequested = r < 0 ? Long.MAX_VALUE : r;
+                return; // The loop we are called from picks it up
+            }
+
+            Demand.add(REQUESTED, this, n);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            if (canceled) return;
+            canceled = true;
+            upstream.cancel();
+
+            if ((int) WIP.getAndAdd(this, 1) == 0) {
+                clear(); // No drain loop running, we own the consumer side of the queue
+            }
+        }
+
+        private void drain() {
+            if ((int) WIP.getAndAdd(this, 1) == 0) {
+                drainLoop();
+            }
+        }
+
+        private void drainLoop() {
+            final Subscriber<? super T> downstream = this.downstream;
+            int missed = 1;
+
+            while (true) {
+                loopRequested = requested;
+                loopEmitted = 0;
+                loopCredited = 0;
+                drainThread = Thread.currentThread();
+
+                // From in here, so that a synchronous upstream emits within our loop from the very first element
+                // and its onNext calls can take the direct path. Asked for with or without downstream demand
+                if (!started && queue != null && !canceled) {
+                    started = true;
+                    inFlight = highTide;
+                    lastReplenish = adaptive ? System.nanoTime() : 0;
+                    upstream.request(highTide);
+                }
+
+                while (hasDemand()) {
+                    boolean d = done;
+                    T element;
+                    try {
+                        element = poll();
+                    } catch (Throwable e) {
+                        // Only a fused upstream can throw, the mapper of a map over an array for example
+                        ERROR.compareAndSet(this, null, e);
+                        done = true;
+                        continue;
+                    }
+                    boolean empty = element == null;
+
+                    if (checkTerminated(d, empty)) {
+                        return;
+                    }
+
+                    if (empty) {
+                        break;
+                    }
+
+                    downstream.onNext(element);
+                    loopEmitted++;
+                    replenish();
+                }
+
+                // Out of demand, we may still have to complete
+                if (loopEmitted == loopRequested && checkTerminated(done, isEmpty())) {
+                    return;
+                }
+
+                // What got requested after the last element went out
+                long r = loopRequested;
+                long credited = loopCredited + reentrantRequested;
+                reentrantRequested = 0;
+                drainThread = null;
+
+                if (r == Long.MAX_VALUE) {
+                    if (credited != 0) {
+                        REQUESTED.setVolatile(this, Long.MAX_VALUE); // Unbounded from now on, nothing to count anymore
+                    }
+                } else if (loopEmitted != credited) {
+                    Demand.produced(REQUESTED, this, loopEmitted - credited);
+                }
+
+                missed = (int) WIP.getAndAdd(this, -missed) - missed;
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        // Folds what got requested from within onNext into the loop's demand, only called by the drain thread
+        private boolean hasDemand() {
+            if (loopEmitted != loopRequested) {
+                return true;
+            }
+            long extra = reentrantRequested;
+            if (extra == 0) {
+                return false;
+            }
+            reentrantRequested = 0;
+            loopCredited += extra;
+            long r = loopRequested + extra;
+            loopRequested = r < 0 ? Long.MAX_VALUE : r;
+            return true;
+        }
+
+        // Called for every emitted element while holding wip, a fused upstream is polled, there is nothing to request
+        private void replenish() {
+            if (fused != null || ++consumed != batch) return;
+            consumed = 0;
+
+            if (!adaptive) {
+                upstream.request(batch);
+                return;
+            }
+
+            long now = System.nanoTime();
+            long elapsed = Math.max(now - lastReplenish, 1);
+            lastReplenish = now;
+            inFlight -= batch;
+
+            // How many elements the consumer gets through in ADAPTIVE_WINDOW_NANOS, at the pace of the last batch
+            long rate = batch * ADAPTIVE_WINDOW_NANOS / elapsed;
+            int window = (int) Math.min(Math.max(rate, Math.min(MIN_WINDOW, highTide)), highTide);
+            batch = window - (window >> 2);
+
+            // A shrinking window only stops asking for a while, the elements in flight still arrive
+            long missing = window - inFlight;
+            if (missing > 0) {
+                inFlight += missing;
+                upstream.request(missing);
+            }
+        }
+
+        private T poll() {
+            QueueSubscription<? extends T> fused = this.fused;
+            return fused != null ? fused.poll() : queue.poll();
+        }
+
+        private boolean isEmpty() {
+            QueueSubscription<? extends T> fused = this.fused;
+            return fused != null ? fused.isEmpty() : queue.isEmpty();
+        }
+
+        private void clear() {
+            QueueSubscription<? extends T> fused = this.fused;
+            if (fused != null) {
+                fused.clear();
+            } else if (queue != null) {
+                queue.clear();
+            }
+        }
+
+        private boolean checkTerminated(boolean done, boolean empty) {
+            if (canceled) {
+                drainThread = null;
+                clear();
+                return true;
+            }
+
+            if (done) {
+                Throwable e = error;
+                if (e != null) {
+                    // Errors cut ahead of whatever is still queued
+                    drainThread = null;
+                    clear();
+                    downstream.onError(e);
+                    return true;
+                }
+                if (empty) {
+                    drainThread = null;
+                    downstream.onComplete();
+                    return true;
+                }
+            }
+
+            return false;
+        }
+    }
+}
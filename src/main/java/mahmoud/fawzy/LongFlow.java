@@ -0,0 +1,315 @@
+package mahmoud.fawzy;
+
+import org.reactivestreams.Subscriber;
+
+import java.util.Objects;
+import java.util.function.LongBinaryOperator;
+import java.util.function.LongFunction;
+import java.util.function.LongPredicate;
+import java.util.function.LongUnaryOperator;
+
+// Flow specialized for long values, elements travel as primitives from the long[] to the LongSubscriber, nothing is boxed
+// Same protocol as Flow (onSubscribe, request(n), onNext, cancel), only the element type differs
+// Use boxed() or mapToObj(..) to go back to a regular Flow, that's the only place where allocation per element happens
+// IntFlow, LongFlow and DoubleFlow only differ by their value type: the demand accounting, the terminal signals and
+// the reduce state machine live in PrimitiveArraySubscription, PrimitiveStage, PrimitiveToObjStage and
+// PrimitiveReduceSubscriber, the classes below only hold what touches a value (see IntFlow for why)
+public abstract class LongFlow {
+
+    public abstract void subscribe(LongSubscriber subscriber);
+
+    public LongFlow map(LongUnaryOperator mapper) {
+        return new MapLongFlow(this, mapper);
+    }
+
+    public LongFlow filter(LongPredicate predicate) {
+        return new FilterLongFlow(this, predicate);
+    }
+
+    // Emits a single value once the upstream completes, the identity if the upstream was empty
+    public LongFlow reduce(long identity, LongBinaryOperator reducer) {
+        return new ReduceLongFlow(this, identity, reducer);
+    }
+
+    public LongFlow sum() {
+        return reduce(0, Long::sum);
+    }
+
+    public Flow<Long> boxed() {
+        return mapToObj(Long::valueOf);
+    }
+
+    public <R> Flow<R> mapToObj(LongFunction<R> mapper) {
+        return new MapToObjLongFlow<>(this, mapper);
+    }
+
+    public static LongFlow fromArray(long... array) {
+        return new LongArrayPublisher(array);
+    }
+
+    static final class LongArrayPublisher extends LongFlow {
+        private final long[] array;
+
+        LongArrayPublisher(long[] array) {
+            this.array = array;
+        }
+
+        @Override
+        public void subscribe(LongSubscriber subscriber) {
+            subscriber.onSubscribe(new LongArraySubscription(subscriber, array));
+        }
+    }
+
+    static final class LongArraySubscription extends PrimitiveArraySubscription<LongSubscriber> {
+        private long[] array;
+
+        LongArraySubscription(LongSubscriber subscriber, long[] array) {
+            super(subscriber, subscriber instanceof LongSubscriber.Conditional, array.length);
+            this.array = array;
+        }
+
+        @Override
+        int emit(LongSubscriber subscriber, int i, int to) {
+            final long[] array = this.array;
+            if (array == null) return -1; // Canceled, see release()
+
+            for (; i < to; i++) {
+                if (canceled) return -1;
+
+                subscriber.onNext(array[i]);
+            }
+            return i;
+        }
+
+        @Override
+        int emitConditional(LongSubscriber subscriber, int i, int to, long wanted) {
+            final long[] array = this.array;
+            if (array == null) return -1;
+            final LongSubscriber.Conditional target = (LongSubscriber.Conditional) subscriber;
+
+            long accepted = 0;
+            for (; i < to && accepted != wanted; i++) {
+                if (canceled) return -1;
+
+                if (target.tryOnNext(array[i])) {
+                    accepted++;
+                }
+            }
+            this.accepted = accepted;
+            return i;
+        }
+
+        @Override
+        void release() {
+            this.array = null;
+        }
+    }
+
+    static final class MapLongFlow extends LongFlow {
+        private final LongFlow upstream;
+        private final LongUnaryOperator mapper;
+
+        MapLongFlow(LongFlow upstream, LongUnaryOperator mapper) {
+            this.upstream = upstream;
+            this.mapper = mapper;
+        }
+
+        // Consecutive maps compose into one stage, like MapProcessor
+        @Override
+        public LongFlow map(LongUnaryOperator mapper) {
+            return new MapLongFlow(upstream, this.mapper.andThen(mapper));
+        }
+
+        @Override
+        public void subscribe(LongSubscriber subscriber) {
+            upstream.subscribe(new MapSubscriber(subscriber, mapper));
+        }
+    }
+
+    // Mapping never drops anything, so like MapProcessor we are as conditional as our downstream is
+    static final class MapSubscriber extends PrimitiveStage<LongSubscriber> implements LongSubscriber.Conditional {
+        private final LongSubscriber.Conditional conditionalDownstream; // null if the downstream isn't conditional
+        private final LongUnaryOperator mapper;
+
+        MapSubscriber(LongSubscriber downstream, LongUnaryOperator mapper) {
+            super(downstream);
+            this.conditionalDownstream = downstream instanceof LongSubscriber.Conditional
+                    ? (LongSubscriber.Conditional) downstream
+                    : null;
+            this.mapper = mapper;
+        }
+
+        // Only reached when the upstream doesn't know about LongSubscriber.Conditional
+        @Override
+        public void onNext(long value) {
+            if (!tryOnNext(value)) {
+                upstream.request(1); // A filter downstream dropped it
+            }
+        }
+
+        @Override
+        public boolean tryOnNext(long value) {
+            if (terminated) return true;
+
+            long result;
+            try {
+                result = mapper.applyAsLong(value);
+            } catch (Throwable t) {
+                fail(t);
+                return true;
+            }
+
+            if (conditionalDownstream != null) {
+                return conditionalDownstream.tryOnNext(result);
+            }
+
+            downstream.onNext(result);
+            return true;
+        }
+    }
+
+    static final class FilterLongFlow extends LongFlow {
+        private final LongFlow upstream;
+        private final LongPredicate predicate;
+
+        FilterLongFlow(LongFlow upstream, LongPredicate predicate) {
+            this.upstream = upstream;
+            this.predicate = predicate;
+        }
+
+        @Override
+        public void subscribe(LongSubscriber subscriber) {
+            upstream.subscribe(new FilterSubscriber(subscriber, predicate));
+        }
+    }
+
+    static final class FilterSubscriber extends PrimitiveStage<LongSubscriber> implements LongSubscriber.Conditional {
+        private final LongSubscriber.Conditional conditionalDownstream; // null if the downstream isn't conditional
+        private final LongPredicate predicate;
+
+        FilterSubscriber(LongSubscriber downstream, LongPredicate predicate) {
+            super(downstream);
+            this.conditionalDownstream = downstream instanceof LongSubscriber.Conditional
+                    ? (LongSubscriber.Conditional) downstream
+                    : null;
+            this.predicate = predicate;
+        }
+
+        // Only reached when the upstream doesn't know about LongSubscriber.Conditional,
+        // then every dropped value costs a request(1) to get a replacement
+        @Override
+        public void onNext(long value) {
+            if (!tryOnNext(value)) {
+                upstream.request(1);
+            }
+        }
+
+        @Override
+        public boolean tryOnNext(long value) {
+            if (terminated) return true; // Nothing is delivered anymore, don't ask for replacements
+
+            boolean pass;
+            try {
+                pass = predicate.test(value);
+            } catch (Throwable t) {
+                fail(t);
+                return true;
+            }
+
+            if (!pass) {
+                return false;
+            }
+
+            if (conditionalDownstream != null) {
+                return conditionalDownstream.tryOnNext(value); // Another filter downstream may still drop it
+            }
+
+            downstream.onNext(value);
+            return true;
+        }
+    }
+
+    static final class ReduceLongFlow extends LongFlow {
+        private final LongFlow upstream;
+        private final long identity;
+        private final LongBinaryOperator reducer;
+
+        ReduceLongFlow(LongFlow upstream, long identity, LongBinaryOperator reducer) {
+            this.upstream = upstream;
+            this.identity = identity;
+            this.reducer = reducer;
+        }
+
+        @Override
+        public void subscribe(LongSubscriber subscriber) {
+            upstream.subscribe(new ReduceSubscriber(subscriber, identity, reducer));
+        }
+    }
+
+    static final class ReduceSubscriber extends PrimitiveReduceSubscriber<LongSubscriber> implements LongSubscriber {
+        private final LongBinaryOperator reducer;
+        private long accumulator; // Published to the requesting thread through the state field
+
+        ReduceSubscriber(LongSubscriber downstream, long identity, LongBinaryOperator reducer) {
+            super(downstream);
+            this.accumulator = identity;
+            this.reducer = reducer;
+        }
+
+        @Override
+        public void onNext(long value) {
+            if (terminated) return;
+
+            try {
+                accumulator = reducer.applyAsLong(accumulator, value);
+            } catch (Throwable t) {
+                fail(t);
+            }
+        }
+
+        @Override
+        void emit() {
+            downstream.onNext(accumulator);
+            downstream.onComplete();
+        }
+    }
+
+    static final class MapToObjLongFlow<R> extends Flow<R> {
+        private final LongFlow upstream;
+        private final LongFunction<R> mapper;
+
+        MapToObjLongFlow(LongFlow upstream, LongFunction<R> mapper) {
+            this.upstream = upstream;
+            this.mapper = mapper;
+        }
+
+        @Override
+        public void subscribe(Subscriber<? super R> subscriber) {
+            upstream.subscribe(new MapToObjSubscriber<>(subscriber, mapper));
+        }
+    }
+
+    static final class MapToObjSubscriber<R> extends PrimitiveToObjStage<R> implements LongSubscriber {
+        private final LongFunction<R> mapper;
+
+        MapToObjSubscriber(Subscriber<? super R> downstream, LongFunction<R> mapper) {
+            super(downstream);
+            this.mapper = mapper;
+        }
+
+        @Override
+        public void onNext(long value) {
+            if (terminated) return;
+
+            R result;
+            try {
+                result = Objects.requireNonNull(mapper.apply(value));
+            } catch (Throwable t) {
+                fail(t);
+                return;
+            }
+
+            downstream.onNext(result);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package mahmoud.fawzy;
+
+// Subscriber of a LongFlow, the same four signals as org.reactivestreams.Subscriber but onNext takes a long
+public interface LongSubscriber extends PrimitiveSubscriber {
+
+    void onNext(long value);
+
+    // The LongSubscriber flavour of ConditionalSubscriber: fromArray(..) calls tryOnNext(..) instead of onNext(..)
+    // and only counts accepted values against demand, so a filter doesn't request(1) for every value it drops
+    interface Conditional extends LongSubscriber {
+
+        // Returns true if the value was delivered downstream and consumed one unit of demand, false if it was dropped
+        boolean tryOnNext(long value);
+    }
+}
@@ -0,0 +1,117 @@
+package mahmoud.fawzy;
+
+import org.reactivestreams.Subscriber;
+
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+
+// Result of fusing map(..) stages into an ArrayPublisher at assembly time
+// fromArray(..).map(f).map(g).map(h) is a single source that applies f, g and h inside the emission loop,
+// instead of three MapProcessors, three subscription hops and three onNext calls per element
+public class MapArrayPublisher<T, R> extends Flow<R> {
+    private final T[] array;
+    private final Function<T, R> mapper;
+
+    public MapArrayPublisher(T[] array, Function<T, R> mapper) {
+        this.array = array;
+        this.mapper = mapper;
+    }
+
+    // Keep fusing, every map(..) on top of us just composes the functions
+    @Override
+    public <V> MapArrayPublisher<T, V> map(Function<R, V> mapper) {
+        return new MapArrayPublisher<>(array, MapFlow.fuse(this.mapper, mapper));
+    }
+
+    // The fused mapper moves onto the rails
+    public ParallelFlow<R> parallel(int rails, ForkJoinPool pool) {
+        return ParallelFlow.fromArray(array, rails, pool).map(mapper);
+    }
+
+    public ParallelFlow<R> parallel(int rails) {
+        return parallel(rails, ForkJoinPool.commonPool());
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super R> subscriber) {
+        subscriber.onSubscribe(new MapArraySubscription<>(subscriber, array, mapper));
+    }
+
+    // The mapper is applied in place, on the thread that emits or polls
+    public static final class MapArraySubscription<T, R> extends IndexedSubscription<R> {
+        // Released by cancel(), like ArraySubscription's array
+        private T[] array;
+        private Function<T, R> mapper;
+        private Throwable failure; // What the mapper threw, handed over by failure(i)
+
+        public MapArraySubscription(Subscriber<? super R> subscriber, T[] array, Function<T, R> mapper) {
+            super(subscriber, 0, array.length);
+            this.array = array;
+            this.mapper = mapper;
+        }
+
+        @Override
+        long emit(Subscriber<? super R> subscriber, long i, long to) {
+            for (; i < to; i++) {
+                if (canceled) return -1;
+
+                R element = elementAt(i);
+                if (element == null) return fail(subscriber, i);
+
+                subscriber.onNext(element);
+            }
+            return i;
+        }
+
+        @Override
+        long emitConditional(ConditionalSubscriber<? super R> subscriber, long i, long to, long wanted) {
+            long accepted = 0;
+            for (; i < to && accepted != wanted; i++) {
+                if (canceled) return -1;
+
+                R element = elementAt(i);
+                if (element == null) return fail(subscriber, i);
+
+                if (subscriber.tryOnNext(element)) {
+                    accepted++;
+                }
+            }
+            this.accepted = accepted;
+            return i;
+        }
+
+        @Override
+        R elementAt(long i) {
+            final T[] array = this.array;
+            final Function<T, R> mapper = this.mapper;
+            if (array == null || mapper == null) return null; // Canceled, see cancel()
+
+            T element = array[(int) i];
+            if (element == null) {
+                return null;
+            }
+
+            try {
+                return Objects.requireNonNull(mapper.apply(element));
+            } catch (Throwable t) {
+                FlowEvents.mapError(mapper, t);
+                failure = t;
+                return null;
+            }
+        }
+
+        @Override
+        Throwable failure(long i) {
+            Throwable t = failure;
+            failure = null;
+            return t != null ? t : new NullPointerException();
+        }
+
+        @Override
+        void release() {
+            this.array = null;
+            this.mapper = null;
+        }
+    }
+}
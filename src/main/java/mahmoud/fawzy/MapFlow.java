@@ -0,0 +1,37 @@
+package mahmoud.fawzy;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+
+import java.util.Objects;
+import java.util.function.Function;
+
+// Transforms every element with the mapper
+// Only the assembly: it keeps the upstream and the mapper and nothing else, every subscribe(..) gets its own MapProcessor.
+// So a pipeline can be built once (at startup for example) and subscribed to any number of times, from any number of threads
+public class MapFlow<IN, OUT> extends Flow<OUT> {
+    private final Publisher<? extends IN> upstreamPublisher;
+    private final Function<IN, OUT> mapper;
+
+    public MapFlow(Publisher<? extends IN> upstreamPublisher, Function<IN, OUT> mapper) {
+        this.upstreamPublisher = upstreamPublisher;
+        this.mapper = mapper;
+    }
+
+    // map(..) on a map(..) composes both functions into a single stage on top of the same upstream Publisher,
+    // so a chain of maps costs one MapProcessor and one onNext hop per element no matter how long it is
+    @Override
+    public <R> Flow<R> map(Function<OUT, R> mapper) {
+        return new MapFlow<>(upstreamPublisher, fuse(this.mapper, mapper));
+    }
+
+    // Null results are rejected between the fused functions just like they are between two separate map stages
+    static <A, B, C> Function<A, C> fuse(Function<A, B> first, Function<B, C> second) {
+        return a -> second.apply(Objects.requireNonNull(first.apply(a)));
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super OUT> subscriber) {
+        upstreamPublisher.subscribe(new MapProcessor<>(subscriber, mapper));
+    }
+}
@@ -1,41 +1,54 @@
 package mahmoud.fawzy;
 
-import org.reactivestreams.Processor;
-import org.reactivestreams.Publisher;
 import org.reactivestreams.Subscriber;
 import org.reactivestreams.Subscription;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.util.Objects;
 import java.util.function.Function;
 
-public class MapProcessor<IN, OUT> extends Flow<OUT> implements Processor<IN, OUT>, Subscription {
+// The per-subscription half of map(..), MapFlow creates a new one for every subscribe(..)
+// It is the Subscriber of the upstream and the Subscription of the downstream at the same time,
+// so one map stage costs a single object per subscription
+final class MapProcessor<IN, OUT> implements ConditionalSubscriber<IN>, QueueSubscription<OUT> {
+    static final VarHandle REQUESTED = VarHandles.find(MethodHandles.lookup(), MapProcessor.class, "requested", long.class);
 
-    private final Publisher<? extends IN> upstreamPublisher;
     private final Function<IN, OUT> mapper;
     private Subscriber<? super OUT> downstreamSubscriber;
+    private ConditionalSubscriber<? super OUT> conditionalDownstreamSubscriber; // null if the downstream isn't conditional
     private boolean terminated;
     private Subscription subscriptionToUpstreamPublisher;
 
+    // Set when the upstream agreed to SYNC fusion, we then pull from it instead of receiving onNext signals
+    private QueueSubscription<? extends IN> fusedUpstream;
+    private volatile boolean canceled;
+    private volatile long requested;
 
-    public MapProcessor(Publisher<? extends IN> upstreamPublisher, Function<IN, OUT> mapper) {
-        this.upstreamPublisher = upstreamPublisher;
-        this.mapper = mapper;
-    }
-
-    // A Processor is a Publisher to its downstream Subscriber
-    @Override
-    public void subscribe(Subscriber<? super OUT> downstreamSubscriber) {
-        // When someone subscribers to the processor, the processor should subscribe to its upstream Publisher
+    @SuppressWarnings("unchecked")
+    MapProcessor(Subscriber<? super OUT> downstreamSubscriber, Function<IN, OUT> mapper) {
         this.downstreamSubscriber = downstreamSubscriber;
-        this.upstreamPublisher.subscribe(this);
+        if (downstreamSubscriber instanceof ConditionalSubscriber) {
+            this.conditionalDownstreamSubscriber = (ConditionalSubscriber<? super OUT>) downstreamSubscriber;
+        }
+        this.mapper = mapper;
     }
 
-    // A Processor is a Subscriber to its upstream Publisher
+    // We are a Subscriber to the upstream Publisher
     @Override
     public void onSubscribe(Subscription subscription) {
         // Forward signal to downstream Subscriber, then the downstream subscriber will start to request(n), which is propagated through the subscription object
         // Then the upstream Publisher will call onNext() on its Subscriber, which is this Processor
         this.subscriptionToUpstreamPublisher = subscription;
+
+        if (subscription instanceof QueueSubscription) {
+            @SuppressWarnings("unchecked")
+            QueueSubscription<? extends IN> queueSubscription = (QueueSubscription<? extends IN>) subscription;
+            if (queueSubscription.requestFusion(SYNC) == SYNC) {
+                this.fusedUpstream = queueSubscription;
+            }
+        }
+
         downstreamSubscriber.onSubscribe(this);
     }
 
@@ -46,16 +59,46 @@ public class MapProcessor<IN, OUT> extends Flow<OUT> implements Processor<IN, OU
 
         if (terminated) return; // Protection against asynchronous cancellation
 
+        final Subscriber<? super OUT> downstream = this.downstreamSubscriber;
+        if (downstream == null) return; // Canceled, the references are already released
+
         OUT apply;
         try {
             Objects.requireNonNull(apply = mapper.apply(in));
         } catch (Throwable t) {
-            cancel(); // Cancel subscription upstream, cancellation is asynchronous potentially
-            onError(t); // Signal error downstream
+            FlowEvents.mapError(mapper, t);
+            cancelAndError(downstream, t); // Cancel subscription upstream, then signal error downstream
             return;
         }
 
-        downstreamSubscriber.onNext(apply);
+        downstream.onNext(apply);
+    }
+
+    // Mapping never drops anything, so we are as conditional as our downstream is
+    @Override
+    public boolean tryOnNext(IN in) {
+        if (terminated) return true;
+
+        final Subscriber<? super OUT> downstream = this.downstreamSubscriber;
+        if (downstream == null) return true;
+
+        final ConditionalSubscriber<? super OUT> conditionalDownstream = this.conditionalDownstreamSubscriber;
+
+        OUT apply;
+        try {
+            Objects.requireNonNull(apply = mapper.apply(in));
+        } catch (Throwable t) {
+            FlowEvents.mapError(mapper, t);
+            cancelAndError(downstream, t);
+            return true;
+        }
+
+        if (conditionalDownstream != null) {
+            return conditionalDownstream.tryOnNext(apply);
+        }
+
+        downstream.onNext(apply);
+        return true;
     }
 
     @Override
@@ -64,7 +107,10 @@ public class MapProcessor<IN, OUT> extends Flow<OUT> implements Processor<IN, OU
 
         // Forward signal to downstream Subscriber
         this.terminated = true;
-        downstreamSubscriber.onError(throwable);
+        final Subscriber<? super OUT> downstream = this.downstreamSubscriber;
+        if (downstream != null) {
+            downstream.onError(throwable);
+        }
     }
 
     @Override
@@ -73,18 +119,145 @@ public class MapProcessor<IN, OUT> extends Flow<OUT> implements Processor<IN, OU
 
         // Forward signal to downstream Subscriber
         this.terminated = true;
-        downstreamSubscriber.onComplete();
+        final Subscriber<? super OUT> downstream = this.downstreamSubscriber;
+        if (downstream != null) {
+            downstream.onComplete();
+        }
     }
 
     // Make ourselves a subscription in order to avoid creating a new subscription object
     @Override
     public void request(long l) {
-        this.subscriptionToUpstreamPublisher.request(l);
+        if (fusedUpstream == null) {
+            this.subscriptionToUpstreamPublisher.request(l);
+            return;
+        }
+
+        // The upstream is fused, so we are the ones emitting, with the same WIP guarded loop as ArraySubscription
+        if (l <= 0 && !canceled) {
+            cancelAndError(downstreamSubscriber, new IllegalArgumentException());
+        }
+
+        if (canceled) return;
+
+        long initialRequested = Demand.add(REQUESTED, this, l);
+
+        if (initialRequested > 0) {
+            return;
+        }
+
+        drainFused(l);
+    }
+
+    // Pulls from the fused upstream, one poll() per element: no onNext hop upstream and no atomic operation per element,
+    // the requested field is only touched when a whole batch of demand has been used up
+    void drainFused(long n) {
+        final QueueSubscription<? extends IN> upstream = this.fusedUpstream;
+        final Function<IN, OUT> mapper = this.mapper;
+        final Subscriber<? super OUT> downstream = this.downstreamSubscriber;
+        final ConditionalSubscriber<? super OUT> conditionalDownstream = this.conditionalDownstreamSubscriber;
+        long sent = 0;
+
+        while (true) {
+            while (sent != n) {
+                if (canceled) return;
+
+                // A failing poll() is the upstream's error, not the mapper's, it doesn't get a MapError event
+                IN in;
+                try {
+                    in = upstream.poll();
+                } catch (Throwable t) {
+                    cancelAndError(downstream, t);
+                    return;
+                }
+                if (in == null) {
+                    onComplete();
+                    return;
+                }
+
+                OUT apply;
+                try {
+                    apply = Objects.requireNonNull(mapper.apply(in));
+                } catch (Throwable t) {
+                    FlowEvents.mapError(mapper, t);
+                    cancelAndError(downstream, t);
+                    return;
+                }
+
+                if (conditionalDownstream == null) {
+                    downstream.onNext(apply);
+                    sent++;
+                } else if (conditionalDownstream.tryOnNext(apply)) {
+                    sent++; // Only elements the downstream kept count against its demand
+                }
+            }
+
+            if (canceled) return;
+
+            if (upstream.isEmpty()) {
+                onComplete(); // Completion doesn't need demand
+                return;
+            }
+
+            n = requested;
+            if (n == sent) {
+                n = Demand.produced(REQUESTED, this, sent);
+                if (n == 0) {
+                    return;
+                }
+                sent = 0;
+            }
+        }
     }
 
     @Override
     public void cancel() {
-
+        canceled = true;
         this.subscriptionToUpstreamPublisher.cancel();
+
+        // Like the sources, let go of the downstream so a canceled pipeline doesn't keep it reachable (§3.13)
+        this.downstreamSubscriber = null;
+        this.conditionalDownstreamSubscriber = null;
+    }
+
+    // cancel() releases the downstream, so the caller hands it in to still get the error there
+    // Cancellation is potentially asynchronous, the terminated flag drops whatever the upstream still sends
+    private void cancelAndError(Subscriber<? super OUT> downstream, Throwable t) {
+        cancel();
+        if (terminated || downstream == null) return;
+
+        this.terminated = true;
+        downstream.onError(t);
+    }
+
+    // We can pass fusion through if our own upstream is fused,
+    // the downstream then pulls mapped elements from us and our own request(n) loop is never used
+    @Override
+    public int requestFusion(int mode) {
+        if (fusedUpstream != null && (mode & SYNC) != 0) {
+            return SYNC;
+        }
+        return NONE;
+    }
+
+    @Override
+    public OUT poll() {
+        IN in = fusedUpstream.poll();
+        return in == null ? null : Objects.requireNonNull(mapper.apply(in));
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return fusedUpstream.isEmpty();
+    }
+
+    @Override
+    public int size() {
+        return fusedUpstream.size();
+    }
+
+    @Override
+    public void clear() {
+        fusedUpstream.clear();
     }
 }
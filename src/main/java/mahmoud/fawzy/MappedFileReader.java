@@ -0,0 +1,152 @@
+package mahmoud.fawzy;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Reads delimited records (lines by default) out of a memory mapped file, one record per next() call
+// Only a window of the file is mapped at a time, so files bigger than the 2GB limit of a single MappedByteBuffer work too:
+// when a record runs past the end of the window, a new window is mapped starting at that record
+// Bytes are only copied out of the mapping for the record being decoded, the delimiter scan reads the mapping in place
+//
+// The state of Flow.fromFile(..), the generate(..) emission loop only calls next() when there is demand
+final class MappedFileReader implements Closeable {
+    static final int DEFAULT_WINDOW_SIZE = 64 << 20;
+
+    private final FileChannel channel;
+    private final long size;
+    private final byte delimiter;
+    private final Charset charset;
+    private final boolean lines; // Drops the \r of \r\n line endings
+    private final int windowSize;
+
+    private MappedByteBuffer window; // Covers [windowStart, windowStart + windowLength) of the file
+    private long windowStart;
+    private int windowLength;
+
+    private long position; // File offset of the next record
+    private byte[] scratch = new byte[256]; // Reused for decoding, the String makes its own copy anyway
+
+    MappedFileReader(Path path, byte delimiter, Charset charset, boolean lines, int windowSize) {
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("windowSize must be positive but was " + windowSize);
+        }
+        this.delimiter = delimiter;
+        this.charset = charset;
+        this.lines = lines;
+        this.windowSize = windowSize;
+        try {
+            this.channel = FileChannel.open(path, StandardOpenOption.READ);
+            this.size = channel.size();
+            if (size > 0) {
+                map(0, windowSize);
+            }
+        } catch (IOException e) {
+            close();
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static Flow<String> flow(Path path, byte delimiter, Charset charset, boolean lines, int windowSize) {
+        return Flow.generate(() -> new MappedFileReader(path, delimiter, charset, lines, windowSize), (reader, sink) -> {
+            String record = reader.next();
+            if (record == null) {
+                sink.complete();
+            } else {
+                sink.next(record);
+            }
+            return reader;
+        }, MappedFileReader::close);
+    }
+
+    // Returns null at the end of the file, a trailing delimiter doesn't produce an empty last record
+    String next() {
+        if (position >= size) {
+            return null;
+        }
+
+        try {
+            while (true) {
+                int from = (int) (position - windowStart);
+                int to = indexOfDelimiter(from);
+                if (to >= 0) {
+                    String record = decode(from, to);
+                    position = windowStart + to + 1;
+                    return record;
+                }
+
+                if (windowStart + windowLength == size) {
+                    // Last record, not followed by a delimiter
+                    String record = decode(from, windowLength);
+                    position = size;
+                    return record;
+                }
+
+                // The record crosses the end of the window, move the window to it
+                // If it already starts the window, it doesn't fit at all and the window has to grow
+                int length = windowSize;
+                if (position == windowStart) {
+                    if (windowLength == Integer.MAX_VALUE) {
+                        throw new IOException("Record at offset " + position + " is longer than " + Integer.MAX_VALUE + " bytes");
+                    }
+                    length = (int) Math.min(2L * windowLength, Integer.MAX_VALUE);
+                }
+                map(position, length);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private int indexOfDelimiter(int from) {
+        final MappedByteBuffer window = this.window;
+        final int end = windowLength;
+        final byte delimiter = this.delimiter;
+        for (int i = from; i < end; i++) {
+            if (window.get(i) == delimiter) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private String decode(int from, int to) {
+        int length = to - from;
+        if (lines && length > 0 && window.get(to - 1) == '\r') {
+            length--;
+        }
+
+        byte[] scratch = this.scratch;
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+            this.scratch = scratch;
+        }
+        window.get(from, scratch, 0, length);
+        return new String(scratch, 0, length, charset);
+    }
+
+    // The previous window is simply dropped, a MappedByteBuffer is unmapped when it gets garbage collected
+    private void map(long start, int length) throws IOException {
+        length = (int) Math.min(length, size - start);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        windowStart = start;
+        windowLength = length;
+    }
+
+    @Override
+    public void close() {
+        window = null;
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException ignored) {
+            // Read only, nothing was lost
+        }
+    }
+}
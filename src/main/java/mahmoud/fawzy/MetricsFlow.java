@@ -0,0 +1,159 @@
+package mahmoud.fawzy;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+// Pass-through stage recording what flows through it into a FlowMetrics, signals and demand are forwarded untouched
+//
+// Per element cost: a plain counter increment and a volatile read of the demand (to notice the start of a stall),
+// one element out of the sample interval also pays for two System.nanoTime() calls around the downstream's onNext,
+// and the flush of the element counter into the shared LongAdder
+//
+// The stage doesn't offer fusion on purpose, fused elements are pulled with poll() and would never be counted
+public class MetricsFlow<T> extends Flow<T> {
+    private final Publisher<? extends T> upstreamPublisher;
+    private final FlowMetrics metrics;
+
+    public MetricsFlow(Publisher<? extends T> upstreamPublisher, FlowMetrics metrics) {
+        this.upstreamPublisher = upstreamPublisher;
+        this.metrics = metrics;
+    }
+
+    public FlowMetrics metrics() {
+        return metrics;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber) {
+        upstreamPublisher.subscribe(new MetricsSubscriber<>(subscriber, metrics));
+    }
+
+    static final class MetricsSubscriber<T> implements Subscriber<T>, Subscription {
+        static final VarHandle REQUESTED = VarHandles.find(MethodHandles.lookup(), MetricsSubscriber.class, "requested", long.class);
+        static final VarHandle STALL_START = VarHandles.find(MethodHandles.lookup(), MetricsSubscriber.class, "stallStart", long.class);
+
+        private final Subscriber<? super T> downstream;
+        private final FlowMetrics metrics;
+        private final int sampleMask;
+        private Subscription upstream;
+
+        private volatile long requested; // Total demand, capped at Long.MAX_VALUE, never decremented
+        private volatile long stallStart; // System.nanoTime() when demand ran out, 0 when not stalled
+
+        private long emitted; // Only touched by onNext
+        private volatile long flushed; // Part of emitted already added to metrics.elements, read by snapshots
+        private boolean terminated;
+
+        MetricsSubscriber(Subscriber<? super T> downstream, FlowMetrics metrics) {
+            this.downstream = downstream;
+            this.metrics = metrics;
+            this.sampleMask = metrics.sampleMask;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            upstream = subscription;
+            metrics.subscriptions.increment();
+            metrics.live.add(this);
+            downstream.onSubscribe(this);
+        }
+
+        @Override
+        public void onNext(T t) {
+            long e = ++emitted;
+
+            if ((e & sampleMask) == 0) {
+                long start = System.nanoTime();
+                downstream.onNext(t);
+                metrics.recordLatency(System.nanoTime() - start);
+                flush();
+            } else {
+                downstream.onNext(t);
+            }
+
+            // Checked after onNext, a downstream requesting from inside onNext never stalls
+            if (e == requested) {
+                stallStarted();
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            terminate();
+            metrics.errors.increment();
+            downstream.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            terminate();
+            metrics.completions.increment();
+            downstream.onComplete();
+        }
+
+        private void terminate() {
+            if (terminated) return;
+            terminated = true;
+            flush();
+            stallEnded();
+            metrics.live.remove(this);
+        }
+
+        private void flush() {
+            long e = emitted;
+            metrics.elements.add(e - flushed);
+            flushed = e;
+        }
+
+        @Override
+        public void request(long n) {
+            metrics.requestCalls.increment();
+            if (n > 0) {
+                Demand.add(REQUESTED, this, n);
+                stallEnded(); // Before forwarding, the upstream may emit everything and stall again right inside request(n)
+            }
+            upstream.request(n);
+        }
+
+        // Elements still sitting in onNext since the last flush are not counted, at most the sample interval - 1
+        @Override
+        public void cancel() {
+            if (metrics.live.remove(this)) {
+                stallEnded();
+                metrics.cancellations.increment();
+            }
+            upstream.cancel();
+        }
+
+        private void stallStarted() {
+            long now = System.nanoTime();
+            stallStart = now;
+            // A request(n) may have come in between our check and the set, it would have missed the stall
+            if (requested != emitted) {
+                stallEnded();
+            }
+        }
+
+        private void stallEnded() {
+            long start = stallStart;
+            if (start != 0 && STALL_START.compareAndSet(this, start, 0)) {
+                metrics.stallNanos.add(System.nanoTime() - start);
+            }
+        }
+
+        // Read by FlowMetrics.snapshot(), from any thread
+        long outstandingDemand() {
+            long r = requested;
+            return r == Long.MAX_VALUE ? r : Math.max(0, r - flushed);
+        }
+
+        long currentStallNanos(long now) {
+            long start = stallStart;
+            return start == 0 ? 0 : Math.max(0, now - start);
+        }
+    }
+}
@@ -0,0 +1,710 @@
+package mahmoud.fawzy;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+// A Flow split into rails, each rail is an independent sequence of signals with its own Subscriber
+// Rails created from an array or a range each walk their own index range, and every request(n) on a rail runs on
+// the ForkJoinPool, so the emission loops (and the map / filter stages on top of them) of different rails run in parallel
+// Only sources with random access can be split this way, which is why parallel(..) is declared on ArrayPublisher,
+// MapArrayPublisher and RangePublisher rather than on Flow
+// Use reduce(..) or sequential(..) to get back to a regular Flow
+public abstract class ParallelFlow<T> {
+
+    public abstract int parallelism();
+
+    // subscribers.length must be equal to parallelism(), subscribers[i] receives the signals of rail i
+    public abstract void subscribe(Subscriber<? super T>[] subscribers);
+
+    public <R> ParallelFlow<R> map(Function<T, R> mapper) {
+        return new MapRails<>(this, mapper);
+    }
+
+    public ParallelFlow<T> filter(Predicate<T> predicate) {
+        return new FilterRails<>(this, predicate);
+    }
+
+    // Reduces every rail on its own thread, then combines the rail results in rail order, so the reducer only needs to be
+    // associative, completes without a value if every rail is empty
+    public Flow<T> reduce(BinaryOperator<T> reducer) {
+        return new ReduceFlow<>(this, reducer);
+    }
+
+    // Merges the rails back in whatever order their elements arrive
+    public Flow<T> sequential() {
+        return sequential(false, Flow.DEFAULT_PREFETCH);
+    }
+
+    // ordered: every element of rail 0, then every element of rail 1 and so on, which for rails created from an array
+    // is the original array order, rails still run ahead up to prefetch elements each
+    public Flow<T> sequential(boolean ordered, int prefetch) {
+        if (prefetch <= 0) {
+            throw new IllegalArgumentException("prefetch must be positive but was " + prefetch);
+        }
+        return new MergeFlow<>(this, ordered, prefetch);
+    }
+
+    public static <T> ParallelFlow<T> fromArray(T[] array, int rails, ForkJoinPool pool) {
+        checkRails(rails);
+        return new ArrayRails<>(array, rails, pool);
+    }
+
+    // start, start + 1, ..., start + count - 1, see Flow.range(..)
+    public static ParallelFlow<Integer> fromRange(int start, int count, int rails, ForkJoinPool pool) {
+        checkRails(rails);
+        return new RangeRails(start, count, rails, pool);
+    }
+
+    private static void checkRails(int rails) {
+        if (rails <= 0) {
+            throw new IllegalArgumentException("rails must be positive but was " + rails);
+        }
+    }
+
+    // Reactive Streams doesn't let us throw from subscribe(..), so a wrong number of subscribers is signalled to each
+    boolean validate(Subscriber<?>[] subscribers) {
+        if (subscribers.length == parallelism()) {
+            return true;
+        }
+
+        IllegalArgumentException error = new IllegalArgumentException(
+                "parallelism is " + parallelism() + " but there are " + subscribers.length + " subscribers");
+        for (Subscriber<?> subscriber : subscribers) {
+            subscriber.onSubscribe(EmptySubscription.INSTANCE);
+            subscriber.onError(error);
+        }
+        return false;
+    }
+
+    // Contiguous, evenly sized index ranges of a source with random access, nothing is copied
+    abstract static class SplitRails<T> extends ParallelFlow<T> {
+        private final long length;
+        private final int rails;
+        private final ForkJoinPool pool;
+
+        SplitRails(long length, int rails, ForkJoinPool pool) {
+            this.length = length;
+            this.rails = rails;
+            this.pool = pool;
+        }
+
+        // The subscription emitting indexes from to to - 1 of the source
+        abstract Subscription rail(Subscriber<? super T> subscriber, long from, long to);
+
+        @Override
+        public int parallelism() {
+            return rails;
+        }
+
+        @Override
+        public void subscribe(Subscriber<? super T>[] subscribers) {
+            if (!validate(subscribers)) return;
+
+            for (int i = 0; i < rails; i++) {
+                long from = i * length / rails;
+                long to = (i + 1) * length / rails;
+                subscribers[i].onSubscribe(new RailSubscription(rail(subscribers[i], from, to), pool));
+            }
+        }
+    }
+
+    static final class ArrayRails<T> extends SplitRails<T> {
+        private final T[] array;
+
+        ArrayRails(T[] array, int rails, ForkJoinPool pool) {
+            super(array.length, rails, pool);
+            this.array = array;
+        }
+
+        @Override
+        Subscription rail(Subscriber<? super T> subscriber, long from, long to) {
+            return new ArrayPublisher.ArraySubscription<>(subscriber, array, (int) from, (int) to);
+        }
+    }
+
+    static final class RangeRails extends SplitRails<Integer> {
+        private final int start;
+
+        RangeRails(int start, int count, int rails, ForkJoinPool pool) {
+            super(count, rails, pool);
+            this.start = start;
+        }
+
+        @Override
+        Subscription rail(Subscriber<? super Integer> subscriber, long from, long to) {
+            return new RangePublisher.RangeSubscription(subscriber, start + from, start + to);
+        }
+    }
+
+    // Moves request(n) of a rail to the pool, unless it comes from the thread running this very rail's emission loop
+    // (a request(n) from inside its onNext, the loop picks the demand up without any hop)
+    // Any other thread, another rail's worker merging in sequential(..) for example, goes through the pool as well:
+    // run inline, the emission loop of this rail and its map / filter stages would move onto that thread and
+    // the rails would end up taking turns on it instead of running side by side
+    static final class RailSubscription implements Subscription {
+        private final Subscription rail;
+        private final ForkJoinPool pool;
+
+        // The thread inside emit(n), null otherwise. A plain field is enough, like LimitRateSubscriber's drainThread:
+        // a thread only ever finds itself in here while it's actually inside emit(n)
+        private Thread emitter;
+
+        RailSubscription(Subscription rail, ForkJoinPool pool) {
+            this.rail = rail;
+            this.pool = pool;
+        }
+
+        @Override
+        public void request(long n) {
+            if (emitter == Thread.currentThread()) {
+                rail.request(n);
+            } else {
+                pool.execute(() -> emit(n));
+            }
+        }
+
+        private void emit(long n) {
+            Thread current = Thread.currentThread();
+            emitter = current;
+            try {
+                rail.request(n);
+            } finally {
+                if (emitter == current) {
+                    emitter = null; // Unless another worker took over in the meantime
+                }
+            }
+        }
+
+        @Override
+        public void cancel() {
+            rail.cancel();
+        }
+    }
+
+    static final class MapRails<T, R> extends ParallelFlow<R> {
+        private final ParallelFlow<T> upstream;
+        private final Function<T, R> mapper;
+
+        MapRails(ParallelFlow<T> upstream, Function<T, R> mapper) {
+            this.upstream = upstream;
+            this.mapper = mapper;
+        }
+
+        @Override
+        public int parallelism() {
+            return upstream.parallelism();
+        }
+
+        // Consecutive maps compose into one stage per rail
+        @Override
+        public <V> ParallelFlow<V> map(Function<R, V> mapper) {
+            return new MapRails<>(upstream, MapFlow.fuse(this.mapper, mapper));
+        }
+
+        @Override
+        public void subscribe(Subscriber<? super R>[] subscribers) {
+            if (!validate(subscribers)) return;
+
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            Subscriber<? super T>[] rails = new Subscriber[subscribers.length];
+            for (int i = 0; i < rails.length; i++) {
+                rails[i] = new MapRailSubscriber<>(subscribers[i], mapper);
+            }
+            upstream.subscribe(rails);
+        }
+    }
+
+    // Same as MapProcessor's non fused path, conditional so that a filter after the map keeps the array source looping
+    static final class MapRailSubscriber<T, R> implements ConditionalSubscriber<T>, Subscription {
+        private final Subscriber<? super R> downstream;
+        private final ConditionalSubscriber<? super R> conditionalDownstream;
+        private final Function<T, R> mapper;
+        private Subscription upstream;
+        private boolean terminated;
+
+        @SuppressWarnings("unchecked")
+        MapRailSubscriber(Subscriber<? super R> downstream, Function<T, R> mapper) {
+            this.downstream = downstream;
+            this.conditionalDownstream = downstream instanceof ConditionalSubscriber
+                    ? (ConditionalSubscriber<? super R>) downstream
+                    : null;
+            this.mapper = mapper;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            upstream = subscription;
+            downstream.onSubscribe(this);
+        }
+
+        @Override
+        public void onNext(T t) {
+            if (!tryOnNext(t)) {
+                upstream.request(1); // Dropped further down, the upstream isn't conditional so it needs a replacement request
+            }
+        }
+
+        @Override
+        public boolean tryOnNext(T t) {
+            if (terminated) return true;
+
+            R mapped;
+            try {
+                mapped = Objects.requireNonNull(mapper.apply(t));
+            } catch (Throwable e) {
+                cancel();
+                onError(e);
+                return true;
+            }
+
+            if (conditionalDownstream != null) {
+                return conditionalDownstream.tryOnNext(mapped);
+            }
+
+            downstream.onNext(mapped);
+            return true;
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            if (terminated) return;
+            terminated = true;
+            downstream.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            if (terminated) return;
+            terminated = true;
+            downstream.onComplete();
+        }
+
+        @Override
+        public void request(long n) {
+            upstream.request(n);
+        }
+
+        @Override
+        public void cancel() {
+            upstream.cancel();
+        }
+    }
+
+    static final class FilterRails<T> extends ParallelFlow<T> {
+        private final ParallelFlow<T> upstream;
+        private final Predicate<T> predicate;
+
+        FilterRails(ParallelFlow<T> upstream, Predicate<T> predicate) {
+            this.upstream = upstream;
+            this.predicate = predicate;
+        }
+
+        @Override
+        public int parallelism() {
+            return upstream.parallelism();
+        }
+
+        @Override
+        public void subscribe(Subscriber<? super T>[] subscribers) {
+            if (!validate(subscribers)) return;
+
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            Subscriber<? super T>[] rails = new Subscriber[subscribers.length];
+            for (int i = 0; i < rails.length; i++) {
+                rails[i] = new FilterFlow.FilterSubscriber<>(subscribers[i], predicate);
+            }
+            upstream.subscribe(rails);
+        }
+    }
+
+    static final class ReduceFlow<T> extends Flow<T> {
+        private final ParallelFlow<T> upstream;
+        private final BinaryOperator<T> reducer;
+
+        ReduceFlow(ParallelFlow<T> upstream, BinaryOperator<T> reducer) {
+            this.upstream = upstream;
+            this.reducer = reducer;
+        }
+
+        @Override
+        public void subscribe(Subscriber<? super T> subscriber) {
+            ReduceCoordinator<T> coordinator = new ReduceCoordinator<>(subscriber, upstream.parallelism(), reducer);
+            subscriber.onSubscribe(coordinator);
+            upstream.subscribe(coordinator.rails);
+        }
+    }
+
+    static final class ReduceCoordinator<T> extends SingleValueSubscription<T> {
+        static final VarHandle REMAINING = VarHandles.find(MethodHandles.lookup(), ReduceCoordinator.class, "remaining", int.class);
+
+        final ReduceRailSubscriber<T>[] rails;
+        private final BinaryOperator<T> reducer;
+        private final Object[] results; // One slot per rail, published by the remaining counter
+        private volatile int remaining;
+
+        ReduceCoordinator(Subscriber<? super T> downstream, int parallelism, BinaryOperator<T> reducer) {
+            super(downstream);
+            this.reducer = reducer;
+            this.results = new Object[parallelism];
+            this.remaining = parallelism;
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            ReduceRailSubscriber<T>[] rails = new ReduceRailSubscriber[parallelism];
+            this.rails = rails;
+            for (int i = 0; i < parallelism; i++) {
+                rails[i] = new ReduceRailSubscriber<>(this, i, reducer);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        void railDone(int rail, T value) {
+            results[rail] = value;
+            if ((int) REMAINING.getAndAdd(this, -1) != 1) {
+                return;
+            }
+
+            // Last rail to finish combines, in rail order
+            T result = null;
+            try {
+                for (Object railResult : results) {
+                    if (railResult != null) {
+                        result = result == null ? (T) railResult : Objects.requireNonNull(reducer.apply(result, (T) railResult));
+                    }
+                }
+            } catch (Throwable e) {
+                error(e);
+                return;
+            }
+            complete(result);
+        }
+
+        void railError(Throwable throwable) {
+            cancelUpstream();
+            error(throwable);
+        }
+
+        @Override
+        void cancelUpstream() {
+            for (ReduceRailSubscriber<T> rail : rails) {
+                rail.cancel();
+            }
+        }
+    }
+
+    static final class ReduceRailSubscriber<T> implements Subscriber<T> {
+        private final ReduceCoordinator<T> parent;
+        private final int index;
+        private final BinaryOperator<T> reducer;
+        private volatile Subscription upstream;
+        private volatile boolean canceled;
+        private T value;
+        private boolean terminated;
+
+        ReduceRailSubscriber(ReduceCoordinator<T> parent, int index, BinaryOperator<T> reducer) {
+            this.parent = parent;
+            this.index = index;
+            this.reducer = reducer;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            upstream = subscription;
+            if (canceled) {
+                subscription.cancel();
+                return;
+            }
+            subscription.request(Long.MAX_VALUE); // Unbounded, the array rail takes its fast path
+        }
+
+        @Override
+        public void onNext(T t) {
+            if (terminated) return;
+
+            T current = value;
+            if (current == null) {
+                value = t;
+                return;
+            }
+
+            try {
+                value = Objects.requireNonNull(reducer.apply(current, t));
+            } catch (Throwable e) {
+                upstream.cancel();
+                onError(e);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            if (terminated) return;
+            terminated = true;
+            parent.railError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            if (terminated) return;
+            terminated = true;
+            parent.railDone(index, value);
+            value = null;
+        }
+
+        void cancel() {
+            canceled = true;
+            Subscription s = upstream;
+            if (s != null) {
+                s.cancel();
+            }
+        }
+    }
+
+    static final class MergeFlow<T> extends Flow<T> {
+        private final ParallelFlow<T> upstream;
+        private final boolean ordered;
+        private final int prefetch;
+
+        MergeFlow(ParallelFlow<T> upstream, boolean ordered, int prefetch) {
+            this.upstream = upstream;
+            this.ordered = ordered;
+            this.prefetch = prefetch;
+        }
+
+        @Override
+        public void subscribe(Subscriber<? super T> subscriber) {
+            MergeCoordinator<T> coordinator = new MergeCoordinator<>(subscriber, upstream.parallelism(), ordered, prefetch);
+            subscriber.onSubscribe(coordinator);
+            upstream.subscribe(coordinator.rails);
+        }
+    }
+
+    // Every rail fills its own SpscArrayQueue, a single WIP guarded drain loop (like PublishOnSubscriber's) empties them
+    static final class MergeCoordinator<T> implements Subscription {
+        static final VarHandle WIP = VarHandles.find(MethodHandles.lookup(), MergeCoordinator.class, "wip", int.class);
+        static final VarHandle REQUESTED = VarHandles.find(MethodHandles.lookup(), MergeCoordinator.class, "requested", long.class);
+        static final VarHandle ERROR = VarHandles.find(MethodHandles.lookup(), MergeCoordinator.class, "error", Throwable.class);
+
+        final MergeRailSubscriber<T>[] rails;
+        private final Subscriber<? super T> downstream;
+        private final boolean ordered;
+        private volatile int wip;
+        private volatile long requested;
+        private volatile Throwable error;
+        private volatile boolean canceled;
+        private int current; // Ordered mode, the rail being drained, only touched by the drain loop
+
+        MergeCoordinator(Subscriber<? super T> downstream, int parallelism, boolean ordered, int prefetch) {
+            this.downstream = downstream;
+            this.ordered = ordered;
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            MergeRailSubscriber<T>[] rails = new MergeRailSubscriber[parallelism];
+            this.rails = rails;
+            for (int i = 0; i < parallelism; i++) {
+                rails[i] = new MergeRailSubscriber<>(this, prefetch);
+            }
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                onError(new IllegalArgumentException());
+                return;
+            }
+            Demand.add(REQUESTED, this, n);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            if (canceled) return;
+            canceled = true;
+            cancelRails();
+            if ((int) WIP.getAndAdd(this, 1) == 0) {
+                clearRails();
+            }
+        }
+
+        void onError(Throwable throwable) {
+            if (ERROR.compareAndSet(this, null, throwable)) {
+                cancelRails();
+                drain();
+            }
+        }
+
+        private void cancelRails() {
+            for (MergeRailSubscriber<T> rail : rails) {
+                rail.cancel();
+            }
+        }
+
+        private void clearRails() {
+            for (MergeRailSubscriber<T> rail : rails) {
+                rail.queue.clear();
+            }
+        }
+
+        void drain() {
+            if ((int) WIP.getAndAdd(this, 1) != 0) {
+                return;
+            }
+
+            final MergeRailSubscriber<T>[] rails = this.rails;
+            final Subscriber<? super T> downstream = this.downstream;
+            int missed = 1;
+
+            while (true) {
+                long r = requested;
+                long emitted = 0;
+
+                while (emitted != r) {
+                    if (checkCanceledOrFailed()) return;
+
+                    T element = null;
+                    if (ordered) {
+                        // Skip the rails that are done and empty, then only take from the current one
+                        while (current < rails.length) {
+                            MergeRailSubscriber<T> rail = rails[current];
+                            boolean done = rail.done;
+                            element = rail.queue.poll();
+                            if (element != null) {
+                                rail.consumedOne();
+                                break;
+                            }
+                            if (!done) break;
+                            current++;
+                        }
+                    } else {
+                        // One element from the first rail that has one, starting after the rail we took from last time
+                        for (int k = 0; k < rails.length; k++) {
+                            int i = current;
+                            current = i + 1 == rails.length ? 0 : i + 1;
+                            element = rails[i].queue.poll();
+                            if (element != null) {
+                                rails[i].consumedOne();
+                                break;
+                            }
+                        }
+                    }
+
+                    if (element == null) {
+                        break;
+                    }
+
+                    downstream.onNext(element);
+                    emitted++;
+                }
+
+                if (checkCanceledOrFailed() || checkCompleted()) return;
+
+                if (emitted != 0 && r != Long.MAX_VALUE) {
+                    Demand.produced(REQUESTED, this, emitted);
+                }
+
+                missed = (int) WIP.getAndAdd(this, -missed) - missed;
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        // Errors cut ahead of queued elements
+        private boolean checkCanceledOrFailed() {
+            if (canceled) {
+                clearRails();
+                return true;
+            }
+
+            Throwable e = error;
+            if (e != null) {
+                clearRails();
+                downstream.onError(e);
+                return true;
+            }
+
+            return false;
+        }
+
+        // Complete once every rail is done and its queue empty, doesn't need demand
+        private boolean checkCompleted() {
+            for (MergeRailSubscriber<T> rail : rails) {
+                if (!rail.done || !rail.queue.isEmpty()) {
+                    return false;
+                }
+            }
+
+            downstream.onComplete();
+            return true;
+        }
+    }
+
+    static final class MergeRailSubscriber<T> implements Subscriber<T> {
+        private final MergeCoordinator<T> parent;
+        private final int prefetch;
+        private final int limit;
+        final SpscArrayQueue<T> queue;
+        volatile boolean done;
+        private volatile Subscription upstream;
+        private volatile boolean canceled;
+        private int consumed; // Only touched by the drain loop
+
+        MergeRailSubscriber(MergeCoordinator<T> parent, int prefetch) {
+            this.parent = parent;
+            this.prefetch = prefetch;
+            this.limit = prefetch - (prefetch >> 2);
+            this.queue = new SpscArrayQueue<>(prefetch);
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            upstream = subscription;
+            if (canceled) {
+                subscription.cancel();
+                return;
+            }
+            subscription.request(prefetch);
+        }
+
+        @Override
+        public void onNext(T t) {
+            if (!queue.offer(t)) {
+                upstream.cancel();
+                onError(new IllegalStateException("Queue is full, the rail ignored backpressure"));
+                return;
+            }
+            parent.drain();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            parent.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            done = true;
+            parent.drain();
+        }
+
+        // Called by the drain loop for every element taken from our queue, replenishes in batches of 75% of prefetch
+        void consumedOne() {
+            if (++consumed == limit) {
+                consumed = 0;
+                upstream.request(limit);
+            }
+        }
+
+        void cancel() {
+            canceled = true;
+            Subscription s = upstream;
+            if (s != null) {
+                s.cancel();
+            }
+        }
+    }
+}
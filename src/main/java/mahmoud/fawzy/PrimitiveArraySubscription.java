@@ -0,0 +1,130 @@
+package mahmoud.fawzy;
+
+import org.reactivestreams.Subscription;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+// The demand accounting of IntFlow.fromArray(..), LongFlow.fromArray(..) and DoubleFlow.fromArray(..),
+// the same fast path / slow path as ArrayPublisher.ArraySubscription, minus the null checks (there are no nulls in a int[])
+// The subclasses only hold the array and loop over it in emit(..), like the subclasses of IndexedSubscription,
+// and for the same reason: the onNext(..) call of each array type stays monomorphic
+abstract class PrimitiveArraySubscription<S extends PrimitiveSubscriber> implements Subscription {
+    static final VarHandle REQUESTED = VarHandles.find(MethodHandles.lookup(), PrimitiveArraySubscription.class, "requested", long.class);
+
+    private S subscriber; // Released by cancel(), like ArraySubscription's
+    final boolean conditional; // The subscriber is the Conditional flavour of its type, emitConditional(..) is used
+    volatile boolean canceled;
+    final int end;
+    int index; // Published through the requested field, see ArraySubscription
+    volatile long requested;
+
+    PrimitiveArraySubscription(S subscriber, boolean conditional, int end) {
+        this.subscriber = subscriber;
+        this.conditional = conditional;
+        this.end = end;
+    }
+
+    // Emits the values from index from to index to - 1 and returns to, or -1 when canceled in between
+    abstract int emit(S subscriber, int from, int to);
+
+    // The same with tryOnNext(..), stops early once wanted values were accepted
+    // Returns the index it got to and leaves the number of accepted values in accepted, or returns -1 like emit(..)
+    abstract int emitConditional(S subscriber, int from, int to, long wanted);
+
+    long accepted; // Written by emitConditional(..), read right after it returns by the same thread
+
+    // Drops the array, called by cancel() after canceled is set
+    abstract void release();
+
+    @Override
+    public final void request(long n) {
+        if (n <= 0 && !canceled) {
+            S subscriber = this.subscriber;
+            cancel();
+            if (subscriber != null) {
+                subscriber.onError(new IllegalArgumentException());
+            }
+        }
+
+        if (canceled) return;
+
+        if (Demand.add(REQUESTED, this, n) > 0) {
+            return;
+        }
+
+        if (n == Long.MAX_VALUE) {
+            fastPath();
+        } else {
+            slowPath(n);
+        }
+    }
+
+    final void fastPath() {
+        final S subscriber = this.subscriber;
+        if (subscriber == null) return; // Canceled, see cancel()
+
+        int reached = conditional
+                ? emitConditional(subscriber, index, end, Long.MAX_VALUE)
+                : emit(subscriber, index, end);
+        if (reached < 0 || canceled) return;
+
+        subscriber.onComplete();
+    }
+
+    // Bounded demand, a conditional subscriber only consumes demand for the values it accepted,
+    // the dropped ones are skipped over in the same batch
+    final void slowPath(long n) {
+        final int end = this.end;
+        final S subscriber = this.subscriber;
+        if (subscriber == null) return; // Canceled, see cancel()
+        int i = index;
+        long sent = 0;
+
+        while (true) {
+            if (sent < n && i < end) {
+                int reached;
+                if (conditional) {
+                    reached = emitConditional(subscriber, i, end, n - sent);
+                    if (reached < 0) return;
+                    sent += accepted;
+                } else {
+                    reached = emit(subscriber, i, n - sent >= end - i ? end : i + (int) (n - sent));
+                    if (reached < 0) return;
+                    sent += reached - i;
+                }
+                i = reached;
+            }
+
+            if (canceled) return;
+
+            if (i == end) {
+                subscriber.onComplete();
+                return;
+            }
+
+            n = requested;
+            if (n == Long.MAX_VALUE) {
+                index = i;
+                fastPath();
+                return;
+            }
+
+            if (n == sent) {
+                index = i;
+                n = Demand.produced(REQUESTED, this, sent);
+                if (n == 0) {
+                    return;
+                }
+                sent = 0;
+            }
+        }
+    }
+
+    @Override
+    public final void cancel() {
+        canceled = true;
+        this.subscriber = null;
+        release();
+    }
+}
@@ -0,0 +1,107 @@
+package mahmoud.fawzy;
+
+import org.reactivestreams.Subscription;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+// The reduce(..) stage of the primitive flows, without the accumulator that the subclass of each value type holds
+// Consumes the upstream with unbounded demand (the fast path of the array source), the single result is only
+// emitted once both the upstream completed and the downstream requested, whichever comes last emits it
+abstract class PrimitiveReduceSubscriber<D extends PrimitiveSubscriber> implements PrimitiveSubscriber, Subscription {
+    static final VarHandle STATE = VarHandles.find(MethodHandles.lookup(), PrimitiveReduceSubscriber.class, "state", int.class);
+
+    static final int NO_REQUEST_NO_VALUE = 0;
+    static final int HAS_REQUEST = 1;
+    static final int HAS_VALUE = 2;
+    static final int DONE = 3;
+
+    final D downstream;
+    private volatile int state; // The subclass' accumulator is published to the requesting thread through it
+    Subscription upstream;
+    boolean terminated;
+
+    PrimitiveReduceSubscriber(D downstream) {
+        this.downstream = downstream;
+    }
+
+    // Sends the accumulator then onComplete() downstream, called once
+    abstract void emit();
+
+    // The reducer threw
+    final void fail(Throwable throwable) {
+        upstream.cancel();
+        onError(throwable);
+    }
+
+    @Override
+    public final void onSubscribe(Subscription subscription) {
+        upstream = subscription;
+        downstream.onSubscribe(this);
+        subscription.request(Long.MAX_VALUE);
+    }
+
+    @Override
+    public final void onError(Throwable throwable) {
+        if (terminated) return;
+        terminated = true;
+        if ((int) STATE.getAndSet(this, DONE) != DONE) {
+            downstream.onError(throwable);
+        }
+    }
+
+    @Override
+    public final void onComplete() {
+        if (terminated) return;
+        terminated = true;
+
+        while (true) {
+            int current = state;
+            if (current == HAS_REQUEST) {
+                if (STATE.compareAndSet(this, HAS_REQUEST, DONE)) {
+                    emit();
+                    return;
+                }
+            } else if (current == NO_REQUEST_NO_VALUE) {
+                if (STATE.compareAndSet(this, NO_REQUEST_NO_VALUE, HAS_VALUE)) {
+                    return;
+                }
+            } else {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public final void request(long n) {
+        if (n <= 0) {
+            if ((int) STATE.getAndSet(this, DONE) != DONE) {
+                upstream.cancel();
+                downstream.onError(new IllegalArgumentException());
+            }
+            return;
+        }
+
+        while (true) {
+            int current = state;
+            if (current == HAS_VALUE) {
+                if (STATE.compareAndSet(this, HAS_VALUE, DONE)) {
+                    emit();
+                    return;
+                }
+            } else if (current == NO_REQUEST_NO_VALUE) {
+                if (STATE.compareAndSet(this, NO_REQUEST_NO_VALUE, HAS_REQUEST)) {
+                    return;
+                }
+            } else {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public final void cancel() {
+        state = DONE;
+        upstream.cancel();
+    }
+}
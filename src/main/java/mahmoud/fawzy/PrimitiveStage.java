@@ -0,0 +1,52 @@
+package mahmoud.fawzy;
+
+import org.reactivestreams.Subscription;
+
+// What the map and filter stages of the primitive flows have in common, whatever the value type:
+// the stage is the Subscription of its downstream, forwards request(n) and cancel() as they are,
+// and lets a single terminal signal through
+abstract class PrimitiveStage<D extends PrimitiveSubscriber> implements PrimitiveSubscriber, Subscription {
+    final D downstream;
+    Subscription upstream;
+    boolean terminated;
+
+    PrimitiveStage(D downstream) {
+        this.downstream = downstream;
+    }
+
+    @Override
+    public final void onSubscribe(Subscription subscription) {
+        upstream = subscription;
+        downstream.onSubscribe(this);
+    }
+
+    // The mapper or predicate threw
+    final void fail(Throwable throwable) {
+        cancel();
+        onError(throwable);
+    }
+
+    @Override
+    public final void onError(Throwable throwable) {
+        if (terminated) return;
+        terminated = true;
+        downstream.onError(throwable);
+    }
+
+    @Override
+    public final void onComplete() {
+        if (terminated) return;
+        terminated = true;
+        downstream.onComplete();
+    }
+
+    @Override
+    public final void request(long n) {
+        upstream.request(n);
+    }
+
+    @Override
+    public final void cancel() {
+        upstream.cancel();
+    }
+}
@@ -0,0 +1,15 @@
+package mahmoud.fawzy;
+
+import org.reactivestreams.Subscription;
+
+// The signals IntSubscriber, LongSubscriber and DoubleSubscriber have in common, everything but onNext
+// The demand accounting and the operator plumbing of the three primitive flows are written once against it,
+// see PrimitiveArraySubscription, PrimitiveStage, PrimitiveToObjStage and PrimitiveReduceSubscriber
+public interface PrimitiveSubscriber {
+
+    void onSubscribe(Subscription subscription);
+
+    void onError(Throwable throwable);
+
+    void onComplete();
+}
@@ -0,0 +1,52 @@
+package mahmoud.fawzy;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+// PrimitiveStage for the mapToObj(..) of the primitive flows, the bridge back to Flow: the same plumbing,
+// but the downstream is a regular Subscriber
+abstract class PrimitiveToObjStage<R> implements PrimitiveSubscriber, Subscription {
+    final Subscriber<? super R> downstream;
+    Subscription upstream;
+    boolean terminated;
+
+    PrimitiveToObjStage(Subscriber<? super R> downstream) {
+        this.downstream = downstream;
+    }
+
+    @Override
+    public final void onSubscribe(Subscription subscription) {
+        upstream = subscription;
+        downstream.onSubscribe(this);
+    }
+
+    // The mapper threw or returned null
+    final void fail(Throwable throwable) {
+        cancel();
+        onError(throwable);
+    }
+
+    @Override
+    public final void onError(Throwable throwable) {
+        if (terminated) return;
+        terminated = true;
+        downstream.onError(throwable);
+    }
+
+    @Override
+    public final void onComplete() {
+        if (terminated) return;
+        terminated = true;
+        downstream.onComplete();
+    }
+
+    @Override
+    public final void request(long n) {
+        upstream.request(n);
+    }
+
+    @Override
+    public final void cancel() {
+        upstream.cancel();
+    }
+}
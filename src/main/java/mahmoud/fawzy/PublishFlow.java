@@ -0,0 +1,398 @@
+package mahmoud.fawzy;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+// Multicast: a single subscription to the upstream, whatever it emits goes to every current subscriber
+// The elements are stored once, in a ring buffer shared by all subscribers, every subscriber only has a cursor into it
+// and its own demand. Ten subscribers cost one upstream pipeline and ten cursors instead of ten pipelines
+//
+// The upstream is only asked for more once the slowest subscriber moved past the oldest elements,
+// so the connection goes at the pace of the slowest subscriber and never holds more than prefetch elements
+//
+// publish() connects on connect(), share() connects on the first subscriber and cancels the upstream when the last one leaves.
+// A connection ends with the upstream, later subscribers wait for the next connection (with share() they start it).
+// Subscribers joining a running connection start at the oldest element still in the ring
+//
+// One drain loop serves all the subscribers, on whichever thread calls onNext or request(n): a subscriber that is slow
+// in onNext holds up the others as well, put a publishOn(..) behind it to give it its own thread
+public class PublishFlow<T> extends Flow<T> {
+    static final VarHandle CONNECTION = VarHandles.find(MethodHandles.lookup(), PublishFlow.class, "connection", PublishConnection.class);
+
+    private final Publisher<? extends T> upstreamPublisher;
+    private final int prefetch;
+    private final boolean refCount;
+
+    // The current connection, replaced by a fresh one once it terminated
+    private volatile PublishConnection<T> connection;
+
+    public PublishFlow(Publisher<? extends T> upstreamPublisher, int prefetch, boolean refCount) {
+        if (prefetch <= 0) {
+            throw new IllegalArgumentException("prefetch must be positive but was " + prefetch);
+        }
+        this.upstreamPublisher = upstreamPublisher;
+        this.prefetch = prefetch;
+        this.refCount = refCount;
+    }
+
+    // Subscribes the current connection to the upstream, does nothing if it already is
+    public void connect() {
+        current().connect();
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber) {
+        PublishInner<T> inner = new PublishInner<>(subscriber);
+        // onSubscribe before the subscriber is added, so it can't get onComplete first
+        subscriber.onSubscribe(inner);
+
+        while (true) {
+            PublishConnection<T> current = current();
+            if (current.add(inner)) {
+                if (inner.canceled) {
+                    current.remove(inner); // Canceled in onSubscribe
+                } else if (refCount) {
+                    current.connect();
+                }
+                current.drain();
+                return;
+            }
+            // The connection terminated in the meantime, the next one gets the subscriber
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private PublishConnection<T> current() {
+        while (true) {
+            PublishConnection<T> current = connection;
+            if (current != null && !current.isTerminated()) {
+                return current;
+            }
+
+            PublishConnection<T> fresh = new PublishConnection<>(upstreamPublisher, prefetch, refCount);
+            if (CONNECTION.compareAndSet(this, current, fresh)) {
+                return fresh;
+            }
+        }
+    }
+
+    static final class PublishConnection<T> implements Subscriber<T> {
+        static final VarHandle SUBSCRIBERS = VarHandles.find(MethodHandles.lookup(), PublishConnection.class, "subscribers", PublishInner[].class);
+        static final VarHandle WIP = VarHandles.find(MethodHandles.lookup(), PublishConnection.class, "wip", int.class);
+        static final VarHandle CONNECTED = VarHandles.find(MethodHandles.lookup(), PublishConnection.class, "connected", boolean.class);
+
+        @SuppressWarnings("rawtypes")
+        private static final PublishInner[] EMPTY = new PublishInner[0];
+        @SuppressWarnings("rawtypes")
+        private static final PublishInner[] TERMINATED = new PublishInner[0];
+
+        private final Publisher<? extends T> upstreamPublisher;
+        private final boolean refCount;
+        private final int prefetch;
+        private final int limit;
+
+        // Element i lives in ring[i & mask] from the time the producer index passes it
+        // until the consumer index (the slowest cursor) does
+        private final Object[] ring;
+        private final int mask;
+        private volatile long producerIndex; // Only written by onNext
+        private volatile long consumerIndex; // Only written by the drain loop
+
+        // Copy on write, written by subscribe (add), cancel and the drain loop (remove), read by the drain loop
+        private volatile PublishInner<T>[] subscribers;
+        private volatile int wip;
+        private volatile boolean connected;
+
+        private volatile Subscription upstream;
+        private volatile boolean done;
+        private volatile boolean canceled;
+        private Throwable error; // Published through the done field
+
+        private long consumed; // Only touched by the drain loop
+
+        @SuppressWarnings("unchecked")
+        PublishConnection(Publisher<? extends T> upstreamPublisher, int prefetch, boolean refCount) {
+            this.upstreamPublisher = upstreamPublisher;
+            this.refCount = refCount;
+            this.prefetch = prefetch;
+            // Ask for more once 75% of the prefetched elements have been consumed by everyone, like PublishOnFlow
+            this.limit = prefetch - (prefetch >> 2);
+            this.ring = new Object[SpscArrayQueue.roundToPowerOfTwo(prefetch)];
+            this.mask = ring.length - 1;
+            this.subscribers = EMPTY;
+        }
+
+        void connect() {
+            if (!connected && CONNECTED.compareAndSet(this, false, true)) {
+                upstreamPublisher.subscribe(this);
+            }
+        }
+
+        boolean isTerminated() {
+            return subscribers == TERMINATED;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            upstream = subscription;
+            // Read after the write above, so either we see the cancel or disconnect() sees our upstream
+            if (canceled) {
+                subscription.cancel();
+                return;
+            }
+            subscription.request(prefetch);
+        }
+
+        @Override
+        public void onNext(T t) {
+            if (done) return;
+
+            long index = producerIndex;
+            if (index - consumerIndex == ring.length) {
+                // Can't happen with a well behaved upstream, we never request more than the ring can hold
+                upstream.cancel();
+                error = new IllegalStateException("Ring buffer is full, the upstream ignored backpressure");
+                done = true;
+            } else {
+                ring[(int) index & mask] = t;
+                producerIndex = index + 1; // Publishes the slot to the drain loop
+            }
+            drain();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            if (done) return;
+            error = throwable;
+            done = true;
+            drain();
+        }
+
+        @Override
+        public void onComplete() {
+            if (done) return;
+            done = true;
+            drain();
+        }
+
+        boolean add(PublishInner<T> inner) {
+            while (true) {
+                PublishInner<T>[] current = subscribers;
+                if (current == TERMINATED) {
+                    return false;
+                }
+                PublishInner<T>[] next = Arrays.copyOf(current, current.length + 1);
+                next[current.length] = inner;
+                inner.connection = this;
+                if (SUBSCRIBERS.compareAndSet(this, current, next)) {
+                    return true;
+                }
+            }
+        }
+
+        // With share() the last subscriber leaving ends the connection and cancels the upstream
+        @SuppressWarnings("unchecked")
+        void remove(PublishInner<T> inner) {
+            while (true) {
+                PublishInner<T>[] current = subscribers;
+                int index = -1;
+                for (int i = 0; i < current.length; i++) {
+                    if (current[i] == inner) {
+                        index = i;
+                        break;
+                    }
+                }
+                if (index < 0) {
+                    return; // Already removed or terminated
+                }
+
+                PublishInner<T>[] next;
+                if (current.length == 1) {
+                    next = refCount ? TERMINATED : EMPTY;
+                } else {
+                    next = Arrays.copyOf(current, current.length - 1); // Typed like current, and already holds [0, index)
+                    System.arraycopy(current, index + 1, next, index, current.length - index - 1);
+                }
+                if (SUBSCRIBERS.compareAndSet(this, current, next)) {
+                    if (next == TERMINATED) {
+                        disconnect();
+                    }
+                    return;
+                }
+            }
+        }
+
+        private void disconnect() {
+            canceled = true;
+            Subscription s = upstream;
+            if (s != null) {
+                s.cancel();
+            }
+        }
+
+        // Serves every subscriber from its cursor, as far as its demand goes, then frees the slots
+        // all of them are done with and replenishes the upstream by that much
+        @SuppressWarnings("unchecked")
+        void drain() {
+            if ((int) WIP.getAndAdd(this, 1) != 0) {
+                return;
+            }
+
+            final Object[] ring = this.ring;
+            final int mask = this.mask;
+            int missed = 1;
+
+            while (true) {
+                PublishInner<T>[] subscribers = this.subscribers;
+                if (subscribers == TERMINATED) {
+                    Arrays.fill(ring, null);
+                    return;
+                }
+
+                boolean d = done;
+                long produced = producerIndex;
+                long consumerIndex = this.consumerIndex;
+
+                if (d && error != null) {
+                    // Errors cut ahead of whatever is still in the ring, like in PublishOnFlow
+                    terminate();
+                    return;
+                }
+
+                long slowest = Long.MAX_VALUE;
+                for (PublishInner<T> inner : subscribers) {
+                    Throwable invalid = inner.error;
+                    if (invalid != null && !inner.canceled) {
+                        // Its request(n <= 0), signalled from here so it can't overlap an onNext(..) of ours
+                        inner.canceled = true;
+                        remove(inner);
+                        inner.downstream.onError(invalid);
+                        continue;
+                    }
+
+                    long cursor = inner.cursor;
+                    if (cursor < 0) {
+                        cursor = consumerIndex; // Joined since the last pass
+                    }
+
+                    long r = inner.requested;
+                    long emitted = 0;
+                    while (emitted != r && cursor != produced && !inner.canceled) {
+                        inner.downstream.onNext((T) ring[(int) cursor & mask]);
+                        cursor++;
+                        emitted++;
+                    }
+
+                    if (emitted != 0 && r != Long.MAX_VALUE) {
+                        Demand.produced(PublishInner.REQUESTED, inner, emitted);
+                    }
+                    inner.cursor = cursor;
+
+                    if (inner.canceled) {
+                        continue; // Its cancel() removes it, it no longer holds anyone back
+                    }
+                    if (d && cursor == produced) {
+                        remove(inner);
+                        inner.downstream.onComplete();
+                        continue;
+                    }
+                    slowest = Math.min(slowest, cursor);
+                }
+
+                if (d && slowest == Long.MAX_VALUE) {
+                    terminate(); // Everyone got everything
+                    return;
+                }
+
+                // Without subscribers nothing is consumed, the ring waits for the next one
+                if (slowest != Long.MAX_VALUE && slowest != consumerIndex) {
+                    for (long i = consumerIndex; i != slowest; i++) {
+                        ring[(int) i & mask] = null;
+                    }
+                    this.consumerIndex = slowest;
+
+                    consumed += slowest - consumerIndex;
+                    if (consumed >= limit) {
+                        upstream.request(consumed);
+                        consumed = 0;
+                    }
+                }
+
+                missed = (int) WIP.getAndAdd(this, -missed) - missed;
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        // Only called by the drain loop, so nobody else touches the ring anymore
+        @SuppressWarnings("unchecked")
+        private void terminate() {
+            PublishInner<T>[] current = (PublishInner<T>[]) SUBSCRIBERS.getAndSet(this, TERMINATED);
+            Arrays.fill(ring, null);
+
+            Throwable e = error;
+            for (PublishInner<T> inner : current) {
+                if (inner.canceled) continue;
+                if (inner.error != null) {
+                    inner.downstream.onError(inner.error); // Its own invalid request came first
+                } else if (e != null) {
+                    inner.downstream.onError(e);
+                } else {
+                    inner.downstream.onComplete();
+                }
+            }
+        }
+    }
+
+    static final class PublishInner<T> implements Subscription {
+        static final VarHandle REQUESTED = VarHandles.find(MethodHandles.lookup(), PublishInner.class, "requested", long.class);
+
+        final Subscriber<? super T> downstream;
+        volatile PublishConnection<T> connection; // Set when added, null while onSubscribe runs
+        volatile long requested;
+        volatile boolean canceled;
+        volatile Throwable error; // Set by an invalid request(n), signalled by the connection's drain loop
+
+        long cursor = -1; // Index of the next element to deliver, only touched by the drain loop, -1 until the first pass
+
+        PublishInner(Subscriber<? super T> downstream) {
+            this.downstream = downstream;
+        }
+
+        @Override
+        public void request(long n) {
+            if (canceled) return; // Rule 3.6, nothing is signalled after cancel()
+
+            if (n <= 0) {
+                // The drain loop may be delivering to us on another thread, it signals the error instead of us
+                // Before we are added (onSubscribe is still running), the drain that follows the add(..) does
+                error = new IllegalArgumentException();
+            } else {
+                Demand.add(REQUESTED, this, n);
+            }
+
+            PublishConnection<T> current = connection;
+            if (current != null) {
+                current.drain();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            if (canceled) return;
+            canceled = true;
+
+            PublishConnection<T> current = connection;
+            if (current != null) {
+                current.remove(this);
+                current.drain(); // The slowest cursor may have moved
+            }
+        }
+    }
+}
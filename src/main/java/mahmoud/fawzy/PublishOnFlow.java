@@ -0,0 +1,224 @@
+package mahmoud.fawzy;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+// Async boundary: the upstream emits on its own thread into a SpscArrayQueue,
+// and the downstream receives the elements on the executor's thread, drained by a WIP guarded loop
+//
+// Only the downstream side moves, requests for more elements still run the upstream emission loop on whichever thread
+// calls them (the drain thread when we replenish), use subscribeOn(..) upstream to pin the producer to its own thread
+public class PublishOnFlow<T> extends Flow<T> {
+    private final Publisher<? extends T> upstreamPublisher;
+    private final Executor executor;
+    private final int prefetch;
+
+    public PublishOnFlow(Publisher<? extends T> upstreamPublisher, Executor executor, int prefetch) {
+        if (prefetch <= 0) {
+            throw new IllegalArgumentException("prefetch must be positive but was " + prefetch);
+        }
+        this.upstreamPublisher = upstreamPublisher;
+        this.executor = executor;
+        this.prefetch = prefetch;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber) {
+        upstreamPublisher.subscribe(new PublishOnSubscriber<>(subscriber, executor, prefetch));
+    }
+
+    static final class PublishOnSubscriber<T> implements Subscriber<T>, Subscription, Runnable {
+        static final VarHandle WIP = VarHandles.find(MethodHandles.lookup(), PublishOnSubscriber.class, "wip", int.class);
+        static final VarHandle REQUESTED = VarHandles.find(MethodHandles.lookup(), PublishOnSubscriber.class, "requested", long.class);
+        static final VarHandle ERROR = VarHandles.find(MethodHandles.lookup(), PublishOnSubscriber.class, "error", Throwable.class);
+
+        private final Subscriber<? super T> downstream;
+        private final Executor executor;
+        private final int prefetch;
+        private final int limit;
+        private final SpscArrayQueue<T> queue;
+
+        // Number of drain requests, only the caller that moves it from 0 schedules the drain loop
+        private volatile int wip;
+        private volatile long requested;
+
+        private Subscription upstream;
+        private volatile boolean done;
+        private volatile boolean canceled;
+        // Set by the upstream's onError(..) or by an invalid request(n) on the downstream's thread, first one wins
+        private volatile Throwable error;
+
+        private long consumed; // Only touched by the drain loop
+
+        PublishOnSubscriber(Subscriber<? super T> downstream, Executor executor, int prefetch) {
+            this.downstream = downstream;
+            this.executor = executor;
+            this.prefetch = prefetch;
+            // Ask for more once 75% of the prefetched elements have been consumed,
+            // fewer and bigger requests than replenishing one by one, while the queue never runs completely dry
+            this.limit = prefetch - (prefetch >> 2);
+            this.queue = new SpscArrayQueue<>(prefetch);
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            upstream = subscription;
+            downstream.onSubscribe(this);
+            if (!canceled) { // The downstream may have canceled from its onSubscribe(..)
+                subscription.request(prefetch);
+            }
+        }
+
+        @Override
+        public void onNext(T t) {
+            if (done) return;
+
+            if (!queue.offer(t)) {
+                // Can't happen with a well behaved upstream, we never request more than the queue can hold
+                upstream.cancel();
+                ERROR.compareAndSet(this, null, new IllegalStateException("Queue is full, the upstream ignored backpressure"));
+                done = true;
+            }
+            schedule();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            if (done) return;
+            ERROR.compareAndSet(this, null, throwable);
+            done = true;
+            schedule();
+        }
+
+        @Override
+        public void onComplete() {
+            if (done) return;
+            done = true;
+            schedule();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                if (canceled) return; // Rule 3.6, nothing is signalled after cancel()
+                // The drain loop may be inside downstream.onNext(..) on the executor right now,
+                // so the error is handed to it like the upstream's errors instead of being signalled from here
+                if (ERROR.compareAndSet(this, null, new IllegalArgumentException())) {
+                    upstream.cancel();
+                }
+                done = true;
+                schedule();
+                return;
+            }
+
+            Demand.add(REQUESTED, this, n);
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            if (canceled) return;
+            canceled = true;
+            upstream.cancel();
+
+            if ((int) WIP.getAndAdd(this, 1) == 0) {
+                queue.clear(); // No drain loop running, we own the consumer side of the queue
+            }
+        }
+
+        private void schedule() {
+            if ((int) WIP.getAndAdd(this, 1) != 0) {
+                return; // The drain loop is running or scheduled, it will see our change
+            }
+
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                canceled = true;
+                upstream.cancel();
+                queue.clear();
+                downstream.onError(e);
+            }
+        }
+
+        // Drain loop, runs on the executor, at most one at a time thanks to wip
+        @Override
+        public void run() {
+            final SpscArrayQueue<T> queue = this.queue;
+            final Subscriber<? super T> downstream = this.downstream;
+            long consumed = this.consumed;
+            int missed = 1;
+
+            while (true) {
+                long r = requested;
+                long emitted = 0;
+
+                while (emitted != r) {
+                    boolean d = done;
+                    T element = queue.poll();
+                    boolean empty = element == null;
+
+                    if (checkTerminated(d, empty)) {
+                        return;
+                    }
+
+                    if (empty) {
+                        break;
+                    }
+
+                    downstream.onNext(element);
+                    emitted++;
+
+                    if (++consumed == limit) {
+                        consumed = 0;
+                        upstream.request(limit);
+                    }
+                }
+
+                // Out of demand, we may still have to complete
+                if (emitted == r && checkTerminated(done, queue.isEmpty())) {
+                    return;
+                }
+
+                if (emitted != 0 && r != Long.MAX_VALUE) {
+                    Demand.produced(REQUESTED, this, emitted);
+                }
+
+                this.consumed = consumed;
+                missed = (int) WIP.getAndAdd(this, -missed) - missed;
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        private boolean checkTerminated(boolean done, boolean empty) {
+            if (canceled) {
+                queue.clear();
+                return true;
+            }
+
+            if (done) {
+                Throwable e = error;
+                if (e != null) {
+                    // Errors cut ahead of whatever is still queued
+                    queue.clear();
+                    downstream.onError(e);
+                    return true;
+                }
+                if (empty) {
+                    downstream.onComplete();
+                    return true;
+                }
+            }
+
+            return false;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package mahmoud.fawzy;
+
+import org.reactivestreams.Subscription;
+
+// A Subscription that can also be used as a queue by the Subscriber it was handed to (operator fusion)
+// The Subscriber calls requestFusion(..) inside onSubscribe, before any request(n), and if the source agrees
+// on SYNC mode the Subscriber stops calling request(n) and simply pulls elements with poll() until it returns null
+// This removes onNext, request(n) and the atomic requested bookkeeping from the per element hot path
+public interface QueueSubscription<T> extends Subscription {
+
+    // Fusion was refused, use the normal onSubscribe / request / onNext protocol
+    int NONE = 0;
+
+    // The source already holds all of its elements (an array for example), poll() returning null means completion
+    // In this mode the source never calls onNext, onError or onComplete, errors are thrown from poll()
+    int SYNC = 1;
+
+    // Asks for fusion in the given mode and returns the mode the source agreed to, NONE or the requested one
+    int requestFusion(int mode);
+
+    // Returns the next element or null if there are no more elements, may throw if the element is invalid
+    T poll();
+
+    boolean isEmpty();
+
+    // How many more elements poll() will return, or -1 if the source doesn't know
+    // Lets a collecting terminal (toList()) size its container once instead of growing it element by element
+    default int size() {
+        return -1;
+    }
+
+    // Drops any remaining elements, after this poll() returns null
+    void clear();
+}
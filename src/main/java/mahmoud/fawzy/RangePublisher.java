@@ -0,0 +1,79 @@
+package mahmoud.fawzy;
+
+import org.reactivestreams.Subscriber;
+
+import java.util.concurrent.ForkJoinPool;
+
+// Emits start, start + 1, ..., start + count - 1 without any backing array, the values are computed in the emission loop
+public class RangePublisher extends Flow<Integer> {
+    private final int start;
+    private final int count;
+
+    public RangePublisher(int start, int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("count must not be negative but was " + count);
+        }
+        if ((long) start + count - 1 > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("start + count - 1 overflows an int: " + start + " + " + count + " - 1");
+        }
+        this.start = start;
+        this.count = count;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super Integer> subscriber) {
+        subscriber.onSubscribe(new RangeSubscription(subscriber, start, (long) start + count));
+    }
+
+    // Every rail computes its own slice of the range
+    public ParallelFlow<Integer> parallel(int rails, ForkJoinPool pool) {
+        return ParallelFlow.fromRange(start, count, rails, pool);
+    }
+
+    public ParallelFlow<Integer> parallel(int rails) {
+        return parallel(rails, ForkJoinPool.commonPool());
+    }
+
+    // The index is the value
+    public static final class RangeSubscription extends IndexedSubscription<Integer> {
+
+        public RangeSubscription(Subscriber<? super Integer> subscriber, long start, long end) {
+            super(subscriber, start, end);
+        }
+
+        @Override
+        long emit(Subscriber<? super Integer> subscriber, long i, long to) {
+            for (; i < to; i++) {
+                if (canceled) return -1;
+
+                Integer element = elementAt(i);
+                if (element == null) return fail(subscriber, i);
+
+                subscriber.onNext(element);
+            }
+            return i;
+        }
+
+        @Override
+        long emitConditional(ConditionalSubscriber<? super Integer> subscriber, long i, long to, long wanted) {
+            long accepted = 0;
+            for (; i < to && accepted != wanted; i++) {
+                if (canceled) return -1;
+
+                Integer element = elementAt(i);
+                if (element == null) return fail(subscriber, i);
+
+                if (subscriber.tryOnNext(element)) {
+                    accepted++;
+                }
+            }
+            this.accepted = accepted;
+            return i;
+        }
+
+        @Override
+        Integer elementAt(long i) {
+            return (int) i;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package mahmoud.fawzy;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// Flyweight view over one fixed width record of a RecordPublisher
+// The publisher emits the same Record object for every element and only moves it to the next record,
+// so a Record is only valid inside onNext (or the map(..) function reading it). Read the fields you need there,
+// or copy() it before handing it to anything that keeps elements around (buffer, publishOn, flatMap queues...)
+//
+// Fields are read at a byte offset from the start of the record, in the byte order of the source
+public final class Record {
+    private final int size;
+    private ByteBuffer buffer;
+    private int offset;
+    private long index;
+
+    Record(int size) {
+        this.size = size;
+    }
+
+    void moveTo(ByteBuffer buffer, int offset, long index) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.index = index;
+    }
+
+    // Position of the record in the source, 0 for the first one
+    public long index() {
+        return index;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public byte getByte(int field) {
+        return buffer.get(offset + field);
+    }
+
+    public short getShort(int field) {
+        return buffer.getShort(offset + field);
+    }
+
+    public char getChar(int field) {
+        return buffer.getChar(offset + field);
+    }
+
+    public int getInt(int field) {
+        return buffer.getInt(offset + field);
+    }
+
+    public long getLong(int field) {
+        return buffer.getLong(offset + field);
+    }
+
+    public float getFloat(int field) {
+        return buffer.getFloat(offset + field);
+    }
+
+    public double getDouble(int field) {
+        return buffer.getDouble(offset + field);
+    }
+
+    // Copies length bytes starting at field into destination
+    public void getBytes(int field, byte[] destination, int destinationOffset, int length) {
+        buffer.get(offset + field, destination, destinationOffset, length);
+    }
+
+    // A Record of its own over a heap copy of the bytes, safe to keep after onNext returns
+    public Record copy() {
+        byte[] bytes = new byte[size];
+        getBytes(0, bytes, 0, size);
+        Record copy = new Record(size);
+        copy.moveTo(ByteBuffer.wrap(bytes).order(order()), 0, index);
+        return copy;
+    }
+
+    public ByteOrder order() {
+        return buffer.order();
+    }
+}
@@ -0,0 +1,171 @@
+package mahmoud.fawzy;
+
+import org.reactivestreams.Subscriber;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Streams fixed width binary records out of a ByteBuffer (direct, heap or mapped) or a memory mapped file
+// Every element is the same flyweight Record moved from record to record, nothing is allocated per element
+// A trailing partial record (a file still being appended to, for example) is not emitted
+//
+// Files are mapped in windows, a single MappedByteBuffer can't go past 2GB. All windows are mapped at subscribe time
+// and the channel is closed right away: a mapping stays valid without its channel, and the OS only pages in what we read
+public class RecordPublisher extends Flow<Record> {
+    static final int DEFAULT_WINDOW_SIZE = 1 << 30;
+
+    private final ByteBuffer buffer; // null when reading a file
+    private final Path path; // null when reading a buffer
+    private final int recordSize;
+    private final ByteOrder order;
+    private final int windowSize;
+
+    // Reads buffer's remaining bytes in buffer's byte order, the buffer itself isn't modified
+    public RecordPublisher(ByteBuffer buffer, int recordSize) {
+        this(buffer, null, recordSize, buffer.order(), DEFAULT_WINDOW_SIZE);
+    }
+
+    public RecordPublisher(Path path, int recordSize, ByteOrder order) {
+        this(null, path, recordSize, order, DEFAULT_WINDOW_SIZE);
+    }
+
+    RecordPublisher(ByteBuffer buffer, Path path, int recordSize, ByteOrder order, int windowSize) {
+        if (recordSize <= 0) {
+            throw new IllegalArgumentException("recordSize must be positive but was " + recordSize);
+        }
+        if (windowSize < recordSize) {
+            throw new IllegalArgumentException("windowSize must hold at least one record but was " + windowSize);
+        }
+        this.buffer = buffer;
+        this.path = path;
+        this.recordSize = recordSize;
+        this.order = order;
+        this.windowSize = windowSize;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super Record> subscriber) {
+        ByteBuffer[] windows;
+        long count;
+        int recordsPerWindow;
+
+        if (buffer != null) {
+            windows = new ByteBuffer[] { buffer.slice().order(order) };
+            count = buffer.remaining() / recordSize;
+            recordsPerWindow = (int) Math.max(count, 1); // Never divide by 0, even for an empty buffer
+        } else {
+            recordsPerWindow = windowSize / recordSize;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                count = channel.size() / recordSize;
+                windows = map(channel, count, recordsPerWindow);
+            } catch (IOException | RuntimeException e) {
+                subscriber.onSubscribe(EmptySubscription.INSTANCE);
+                subscriber.onError(e);
+                return;
+            }
+        }
+
+        subscriber.onSubscribe(new RecordSubscription(subscriber, windows, recordSize, recordsPerWindow, count));
+    }
+
+    private ByteBuffer[] map(FileChannel channel, long count, int recordsPerWindow) throws IOException {
+        long windowBytes = (long) recordsPerWindow * recordSize;
+        long bytes = count * recordSize;
+        ByteBuffer[] windows = new ByteBuffer[(int) ((count + recordsPerWindow - 1) / recordsPerWindow)];
+        for (int w = 0; w < windows.length; w++) {
+            long start = w * windowBytes;
+            windows[w] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(windowBytes, bytes - start)).order(order);
+        }
+        return windows;
+    }
+
+    // Keeps a cursor (the window and the offset in it of the next index) so that moving to the next record is an
+    // addition, not a division. Only a jump, the first element of a subscription or of a request(n) after a poll(),
+    // divides
+    public static final class RecordSubscription extends IndexedSubscription<Record> {
+        // Released by cancel(): a canceled subscription someone still holds on to must not keep the mappings reachable,
+        // the record points into one of them as well
+        private ByteBuffer[] windows;
+        private Record record;
+        private final int recordSize;
+        private final int recordsPerWindow;
+        private final int windowBytes;
+
+        // Only touched by the thread holding the emission loop (or polling), published like index
+        private long cursor = -1;
+        private int window;
+        private int offset;
+
+        RecordSubscription(Subscriber<? super Record> subscriber, ByteBuffer[] windows, int recordSize,
+                           int recordsPerWindow, long count) {
+            super(subscriber, 0, count);
+            this.windows = windows;
+            this.recordSize = recordSize;
+            this.recordsPerWindow = recordsPerWindow;
+            this.windowBytes = recordsPerWindow * recordSize;
+            this.record = new Record(recordSize);
+        }
+
+        @Override
+        long emit(Subscriber<? super Record> subscriber, long i, long to) {
+            for (; i < to; i++) {
+                if (canceled) return -1;
+
+                Record element = elementAt(i);
+                if (element == null) return fail(subscriber, i);
+
+                subscriber.onNext(element);
+            }
+            return i;
+        }
+
+        @Override
+        long emitConditional(ConditionalSubscriber<? super Record> subscriber, long i, long to, long wanted) {
+            long accepted = 0;
+            for (; i < to && accepted != wanted; i++) {
+                if (canceled) return -1;
+
+                Record element = elementAt(i);
+                if (element == null) return fail(subscriber, i);
+
+                if (subscriber.tryOnNext(element)) {
+                    accepted++;
+                }
+            }
+            this.accepted = accepted;
+            return i;
+        }
+
+        @Override
+        Record elementAt(long i) {
+            final ByteBuffer[] windows = this.windows;
+            final Record record = this.record;
+            if (windows == null || record == null) return null; // Canceled, see cancel()
+
+            if (i != cursor) {
+                window = (int) (i / recordsPerWindow);
+                offset = (int) (i % recordsPerWindow) * recordSize;
+            }
+
+            record.moveTo(windows[window], offset, i);
+
+            cursor = i + 1;
+            offset += recordSize;
+            if (offset == windowBytes) {
+                window++;
+                offset = 0;
+            }
+            return record;
+        }
+
+        @Override
+        void release() {
+            this.windows = null;
+            this.record = null;
+        }
+    }
+}
@@ -0,0 +1,377 @@
+package mahmoud.fawzy;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+// Subscribes to the upstream once, on the first subscriber, and keeps what it emits for everyone coming later
+// The elements are appended to linked fixed size chunks, every subscriber walks them with its own index at its own pace,
+// like an ArraySubscription walks its array. Nothing is copied per subscriber and a slow one doesn't hold the others up
+//
+// cache() keeps everything, replay(history) only the last history elements (plus at most one partly outdated chunk):
+// a subscriber joining later starts that far back, then follows the live elements.
+// The upstream is requested unbounded, it is stored as fast as it emits whatever the subscribers ask for
+//
+// Each subscriber is drained by its own WIP guarded loop, on the thread of its request(n) or on the upstream's thread
+public class ReplayFlow<T> extends Flow<T> {
+    static final VarHandle CONNECTION = VarHandles.find(MethodHandles.lookup(), ReplayFlow.class, "connection", ReplayConnection.class);
+
+    static final int CHUNK_SIZE = 64;
+
+    private final Publisher<? extends T> upstreamPublisher;
+    private final int history; // Integer.MAX_VALUE keeps everything
+
+    // Created by the first subscriber, then kept for good: that's the whole point of caching
+    private volatile ReplayConnection<T> connection;
+
+    public ReplayFlow(Publisher<? extends T> upstreamPublisher, int history) {
+        if (history <= 0) {
+            throw new IllegalArgumentException("history must be positive but was " + history);
+        }
+        this.upstreamPublisher = upstreamPublisher;
+        this.history = history;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber) {
+        ReplayConnection<T> current = connection();
+        ReplaySubscription<T> subscription = new ReplaySubscription<>(subscriber, current);
+
+        subscriber.onSubscribe(subscription);
+        current.add(subscription);
+        if (subscription.canceled) {
+            // Canceled, or already replayed everything of a finished upstream, in onSubscribe
+            current.remove(subscription);
+        }
+        current.connect();
+        subscription.drain(); // Replays what is already there, or completes right away if the upstream is done
+    }
+
+    @SuppressWarnings("unchecked")
+    private ReplayConnection<T> connection() {
+        ReplayConnection<T> current = connection;
+        if (current != null) {
+            return current;
+        }
+
+        ReplayConnection<T> fresh = new ReplayConnection<>(upstreamPublisher, history);
+        if (CONNECTION.compareAndSet(this, null, fresh)) {
+            return fresh;
+        }
+        return connection;
+    }
+
+    // A fixed size slice of the stored elements, start is the index of values[0] in the whole stream
+    static final class Chunk {
+        final Object[] values;
+        final long start;
+        Chunk next; // Written by the producer before size moves into the next chunk
+
+        Chunk(int size, long start) {
+            this.values = new Object[size];
+            this.start = start;
+        }
+    }
+
+    static final class ReplayConnection<T> implements Subscriber<T> {
+        static final VarHandle SUBSCRIBERS = VarHandles.find(MethodHandles.lookup(), ReplayConnection.class, "subscribers", ReplaySubscription[].class);
+        static final VarHandle CONNECTED = VarHandles.find(MethodHandles.lookup(), ReplayConnection.class, "connected", boolean.class);
+
+        @SuppressWarnings("rawtypes")
+        private static final ReplaySubscription[] EMPTY = new ReplaySubscription[0];
+
+        private final Publisher<? extends T> upstreamPublisher;
+        private final int history;
+        private final int chunkSize;
+
+        // Oldest chunk a new subscriber may need, only moves forward (and only with a bounded history)
+        private volatile Chunk head;
+        private Chunk tail; // Only touched by onNext
+        private int tailOffset; // Only touched by onNext
+
+        // Number of elements appended so far, its volatile write publishes the elements (and chunk links) below it
+        private volatile long size;
+        private volatile boolean done;
+        private Throwable error; // Published through the done field
+
+        // Copy on write, written by subscribe (add) and the subscriptions (remove), read by onNext
+        private volatile ReplaySubscription<T>[] subscribers;
+        private volatile boolean connected;
+
+        @SuppressWarnings("unchecked")
+        ReplayConnection(Publisher<? extends T> upstreamPublisher, int history) {
+            this.upstreamPublisher = upstreamPublisher;
+            this.history = history;
+            // A replay(1) doesn't need 64 slots to remember one element
+            this.chunkSize = Math.min(history, CHUNK_SIZE);
+            this.head = this.tail = new Chunk(chunkSize, 0);
+            this.subscribers = EMPTY;
+        }
+
+        void connect() {
+            if (!connected && CONNECTED.compareAndSet(this, false, true)) {
+                upstreamPublisher.subscribe(this);
+            }
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(T t) {
+            if (done) return;
+
+            if (tailOffset == chunkSize) {
+                Chunk next = new Chunk(chunkSize, tail.start + chunkSize);
+                tail.next = next;
+                tail = next;
+                tailOffset = 0;
+            }
+            tail.values[tailOffset++] = t;
+            long size = this.size + 1;
+            this.size = size;
+
+            if (history != Integer.MAX_VALUE) {
+                trim(size);
+            }
+            drainAll();
+        }
+
+        // Drops the chunks that only hold elements older than the last history ones,
+        // subscribers still reading them keep them reachable until they move on
+        private void trim(long size) {
+            Chunk h = head;
+            while (size - h.start - chunkSize >= history) {
+                h = h.next;
+            }
+            head = h;
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            if (done) return;
+            error = throwable;
+            done = true;
+            drainAll();
+        }
+
+        @Override
+        public void onComplete() {
+            if (done) return;
+            done = true;
+            drainAll();
+        }
+
+        private void drainAll() {
+            for (ReplaySubscription<T> subscription : subscribers) {
+                subscription.drain();
+            }
+        }
+
+        void add(ReplaySubscription<T> subscription) {
+            while (true) {
+                ReplaySubscription<T>[] current = subscribers;
+                ReplaySubscription<T>[] next = Arrays.copyOf(current, current.length + 1);
+                next[current.length] = subscription;
+                if (SUBSCRIBERS.compareAndSet(this, current, next)) {
+                    return;
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        void remove(ReplaySubscription<T> subscription) {
+            while (true) {
+                ReplaySubscription<T>[] current = subscribers;
+                int index = -1;
+                for (int i = 0; i < current.length; i++) {
+                    if (current[i] == subscription) {
+                        index = i;
+                        break;
+                    }
+                }
+                if (index < 0) {
+                    return; // Already removed, or not added yet
+                }
+
+                ReplaySubscription<T>[] next;
+                if (current.length == 1) {
+                    next = EMPTY;
+                } else {
+                    next = Arrays.copyOf(current, current.length - 1); // Typed like current, and already holds [0, index)
+                    System.arraycopy(current, index + 1, next, index, current.length - index - 1);
+                }
+                if (SUBSCRIBERS.compareAndSet(this, current, next)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    static final class ReplaySubscription<T> implements Subscription {
+        static final VarHandle REQUESTED = VarHandles.find(MethodHandles.lookup(), ReplaySubscription.class, "requested", long.class);
+        static final VarHandle WIP = VarHandles.find(MethodHandles.lookup(), ReplaySubscription.class, "wip", int.class);
+
+        private final Subscriber<? super T> downstream;
+        private final ReplayConnection<T> connection;
+
+        private volatile long requested;
+        private volatile int wip;
+        private volatile boolean canceled; // Also set once terminated
+        private volatile Throwable invalidRequest; // Set by request(n <= 0), signalled by the drain loop
+
+        // Position of the next element, only touched by the drain loop. chunk is null until the first drain,
+        // offset may be chunkSize, the next chunk is then followed when there is an element to read there
+        private Chunk chunk;
+        private int offset;
+        private long index;
+
+        ReplaySubscription(Subscriber<? super T> downstream, ReplayConnection<T> connection) {
+            this.downstream = downstream;
+            this.connection = connection;
+        }
+
+        @Override
+        public void request(long n) {
+            if (canceled) return; // Rule 3.6, and nothing after onComplete or onError either
+
+            if (n <= 0) {
+                // drain() may be running on the upstream's thread, inside downstream.onNext(..),
+                // so the error goes through the WIP loop like everything else we signal
+                invalidRequest = new IllegalArgumentException();
+            } else {
+                Demand.add(REQUESTED, this, n);
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            if (canceled) return;
+            canceled = true;
+            connection.remove(this);
+
+            if ((int) WIP.getAndAdd(this, 1) == 0) {
+                chunk = null; // No drain loop running, let go of the chunks we were holding
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        void drain() {
+            if ((int) WIP.getAndAdd(this, 1) != 0) {
+                return;
+            }
+
+            final ReplayConnection<T> connection = this.connection;
+            final Subscriber<? super T> downstream = this.downstream;
+            final int chunkSize = connection.chunkSize;
+
+            if (canceled) {
+                return;
+            }
+            if (chunk == null) {
+                start(connection);
+            }
+            Chunk chunk = this.chunk;
+            int offset = this.offset;
+            long index = this.index;
+            int missed = 1;
+
+            while (true) {
+                long r = requested;
+                long emitted = 0;
+
+                while (true) {
+                    if (canceled) {
+                        this.chunk = null;
+                        return;
+                    }
+
+                    Throwable invalid = invalidRequest;
+                    if (invalid != null) {
+                        fail(connection, invalid);
+                        return;
+                    }
+
+                    // done before size: once done is seen, size is final
+                    boolean d = connection.done;
+                    long size = connection.size;
+
+                    if (index == size) {
+                        if (d) {
+                            terminate(connection);
+                            return;
+                        }
+                        break;
+                    }
+
+                    if (emitted == r) {
+                        break;
+                    }
+
+                    if (offset == chunkSize) {
+                        chunk = chunk.next;
+                        offset = 0;
+                    }
+                    downstream.onNext((T) chunk.values[offset]);
+                    offset++;
+                    index++;
+                    emitted++;
+                }
+
+                if (emitted != 0 && r != Long.MAX_VALUE) {
+                    Demand.produced(REQUESTED, this, emitted);
+                }
+
+                this.chunk = chunk;
+                this.offset = offset;
+                this.index = index;
+                missed = (int) WIP.getAndAdd(this, -missed) - missed;
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        // Starts history elements back from the newest one, or at the oldest chunk still kept if that is later
+        private void start(ReplayConnection<T> connection) {
+            Chunk h = connection.head;
+            long size = connection.size; // Read after head, head can't be past the elements size covers
+            long from = connection.history == Integer.MAX_VALUE ? 0 : Math.max(h.start, size - connection.history);
+            // Only walk into a chunk that holds an element already, its link is then guaranteed to be there
+            while (from - h.start > connection.chunkSize) {
+                h = h.next;
+            }
+            chunk = h;
+            offset = (int) (from - h.start);
+            index = from;
+        }
+
+        // Keeps wip, so no later drain() runs again
+        private void terminate(ReplayConnection<T> connection) {
+            Throwable e = connection.error;
+            if (e != null) {
+                fail(connection, e);
+                return;
+            }
+
+            canceled = true;
+            chunk = null;
+            connection.remove(this);
+            downstream.onComplete();
+        }
+
+        private void fail(ReplayConnection<T> connection, Throwable e) {
+            canceled = true;
+            chunk = null;
+            connection.remove(this);
+            downstream.onError(e);
+        }
+    }
+}
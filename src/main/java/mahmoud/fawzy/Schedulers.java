@@ -0,0 +1,76 @@
+package mahmoud.fawzy;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Ready made executors for subscribeOn(..) and publishOn(..)
+public final class Schedulers {
+
+    private Schedulers() {
+    }
+
+    // One virtual thread per task, so thousands of small pipelines can wait on each other without holding platform threads
+    // We compile against Java 17, so the JDK 21 factory is looked up at runtime
+    // On older runtimes this falls back to a cached pool of daemon platform threads
+    // Each call creates a new executor that the caller is responsible for shutting down, like bounded(..)
+    public static ExecutorService virtualThreads() {
+        MethodHandle factory = VirtualThreads.FACTORY;
+        if (factory != null) {
+            try {
+                return (ExecutorService) factory.invoke();
+            } catch (Throwable e) {
+                throw new IllegalStateException("Could not create a virtual thread executor", e);
+            }
+        }
+        return Executors.newCachedThreadPool(daemonThreads("flow-virtual-fallback-"));
+    }
+
+    public static boolean virtualThreadsSupported() {
+        return VirtualThreads.FACTORY != null;
+    }
+
+    // At most threads platform threads, extra tasks wait in the queue instead of creating more threads
+    // Each call creates a new pool that the caller is responsible for shutting down
+    public static ExecutorService bounded(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads must be positive but was " + threads);
+        }
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), daemonThreads("flow-bounded-"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    // Holder class, the factory is only looked up the first time someone asks for virtual threads
+    private static final class VirtualThreads {
+        static final MethodHandle FACTORY; // null before Java 21
+
+        static {
+            MethodHandle factory;
+            try {
+                factory = MethodHandles.publicLookup().findStatic(Executors.class,
+                        "newVirtualThreadPerTaskExecutor", MethodType.methodType(ExecutorService.class));
+            } catch (ReflectiveOperationException notJava21) {
+                factory = null;
+            }
+            FACTORY = factory;
+        }
+    }
+}
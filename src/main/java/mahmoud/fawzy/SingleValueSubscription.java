@@ -0,0 +1,106 @@
+package mahmoud.fawzy;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+// Subscription for operators that emit at most one value (reduce and friends)
+// The value is only emitted once it is known AND the downstream requested it, whichever of the two happens last emits
+abstract class SingleValueSubscription<T> implements Subscription {
+    static final VarHandle STATE = VarHandles.find(MethodHandles.lookup(), SingleValueSubscription.class, "state", int.class);
+
+    static final int NO_REQUEST_NO_VALUE = 0;
+    static final int HAS_REQUEST = 1;
+    static final int HAS_VALUE = 2;
+    static final int DONE = 3;
+
+    final Subscriber<? super T> downstream;
+    private volatile int state;
+    private T value; // Published to the requesting thread through the state field
+
+    SingleValueSubscription(Subscriber<? super T> downstream) {
+        this.downstream = downstream;
+    }
+
+    // Called once the upstream work is over, a null value completes the downstream without emitting anything
+    final void complete(T value) {
+        if (value == null) {
+            if ((int) STATE.getAndSet(this, DONE) != DONE) {
+                downstream.onComplete();
+            }
+            return;
+        }
+
+        this.value = value;
+        while (true) {
+            int current = state;
+            if (current == HAS_REQUEST) {
+                if (STATE.compareAndSet(this, HAS_REQUEST, DONE)) {
+                    emit(value);
+                    return;
+                }
+            } else if (current == NO_REQUEST_NO_VALUE) {
+                if (STATE.compareAndSet(this, NO_REQUEST_NO_VALUE, HAS_VALUE)) {
+                    return;
+                }
+            } else {
+                return;
+            }
+        }
+    }
+
+    final void error(Throwable throwable) {
+        if ((int) STATE.getAndSet(this, DONE) != DONE) {
+            downstream.onError(throwable);
+        }
+    }
+
+    final boolean isDone() {
+        return state == DONE;
+    }
+
+    @Override
+    public final void request(long n) {
+        if (n <= 0) {
+            if ((int) STATE.getAndSet(this, DONE) != DONE) {
+                cancelUpstream();
+                downstream.onError(new IllegalArgumentException());
+            }
+            return;
+        }
+
+        while (true) {
+            int current = state;
+            if (current == HAS_VALUE) {
+                if (STATE.compareAndSet(this, HAS_VALUE, DONE)) {
+                    emit(value);
+                    return;
+                }
+            } else if (current == NO_REQUEST_NO_VALUE) {
+                if (STATE.compareAndSet(this, NO_REQUEST_NO_VALUE, HAS_REQUEST)) {
+                    return;
+                }
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void emit(T value) {
+        this.value = null;
+        downstream.onNext(value);
+        downstream.onComplete();
+    }
+
+    @Override
+    public final void cancel() {
+        if ((int) STATE.getAndSet(this, DONE) != DONE) {
+            value = null;
+            cancelUpstream();
+        }
+    }
+
+    abstract void cancelUpstream();
+}
@@ -0,0 +1,13 @@
+package mahmoud.fawzy;
+
+// Handed to the generator of Flow.generate(..), one generator call may emit at most one element
+// The generator is only called when there is demand for that element, so it never has to think about backpressure
+public interface Sink<T> {
+
+    void next(T t);
+
+    // No more elements, the generator won't be called again
+    void complete();
+
+    void error(Throwable throwable);
+}
@@ -0,0 +1,111 @@
+package mahmoud.fawzy;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+// Bounded single-producer single-consumer queue backed by a power-of-two ring buffer
+// Exactly one thread may call offer(..) and exactly one (possibly different) thread may call poll(),
+// which is what an async boundary needs: the upstream emission loop offers, the drain loop on the other side polls
+//
+// A slot being null means it is free, so the producer and the consumer never have to read each other's index,
+// and the two indexes sit on their own cache lines (see the padding classes below) so that the producer writing its
+// index doesn't keep invalidating the line the consumer is reading from (false sharing)
+//
+// The slots are a plain Object[] accessed through an array element VarHandle, like the indexes through field VarHandles:
+// no AtomicReferenceArray wrapping the array, one object and one pointer less on every offer and poll
+public final class SpscArrayQueue<T> extends SpscArrayQueueConsumerIndexPad {
+    static final VarHandle SLOT = MethodHandles.arrayElementVarHandle(Object[].class);
+    static final VarHandle PRODUCER_INDEX =
+            VarHandles.find(MethodHandles.lookup(), SpscArrayQueueProducerIndex.class, "producerIndex", long.class);
+    static final VarHandle CONSUMER_INDEX =
+            VarHandles.find(MethodHandles.lookup(), SpscArrayQueueConsumerIndex.class, "consumerIndex", long.class);
+
+    private final Object[] buffer;
+    private final int mask;
+
+    public SpscArrayQueue(int capacity) {
+        int actualCapacity = roundToPowerOfTwo(capacity);
+        this.buffer = new Object[actualCapacity];
+        this.mask = actualCapacity - 1; // index & mask == index % capacity, without the division
+    }
+
+    static int roundToPowerOfTwo(int value) {
+        if (value <= 0) {
+            throw new IllegalArgumentException("capacity must be positive but was " + value);
+        }
+        return value == 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    // Producer thread only, returns false if the queue is full
+    public boolean offer(T element) {
+        long index = producerIndex;
+        int offset = (int) index & mask;
+        if (SLOT.getAcquire(buffer, offset) != null) {
+            return false;
+        }
+        // Ordered writes (release) are enough, the consumer only needs to see the element once it sees the slot filled
+        SLOT.setRelease(buffer, offset, element);
+        PRODUCER_INDEX.setRelease(this, index + 1);
+        return true;
+    }
+
+    // Consumer thread only, returns null if the queue is empty
+    @SuppressWarnings("unchecked")
+    public T poll() {
+        long index = consumerIndex;
+        int offset = (int) index & mask;
+        T element = (T) SLOT.getAcquire(buffer, offset);
+        if (element == null) {
+            return null;
+        }
+        SLOT.setRelease(buffer, offset, null);
+        CONSUMER_INDEX.setRelease(this, index + 1);
+        return element;
+    }
+
+    // Consumer thread only
+    public boolean isEmpty() {
+        return SLOT.getAcquire(buffer, (int) consumerIndex & mask) == null;
+    }
+
+    // Consumer thread only
+    public void clear() {
+        while (poll() != null) {
+            // drop everything
+        }
+    }
+
+    // Can be called from any thread, only an estimate while both sides are active
+    public int size() {
+        long consumer = consumerIndex;
+        long producer = producerIndex;
+        return (int) Math.max(0, Math.min(producer - consumer, capacity()));
+    }
+}
+
+// The JVM lays out superclass fields before subclass fields, so a chain of classes is the portable way to keep
+// 64 bytes of unused longs (one cache line) between the object header, the producer index and the consumer index
+
+abstract class SpscArrayQueueHeaderPad {
+    long p00, p01, p02, p03, p04, p05, p06, p07;
+}
+
+abstract class SpscArrayQueueProducerIndex extends SpscArrayQueueHeaderPad {
+    volatile long producerIndex;
+}
+
+abstract class SpscArrayQueueProducerIndexPad extends SpscArrayQueueProducerIndex {
+    long p10, p11, p12, p13, p14, p15, p16, p17;
+}
+
+abstract class SpscArrayQueueConsumerIndex extends SpscArrayQueueProducerIndexPad {
+    volatile long consumerIndex;
+}
+
+abstract class SpscArrayQueueConsumerIndexPad extends SpscArrayQueueConsumerIndex {
+    long p20, p21, p22, p23, p24, p25, p26, p27;
+}
@@ -0,0 +1,164 @@
+package mahmoud.fawzy;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+// Moves subscribe(..) and every request(n) to the executor, and with them the upstream emission loop
+// (for an ArrayPublisher the whole for loop in ArraySubscription.request runs on the executor's thread)
+// so the thread that subscribes or requests returns immediately
+public class SubscribeOnFlow<T> extends Flow<T> {
+    private final Publisher<? extends T> upstreamPublisher;
+    private final Executor executor;
+
+    public SubscribeOnFlow(Publisher<? extends T> upstreamPublisher, Executor executor) {
+        this.upstreamPublisher = upstreamPublisher;
+        this.executor = executor;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber) {
+        SubscribeOnSubscriber<T> parent = new SubscribeOnSubscriber<>(subscriber, executor);
+        try {
+            executor.execute(() -> parent.subscribeUpstream(upstreamPublisher));
+        } catch (RejectedExecutionException e) {
+            subscriber.onSubscribe(EmptySubscription.INSTANCE);
+            subscriber.onError(e);
+        }
+    }
+
+    static final class SubscribeOnSubscriber<T> implements Subscriber<T>, Subscription, Runnable {
+        static final VarHandle PENDING = VarHandles.find(MethodHandles.lookup(), SubscribeOnSubscriber.class, "pending", long.class);
+
+        private final Subscriber<? super T> downstream;
+        private final Executor executor;
+        private volatile Subscription upstream;
+        private volatile boolean canceled;
+
+        // The thread currently running one of our tasks, requests made from it (typically from inside onNext)
+        // go straight upstream instead of being scheduled again
+        private volatile Thread taskThread;
+
+        // Demand coming from other threads, accumulated until the single request task forwards it
+        private volatile long pending;
+
+        // A request(n <= 0) from another thread, forwarded by the request task. No request(n) is accepted after it,
+        // so no other task can be scheduled while the last one forwards it
+        private volatile boolean invalid;
+        private long invalidRequest; // Published by invalid
+
+        SubscribeOnSubscriber(Subscriber<? super T> downstream, Executor executor) {
+            this.downstream = downstream;
+            this.executor = executor;
+        }
+
+        void subscribeUpstream(Publisher<? extends T> upstreamPublisher) {
+            Thread current = Thread.currentThread();
+            taskThread = current;
+            try {
+                upstreamPublisher.subscribe(this);
+            } finally {
+                if (taskThread == current) {
+                    taskThread = null;
+                }
+            }
+        }
+
+        // Runs on the executor's thread, so does the downstream's onSubscribe and therefore its first request(n)
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            upstream = subscription;
+            downstream.onSubscribe(this);
+        }
+
+        @Override
+        public void onNext(T t) {
+            downstream.onNext(t);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            downstream.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            downstream.onComplete();
+        }
+
+        @Override
+        public void request(long n) {
+            if (Thread.currentThread() == taskThread) {
+                upstream.request(n); // Already on the executor, ArraySubscription's WIP guard takes care of reentrancy
+                return;
+            }
+
+            if (canceled || invalid) return;
+
+            if (n <= 0) {
+                // Forwarded by the request task like any other request, so the upstream's request(n) calls stay on
+                // the executor and never overlap. The 1 only wakes the task up, it forwards n in place of the demand
+                invalidRequest = n;
+                invalid = true;
+                n = 1;
+            }
+
+            // Only the caller that moves pending away from 0 schedules a task, the others piggyback on it
+            if (Demand.add(PENDING, this, n) == 0) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    cancel();
+                    downstream.onError(e);
+                }
+            }
+        }
+
+        // Forwards the demand accumulated by other threads, same missed pattern as the emission loops
+        @Override
+        public void run() {
+            Thread current = Thread.currentThread();
+            taskThread = current;
+            try {
+                long n = pending;
+                while (true) {
+                    if (canceled) return;
+
+                    if (invalid) {
+                        upstream.request(invalidRequest); // Let the upstream signal the error
+                        return;
+                    }
+
+                    upstream.request(n);
+
+                    n = (long) PENDING.getAndAdd(this, -n) - n;
+                    if (n == 0) {
+                        // An unbounded pending doesn't count the wake up of an invalid request, it has to be checked here
+                        if (invalid && !canceled) {
+                            upstream.request(invalidRequest);
+                        }
+                        return;
+                    }
+                }
+            } finally {
+                if (taskThread == current) {
+                    taskThread = null;
+                }
+            }
+        }
+
+        @Override
+        public void cancel() {
+            canceled = true;
+            Subscription s = upstream;
+            if (s != null) {
+                s.cancel();
+            }
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package mahmoud.fawzy;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+// Subscriptions and operators keep their atomic state (requested, wip, error, ...) in plain volatile fields of their own
+// and update them through static final VarHandles, instead of pointing at an AtomicLong / AtomicInteger / AtomicReference:
+// one allocation per subscription instead of up to four, and no extra pointer to chase for every CAS
+//
+// Pass MethodHandles.lookup() from the class declaring the field so that private fields can be found too
+final class VarHandles {
+
+    private VarHandles() {
+    }
+
+    static VarHandle find(MethodHandles.Lookup lookup, Class<?> owner, String field, Class<?> type) {
+        try {
+            return lookup.findVarHandle(owner, field, type);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+}
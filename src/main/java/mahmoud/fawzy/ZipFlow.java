@@ -0,0 +1,353 @@
+package mahmoud.fawzy;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.Function;
+
+// Emits zipper([first of every source]), zipper([second of every source]), ... and completes as soon as one source runs out
+//
+// Every source gets its own SpscArrayQueue of prefetch elements (single producer: the source's onNext, single consumer:
+// the WIP guarded drain loop) and is replenished in batches of 75% of prefetch as its elements get zipped, so a fast
+// source can't run ahead of a slow one by more than prefetch elements. A source that agrees on SYNC fusion (an array,
+// a range, maps over them) is polled in place of the queue, so zipping aligned array columns never queues anything
+//
+// JoinCoordinator and JoinInner hold everything but the drain loop, CombineLatestFlow is built on them as well
+public class ZipFlow<R> extends Flow<R> {
+    private final Publisher<?>[] sources;
+    private final Function<? super Object[], ? extends R> zipper; // Gets a new array for every row, it may keep it
+    private final int prefetch;
+
+    public ZipFlow(Publisher<?>[] sources, Function<? super Object[], ? extends R> zipper, int prefetch) {
+        if (sources.length == 0) {
+            throw new IllegalArgumentException("At least one source is needed");
+        }
+        if (prefetch <= 0) {
+            throw new IllegalArgumentException("prefetch must be positive but was " + prefetch);
+        }
+        this.sources = sources.clone();
+        this.zipper = zipper;
+        this.prefetch = prefetch;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super R> subscriber) {
+        new ZipCoordinator<R>(subscriber, zipper, sources.length, prefetch).subscribe(sources);
+    }
+
+    static final class ZipCoordinator<R> extends JoinCoordinator<R> {
+        private Object[] row; // The next row being filled, only touched while holding wip
+
+        ZipCoordinator(Subscriber<? super R> downstream, Function<? super Object[], ? extends R> zipper, int n, int prefetch) {
+            super(downstream, zipper, n, prefetch);
+            this.row = new Object[n];
+        }
+
+        // Fills the missing slots of the row first, so a source that ran out is noticed even without demand
+        @Override
+        void drainLoop() {
+            final Subscriber<? super R> downstream = this.downstream;
+            final JoinInner[] inners = this.inners;
+            final int n = inners.length;
+            int missed = 1;
+
+            while (true) {
+                long r = requested;
+                long emitted = 0;
+
+                while (true) {
+                    if (checkTerminated()) return;
+
+                    Object[] row = this.row;
+                    boolean empty = false;
+                    for (int i = 0; i < n; i++) {
+                        if (row[i] != null) continue;
+
+                        JoinInner inner = inners[i];
+                        boolean d = inner.done;
+                        Object value = poll(inner);
+                        if (value == null) {
+                            if (checkTerminated()) return; // A fused source may have failed in poll()
+                            if (d) {
+                                complete(); // This source is over, no row can be completed anymore
+                                return;
+                            }
+                            empty = true;
+                        } else {
+                            row[i] = value;
+                        }
+                    }
+
+                    if (empty || emitted == r) break;
+
+                    this.row = new Object[n];
+                    R result;
+                    try {
+                        result = Objects.requireNonNull(zipper.apply(row), "The zipper returned a null value");
+                    } catch (Throwable e) {
+                        ERROR.compareAndSet(this, null, e);
+                        continue;
+                    }
+
+                    downstream.onNext(result);
+                    emitted++;
+                    for (JoinInner inner : inners) {
+                        inner.consumedOne();
+                    }
+                }
+
+                if (emitted != 0 && r != Long.MAX_VALUE) {
+                    Demand.produced(REQUESTED, this, emitted);
+                }
+
+                missed = (int) WIP.getAndAdd(this, -missed) - missed;
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        @Override
+        void clear() {
+            super.clear();
+            Arrays.fill(row, null);
+        }
+    }
+
+    // Demand, cancellation, errors and the inners of an operator that joins a fixed set of sources in one drain loop
+    abstract static class JoinCoordinator<R> implements Subscription {
+        static final VarHandle WIP = VarHandles.find(MethodHandles.lookup(), JoinCoordinator.class, "wip", int.class);
+        static final VarHandle REQUESTED = VarHandles.find(MethodHandles.lookup(), JoinCoordinator.class, "requested", long.class);
+        static final VarHandle ERROR = VarHandles.find(MethodHandles.lookup(), JoinCoordinator.class, "error", Throwable.class);
+
+        final Subscriber<? super R> downstream;
+        final Function<? super Object[], ? extends R> zipper;
+        final JoinInner[] inners;
+
+        volatile int wip;
+        volatile long requested;
+        volatile Throwable error;
+        volatile boolean canceled;
+
+        JoinCoordinator(Subscriber<? super R> downstream, Function<? super Object[], ? extends R> zipper, int n, int prefetch) {
+            this.downstream = downstream;
+            this.zipper = zipper;
+            this.inners = new JoinInner[n];
+            for (int i = 0; i < n; i++) {
+                inners[i] = new JoinInner(this, prefetch);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        void subscribe(Publisher<?>[] sources) {
+            downstream.onSubscribe(this);
+            for (int i = 0; i < sources.length; i++) {
+                if (canceled) return; // Canceled or already terminated by an earlier source
+                ((Publisher<Object>) sources[i]).subscribe(inners[i]);
+            }
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                innerError(new IllegalArgumentException());
+                return;
+            }
+            Demand.add(REQUESTED, this, n);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            if (canceled) return;
+            canceled = true;
+            cancelInners();
+            if ((int) WIP.getAndAdd(this, 1) == 0) {
+                clear(); // No drain loop running, we own the consumer side of the queues
+            }
+        }
+
+        void innerError(Throwable throwable) {
+            if (ERROR.compareAndSet(this, null, throwable)) {
+                drain();
+            }
+        }
+
+        void drain() {
+            if ((int) WIP.getAndAdd(this, 1) == 0) {
+                drainLoop();
+            }
+        }
+
+        abstract void drainLoop();
+
+        // Only fused sources can throw, the mapper of a map over an array for example
+        Object poll(JoinInner inner) {
+            try {
+                return inner.poll();
+            } catch (Throwable e) {
+                inner.cancel();
+                ERROR.compareAndSet(this, null, e);
+                return null;
+            }
+        }
+
+        // Errors cut ahead of queued elements
+        boolean checkTerminated() {
+            if (canceled) {
+                clear();
+                return true;
+            }
+
+            Throwable e = error;
+            if (e != null) {
+                canceled = true;
+                cancelInners();
+                clear();
+                downstream.onError(e);
+                return true;
+            }
+
+            return false;
+        }
+
+        void complete() {
+            canceled = true;
+            cancelInners();
+            clear();
+            downstream.onComplete();
+        }
+
+        private void cancelInners() {
+            for (JoinInner inner : inners) {
+                inner.cancel();
+            }
+        }
+
+        // Only called while holding wip
+        void clear() {
+            for (JoinInner inner : inners) {
+                inner.clear();
+            }
+        }
+    }
+
+    // One source of a JoinCoordinator, elements are kept as plain Objects since every source has its own type
+    static final class JoinInner implements Subscriber<Object> {
+        private final JoinCoordinator<?> parent;
+        private final int prefetch;
+        private final int limit;
+
+        // Only created when the source refuses fusion, written in onSubscribe before the first request
+        private volatile SpscArrayQueue<Object> queue;
+        // Set when the source agreed on SYNC fusion, the drain loop then polls it in place of our queue
+        private volatile QueueSubscription<?> fused;
+        volatile boolean done;
+
+        private volatile Subscription upstream;
+        private volatile boolean canceled;
+        private int consumed; // Only touched while holding the parent's wip
+
+        JoinInner(JoinCoordinator<?> parent, int prefetch) {
+            this.parent = parent;
+            this.prefetch = prefetch;
+            this.limit = prefetch - (prefetch >> 2);
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            upstream = subscription;
+            if (canceled) {
+                subscription.cancel();
+                return;
+            }
+
+            if (subscription instanceof QueueSubscription) {
+                QueueSubscription<?> qs = (QueueSubscription<?>) subscription;
+                if (qs.requestFusion(QueueSubscription.SYNC) == QueueSubscription.SYNC) {
+                    fused = qs;
+                    done = true; // A SYNC source already holds everything, poll() returning null is its completion
+                    parent.drain();
+                    return;
+                }
+            }
+
+            queue = new SpscArrayQueue<>(prefetch);
+            subscription.request(prefetch);
+        }
+
+        @Override
+        public void onNext(Object t) {
+            if (!queue.offer(t)) {
+                cancel();
+                parent.innerError(new IllegalStateException("Queue is full, the source ignored backpressure"));
+                return;
+            }
+            parent.drain();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            parent.innerError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            done = true;
+            parent.drain();
+        }
+
+        Object poll() {
+            QueueSubscription<?> fused = this.fused;
+            if (fused != null) {
+                return fused.poll();
+            }
+            SpscArrayQueue<Object> queue = this.queue;
+            return queue == null ? null : queue.poll();
+        }
+
+        boolean isEmpty() {
+            QueueSubscription<?> fused = this.fused;
+            if (fused != null) {
+                return fused.isEmpty();
+            }
+            SpscArrayQueue<Object> queue = this.queue;
+            return queue == null || queue.isEmpty();
+        }
+
+        // Called for every element taken from this source while holding wip, replenishes in batches of 75% of prefetch
+        // Fused sources are polled, there is nothing to request
+        void consumedOne() {
+            if (fused != null) return;
+            if (++consumed == limit) {
+                consumed = 0;
+                upstream.request(limit);
+            }
+        }
+
+        void clear() {
+            QueueSubscription<?> fused = this.fused;
+            if (fused != null) {
+                fused.clear();
+                return;
+            }
+            SpscArrayQueue<Object> queue = this.queue;
+            if (queue != null) {
+                queue.clear();
+            }
+        }
+
+        void cancel() {
+            canceled = true;
+            Subscription s = upstream;
+            if (s != null) {
+                s.cancel();
+            }
+        }
+    }
+}
@@ -115,6 +115,85 @@ class ArrayPublisherTests {
         assertThat(collected).containsExactly(array);
     }
 
+    @Test
+    public void mustEmitEverythingOnUnboundedRequest() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        ArrayList<Long> collected = new ArrayList<>();
+        Long[] array = generate(1000);
+        ArrayPublisher<Long> publisher = new ArrayPublisher<>(array);
+
+        publisher.subscribe(new Subscriber<Long>() {
+            Subscription s;
+
+            @Override
+            public void onSubscribe(Subscription s) {
+                this.s = s;
+                s.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(Long aLong) {
+                collected.add(aLong);
+                s.request(1); // Must be ignored, demand is already unbounded
+            }
+
+            @Override
+            public void onError(Throwable t) {
+
+            }
+
+            @Override
+            public void onComplete() {
+                latch.countDown();
+            }
+        });
+
+        assertThat(latch.await(1, SECONDS)).isTrue();
+
+        assertThat(collected).containsExactly(array);
+    }
+
+    @Test
+    public void mustSwitchToUnboundedModeWhileEmitting() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        ArrayList<Long> collected = new ArrayList<>();
+        Long[] array = generate(1000);
+        ArrayPublisher<Long> publisher = new ArrayPublisher<>(array);
+
+        publisher.subscribe(new Subscriber<Long>() {
+            Subscription s;
+
+            @Override
+            public void onSubscribe(Subscription s) {
+                this.s = s;
+                s.request(10);
+            }
+
+            @Override
+            public void onNext(Long aLong) {
+                collected.add(aLong);
+
+                if (aLong == 5L) {
+                    s.request(Long.MAX_VALUE - 1); // Overflows the outstanding demand, must be capped to unbounded
+                }
+            }
+
+            @Override
+            public void onError(Throwable t) {
+
+            }
+
+            @Override
+            public void onComplete() {
+                latch.countDown();
+            }
+        });
+
+        assertThat(latch.await(1, SECONDS)).isTrue();
+
+        assertThat(collected).containsExactly(array);
+    }
+
     @Test
     public void mustSendNPENormally() throws InterruptedException {
         CountDownLatch latch = new CountDownLatch(1);
@@ -266,6 +345,81 @@ class ArrayPublisherTests {
         Assertions.assertThat(collected).hasSize(n);
     }
 
+    // Same race as multithreadingTest with bounded, huge (overflowing) and unbounded demand mixed together
+    // Checks that the signals never overlap, come in order, and onComplete arrives exactly once
+    @Test
+    public void concurrentRequestsShouldKeepSignalsSerialized() throws InterruptedException {
+        final int n = 100_000;
+        final int threads = 4;
+        Long[] array = generate(n);
+        AtomicInteger inside = new AtomicInteger();
+        AtomicInteger completions = new AtomicInteger();
+        AtomicReference<String> violation = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicReference<Subscription> subscription = new AtomicReference<>();
+
+        new ArrayPublisher<>(array).subscribe(new Subscriber<Long>() {
+            long expected;
+
+            @Override
+            public void onSubscribe(Subscription s) {
+                subscription.set(s);
+            }
+
+            @Override
+            public void onNext(Long value) {
+                if (inside.getAndIncrement() != 0) violation.compareAndSet(null, "overlapping onNext");
+                if (value != expected++) violation.compareAndSet(null, "expected " + (expected - 1) + " but got " + value);
+                inside.decrementAndGet();
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                violation.compareAndSet(null, t.toString());
+                done.countDown();
+            }
+
+            @Override
+            public void onComplete() {
+                if (inside.get() != 0) violation.compareAndSet(null, "onComplete during onNext");
+                if (expected != n) violation.compareAndSet(null, "completed after " + expected + " elements");
+                completions.incrementAndGet();
+                done.countDown();
+            }
+        });
+
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] requesters = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            requesters[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                Subscription s = subscription.get();
+                for (int i = 0; i < n / threads; i++) {
+                    s.request(1);
+                    if (id == 0 && i == n / threads / 2) {
+                        s.request(Long.MAX_VALUE / 2 + 1); // Twice overflows the demand
+                        s.request(Long.MAX_VALUE / 2 + 1);
+                    }
+                }
+            });
+            requesters[t].start();
+        }
+        start.countDown();
+
+        assertThat(done.await(10, SECONDS)).isTrue();
+        for (Thread requester : requesters) {
+            requester.join();
+        }
+
+        assertThat(violation.get()).isNull();
+        assertThat(completions.get()).isEqualTo(1);
+    }
+
     static Long[] generate(long num) {
         return LongStream.range(0, num >= Integer.MAX_VALUE ? 1000000 : num)
                 .boxed()
@@ -0,0 +1,126 @@
+package mahmoud.fawzy;
+
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BufferFlowTests {
+
+    @Test
+    public void shouldGroupElementsAndEmitTheRemainderLast() throws InterruptedException {
+        TestSubscriber<List<Long>> subscriber = new TestSubscriber<>();
+
+        Flow.fromArray(generate(10)).buffer(4).subscribe(subscriber);
+
+        assertThat(subscriber.await()).isTrue();
+        assertThat(subscriber.values).containsExactly(List.of(0L, 1L, 2L, 3L), List.of(4L, 5L, 6L, 7L), List.of(8L, 9L));
+    }
+
+    @Test
+    public void unalignedDemandShouldProduceTheSameLists() {
+        TestSubscriber<List<Long>> subscriber = new TestSubscriber<>(0);
+
+        Flow.fromArray(generate(10)).buffer(3).subscribe(subscriber);
+
+        subscriber.request(1);
+        assertThat(subscriber.values).containsExactly(List.of(0L, 1L, 2L));
+
+        subscriber.request(2);
+        assertThat(subscriber.values).hasSize(3);
+        assertThat(subscriber.completions).isZero();
+
+        subscriber.request(1);
+        assertThat(subscriber.values.get(3)).containsExactly(9L);
+        assertThat(subscriber.completions).isEqualTo(1);
+    }
+
+    @Test
+    public void arraySourcesShouldDeliverSlices() {
+        List<int[]> slices = new ArrayList<>();
+        Long[] array = generate(2500);
+
+        new ArrayPublisher<>(array).subscribe(new BatchSubscriber<Long>() {
+            Subscription subscription;
+
+            @Override
+            public void onSubscribe(Subscription s) {
+                subscription = s;
+                s.request(1000);
+            }
+
+            @Override
+            public void onNextBatch(Long[] source, int from, int to) {
+                assertThat(source).isSameAs(array);
+                slices.add(new int[] { from, to });
+                subscription.request(to - from); // Reentrant, must not recurse
+            }
+
+            @Override
+            public void onNext(Long aLong) {
+                throw new AssertionError("Array sources only send batches");
+            }
+
+            @Override
+            public void onError(Throwable t) {
+            }
+
+            @Override
+            public void onComplete() {
+                slices.add(new int[0]);
+            }
+        });
+
+        assertThat(slices).containsExactly(new int[] { 0, 1000 }, new int[] { 1000, 2000 }, new int[] { 2000, 2500 }, new int[0]);
+    }
+
+    @Test
+    public void slicesShouldStopAtTheFirstNull() throws InterruptedException {
+        TestSubscriber<List<Long>> subscriber = new TestSubscriber<>();
+
+        Flow.fromArray(0L, 1L, 2L, null, 4L).buffer(2).subscribe(subscriber);
+
+        assertThat(subscriber.await()).isTrue();
+        assertThat(subscriber.values).containsExactly(List.of(0L, 1L));
+        assertThat(subscriber.errors).hasSize(1);
+        assertThat(subscriber.errors.get(0)).isInstanceOf(NullPointerException.class);
+    }
+
+    @Test
+    public void unfusedSourcesShouldBeBufferedElementByElement() throws InterruptedException {
+        TestSubscriber<List<Long>> subscriber = new TestSubscriber<>();
+
+        Flow.fromArray(generate(7)).filter(l -> l != 3L).buffer(2).subscribe(subscriber);
+
+        assertThat(subscriber.await()).isTrue();
+        assertThat(subscriber.values).containsExactly(List.of(0L, 1L), List.of(2L, 4L), List.of(5L, 6L));
+    }
+
+    @Test
+    public void cancelInsideOnNextShouldStopTheSlice() {
+        TestSubscriber<List<Long>> subscriber = new TestSubscriber<>() {
+            @Override
+            public void onNext(List<Long> list) {
+                super.onNext(list);
+                if (values.size() == 2) {
+                    cancel();
+                }
+            }
+        };
+
+        Flow.fromArray(generate(100)).buffer(10).subscribe(subscriber);
+
+        assertThat(subscriber.values).hasSize(2);
+        assertThat(subscriber.completions).isZero();
+    }
+
+    static Long[] generate(long num) {
+        return LongStream.range(0, num)
+                .boxed()
+                .toArray(Long[]::new);
+    }
+}
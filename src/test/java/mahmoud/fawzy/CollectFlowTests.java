@@ -0,0 +1,162 @@
+package mahmoud.fawzy;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CollectFlowTests {
+
+    @Test
+    public void toListShouldCollectEverythingInOrder() throws InterruptedException {
+        Long[] array = generate(1000);
+        TestSubscriber<List<Long>> subscriber = new TestSubscriber<>();
+
+        Flow.fromArray(array).toList().subscribe(subscriber);
+
+        assertThat(subscriber.await()).isTrue();
+        assertThat(subscriber.values).hasSize(1);
+        assertThat(subscriber.values.get(0)).containsExactly(array);
+        assertThat(subscriber.completions).isEqualTo(1);
+    }
+
+    // The size the container gets created with tells which path ran: the exact size for the fused poll() loop,
+    // -1 when the upstream had to be subscribed to the usual way
+    @Test
+    public void fusedSourcesShouldHandTheirSizeToTheContainer() throws InterruptedException {
+        List<Integer> sizes = new CopyOnWriteArrayList<>();
+        List<Flow<Long>> sources = List.of(
+                Flow.fromArray(generate(10)),
+                Flow.fromArray(generate(10)).map(l -> l + 1),
+                new MapFlow<Long, Long>(new ArrayPublisher<>(generate(10)), l -> l + 1),
+                Flow.fromIterable(List.of(generate(10))),
+                Flow.range(0, 10).map(i -> (long) i),
+                new MapFlow<Long, Long>(new ArrayPublisherUnoptimized<>(generate(10)), l -> l + 1));
+
+        for (Flow<Long> source : sources) {
+            TestSubscriber<List<Long>> subscriber = new TestSubscriber<>();
+            new CollectFlow<Long, List<Long>, List<Long>>(source, size -> {
+                sizes.add(size);
+                return new ArrayList<>();
+            }, List::add, list -> list).subscribe(subscriber);
+
+            assertThat(subscriber.await()).isTrue();
+            assertThat(subscriber.values.get(0)).hasSize(10);
+        }
+        assertThat(sizes).containsExactly(10, 10, 10, 10, 10, -1);
+    }
+
+    @Test
+    public void reduceShouldCombineTheElements() throws InterruptedException {
+        TestSubscriber<Long> fused = new TestSubscriber<>();
+        TestSubscriber<Long> unfused = new TestSubscriber<>();
+
+        Flow.fromArray(generate(100)).reduce(Long::sum).subscribe(fused);
+        new MapFlow<Long, Long>(new ArrayPublisherUnoptimized<>(generate(100)), l -> l).reduce(Long::sum).subscribe(unfused);
+
+        assertThat(fused.await()).isTrue();
+        assertThat(unfused.await()).isTrue();
+        assertThat(fused.values).containsExactly(4950L);
+        assertThat(unfused.values).containsExactly(4950L);
+    }
+
+    @Test
+    public void reduceOfNothingShouldCompleteEmpty() throws InterruptedException {
+        TestSubscriber<Long> subscriber = new TestSubscriber<>();
+
+        Flow.fromArray(new Long[0]).reduce(Long::sum).subscribe(subscriber);
+
+        assertThat(subscriber.await()).isTrue();
+        assertThat(subscriber.values).isEmpty();
+        assertThat(subscriber.completions).isEqualTo(1);
+    }
+
+    @Test
+    public void countAndCollectShouldWorkOnAnySource() throws InterruptedException {
+        TestSubscriber<Long> count = new TestSubscriber<>();
+        TestSubscriber<Set<Long>> collected = new TestSubscriber<>();
+
+        Flow.range(0, 12345).filter(i -> i % 5 == 0).count().subscribe(count);
+        Flow.fromArray(3L, 1L, 2L, 1L).<Set<Long>>collect(TreeSet::new, Set::add).subscribe(collected);
+
+        assertThat(count.await()).isTrue();
+        assertThat(collected.await()).isTrue();
+        assertThat(count.values).containsExactly(2469L);
+        assertThat(collected.values.get(0)).containsExactly(1L, 2L, 3L);
+    }
+
+    @Test
+    public void theResultShouldWaitForTheDownstreamRequest() throws InterruptedException {
+        TestSubscriber<Long> subscriber = new TestSubscriber<>(0);
+
+        Flow.fromArray(generate(10)).count().subscribe(subscriber);
+
+        assertThat(subscriber.values).isEmpty();
+        assertThat(subscriber.completions).isZero();
+
+        subscriber.request(1);
+
+        assertThat(subscriber.await()).isTrue();
+        assertThat(subscriber.values).containsExactly(10L);
+    }
+
+    @Test
+    public void failuresShouldBeSignalledOnBothPaths() throws InterruptedException {
+        IllegalStateException failure = new IllegalStateException();
+        TestSubscriber<Long> fused = new TestSubscriber<>();
+        TestSubscriber<Long> unfused = new TestSubscriber<>();
+
+        Flow.fromArray(generate(10)).reduce((a, b) -> {
+            throw failure;
+        }).subscribe(fused);
+        new MapFlow<Long, Long>(new ArrayPublisherUnoptimized<>(new Long[]{1L, null, 3L}), l -> l).count().subscribe(unfused);
+
+        assertThat(fused.await()).isTrue();
+        assertThat(unfused.await()).isTrue();
+        assertThat(fused.errors).containsExactly(failure);
+        assertThat(unfused.errors).hasSize(1).first().isInstanceOf(NullPointerException.class);
+        assertThat(fused.values).isEmpty();
+        assertThat(unfused.values).isEmpty();
+    }
+
+    @Test
+    public void blockingFirstAndLastShouldWaitForAsynchronousSources() {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Flow<Long> flow = Flow.fromArray(generate(1000)).subscribeOn(executor);
+
+            assertThat(flow.blockingFirst()).isEqualTo(0L);
+            assertThat(flow.blockingLast()).isEqualTo(999L);
+            assertThat(Flow.fromArray(generate(1000)).map(l -> l * 2).blockingLast()).isEqualTo(1998L);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void blockingTerminalsShouldThrowOnEmptyOrFailedFlows() {
+        IllegalStateException failure = new IllegalStateException();
+        Flow<Long> failed = Flow.fromArray(generate(3)).map(l -> {
+            throw failure;
+        });
+
+        assertThatThrownBy(() -> Flow.fromArray(new Long[0]).blockingFirst()).isInstanceOf(NoSuchElementException.class);
+        assertThatThrownBy(() -> Flow.fromArray(new Long[0]).blockingLast()).isInstanceOf(NoSuchElementException.class);
+        assertThatThrownBy(failed::blockingFirst).isSameAs(failure);
+        assertThatThrownBy(failed::blockingLast).isSameAs(failure);
+    }
+
+    static Long[] generate(long num) {
+        return LongStream.range(0, num).boxed().toArray(Long[]::new);
+    }
+}
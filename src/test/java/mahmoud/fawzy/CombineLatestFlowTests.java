@@ -0,0 +1,94 @@
+package mahmoud.fawzy;
+
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CombineLatestFlowTests {
+
+    @Test
+    public void everyElementShouldBeCombinedWithTheLatestOfTheOthers() throws InterruptedException {
+        List<Subscriber<? super Long>> prices = new ArrayList<>();
+        List<Subscriber<? super String>> symbols = new ArrayList<>();
+        TestSubscriber<String> subscriber = new TestSubscriber<>();
+
+        Flow.combineLatest(hot(symbols), hot(prices), (symbol, price) -> symbol + "=" + price).subscribe(subscriber);
+
+        prices.get(0).onNext(1L);
+        prices.get(0).onNext(2L); // Nothing yet, the symbol never emitted
+        assertThat(subscriber.values).isEmpty();
+
+        symbols.get(0).onNext("A");
+        prices.get(0).onNext(3L);
+        symbols.get(0).onNext("B");
+        symbols.get(0).onComplete();
+        prices.get(0).onNext(4L);
+        assertThat(subscriber.completions).isZero(); // Prices still go on with the last symbol
+
+        prices.get(0).onComplete();
+
+        assertThat(subscriber.await()).isTrue();
+        assertThat(subscriber.values).containsExactly("A=2", "A=3", "B=3", "B=4");
+        assertThat(subscriber.completions).isEqualTo(1);
+    }
+
+    @Test
+    public void aSourceCompletingEmptyShouldCompleteRightAway() throws InterruptedException {
+        List<Subscriber<? super Long>> live = new ArrayList<>();
+        TestSubscriber<Long> subscriber = new TestSubscriber<>();
+
+        Flow.combineLatest(row -> (Long) row[0], 16, hot(live), Flow.fromArray(new Long[0])).subscribe(subscriber);
+
+        assertThat(subscriber.await()).isTrue();
+        assertThat(subscriber.values).isEmpty();
+        assertThat(subscriber.completions).isEqualTo(1);
+    }
+
+    // Elements that can't be emitted stay queued, nothing gets overwritten while the downstream isn't requesting
+    @Test
+    public void noCombinationShouldBeSkippedWithoutDemand() throws InterruptedException {
+        TestSubscriber<Long> subscriber = new TestSubscriber<>(0);
+
+        Flow.combineLatest(Flow.fromArray(10L), Flow.fromArray(1L, 2L, 3L), Long::sum).subscribe(subscriber);
+
+        subscriber.request(1);
+        assertThat(subscriber.values).containsExactly(11L);
+        assertThat(subscriber.completions).isZero();
+
+        subscriber.request(2);
+
+        assertThat(subscriber.await()).isTrue();
+        assertThat(subscriber.values).containsExactly(11L, 12L, 13L);
+    }
+
+    @Test
+    public void errorsShouldCancelTheOtherSources() throws InterruptedException {
+        IllegalStateException failure = new IllegalStateException();
+        List<Subscriber<? super Long>> failing = new ArrayList<>();
+        List<Subscriber<? super Long>> other = new ArrayList<>();
+        TestSubscriber<Long> subscriber = new TestSubscriber<>();
+
+        Flow.combineLatest(hot(failing), hot(other), Long::sum).subscribe(subscriber);
+        failing.get(0).onNext(1L);
+        other.get(0).onNext(1L);
+        failing.get(0).onError(failure);
+        other.get(0).onNext(2L); // Too late
+
+        assertThat(subscriber.await()).isTrue();
+        assertThat(subscriber.values).containsExactly(2L);
+        assertThat(subscriber.errors).containsExactly(failure);
+    }
+
+    // Emits whenever the test calls onNext, requests are ignored
+    static <T> Publisher<T> hot(List<Subscriber<? super T>> subscribers) {
+        return subscriber -> {
+            subscribers.add(subscriber);
+            subscriber.onSubscribe(EmptySubscription.INSTANCE);
+        };
+    }
+}
@@ -0,0 +1,153 @@
+package mahmoud.fawzy;
+
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConcatMapFlowTests {
+
+    @Test
+    public void concatShouldEmitEverySourceInOrder() throws InterruptedException {
+        TestSubscriber<Long> subscriber = new TestSubscriber<>();
+
+        Flow.concat(Flow.fromArray(0L, 1L), new ArrayPublisherUnoptimized<>(new Long[0]),
+                new ArrayPublisherUnoptimized<>(new Long[]{2L, 3L}), Flow.range(4, 3).map(i -> (long) i)).subscribe(subscriber);
+
+        assertThat(subscriber.await()).isTrue();
+        assertThat(subscriber.values).containsExactly(generate(7));
+        assertThat(subscriber.completions).isEqualTo(1);
+    }
+
+    // Every inner completes synchronously within its subscribe(..), with recursion this would overflow the stack
+    @Test
+    public void manySmallSegmentsShouldNotGrowTheStack() throws InterruptedException {
+        Long[] array = generate(30_000);
+        TestSubscriber<Long> fused = new TestSubscriber<>();
+        TestSubscriber<Long> unfused = new TestSubscriber<>();
+        TestSubscriber<Long> oneByOne = new TestSubscriber<>(0);
+
+        Flow.range(0, 10_000).concatMap(i -> Flow.fromArray(3L * i, 3L * i + 1, 3L * i + 2)).subscribe(fused);
+        Flow.range(0, 10_000).concatMap(i -> new ArrayPublisherUnoptimized<>(new Long[]{3L * i, 3L * i + 1, 3L * i + 2}))
+                .subscribe(unfused);
+        Flow.range(0, 10_000).concatMap(i -> Flow.fromArray(3L * i, 3L * i + 1, 3L * i + 2)).subscribe(oneByOne);
+        for (int i = 0; i < array.length; i++) {
+            oneByOne.request(1);
+        }
+
+        assertThat(fused.await()).isTrue();
+        assertThat(unfused.await()).isTrue();
+        assertThat(oneByOne.await()).isTrue();
+        assertThat(fused.values).containsExactly(array);
+        assertThat(unfused.values).containsExactly(array);
+        assertThat(oneByOne.values).containsExactly(array);
+    }
+
+    // What a source didn't use of a request carries over to the next ones, without asking the downstream again
+    @Test
+    public void outstandingDemandShouldCarryOverToTheNextSource() throws InterruptedException {
+        List<Long> requests = new CopyOnWriteArrayList<>();
+        Publisher<Long> second = ZipFlowTests.tracked(new ArrayPublisherUnoptimized<>(new Long[]{3L, 4L, 5L, 6L}), requests);
+        TestSubscriber<Long> subscriber = new TestSubscriber<>(0);
+
+        Flow.concat(Flow.fromArray(0L, 1L, 2L), second, Flow.fromArray(7L, 8L)).subscribe(subscriber);
+
+        subscriber.request(5);
+        assertThat(subscriber.values).containsExactly(0L, 1L, 2L, 3L, 4L);
+        assertThat(requests).containsExactly(2L);
+
+        subscriber.request(3);
+        assertThat(subscriber.values).containsExactly(generate(8));
+        assertThat(requests).containsExactly(2L, 3L);
+        assertThat(subscriber.completions).isZero();
+
+        subscriber.request(1);
+
+        assertThat(subscriber.await()).isTrue();
+        assertThat(subscriber.values).containsExactly(generate(9));
+    }
+
+    @Test
+    public void innerErrorsShouldEndTheStreamRightAway() throws InterruptedException {
+        IllegalStateException failure = new IllegalStateException();
+        TestSubscriber<Long> subscriber = new TestSubscriber<>();
+
+        Flow.range(0, 10).concatMap(i -> Flow.fromArray(generate(3)).map(l -> {
+            if (i == 2 && l == 1L) throw failure;
+            return l;
+        })).subscribe(subscriber);
+
+        assertThat(subscriber.await()).isTrue();
+        assertThat(subscriber.values).containsExactly(0L, 1L, 2L, 0L, 1L, 2L, 0L);
+        assertThat(subscriber.errors).containsExactly(failure);
+    }
+
+    // The upstream fails while an inner is still active, the inner gets to finish first
+    @Test
+    public void upstreamErrorsShouldWaitForTheActiveInner() throws InterruptedException {
+        IllegalStateException failure = new IllegalStateException();
+        List<Subscriber<? super Integer>> upstream = new ArrayList<>();
+        List<Subscriber<? super Long>> inner = new ArrayList<>();
+        TestSubscriber<Long> subscriber = new TestSubscriber<>();
+
+        new ConcatMapFlow<Integer, Long>(CombineLatestFlowTests.hot(upstream), i -> CombineLatestFlowTests.hot(inner), 4)
+                .subscribe(subscriber);
+        upstream.get(0).onNext(1);
+        upstream.get(0).onNext(2);
+        upstream.get(0).onError(failure);
+        inner.get(0).onNext(10L);
+
+        assertThat(subscriber.errors).isEmpty();
+
+        inner.get(0).onNext(11L);
+        inner.get(0).onComplete();
+
+        assertThat(subscriber.await()).isTrue();
+        assertThat(subscriber.values).containsExactly(10L, 11L);
+        assertThat(subscriber.errors).containsExactly(failure);
+        assertThat(inner).hasSize(1); // The queued element isn't mapped anymore
+    }
+
+    @Test
+    public void asynchronousInnersShouldStayInOrder() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Long[] array = generate(20_000);
+            TestSubscriber<Long> subscriber = new TestSubscriber<>(0);
+
+            Flow.range(0, 1000).concatMap(i -> new MapFlow<Long, Long>(
+                    new ArrayPublisherUnoptimized<>(generateFrom(i * 20L, 20)), l -> l).subscribeOn(executor), 8)
+                    .subscribe(subscriber);
+
+            Thread requester = new Thread(() -> {
+                while (subscriber.done.getCount() != 0) {
+                    subscriber.request(7);
+                    Thread.yield();
+                }
+            });
+            requester.start();
+
+            assertThat(subscriber.await()).isTrue();
+            assertThat(subscriber.values).containsExactly(array);
+            requester.join();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    static Long[] generateFrom(long start, long num) {
+        return LongStream.range(start, start + num).boxed().toArray(Long[]::new);
+    }
+
+    static Long[] generate(long num) {
+        return generateFrom(0, num);
+    }
+}
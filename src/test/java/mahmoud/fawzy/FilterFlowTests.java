@@ -0,0 +1,158 @@
+package mahmoud.fawzy;
+
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FilterFlowTests {
+
+    @Test
+    public void shouldOnlyCountDeliveredElementsAgainstDemand() throws InterruptedException {
+        TestSubscriber<Long> subscriber = new TestSubscriber<>(3);
+
+        Flow.fromArray(generate(100))
+                .filter(l -> l % 10 == 0)
+                .subscribe(subscriber);
+
+        assertThat(subscriber.values).containsExactly(0L, 10L, 20L);
+
+        subscriber.request(100);
+
+        assertThat(subscriber.await()).isTrue();
+        assertThat(subscriber.values).containsExactly(0L, 10L, 20L, 30L, 40L, 50L, 60L, 70L, 80L, 90L);
+    }
+
+    @Test
+    public void arraySourceMustCallTryOnNextAndSkipRejectedElements() {
+        ArrayList<Long> accepted = new ArrayList<>();
+        AtomicInteger offered = new AtomicInteger();
+
+        new ArrayPublisher<>(generate(10)).subscribe(new ConditionalSubscriber<Long>() {
+            @Override
+            public boolean tryOnNext(Long aLong) {
+                offered.incrementAndGet();
+                if (aLong % 2 == 0) {
+                    accepted.add(aLong);
+                    return true;
+                }
+                return false;
+            }
+
+            @Override
+            public void onSubscribe(Subscription s) {
+                s.request(3);
+            }
+
+            @Override
+            public void onNext(Long aLong) {
+                throw new AssertionError("Conditional subscribers must receive tryOnNext");
+            }
+
+            @Override
+            public void onError(Throwable t) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+
+        assertThat(accepted).containsExactly(0L, 2L, 4L);
+        assertThat(offered).hasValue(5);
+    }
+
+    @Test
+    public void shouldReplenishDroppedElementsFromNonConditionalSources() throws InterruptedException {
+        TestSubscriber<Long> subscriber = new TestSubscriber<>(2);
+
+        new FilterFlow<>(new ArrayPublisherUnoptimized<>(generate(10)), l -> l > 6).subscribe(subscriber);
+
+        assertThat(subscriber.values).containsExactly(7L, 8L);
+
+        subscriber.request(1);
+
+        assertThat(subscriber.await()).isTrue();
+        assertThat(subscriber.values).containsExactly(7L, 8L, 9L);
+    }
+
+    @Test
+    public void filtersAndMapsShouldChainConditionally() throws InterruptedException {
+        TestSubscriber<String> subscriber = new TestSubscriber<>(2);
+
+        new MapFlow<Long, Long>(new ArrayPublisher<>(generate(20)), l -> l * 3)
+                .filter(l -> l % 2 == 0)
+                .map(l -> "#" + l)
+                .filter(s -> !s.endsWith("2"))
+                .subscribe(subscriber);
+
+        assertThat(subscriber.values).containsExactly("#0", "#6");
+
+        subscriber.request(100);
+
+        assertThat(subscriber.await()).isTrue();
+        assertThat(subscriber.values).containsExactly("#0", "#6", "#18", "#24", "#30", "#36", "#48", "#54");
+    }
+
+    @Test
+    public void predicateErrorsMustBeSignalledDownstream() throws InterruptedException {
+        IllegalStateException failure = new IllegalStateException();
+        TestSubscriber<Long> subscriber = new TestSubscriber<>();
+
+        Flow.fromArray(generate(5))
+                .filter(l -> {
+                    if (l == 3L) throw failure;
+                    return true;
+                })
+                .subscribe(subscriber);
+
+        assertThat(subscriber.await()).isTrue();
+        assertThat(subscriber.values).containsExactly(0L, 1L, 2L);
+        assertThat(subscriber.errors).containsExactly(failure);
+    }
+
+    @Test
+    public void filterMustPassSyncFusionThrough() {
+        ArrayList<Long> polled = new ArrayList<>();
+
+        Flow.fromArray(generate(10)).filter(l -> l % 3 == 0).subscribe(new Subscriber<Long>() {
+            @Override
+            public void onSubscribe(Subscription s) {
+                @SuppressWarnings("unchecked")
+                QueueSubscription<Long> qs = (QueueSubscription<Long>) s;
+                assertThat(qs.requestFusion(QueueSubscription.SYNC)).isEqualTo(QueueSubscription.SYNC);
+
+                for (Long value = qs.poll(); value != null; value = qs.poll()) {
+                    polled.add(value);
+                }
+            }
+
+            @Override
+            public void onNext(Long aLong) {
+                throw new AssertionError("Fused sources must not call onNext");
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                throw new AssertionError(t);
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+
+        assertThat(polled).containsExactly(0L, 3L, 6L, 9L);
+    }
+
+    static Long[] generate(long num) {
+        return LongStream.range(0, num)
+                .boxed()
+                .toArray(Long[]::new);
+    }
+}
@@ -0,0 +1,170 @@
+package mahmoud.fawzy;
+
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Publisher;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FlatMapFlowTests {
+
+    @Test
+    public void everyInnerElementShouldBeEmitted() throws InterruptedException {
+        TestSubscriber<Long> subscriber = new TestSubscriber<>();
+
+        Flow.fromArray(generate(100))
+                .flatMap(l -> Flow.fromArray(l, l + 1000, l + 2000))
+                .subscribe(subscriber);
+
+        assertThat(subscriber.await()).isTrue();
+        assertThat(subscriber.values).hasSize(300);
+        assertThat(subscriber.values).containsAll(List.of(0L, 1099L, 2050L));
+        assertThat(subscriber.completions).isEqualTo(1);
+    }
+
+    @Test
+    public void scalarAndEmptyInnersShouldBeMergedWithoutSubscribing() throws InterruptedException {
+        TestSubscriber<Long> subscriber = new TestSubscriber<>();
+
+        Flow.fromArray(generate(1000))
+                .flatMap(l -> l % 2 == 0 ? Flow.fromArray(l) : Flow.<Long>fromArray(), 4, 4)
+                .subscribe(subscriber);
+
+        assertThat(subscriber.await()).isTrue();
+        assertThat(subscriber.values).containsExactly(LongStream.range(0, 500).map(l -> l * 2).boxed().toArray(Long[]::new));
+    }
+
+    @Test
+    public void shouldRespectDownstreamDemandAcrossScalarsAndInners() {
+        TestSubscriber<Long> subscriber = new TestSubscriber<>(0);
+
+        Flow.fromArray(generate(10))
+                .flatMap(l -> l % 2 == 0 ? Flow.fromArray(l) : Flow.fromArray(l, l, l).filter(x -> true), 2, 2)
+                .subscribe(subscriber);
+
+        for (int i = 1; i < 20; i++) {
+            subscriber.request(1);
+            assertThat(subscriber.values).hasSize(i);
+        }
+        assertThat(subscriber.completions).isZero();
+
+        subscriber.request(Long.MAX_VALUE);
+        assertThat(subscriber.values).hasSize(20);
+        assertThat(subscriber.values.stream().filter(l -> l == 7L)).hasSize(3);
+        assertThat(subscriber.completions).isEqualTo(1);
+    }
+
+    @Test
+    public void atMostMaxConcurrencyInnersShouldBeActive() throws InterruptedException {
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        TestSubscriber<Long> subscriber = new TestSubscriber<>();
+
+        try {
+            Flow.fromArray(generate(100))
+                    .flatMap(l -> tracked(Flow.fromArray(generate(50)).subscribeOn(executor), active, maxActive), 3, 8)
+                    .subscribe(subscriber);
+
+            assertThat(subscriber.await()).isTrue();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(subscriber.errors).isEmpty();
+        assertThat(subscriber.values).hasSize(5000);
+        assertThat(maxActive.get()).isLessThanOrEqualTo(3);
+    }
+
+    @Test
+    public void fusedInnerMapperErrorsShouldReachTheDownstream() throws InterruptedException {
+        IllegalStateException failure = new IllegalStateException();
+        TestSubscriber<Long> subscriber = new TestSubscriber<>();
+
+        Flow.fromArray(generate(10))
+                .flatMap(l -> Flow.fromArray(l, l).map(x -> {
+                    if (x == 5L) throw failure;
+                    return x;
+                }))
+                .subscribe(subscriber);
+
+        assertThat(subscriber.await()).isTrue();
+        assertThat(subscriber.errors).containsExactly(failure);
+        assertThat(subscriber.completions).isZero();
+    }
+
+    @Test
+    public void mapperErrorsShouldCancelTheUpstream() throws InterruptedException {
+        IllegalStateException failure = new IllegalStateException();
+        AtomicInteger calls = new AtomicInteger();
+        TestSubscriber<Long> subscriber = new TestSubscriber<>();
+
+        Flow.fromArray(generate(10))
+                .flatMap(l -> {
+                    calls.incrementAndGet();
+                    if (l == 3L) throw failure;
+                    return Flow.fromArray(l);
+                })
+                .subscribe(subscriber);
+
+        assertThat(subscriber.await()).isTrue();
+        assertThat(subscriber.values).containsExactly(0L, 1L, 2L);
+        assertThat(subscriber.errors).containsExactly(failure);
+        assertThat(calls.get()).isEqualTo(4);
+    }
+
+    @Test
+    public void cancelShouldStopEveryInner() {
+        TestSubscriber<Long> subscriber = new TestSubscriber<>(5);
+
+        Flow.fromArray(generate(10))
+                .flatMap(l -> Flow.fromArray(generate(100)).filter(x -> true))
+                .subscribe(subscriber);
+
+        subscriber.cancel();
+        subscriber.request(100);
+
+        assertThat(subscriber.values).hasSize(5);
+        assertThat(subscriber.completions).isZero();
+    }
+
+    static <T> Publisher<T> tracked(Flow<T> flow, AtomicInteger active, AtomicInteger maxActive) {
+        return subscriber -> {
+            maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            flow.subscribe(new org.reactivestreams.Subscriber<T>() {
+                @Override
+                public void onSubscribe(org.reactivestreams.Subscription s) {
+                    subscriber.onSubscribe(s);
+                }
+
+                @Override
+                public void onNext(T t) {
+                    subscriber.onNext(t);
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    active.decrementAndGet();
+                    subscriber.onError(t);
+                }
+
+                @Override
+                public void onComplete() {
+                    active.decrementAndGet();
+                    subscriber.onComplete();
+                }
+            });
+        };
+    }
+
+    static Long[] generate(long num) {
+        return LongStream.range(0, num)
+                .boxed()
+                .toArray(Long[]::new);
+    }
+}
@@ -0,0 +1,145 @@
+package mahmoud.fawzy;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.reactivestreams.Subscription;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FlowEventsTests {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void requestEventsShouldDescribeTheEmissionLoop() throws IOException {
+        List<RecordedEvent> events = record(() -> {
+            // Asks for 2, then 1 more from inside onNext: the nested call hands its demand over, the loop steals it
+            Flow.fromArray(generate(10)).subscribe(new TestSubscriber<Long>(2) {
+                @Override
+                public void onNext(Long value) {
+                    super.onNext(value);
+                    if (value == 0L) {
+                        request(1);
+                    }
+                }
+            });
+        });
+
+        List<RecordedEvent> requests = named(events, "mahmoud.fawzy.Request");
+        assertThat(requests).hasSize(2);
+
+        RecordedEvent nested = requests.get(0); // Committed first, it ends first
+        assertThat(nested.getLong("requested")).isEqualTo(1);
+        assertThat(nested.getBoolean("drained")).isFalse();
+        assertThat(nested.getLong("emitted")).isZero();
+
+        RecordedEvent outer = requests.get(1);
+        assertThat(outer.getLong("requested")).isEqualTo(2);
+        assertThat(outer.getBoolean("drained")).isTrue();
+        assertThat(outer.getBoolean("workStolen")).isTrue();
+        assertThat(outer.getLong("emitted")).isEqualTo(3);
+
+        RecordedEvent subscribe = named(events, "mahmoud.fawzy.Subscribe").get(0);
+        assertThat(subscribe.getString("publisher")).isEqualTo(ArrayPublisher.class.getName());
+        assertThat(subscribe.getInt("elements")).isEqualTo(10);
+    }
+
+    @Test
+    public void cancelAndMapErrorsShouldBeRecorded() throws IOException {
+        List<RecordedEvent> events = record(() -> {
+            TestSubscriber<Long> canceled = new TestSubscriber<>(4);
+            Flow.fromArray(generate(10)).subscribe(canceled);
+            canceled.cancel();
+
+            Flow.fromArray(generate(10)).map(l -> {
+                if (l == 5L) throw new IllegalStateException("boom");
+                return l;
+            }).subscribe(new TestSubscriber<>());
+        });
+
+        RecordedEvent cancel = named(events, "mahmoud.fawzy.Cancel").get(0);
+        assertThat(cancel.getLong("position")).isEqualTo(4);
+        assertThat(cancel.getLong("remaining")).isEqualTo(6);
+
+        RecordedEvent mapError = named(events, "mahmoud.fawzy.MapError").get(0);
+        assertThat(mapError.getString("exception")).isEqualTo(IllegalStateException.class.getName());
+        assertThat(mapError.getString("message")).isEqualTo("boom");
+    }
+
+    // The fused upstream failing from poll() is not the mapper's fault
+    @Test
+    public void upstreamFailuresShouldNotBeRecordedAsMapErrors() throws IOException {
+        TestSubscriber<Long> subscriber = new TestSubscriber<>(0);
+        List<RecordedEvent> events = record(() -> {
+            List<Long> list = new ArrayList<>(List.of(1L, 2L, 3L));
+            Flow.fromIterable(list).map(l -> l * 10).subscribe(subscriber);
+            list.clear();
+            subscriber.request(3);
+        });
+
+        assertThat(subscriber.errors.get(0)).isInstanceOf(IndexOutOfBoundsException.class);
+        assertThat(named(events, "mahmoud.fawzy.MapError")).isEmpty();
+    }
+
+    // A recording with the default settings, like the one running in production, only gets the map errors
+    @Test
+    public void perSubscriptionEventsShouldBeOptIn() throws IOException {
+        Path file = dir.resolve("defaults.jfr");
+        try (Recording recording = new Recording()) {
+            recording.start();
+            TestSubscriber<Long> canceled = new TestSubscriber<>(4);
+            Flow.fromArray(generate(10)).subscribe(canceled);
+            canceled.cancel();
+            Flow.fromArray(generate(10)).map(l -> {
+                if (l == 5L) throw new IllegalStateException("boom");
+                return l;
+            }).subscribe(new TestSubscriber<>());
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        assertThat(named(events, "mahmoud.fawzy.Request")).isEmpty();
+        assertThat(named(events, "mahmoud.fawzy.Subscribe")).isEmpty();
+        assertThat(named(events, "mahmoud.fawzy.Cancel")).isEmpty();
+        assertThat(named(events, "mahmoud.fawzy.MapError")).hasSize(1);
+    }
+
+    private List<RecordedEvent> record(Runnable pipeline) throws IOException {
+        Path file = dir.resolve("flow.jfr");
+        try (Recording recording = new Recording()) {
+            for (String name : List.of("Subscribe", "Request", "Cancel", "MapError")) {
+                recording.enable("mahmoud.fawzy." + name).withoutThreshold();
+            }
+            recording.start();
+            pipeline.run();
+            recording.stop();
+            recording.dump(file);
+        }
+        return RecordingFile.readAllEvents(file);
+    }
+
+    private static List<RecordedEvent> named(List<RecordedEvent> events, String name) {
+        return events.stream()
+                .filter(event -> event.getEventType().getName().equals(name))
+                .sorted((a, b) -> a.getEndTime().compareTo(b.getEndTime()))
+                .collect(Collectors.toList());
+    }
+
+    static Long[] generate(long num) {
+        return LongStream.range(0, num)
+                .boxed()
+                .toArray(Long[]::new);
+    }
+}
@@ -0,0 +1,30 @@
+package mahmoud.fawzy;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.tck.PublisherVerification;
+import org.reactivestreams.tck.TestEnvironment;
+
+public class GeneratePublisherTCKTests extends PublisherVerification<Long> {
+
+    public GeneratePublisherTCKTests(){
+        super(new TestEnvironment());
+    }
+
+    // Counts up to elements and completes, Long.MAX_VALUE never ends
+    @Override
+    public Publisher<Long> createPublisher(long elements) {
+        return Flow.generate(() -> 0L, (state, sink) -> {
+            if (state == elements) {
+                sink.complete();
+            } else {
+                sink.next(state);
+            }
+            return state + 1;
+        });
+    }
+
+    @Override
+    public Publisher<Long> createFailedPublisher() {
+        return null;
+    }
+}
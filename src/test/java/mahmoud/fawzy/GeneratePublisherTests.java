@@ -0,0 +1,106 @@
+package mahmoud.fawzy;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GeneratePublisherTests {
+
+    @Test
+    public void generatorShouldOnlyRunOnDemand() {
+        AtomicInteger calls = new AtomicInteger();
+        TestSubscriber<Integer> subscriber = new TestSubscriber<>(3);
+
+        Flow.<Integer, Integer>generate(() -> 0, (state, sink) -> {
+            calls.incrementAndGet();
+            sink.next(state);
+            return state + 1;
+        }).subscribe(subscriber);
+
+        assertThat(subscriber.values).containsExactly(0, 1, 2);
+        assertThat(calls.get()).isEqualTo(3);
+
+        subscriber.request(2);
+        assertThat(subscriber.values).containsExactly(0, 1, 2, 3, 4);
+        assertThat(calls.get()).isEqualTo(5);
+    }
+
+    @Test
+    public void completeShouldEndTheStreamAndCleanUpTheLastState() {
+        AtomicReference<Integer> cleaned = new AtomicReference<>();
+        TestSubscriber<Integer> subscriber = new TestSubscriber<>();
+
+        Flow.<Integer, Integer>generate(() -> 0, (state, sink) -> {
+            if (state == 3) {
+                sink.complete();
+            } else {
+                sink.next(state);
+            }
+            return state + 1;
+        }, cleaned::set).subscribe(subscriber);
+
+        assertThat(subscriber.values).containsExactly(0, 1, 2);
+        assertThat(subscriber.completions).isEqualTo(1);
+        assertThat(cleaned.get()).isEqualTo(4);
+    }
+
+    @Test
+    public void cancelWhileIdleShouldCleanUpTheState() {
+        AtomicInteger cleanups = new AtomicInteger();
+        TestSubscriber<Integer> subscriber = new TestSubscriber<>(2);
+
+        Flow.<Integer, Integer>generate(() -> 0, (state, sink) -> {
+            sink.next(state);
+            return state + 1;
+        }, state -> cleanups.incrementAndGet()).subscribe(subscriber);
+
+        subscriber.cancel();
+        subscriber.cancel();
+        subscriber.request(5);
+
+        assertThat(subscriber.values).containsExactly(0, 1);
+        assertThat(cleanups.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void misbehavingGeneratorsShouldFailTheStream() {
+        TestSubscriber<Integer> twice = new TestSubscriber<>();
+        TestSubscriber<Integer> never = new TestSubscriber<>();
+
+        Flow.<Integer, Integer>generate(() -> 0, (state, sink) -> {
+            sink.next(1);
+            sink.next(2);
+            return state;
+        }).subscribe(twice);
+        Flow.<Integer, Integer>generate(() -> 0, (state, sink) -> state).subscribe(never);
+
+        assertThat(twice.values).containsExactly(1);
+        assertThat(twice.errors.get(0)).isInstanceOf(IllegalStateException.class);
+        assertThat(never.errors.get(0)).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void generatorExceptionsShouldBeSignalled() {
+        IllegalStateException failure = new IllegalStateException();
+        TestSubscriber<Integer> subscriber = new TestSubscriber<>();
+
+        Flow.<Integer, Integer>generate(() -> 0, (state, sink) -> {
+            throw failure;
+        }).subscribe(subscriber);
+
+        assertThat(subscriber.errors).containsExactly(failure);
+    }
+
+    @Test
+    public void canceledSubscriptionsShouldReleaseTheSubscriber() throws InterruptedException {
+        Flow<Long> counter = Flow.generate(() -> 0L, (state, sink) -> {
+            sink.next(state);
+            return state + 1;
+        });
+
+        assertThat(TestSubscriber.releasedAfterCancel(counter)).isTrue();
+    }
+}
@@ -0,0 +1,27 @@
+package mahmoud.fawzy;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.tck.PublisherVerification;
+import org.reactivestreams.tck.TestEnvironment;
+
+import java.util.Arrays;
+
+import static mahmoud.fawzy.ArrayPublisherTCKTests.generate;
+
+// Random access lists, walked by index, see IteratorPublisherTCKTests for the iterator path
+public class IterablePublisherTCKTests extends PublisherVerification<Long> {
+
+    public IterablePublisherTCKTests(){
+        super(new TestEnvironment());
+    }
+
+    @Override
+    public Publisher<Long> createPublisher(long elements) {
+        return new IterablePublisher<>(Arrays.asList(generate(elements)));
+    }
+
+    @Override
+    public Publisher<Long> createFailedPublisher() {
+        return null;
+    }
+}
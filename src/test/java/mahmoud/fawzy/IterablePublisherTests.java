@@ -0,0 +1,127 @@
+package mahmoud.fawzy;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IterablePublisherTests {
+
+    @Test
+    public void randomAccessListsShouldBeWalkedByIndex() {
+        List<Long> list = new ArrayList<>(List.of(1L, 2L, 3L)) {
+            @Override
+            public Iterator<Long> iterator() {
+                throw new AssertionError("Random access lists must not be iterated");
+            }
+        };
+        TestSubscriber<Long> subscriber = new TestSubscriber<>(2);
+
+        Flow.fromIterable(list).subscribe(subscriber);
+
+        assertThat(subscriber.values).containsExactly(1L, 2L);
+        subscriber.request(1);
+        assertThat(subscriber.values).containsExactly(1L, 2L, 3L);
+        assertThat(subscriber.completions).isEqualTo(1);
+    }
+
+    @Test
+    public void otherIterablesShouldCompleteRightAfterTheLastElement() {
+        TestSubscriber<Long> subscriber = new TestSubscriber<>(3);
+
+        Flow.fromIterable(new LinkedList<>(List.of(1L, 2L, 3L))).subscribe(subscriber);
+
+        assertThat(subscriber.values).containsExactly(1L, 2L, 3L);
+        assertThat(subscriber.completions).isEqualTo(1);
+    }
+
+    @Test
+    public void emptyIterablesShouldCompleteWithoutARequest() {
+        TestSubscriber<Long> subscriber = new TestSubscriber<>(0);
+
+        Flow.fromIterable(Set.<Long>of()).subscribe(subscriber);
+
+        assertThat(subscriber.completions).isEqualTo(1);
+    }
+
+    @Test
+    public void everySubscriptionShouldStartOver() {
+        Iterable<Long> iterable = new LinkedList<>(List.of(1L, 2L));
+        Flow<Long> flow = Flow.fromIterable(iterable);
+        TestSubscriber<Long> first = new TestSubscriber<>();
+        TestSubscriber<Long> second = new TestSubscriber<>();
+
+        flow.subscribe(first);
+        flow.subscribe(second);
+
+        assertThat(first.values).containsExactly(1L, 2L);
+        assertThat(second.values).containsExactly(1L, 2L);
+    }
+
+    @Test
+    public void iteratorFailuresAndNullsShouldBeSignalled() {
+        IllegalStateException failure = new IllegalStateException();
+        TestSubscriber<Long> failing = new TestSubscriber<>();
+        TestSubscriber<Long> nulls = new TestSubscriber<>();
+
+        Flow.fromIterable(() -> new Iterator<Long>() {
+            int i;
+
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public Long next() {
+                if (i == 2) throw failure;
+                return (long) i++;
+            }
+        }).subscribe(failing);
+        Flow.fromIterable(Arrays.asList(1L, null, 3L)).subscribe(nulls);
+
+        assertThat(failing.values).containsExactly(0L, 1L);
+        assertThat(failing.errors).containsExactly(failure);
+        assertThat(nulls.values).containsExactly(1L);
+        assertThat(nulls.errors.get(0)).isInstanceOf(NullPointerException.class);
+    }
+
+    // The size is read at subscribe time, a list that shrinks afterwards fails the subscriber instead of request(n)
+    @Test
+    public void listFailuresShouldBeSignalled() {
+        List<Long> list = new ArrayList<>(List.of(1L, 2L, 3L, 4L));
+        TestSubscriber<Long> subscriber = new TestSubscriber<>(0);
+
+        Flow.fromIterable(list).subscribe(subscriber);
+        list.clear();
+        subscriber.request(4);
+
+        assertThat(subscriber.values).isEmpty();
+        assertThat(subscriber.errors).hasSize(1);
+        assertThat(subscriber.errors.get(0)).isInstanceOf(IndexOutOfBoundsException.class);
+        assertThat(subscriber.completions).isZero();
+    }
+
+    @Test
+    public void mapShouldFuseWithIterators() {
+        TestSubscriber<Long> subscriber = new TestSubscriber<>();
+
+        Flow.fromIterable(new LinkedList<>(List.of(1L, 2L, 3L))).map(l -> l * 10).subscribe(subscriber);
+
+        assertThat(subscriber.values).containsExactly(10L, 20L, 30L);
+        assertThat(subscriber.completions).isEqualTo(1);
+    }
+
+    // Both the index walk over lists and the iterator walk let go of the subscriber and the source
+    @Test
+    public void canceledSubscriptionsShouldReleaseTheSubscriber() throws InterruptedException {
+        assertThat(TestSubscriber.releasedAfterCancel(Flow.fromIterable(List.of(1L, 2L, 3L)))).isTrue();
+        assertThat(TestSubscriber.releasedAfterCancel(Flow.fromIterable(new LinkedList<>(List.of(1L, 2L, 3L))))).isTrue();
+    }
+}
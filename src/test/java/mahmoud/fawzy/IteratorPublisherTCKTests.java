@@ -0,0 +1,28 @@
+package mahmoud.fawzy;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.tck.PublisherVerification;
+import org.reactivestreams.tck.TestEnvironment;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+import static mahmoud.fawzy.ArrayPublisherTCKTests.generate;
+
+// Iterables that aren't random access lists, walked through their iterator
+public class IteratorPublisherTCKTests extends PublisherVerification<Long> {
+
+    public IteratorPublisherTCKTests(){
+        super(new TestEnvironment());
+    }
+
+    @Override
+    public Publisher<Long> createPublisher(long elements) {
+        return new IterablePublisher<>(new ArrayDeque<>(Arrays.asList(generate(elements))));
+    }
+
+    @Override
+    public Publisher<Long> createFailedPublisher() {
+        return null;
+    }
+}
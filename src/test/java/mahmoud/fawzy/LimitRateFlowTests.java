@@ -0,0 +1,205 @@
+package mahmoud.fawzy;
+
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LimitRateFlowTests {
+
+    // request(1) from within onNext, the upstream still only sees the batches
+    @Test
+    public void oneByOneRequestsShouldBeBatchedUpstream() throws InterruptedException {
+        Long[] array = generate(100);
+        List<Long> requests = new CopyOnWriteArrayList<>();
+        TestSubscriber<Long> subscriber = oneByOne();
+
+        new LimitRateFlow<>(ZipFlowTests.tracked(new ArrayPublisherUnoptimized<>(array), requests), 16, 8, false)
+                .subscribe(subscriber);
+
+        assertThat(subscriber.await()).isTrue();
+        assertThat(subscriber.values).containsExactly(array);
+        assertThat(requests).first().isEqualTo(16L);
+        assertThat(requests.subList(1, requests.size())).hasSize(12).containsOnly(8L);
+    }
+
+    @Test
+    public void downstreamDemandShouldStillBeHonoured() throws InterruptedException {
+        List<Long> requests = new CopyOnWriteArrayList<>();
+        TestSubscriber<Long> subscriber = new TestSubscriber<>(0);
+
+        new LimitRateFlow<>(ZipFlowTests.tracked(new ArrayPublisherUnoptimized<>(generate(50)), requests), 16, 12, false)
+                .subscribe(subscriber);
+
+        assertThat(requests).containsExactly(16L);
+        assertThat(subscriber.values).isEmpty(); // Prefetched, but nobody asked for them
+
+        subscriber.request(3);
+        assertThat(subscriber.values).containsExactly(0L, 1L, 2L);
+
+        subscriber.request(10);
+        assertThat(subscriber.values).hasSize(13);
+        assertThat(requests).containsExactly(16L, 12L);
+
+        subscriber.request(Long.MAX_VALUE);
+        assertThat(subscriber.await()).isTrue();
+        assertThat(subscriber.values).containsExactly(generate(50));
+    }
+
+    // A slow consumer ends up with a small window, a fast one keeps asking for big batches
+    @Test
+    public void adaptiveModeShouldFollowTheConsumer() throws InterruptedException {
+        List<Long> slowRequests = new CopyOnWriteArrayList<>();
+        List<Long> fastRequests = new CopyOnWriteArrayList<>();
+        TestSubscriber<Long> slow = new TestSubscriber<>(1) {
+            @Override
+            public void onNext(Long value) {
+                super.onNext(value);
+                LockSupport.parkNanos(200_000);
+                request(1);
+            }
+        };
+        TestSubscriber<Long> fast = oneByOne();
+
+        new LimitRateFlow<>(ZipFlowTests.tracked(new ArrayPublisherUnoptimized<>(generate(200)), slowRequests), 64, 64, true)
+                .subscribe(slow);
+        new LimitRateFlow<>(ZipFlowTests.tracked(new ArrayPublisherUnoptimized<>(generate(20_000)), fastRequests), 64, 64, true)
+                .subscribe(fast);
+
+        assertThat(slow.await()).isTrue();
+        assertThat(fast.await()).isTrue();
+        assertThat(slow.values).containsExactly(generate(200));
+        assertThat(fast.values).hasSize(20_000);
+        assertThat(slowRequests).first().isEqualTo(64L);
+        assertThat(slowRequests.subList(1, slowRequests.size())).isNotEmpty().allMatch(n -> n <= LimitRateFlow.MIN_WINDOW);
+        assertThat(fastRequests.subList(1, fastRequests.size())).contains(48L); // Back to 64 in flight, the most the queue holds
+    }
+
+    // Nothing to batch with an upstream that is polled
+    @Test
+    public void fusedUpstreamsShouldBePolledDirectly() throws InterruptedException {
+        TestSubscriber<Long> subscriber = oneByOne();
+        TestSubscriber<Long> empty = new TestSubscriber<>(0);
+
+        Flow.fromArray(generate(1000)).map(l -> l + 1).limitRate(16).subscribe(subscriber);
+        Flow.fromArray(new Long[0]).limitRateAdaptive(16).subscribe(empty);
+
+        assertThat(subscriber.await()).isTrue();
+        assertThat(empty.await()).isTrue();
+        assertThat(subscriber.values).hasSize(1000).startsWith(1L).endsWith(1000L);
+        assertThat(empty.completions).isEqualTo(1);
+    }
+
+    @Test
+    public void errorsShouldCutAheadOfQueuedElements() throws InterruptedException {
+        IllegalStateException failure = new IllegalStateException();
+        TestSubscriber<Long> subscriber = new TestSubscriber<>(2);
+
+        new LimitRateFlow<>(new MapFlow<Long, Long>(new ArrayPublisherUnoptimized<>(generate(10)), l -> {
+            if (l == 5L) throw failure;
+            return l;
+        }), 8, 8, false).subscribe(subscriber);
+
+        assertThat(subscriber.await()).isTrue();
+        assertThat(subscriber.values).containsExactly(0L, 1L);
+        assertThat(subscriber.errors).containsExactly(failure);
+    }
+
+    // An invalid request from within onNext is signalled by the loop once onNext returned, not on top of it
+    @Test
+    public void invalidRequestShouldNotOverlapOnNext() throws InterruptedException {
+        List<String> signals = new CopyOnWriteArrayList<>();
+        TestSubscriber<Long> subscriber = new TestSubscriber<>(4) {
+            @Override
+            public void onNext(Long value) {
+                signals.add("onNext " + value);
+                super.onNext(value);
+                if (value == 1L) {
+                    request(-1);
+                }
+                signals.add("return " + value);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                signals.add("onError");
+                super.onError(t);
+            }
+        };
+
+        new LimitRateFlow<>(new ArrayPublisherUnoptimized<>(generate(10)), 8, 8, false).subscribe(subscriber);
+
+        assertThat(subscriber.await()).isTrue();
+        assertThat(signals).containsExactly("onNext 0", "return 0", "onNext 1", "return 1", "onError");
+        assertThat(subscriber.errors).hasSize(1).first().isInstanceOf(IllegalArgumentException.class);
+
+        subscriber.request(0); // Terminated, nothing more
+        assertThat(subscriber.errors).hasSize(1);
+    }
+
+    // The upstream emits on its own thread, the downstream requests one at a time from within onNext and from outside
+    @Test
+    public void concurrentRequestsShouldNotLoseDemand() throws InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Long[] array = generate(50_000);
+            CountDownLatch subscribed = new CountDownLatch(1);
+            TestSubscriber<Long> subscriber = new TestSubscriber<>(0) {
+                @Override
+                public void onSubscribe(Subscription subscription) {
+                    super.onSubscribe(subscription);
+                    subscribed.countDown();
+                }
+
+                @Override
+                public void onNext(Long value) {
+                    super.onNext(value);
+                    if ((value & 1) == 0) {
+                        request(1);
+                    }
+                }
+            };
+            new MapFlow<Long, Long>(new ArrayPublisherUnoptimized<>(array), l -> l).subscribeOn(executor)
+                    .limitRateAdaptive(32).subscribe(subscriber);
+
+            // onSubscribe arrives on the executor, there is no subscription to request from before that
+            assertThat(subscribed.await(5, TimeUnit.SECONDS)).isTrue();
+            Thread requester = new Thread(() -> {
+                while (subscriber.done.getCount() != 0) {
+                    subscriber.request(1);
+                    Thread.yield();
+                }
+            });
+            requester.start();
+
+            assertThat(subscriber.await()).isTrue();
+            assertThat(subscriber.values).containsExactly(array);
+            requester.join();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    static TestSubscriber<Long> oneByOne() {
+        return new TestSubscriber<>(1) {
+            @Override
+            public void onNext(Long value) {
+                super.onNext(value);
+                request(1);
+            }
+        };
+    }
+
+    static Long[] generate(long num) {
+        return LongStream.range(0, num).boxed().toArray(Long[]::new);
+    }
+}
@@ -6,7 +6,10 @@ import org.reactivestreams.Subscriber;
 import org.reactivestreams.Subscription;
 
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 import java.util.stream.LongStream;
@@ -63,6 +66,172 @@ class MapProcessorTests {
         assertThat(collected).containsExactly("#0", "#1", "#2", "#3", "#4");
     }
 
+    @Test
+    public void mapsOnAnArrayShouldFuseIntoASingleSource() throws InterruptedException {
+        Flow<String> flow = Flow.fromArray(generate(5))
+                .map(l -> l * 2)
+                .map(l -> l + 1)
+                .map(l -> "#" + l);
+        TestSubscriber<String> subscriber = new TestSubscriber<>(2);
+
+        flow.subscribe(subscriber);
+
+        assertThat(flow).isInstanceOf(MapArrayPublisher.class);
+        assertThat(subscriber.values).containsExactly("#1", "#3");
+
+        subscriber.request(10);
+
+        assertThat(subscriber.await()).isTrue();
+        assertThat(subscriber.values).containsExactly("#1", "#3", "#5", "#7", "#9");
+    }
+
+    @Test
+    public void mapsOnAMapFlowShouldFuseIntoOneStage() throws InterruptedException {
+        Flow<String> flow = new MapFlow<Long, Long>(new ArrayPublisherUnoptimized<>(generate(3)), l -> l * 10)
+                .map(l -> l + 1)
+                .map(l -> "#" + l);
+        TestSubscriber<String> subscriber = new TestSubscriber<>();
+
+        flow.subscribe(subscriber);
+
+        assertThat(flow).isInstanceOf(MapFlow.class);
+        assertThat(subscriber.await()).isTrue();
+        assertThat(subscriber.values).containsExactly("#1", "#11", "#21");
+    }
+
+    // Built once, then subscribed from several threads at the same time, with and without fusion below the maps
+    @Test
+    public void anAssembledPipelineMustBeSubscribableManyTimesConcurrently() throws InterruptedException {
+        Long[] array = generate(1000);
+        List<Flow<String>> pipelines = List.of(
+                new MapFlow<Long, Long>(new ArrayPublisher<>(array), l -> l * 2).map(l -> "#" + l),
+                new MapFlow<Long, Long>(new ArrayPublisherUnoptimized<>(array), l -> l * 2).map(l -> "#" + l),
+                new MapFlow<Long, Long>(new ArrayPublisher<>(array), l -> l * 2).filter(l -> true).map(l -> "#" + l));
+        String[] expected = LongStream.range(0, 1000).mapToObj(l -> "#" + l * 2).toArray(String[]::new);
+
+        for (Flow<String> pipeline : pipelines) {
+            List<TestSubscriber<String>> subscribers = new ArrayList<>();
+            List<Callable<Boolean>> subscriptions = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                TestSubscriber<String> subscriber = new TestSubscriber<>(i % 2 == 0 ? Long.MAX_VALUE : 7);
+                subscribers.add(subscriber);
+                subscriptions.add(() -> {
+                    pipeline.subscribe(subscriber);
+                    while (subscriber.done.getCount() != 0) {
+                        subscriber.request(7);
+                    }
+                    return true;
+                });
+            }
+
+            for (Future<Boolean> subscription : commonPool().invokeAll(subscriptions, 10, SECONDS)) {
+                assertThat(subscription.isCancelled()).isFalse();
+            }
+            for (TestSubscriber<String> subscriber : subscribers) {
+                assertThat(subscriber.values).containsExactly(expected);
+                assertThat(subscriber.errors).isEmpty();
+                assertThat(subscriber.completions).isEqualTo(1);
+            }
+        }
+    }
+
+    @Test
+    public void fusedMapsMustRejectNullsBetweenStages() throws InterruptedException {
+        TestSubscriber<String> subscriber = new TestSubscriber<>();
+
+        Flow.fromArray(generate(3))
+                .map(l -> l == 1L ? null : l)
+                .map(l -> "#" + l)
+                .subscribe(subscriber);
+
+        assertThat(subscriber.await()).isTrue();
+        assertThat(subscriber.values).containsExactly("#0");
+        assertThat(subscriber.errors).hasSize(1).first().isInstanceOf(NullPointerException.class);
+    }
+
+    @Test
+    public void fusedMapperErrorsMustBeSignalledDownstream() throws InterruptedException {
+        IllegalStateException failure = new IllegalStateException();
+        TestSubscriber<Long> subscriber = new TestSubscriber<>();
+
+        Flow.fromArray(generate(3))
+                .map(l -> {
+                    if (l == 2L) throw failure;
+                    return l;
+                })
+                .subscribe(subscriber);
+
+        assertThat(subscriber.await()).isTrue();
+        assertThat(subscriber.values).containsExactly(0L, 1L);
+        assertThat(subscriber.errors).containsExactly(failure);
+    }
+
+    @Test
+    public void processorOverAFuseableSourceMustRespectBackpressure() throws InterruptedException {
+        TestSubscriber<String> subscriber = new TestSubscriber<>(2);
+
+        new MapFlow<Long, String>(new ArrayPublisher<>(generate(5)), l -> "#" + l).subscribe(subscriber);
+
+        assertThat(subscriber.values).containsExactly("#0", "#1");
+
+        subscriber.request(1);
+        assertThat(subscriber.values).containsExactly("#0", "#1", "#2");
+
+        subscriber.request(10);
+
+        assertThat(subscriber.await()).isTrue();
+        assertThat(subscriber.values).containsExactly("#0", "#1", "#2", "#3", "#4");
+        assertThat(subscriber.completions).isEqualTo(1);
+    }
+
+    @Test
+    public void processorOverAFuseableSourceMustSignalNullElements() throws InterruptedException {
+        TestSubscriber<String> subscriber = new TestSubscriber<>();
+
+        new MapFlow<Long, String>(new ArrayPublisher<>(new Long[]{0L, null, 2L}), l -> "#" + l).subscribe(subscriber);
+
+        assertThat(subscriber.await()).isTrue();
+        assertThat(subscriber.values).containsExactly("#0");
+        assertThat(subscriber.errors).hasSize(1).first().isInstanceOf(NullPointerException.class);
+    }
+
+    @Test
+    public void processorMustPassSyncFusionThrough() {
+        ArrayList<String> polled = new ArrayList<>();
+
+        new MapFlow<Long, String>(new ArrayPublisher<>(generate(3)), l -> "#" + l).subscribe(new Subscriber<>() {
+            @Override
+            public void onSubscribe(Subscription s) {
+                @SuppressWarnings("unchecked")
+                QueueSubscription<String> qs = (QueueSubscription<String>) s;
+                assertThat(qs.requestFusion(QueueSubscription.SYNC)).isEqualTo(QueueSubscription.SYNC);
+
+                for (String value = qs.poll(); value != null; value = qs.poll()) {
+                    polled.add(value);
+                }
+
+                assertThat(qs.isEmpty()).isTrue();
+            }
+
+            @Override
+            public void onNext(String s) {
+                throw new AssertionError("Fused sources must not call onNext");
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                throw new AssertionError(t);
+            }
+
+            @Override
+            public void onComplete() {
+                throw new AssertionError("Fused sources must not call onComplete");
+            }
+        });
+
+        assertThat(polled).containsExactly("#0", "#1", "#2");
+    }
+
     @Test
     public void mustSupportBackpressureControl() throws InterruptedException {
         CountDownLatch latch = new CountDownLatch(1);
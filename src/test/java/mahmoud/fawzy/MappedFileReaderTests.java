@@ -0,0 +1,109 @@
+package mahmoud.fawzy;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MappedFileReaderTests {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void shouldEmitLinesOnDemand() throws IOException {
+        Path file = write("first\r\nsecond\n\nfourth\n");
+        TestSubscriber<String> subscriber = new TestSubscriber<>(2);
+
+        Flow.fromFile(file).subscribe(subscriber);
+
+        assertThat(subscriber.values).containsExactly("first", "second");
+
+        subscriber.request(10);
+        assertThat(subscriber.values).containsExactly("first", "second", "", "fourth");
+        assertThat(subscriber.completions).isEqualTo(1);
+    }
+
+    @Test
+    public void lastLineWithoutNewlineShouldBeEmitted() throws IOException {
+        TestSubscriber<String> subscriber = new TestSubscriber<>();
+
+        Flow.fromFile(write("a\nb")).subscribe(subscriber);
+
+        assertThat(subscriber.values).containsExactly("a", "b");
+    }
+
+    @Test
+    public void emptyFileShouldJustComplete() throws IOException {
+        TestSubscriber<String> subscriber = new TestSubscriber<>();
+
+        Flow.fromFile(write("")).subscribe(subscriber);
+
+        assertThat(subscriber.values).isEmpty();
+        assertThat(subscriber.completions).isEqualTo(1);
+    }
+
+    @Test
+    public void smallWindowsShouldBeRemappedAndGrown() throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            // Multi byte characters land across window boundaries, some lines are longer than the window
+            lines.add("line-" + i + "-é€".repeat(i % 7));
+        }
+        Path file = dir.resolve("lines.txt");
+        Files.write(file, lines, StandardCharsets.UTF_8);
+        TestSubscriber<String> subscriber = new TestSubscriber<>();
+
+        MappedFileReader.flow(file, (byte) '\n', StandardCharsets.UTF_8, true, 8).subscribe(subscriber);
+
+        assertThat(subscriber.values).containsExactlyElementsOf(lines);
+        assertThat(subscriber.completions).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldSplitOnAnyDelimiter() throws IOException {
+        TestSubscriber<String> subscriber = new TestSubscriber<>();
+
+        Flow.fromFile(write("x=1;y=2\n;z=3;"), (byte) ';', StandardCharsets.ISO_8859_1).subscribe(subscriber);
+
+        assertThat(subscriber.values).containsExactly("x=1", "y=2\n", "z=3");
+    }
+
+    @Test
+    public void missingFilesShouldBeSignalled() {
+        TestSubscriber<String> subscriber = new TestSubscriber<>();
+
+        Flow.fromFile(dir.resolve("missing.txt")).subscribe(subscriber);
+
+        assertThat(subscriber.errors).hasSize(1);
+        assertThat(subscriber.errors.get(0)).isInstanceOf(UncheckedIOException.class);
+    }
+
+    @Test
+    public void cancelShouldStopReading() throws IOException {
+        TestSubscriber<String> subscriber = new TestSubscriber<>() {
+            @Override
+            public void onNext(String line) {
+                super.onNext(line);
+                cancel();
+            }
+        };
+
+        Flow.fromFile(write("a\nb\nc\n")).subscribe(subscriber);
+
+        assertThat(subscriber.values).containsExactly("a");
+        assertThat(subscriber.completions).isZero();
+    }
+
+    private Path write(String content) throws IOException {
+        return Files.writeString(dir.resolve("file.txt"), content, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,142 @@
+package mahmoud.fawzy;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MetricsFlowTests {
+
+    @Test
+    public void shouldCountElementsRequestsAndTerminals() {
+        FlowMetrics metrics = new FlowMetrics("counts", 1);
+        TestSubscriber<Long> subscriber = new TestSubscriber<>(3);
+
+        Flow.fromArray(generate(10)).metrics(metrics).map(l -> l * 2).subscribe(subscriber);
+        subscriber.request(7);
+
+        FlowMetrics.Snapshot snapshot = metrics.snapshot();
+        assertThat(subscriber.values).hasSize(10);
+        assertThat(snapshot.elements()).isEqualTo(10);
+        assertThat(snapshot.requestCalls()).isEqualTo(2);
+        assertThat(snapshot.subscriptions()).isEqualTo(1);
+        assertThat(snapshot.completions()).isEqualTo(1);
+        assertThat(snapshot.latencySamples()).isEqualTo(10);
+        assertThat(snapshot.outstandingDemand()).isZero();
+    }
+
+    @Test
+    public void sampledCountsShouldBeFlushedOnCompletion() {
+        FlowMetrics metrics = new FlowMetrics("sampled", 64);
+        TestSubscriber<Long> subscriber = new TestSubscriber<>();
+
+        Flow.fromArray(generate(1000)).metrics(metrics).subscribe(subscriber);
+
+        FlowMetrics.Snapshot snapshot = metrics.snapshot();
+        assertThat(snapshot.elements()).isEqualTo(1000);
+        assertThat(snapshot.latencySamples()).isEqualTo(1000 / 64);
+    }
+
+    @Test
+    public void liveSubscriptionsShouldReportOutstandingDemandAndStalls() throws InterruptedException {
+        FlowMetrics metrics = new FlowMetrics("stalls", 1);
+        TestSubscriber<Long> filtered = new TestSubscriber<>(4);
+        TestSubscriber<Long> waiting = new TestSubscriber<>(0);
+
+        // The filter gets its 4 elements plus one replacement per dropped element, then its demand is used up
+        Flow.fromArray(generate(10)).metrics(metrics).filter(l -> l % 2 == 0).subscribe(filtered);
+        Flow.fromArray(generate(10)).metrics(metrics).subscribe(waiting);
+        waiting.request(5);
+        waiting.request(2);
+        assertThat(waiting.values).hasSize(7);
+
+        Thread.sleep(20);
+        FlowMetrics.Snapshot stalled = metrics.snapshot();
+        assertThat(stalled.outstandingDemand()).isZero();
+        assertThat(stalled.stallNanos()).isGreaterThanOrEqualTo(2 * 20_000_000L);
+
+        // Ending a stall moves its time from the live gauge into the counter, nothing is lost
+        waiting.request(1);
+        FlowMetrics.Snapshot resumed = metrics.snapshot();
+        assertThat(resumed.stallNanos()).isGreaterThanOrEqualTo(stalled.stallNanos());
+        assertThat(resumed.requestCalls()).isEqualTo(stalled.requestCalls() + 1);
+    }
+
+    @Test
+    public void unboundedSubscribersShouldBeReportedApart() {
+        FlowMetrics metrics = new FlowMetrics("unbounded", 1);
+        TestSubscriber<Long> subscriber = new TestSubscriber<>(0);
+
+        Flow.fromArray(generate(10)).subscribeOn(Runnable::run).metrics(metrics).subscribe(subscriber);
+        subscriber.request(3);
+        assertThat(metrics.snapshot().outstandingDemand()).isZero();
+
+        // Never gets an element, the demand stays unbounded and outstanding until it completes
+        TestSubscriber<Long> idle = new TestSubscriber<>();
+        new MetricsFlow<Long>(s -> s.onSubscribe(EmptySubscription.INSTANCE), metrics).subscribe(idle);
+
+        FlowMetrics.Snapshot snapshot = metrics.snapshot();
+        assertThat(snapshot.unboundedSubscribers()).isEqualTo(1);
+        assertThat(snapshot.subscriptions()).isEqualTo(2);
+    }
+
+    @Test
+    public void cancelAndErrorsShouldBeCounted() {
+        FlowMetrics metrics = new FlowMetrics("cancel", 1);
+        TestSubscriber<Long> canceled = new TestSubscriber<>(2);
+        TestSubscriber<Long> failed = new TestSubscriber<>();
+
+        Flow.fromArray(generate(10)).metrics(metrics).subscribe(canceled);
+        canceled.cancel();
+        canceled.cancel();
+        Flow.fromArray(1L, null).metrics(metrics).subscribe(failed);
+
+        FlowMetrics.Snapshot snapshot = metrics.snapshot();
+        assertThat(snapshot.cancellations()).isEqualTo(1);
+        assertThat(snapshot.errors()).isEqualTo(1);
+        assertThat(snapshot.elements()).isEqualTo(3);
+    }
+
+    @Test
+    public void percentilesShouldComeFromTheLog2Buckets() {
+        FlowMetrics metrics = new FlowMetrics("latency", 1);
+        for (int i = 0; i < 99; i++) {
+            metrics.recordLatency(100); // Bucket [64, 128)
+        }
+        metrics.recordLatency(5_000); // Bucket [4096, 8192)
+
+        FlowMetrics.Snapshot snapshot = metrics.snapshot();
+        assertThat(snapshot.latencyPercentileNanos(50)).isEqualTo(127);
+        assertThat(snapshot.latencyPercentileNanos(99)).isEqualTo(127);
+        assertThat(snapshot.latencyPercentileNanos(100)).isEqualTo(8191);
+    }
+
+    @Test
+    public void sameNameShouldShareTheMetrics() {
+        assertThat(FlowMetrics.named("shared")).isSameAs(FlowMetrics.named("shared"));
+        assertThatThrownBy(() -> new FlowMetrics("odd", 3)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void removedNamesShouldStartOver() {
+        FlowMetrics removed = FlowMetrics.named("removed");
+        Flow<Long> flow = Flow.fromArray(generate(10)).metrics("removed");
+
+        assertThat(FlowMetrics.remove("removed")).isSameAs(removed);
+        assertThat(FlowMetrics.remove("removed")).isNull();
+
+        flow.subscribe(new TestSubscriber<>());
+        assertThat(removed.snapshot().elements()).isEqualTo(10); // The stage still holds the removed one
+        assertThat(FlowMetrics.named("removed")).isNotSameAs(removed);
+        assertThat(FlowMetrics.named("removed").snapshot().elements()).isZero();
+        FlowMetrics.remove("removed");
+    }
+
+    static Long[] generate(long num) {
+        return LongStream.range(0, num)
+                .boxed()
+                .toArray(Long[]::new);
+    }
+}
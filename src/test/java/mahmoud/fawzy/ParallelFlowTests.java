@@ -0,0 +1,219 @@
+package mahmoud.fawzy;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ParallelFlowTests {
+
+    ForkJoinPool pool;
+
+    @BeforeEach
+    public void setUp() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void railsShouldRunOnThePool() throws InterruptedException {
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        TestSubscriber<Long> subscriber = new TestSubscriber<>();
+
+        Flow.fromArray(generate(10_000))
+                .parallel(4, pool)
+                .map(l -> {
+                    threads.add(Thread.currentThread());
+                    return l * 2;
+                })
+                .sequential()
+                .subscribe(subscriber);
+
+        assertThat(subscriber.await()).isTrue();
+        assertThat(subscriber.values).hasSize(10_000);
+        assertThat(threads).allSatisfy(thread -> {
+            assertThat(thread).isInstanceOf(ForkJoinWorkerThread.class);
+            assertThat(((ForkJoinWorkerThread) thread).getPool()).isSameAs(pool);
+        });
+    }
+
+    @Test
+    public void unorderedSequentialShouldDeliverEveryElement() throws InterruptedException {
+        TestSubscriber<Long> subscriber = new TestSubscriber<>();
+
+        Flow.fromArray(generate(10_000))
+                .parallel(3, pool)
+                .filter(l -> l % 2 == 0)
+                .map(l -> l + 1)
+                .sequential()
+                .subscribe(subscriber);
+
+        assertThat(subscriber.await()).isTrue();
+        assertThat(subscriber.values).containsExactlyInAnyOrder(LongStream.range(0, 5_000).map(l -> l * 2 + 1).boxed().toArray(Long[]::new));
+    }
+
+    @Test
+    public void orderedSequentialShouldKeepTheArrayOrder() throws InterruptedException {
+        Long[] array = generate(10_000);
+        TestSubscriber<Long> subscriber = new TestSubscriber<>();
+
+        Flow.fromArray(array)
+                .parallel(4, pool)
+                .sequential(true, 16)
+                .subscribe(subscriber);
+
+        assertThat(subscriber.await()).isTrue();
+        assertThat(subscriber.values).containsExactly(array);
+    }
+
+    @Test
+    public void sequentialShouldRespectDownstreamDemand() throws InterruptedException {
+        TestSubscriber<Long> subscriber = new TestSubscriber<>(5);
+
+        Flow.fromArray(generate(1000)).parallel(4, pool).sequential(true, 8).subscribe(subscriber);
+
+        Thread.sleep(100);
+        assertThat(subscriber.values).containsExactly(0L, 1L, 2L, 3L, 4L);
+
+        subscriber.request(Long.MAX_VALUE);
+
+        assertThat(subscriber.await()).isTrue();
+        assertThat(subscriber.values).hasSize(1000);
+    }
+
+    @Test
+    public void reduceShouldCombineRailsInOrder() throws InterruptedException {
+        TestSubscriber<String> subscriber = new TestSubscriber<>();
+
+        // String concatenation is associative but not commutative
+        Flow.fromArray(generate(100))
+                .map(String::valueOf)
+                .parallel(7, pool)
+                .reduce(String::concat)
+                .subscribe(subscriber);
+
+        assertThat(subscriber.await()).isTrue();
+        assertThat(subscriber.values).containsExactly(LongStream.range(0, 100).mapToObj(String::valueOf).reduce("", String::concat));
+    }
+
+    @Test
+    public void reduceOfEmptyRailsShouldCompleteWithoutAValue() throws InterruptedException {
+        TestSubscriber<Long> subscriber = new TestSubscriber<>();
+
+        Flow.fromArray(generate(2)).parallel(4, pool).filter(l -> false).reduce(Long::sum).subscribe(subscriber);
+
+        assertThat(subscriber.await()).isTrue();
+        assertThat(subscriber.values).isEmpty();
+        assertThat(subscriber.completions).isEqualTo(1);
+    }
+
+    @Test
+    public void railErrorsShouldCancelTheOtherRails() throws InterruptedException {
+        IllegalStateException failure = new IllegalStateException();
+        TestSubscriber<Long> subscriber = new TestSubscriber<>();
+
+        Flow.fromArray(generate(1000))
+                .parallel(4, pool)
+                .map(l -> {
+                    if (l == 600L) throw failure;
+                    return l;
+                })
+                .sequential()
+                .subscribe(subscriber);
+
+        assertThat(subscriber.await()).isTrue();
+        assertThat(subscriber.errors).containsExactly(failure);
+        assertThat(subscriber.completions).isZero();
+    }
+
+    @Test
+    public void rangesShouldBeSplitToo() throws InterruptedException {
+        TestSubscriber<Integer> subscriber = new TestSubscriber<>();
+
+        Flow.range(1, 10_000).parallel(3, pool).sequential(true, 16).subscribe(subscriber);
+
+        assertThat(subscriber.await()).isTrue();
+        assertThat(subscriber.values).containsExactly(IntStream.rangeClosed(1, 10_000).boxed().toArray(Integer[]::new));
+    }
+
+    // A worker merging in sequential(..) replenishes every rail, it must not end up running their emission loops
+    @Test
+    public void requestsFromAnotherThreadShouldGoThroughThePool() throws Exception {
+        ThreadLocal<Boolean> caller = new ThreadLocal<>();
+        List<Boolean> inline = new CopyOnWriteArrayList<>();
+        CountDownLatch requested = new CountDownLatch(1);
+        ParallelFlow.RailSubscription rail = new ParallelFlow.RailSubscription(new Subscription() {
+            @Override
+            public void request(long n) {
+                inline.add(Boolean.TRUE.equals(caller.get()));
+                requested.countDown();
+            }
+
+            @Override
+            public void cancel() {
+            }
+        }, pool);
+
+        pool.submit(() -> {
+            caller.set(true);
+            rail.request(8);
+            caller.remove();
+        }).get();
+
+        assertThat(requested.await(5, SECONDS)).isTrue();
+        assertThat(inline).containsExactly(false);
+    }
+
+    // From inside the rail's own onNext the request goes straight to the rail, whose running loop picks it up
+    @Test
+    public void requestsFromTheRailsOwnEmitterShouldRunInline() throws InterruptedException {
+        AtomicInteger depth = new AtomicInteger();
+        List<Integer> depths = new CopyOnWriteArrayList<>();
+        CountDownLatch requested = new CountDownLatch(2);
+        ParallelFlow.RailSubscription[] rail = new ParallelFlow.RailSubscription[1];
+        rail[0] = new ParallelFlow.RailSubscription(new Subscription() {
+            @Override
+            public void request(long n) {
+                depths.add(depth.incrementAndGet());
+                if (n == 1) {
+                    rail[0].request(2); // Like a request(n) from within onNext
+                }
+                depth.decrementAndGet();
+                requested.countDown();
+            }
+
+            @Override
+            public void cancel() {
+            }
+        }, pool);
+
+        rail[0].request(1);
+
+        assertThat(requested.await(5, SECONDS)).isTrue();
+        assertThat(depths).containsExactly(1, 2);
+    }
+
+    static Long[] generate(long num) {
+        return LongStream.range(0, num)
+                .boxed()
+                .toArray(Long[]::new);
+    }
+}
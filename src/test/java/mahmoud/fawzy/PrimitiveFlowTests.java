@@ -0,0 +1,265 @@
+package mahmoud.fawzy;
+
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.IntStream;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PrimitiveFlowTests {
+
+    @Test
+    public void intFlowMustSupportBackpressureControl() throws InterruptedException {
+        RecordingIntSubscriber subscriber = new RecordingIntSubscriber(0);
+
+        IntFlow.fromArray(0, 1, 2, 3, 4).subscribe(subscriber);
+
+        assertThat(subscriber.values).isEmpty();
+
+        subscriber.subscription.request(1);
+        assertThat(subscriber.values).containsExactly(0);
+
+        subscriber.subscription.request(2);
+        assertThat(subscriber.values).containsExactly(0, 1, 2);
+
+        subscriber.subscription.request(20);
+
+        assertThat(subscriber.latch.await(1, SECONDS)).isTrue();
+        assertThat(subscriber.values).containsExactly(0, 1, 2, 3, 4);
+    }
+
+    @Test
+    public void intFlowShouldMapAndFilterWithoutBoxing() throws InterruptedException {
+        RecordingIntSubscriber subscriber = new RecordingIntSubscriber(Long.MAX_VALUE);
+
+        IntFlow.fromArray(IntStream.range(0, 10).toArray())
+                .map(v -> v * 3)
+                .map(v -> v + 1)
+                .filter(v -> v % 2 == 0)
+                .subscribe(subscriber);
+
+        assertThat(subscriber.latch.await(1, SECONDS)).isTrue();
+        assertThat(subscriber.values).containsExactly(4, 10, 16, 22, 28);
+    }
+
+    @Test
+    public void filterMustReplenishDroppedElements() throws InterruptedException {
+        RecordingIntSubscriber subscriber = new RecordingIntSubscriber(2);
+
+        IntFlow.fromArray(IntStream.range(0, 10).toArray())
+                .filter(v -> v > 6)
+                .subscribe(subscriber);
+
+        assertThat(subscriber.values).containsExactly(7, 8);
+
+        subscriber.subscription.request(5);
+
+        assertThat(subscriber.latch.await(1, SECONDS)).isTrue();
+        assertThat(subscriber.values).containsExactly(7, 8, 9);
+    }
+
+    @Test
+    public void filterShouldNotRequestReplacementsFromTheArraySource() throws InterruptedException {
+        RecordingIntSubscriber subscriber = new RecordingIntSubscriber(2);
+        RequestSpyIntFlow source = new RequestSpyIntFlow(IntFlow.fromArray(IntStream.range(0, 10).toArray()), true);
+
+        source.filter(v -> v > 6).subscribe(subscriber);
+
+        assertThat(subscriber.values).containsExactly(7, 8);
+
+        subscriber.subscription.request(5);
+
+        assertThat(subscriber.latch.await(1, SECONDS)).isTrue();
+        assertThat(subscriber.values).containsExactly(7, 8, 9);
+        assertThat(source.requests).containsExactly(2L, 5L); // Dropped values were skipped by tryOnNext(..)
+    }
+
+    @Test
+    public void filterMustReplenishDroppedElementsOfANonConditionalUpstream() throws InterruptedException {
+        RecordingIntSubscriber subscriber = new RecordingIntSubscriber(2);
+        RequestSpyIntFlow source = new RequestSpyIntFlow(IntFlow.fromArray(IntStream.range(0, 10).toArray()), false);
+
+        source.map(v -> v * 2).filter(v -> v > 12).subscribe(subscriber);
+
+        assertThat(subscriber.values).containsExactly(14, 16);
+
+        subscriber.subscription.request(5);
+
+        assertThat(subscriber.latch.await(1, SECONDS)).isTrue();
+        assertThat(subscriber.values).containsExactly(14, 16, 18);
+        assertThat(source.requests).startsWith(2L, 1L);
+    }
+
+    @Test
+    public void sumShouldWaitForDemandBeforeEmitting() throws InterruptedException {
+        RecordingIntSubscriber subscriber = new RecordingIntSubscriber(0);
+
+        IntFlow.fromArray(IntStream.rangeClosed(1, 100).toArray()).sum().subscribe(subscriber);
+
+        assertThat(subscriber.values).isEmpty();
+
+        subscriber.subscription.request(1);
+
+        assertThat(subscriber.latch.await(1, SECONDS)).isTrue();
+        assertThat(subscriber.values).containsExactly(5050);
+    }
+
+    @Test
+    public void reduceOfAnEmptyFlowShouldEmitTheIdentity() throws InterruptedException {
+        RecordingIntSubscriber subscriber = new RecordingIntSubscriber(1);
+
+        IntFlow.fromArray().reduce(42, Math::max).subscribe(subscriber);
+
+        assertThat(subscriber.latch.await(1, SECONDS)).isTrue();
+        assertThat(subscriber.values).containsExactly(42);
+    }
+
+    @Test
+    public void mapperErrorsMustBeSignalledDownstream() throws InterruptedException {
+        IllegalStateException failure = new IllegalStateException();
+        RecordingIntSubscriber subscriber = new RecordingIntSubscriber(Long.MAX_VALUE);
+
+        IntFlow.fromArray(1, 2, 3)
+                .map(v -> {
+                    if (v == 2) throw failure;
+                    return v;
+                })
+                .subscribe(subscriber);
+
+        assertThat(subscriber.latch.await(1, SECONDS)).isTrue();
+        assertThat(subscriber.values).containsExactly(1);
+        assertThat(subscriber.error).isSameAs(failure);
+    }
+
+    @Test
+    public void boxedShouldBridgeToFlow() throws InterruptedException {
+        TestSubscriber<String> subscriber = new TestSubscriber<>();
+
+        IntFlow.fromArray(1, 2, 3).boxed().map(v -> "#" + v).subscribe(subscriber);
+
+        assertThat(subscriber.await()).isTrue();
+        assertThat(subscriber.values).containsExactly("#1", "#2", "#3");
+    }
+
+    @Test
+    public void longAndDoubleFlowsShouldReduce() throws InterruptedException {
+        TestSubscriber<Long> longs = new TestSubscriber<>();
+        TestSubscriber<Double> doubles = new TestSubscriber<>();
+
+        LongFlow.fromArray(Long.MAX_VALUE - 10, 3, 4).filter(v -> v > 3).sum().boxed().subscribe(longs);
+        DoubleFlow.fromArray(0.5, 1.5, 2.0).map(v -> v * 2).sum().boxed().subscribe(doubles);
+
+        assertThat(longs.await()).isTrue();
+        assertThat(doubles.await()).isTrue();
+        assertThat(longs.values).containsExactly(Long.MAX_VALUE - 6);
+        assertThat(doubles.values).containsExactly(8.0);
+    }
+
+    static class RecordingIntSubscriber implements IntSubscriber {
+        final List<Integer> values = new ArrayList<>();
+        final CountDownLatch latch = new CountDownLatch(1);
+        final long initialRequest;
+        Subscription subscription;
+        Throwable error;
+
+        RecordingIntSubscriber(long initialRequest) {
+            this.initialRequest = initialRequest;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+            if (initialRequest > 0) {
+                subscription.request(initialRequest);
+            }
+        }
+
+        @Override
+        public void onNext(int value) {
+            values.add(value);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            latch.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            latch.countDown();
+        }
+    }
+
+    // Records the request(n) calls reaching the wrapped source, optionally hiding that the subscriber is conditional
+    static class RequestSpyIntFlow extends IntFlow {
+        final IntFlow source;
+        final boolean conditional;
+        final List<Long> requests = new ArrayList<>();
+
+        RequestSpyIntFlow(IntFlow source, boolean conditional) {
+            this.source = source;
+            this.conditional = conditional;
+        }
+
+        @Override
+        public void subscribe(IntSubscriber subscriber) {
+            source.subscribe(conditional ? new ConditionalSpy(subscriber) : new Spy(subscriber));
+        }
+
+        class Spy implements IntSubscriber {
+            final IntSubscriber downstream;
+
+            Spy(IntSubscriber downstream) {
+                this.downstream = downstream;
+            }
+
+            @Override
+            public void onSubscribe(Subscription subscription) {
+                downstream.onSubscribe(new Subscription() {
+                    @Override
+                    public void request(long n) {
+                        requests.add(n);
+                        subscription.request(n);
+                    }
+
+                    @Override
+                    public void cancel() {
+                        subscription.cancel();
+                    }
+                });
+            }
+
+            @Override
+            public void onNext(int value) {
+                downstream.onNext(value);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                downstream.onError(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                downstream.onComplete();
+            }
+        }
+
+        class ConditionalSpy extends Spy implements IntSubscriber.Conditional {
+            ConditionalSpy(IntSubscriber downstream) {
+                super(downstream);
+            }
+
+            @Override
+            public boolean tryOnNext(int value) {
+                return ((IntSubscriber.Conditional) downstream).tryOnNext(value);
+            }
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package mahmoud.fawzy;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PublishFlowTests {
+
+    @Test
+    public void everySubscriberShouldGetEverythingFromASingleUpstream() throws InterruptedException {
+        Long[] array = generate(1000);
+        AtomicInteger mapped = new AtomicInteger();
+        PublishFlow<Long> flow = Flow.fromArray(array)
+                .map(l -> {
+                    mapped.incrementAndGet();
+                    return l;
+                })
+                .publish();
+        List<TestSubscriber<Long>> subscribers = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            TestSubscriber<Long> subscriber = new TestSubscriber<>();
+            subscribers.add(subscriber);
+            flow.subscribe(subscriber);
+        }
+
+        assertThat(mapped.get()).isZero(); // Nothing happens before connect()
+
+        flow.connect();
+
+        for (TestSubscriber<Long> subscriber : subscribers) {
+            assertThat(subscriber.await()).isTrue();
+            assertThat(subscriber.values).containsExactly(array);
+            assertThat(subscriber.completions).isEqualTo(1);
+        }
+        assertThat(mapped.get()).isEqualTo(array.length); // Once, not once per subscriber
+    }
+
+    @Test
+    public void shouldGoAtThePaceOfTheSlowestSubscriber() throws InterruptedException {
+        Long[] array = generate(100);
+        PublishFlow<Long> flow = Flow.fromArray(array).publish(8);
+        TestSubscriber<Long> fast = new TestSubscriber<>();
+        TestSubscriber<Long> slow = new TestSubscriber<>(2);
+        flow.subscribe(fast);
+        flow.subscribe(slow);
+
+        flow.connect();
+
+        assertThat(slow.values).containsExactly(0L, 1L);
+        assertThat(fast.values).hasSize(8); // The whole ring, then the upstream waits for the slow one
+
+        slow.request(4);
+
+        assertThat(slow.values).hasSize(6);
+        assertThat(fast.values).hasSize(14); // The 6 freed slots were refilled right away
+
+        slow.request(Long.MAX_VALUE);
+
+        assertThat(slow.await()).isTrue();
+        assertThat(fast.await()).isTrue();
+        assertThat(fast.values).containsExactly(array);
+        assertThat(slow.values).containsExactly(array);
+    }
+
+    @Test
+    public void lateSubscribersShouldStartAtTheOldestElementInTheRing() throws InterruptedException {
+        PublishFlow<Long> flow = Flow.fromArray(generate(10)).publish(4);
+        TestSubscriber<Long> first = new TestSubscriber<>(2);
+        flow.subscribe(first);
+        flow.connect();
+
+        TestSubscriber<Long> late = new TestSubscriber<>(1);
+        flow.subscribe(late);
+
+        assertThat(late.values).containsExactly(2L);
+
+        first.request(Long.MAX_VALUE);
+        late.request(Long.MAX_VALUE);
+
+        assertThat(late.await()).isTrue();
+        assertThat(late.values).containsExactly(2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L);
+        assertThat(first.values).containsExactly(generate(10));
+    }
+
+    @Test
+    public void errorsShouldReachEverySubscriber() throws InterruptedException {
+        IllegalStateException failure = new IllegalStateException();
+        PublishFlow<Long> flow = Flow.fromArray(generate(10))
+                .map(l -> {
+                    if (l == 5L) throw failure;
+                    return l;
+                })
+                .publish();
+        TestSubscriber<Long> first = new TestSubscriber<>();
+        TestSubscriber<Long> second = new TestSubscriber<>();
+        flow.subscribe(first);
+        flow.subscribe(second);
+
+        flow.connect();
+
+        assertThat(first.await()).isTrue();
+        assertThat(second.await()).isTrue();
+        assertThat(first.errors).containsExactly(failure);
+        assertThat(second.errors).containsExactly(failure);
+    }
+
+    @Test
+    public void invalidRequestShouldOnlyFailThatSubscriber() throws InterruptedException {
+        Long[] array = generate(10);
+        PublishFlow<Long> flow = Flow.fromArray(array).publish(4);
+        TestSubscriber<Long> invalid = new TestSubscriber<>(1);
+        TestSubscriber<Long> other = new TestSubscriber<>();
+        flow.subscribe(invalid);
+        flow.subscribe(other);
+        flow.connect();
+
+        invalid.request(-1);
+        invalid.request(0); // Already terminated, nothing more
+
+        assertThat(invalid.await()).isTrue();
+        assertThat(invalid.errors).hasSize(1).first().isInstanceOf(IllegalArgumentException.class);
+        assertThat(other.await()).isTrue();
+        assertThat(other.values).containsExactly(array);
+        assertThat(other.errors).isEmpty();
+    }
+
+    @Test
+    public void invalidRequestAfterCancelShouldBeIgnored() {
+        PublishFlow<Long> flow = Flow.fromArray(generate(10)).publish(4);
+        TestSubscriber<Long> subscriber = new TestSubscriber<>(1);
+        flow.subscribe(subscriber);
+        flow.connect();
+
+        subscriber.cancel();
+        subscriber.request(0);
+
+        assertThat(subscriber.errors).isEmpty();
+        assertThat(subscriber.done.getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shareShouldCancelTheUpstreamWhenTheLastSubscriberLeaves() {
+        AtomicInteger cleanups = new AtomicInteger();
+        Flow<Long> flow = Flow.<Long, Long>generate(() -> 0L, (state, sink) -> {
+            sink.next(state);
+            return state + 1;
+        }, state -> cleanups.incrementAndGet()).share();
+        TestSubscriber<Long> first = new TestSubscriber<>(3);
+        TestSubscriber<Long> second = new TestSubscriber<>(5);
+
+        flow.subscribe(first); // Connects
+        flow.subscribe(second);
+
+        assertThat(first.values).containsExactly(0L, 1L, 2L);
+        assertThat(second.values).containsExactly(3L, 4L, 5L, 6L, 7L); // Joined after the first one consumed 0, 1 and 2
+
+        first.cancel();
+
+        assertThat(cleanups.get()).isZero();
+
+        second.cancel();
+
+        assertThat(cleanups.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void shareShouldSubscribeAgainOnceTheUpstreamIsDone() throws InterruptedException {
+        Long[] array = generate(50);
+        Flow<Long> flow = Flow.fromArray(array).share();
+
+        for (int i = 0; i < 3; i++) {
+            TestSubscriber<Long> subscriber = new TestSubscriber<>();
+            flow.subscribe(subscriber);
+
+            assertThat(subscriber.await()).isTrue();
+            assertThat(subscriber.values).containsExactly(array);
+        }
+    }
+
+    // Subscribers requesting from their own threads, while the drain loop moves between them
+    @Test
+    public void concurrentSubscribersShouldEachGetTheWholeStreamInOrder() throws InterruptedException {
+        Long[] array = generate(10_000);
+        PublishFlow<Long> flow = Flow.fromArray(array).publish(32);
+        List<TestSubscriber<Long>> subscribers = new ArrayList<>();
+        List<Thread> requesters = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            TestSubscriber<Long> subscriber = new TestSubscriber<>(0);
+            subscribers.add(subscriber);
+            flow.subscribe(subscriber);
+            // Own threads, not a pool: every requester depends on the others moving on
+            requesters.add(new Thread(() -> {
+                while (subscriber.done.getCount() != 0) {
+                    subscriber.request(3);
+                    Thread.yield();
+                }
+            }));
+        }
+
+        flow.connect();
+        requesters.forEach(Thread::start);
+
+        for (TestSubscriber<Long> subscriber : subscribers) {
+            assertThat(subscriber.await()).isTrue();
+            assertThat(subscriber.values).containsExactly(array);
+            assertThat(subscriber.completions).isEqualTo(1);
+        }
+        for (Thread requester : requesters) {
+            requester.join();
+        }
+    }
+
+    static Long[] generate(long num) {
+        return LongStream.range(0, num).boxed().toArray(Long[]::new);
+    }
+}
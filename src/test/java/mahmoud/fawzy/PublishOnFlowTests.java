@@ -0,0 +1,206 @@
+package mahmoud.fawzy;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.LongStream;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PublishOnFlowTests {
+
+    ExecutorService executor;
+
+    @BeforeEach
+    public void setUp() {
+        executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "publish-on-test"));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shouldDeliverEverythingInOrderOnTheExecutor() throws InterruptedException {
+        List<String> threads = new CopyOnWriteArrayList<>();
+        Long[] array = generate(10_000);
+        TestSubscriber<Long> subscriber = new TestSubscriber<>() {
+            @Override
+            public void onNext(Long aLong) {
+                threads.add(Thread.currentThread().getName());
+                super.onNext(aLong);
+            }
+        };
+
+        Flow.fromArray(array).publishOn(executor, 16).subscribe(subscriber);
+
+        assertThat(subscriber.await()).isTrue();
+        assertThat(subscriber.values).containsExactly(array);
+        assertThat(threads).containsOnly("publish-on-test");
+        assertThat(subscriber.completions).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldPrefetchThenReplenishInBatches() throws InterruptedException {
+        List<Long> upstreamRequests = new CopyOnWriteArrayList<>();
+        TestSubscriber<Long> subscriber = new TestSubscriber<>();
+
+        new PublishOnFlow<>(recordRequests(new ArrayPublisher<>(generate(100)), upstreamRequests), executor, 16)
+                .subscribe(subscriber);
+
+        assertThat(subscriber.await()).isTrue();
+        assertThat(subscriber.values).hasSize(100);
+        assertThat(upstreamRequests.get(0)).isEqualTo(16L);
+        assertThat(upstreamRequests.subList(1, upstreamRequests.size())).containsOnly(12L);
+    }
+
+    @Test
+    public void shouldRespectDownstreamDemand() throws InterruptedException {
+        TestSubscriber<Long> subscriber = new TestSubscriber<>(3);
+
+        Flow.fromArray(generate(100)).publishOn(executor, 8).subscribe(subscriber);
+
+        Thread.sleep(100);
+        assertThat(subscriber.values).containsExactly(0L, 1L, 2L);
+
+        subscriber.request(97);
+
+        assertThat(subscriber.await()).isTrue();
+        assertThat(subscriber.values).hasSize(100);
+    }
+
+    @Test
+    public void shouldDeliverErrorsOnTheExecutor() throws InterruptedException {
+        IllegalStateException failure = new IllegalStateException();
+        TestSubscriber<Long> subscriber = new TestSubscriber<>();
+
+        Flow.fromArray(generate(10))
+                .map(l -> {
+                    if (l == 5L) throw failure;
+                    return l;
+                })
+                .publishOn(executor, 4)
+                .subscribe(subscriber);
+
+        assertThat(subscriber.await()).isTrue();
+        assertThat(subscriber.errors).containsExactly(failure);
+    }
+
+    @Test
+    public void cancellationShouldStopTheDrainLoop() throws InterruptedException {
+        TestSubscriber<Long> subscriber = new TestSubscriber<>(0) {
+            @Override
+            public void onNext(Long aLong) {
+                super.onNext(aLong);
+                if (aLong == 9L) {
+                    cancel();
+                }
+            }
+        };
+
+        Flow.fromArray(generate(1000)).publishOn(executor, 4).subscribe(subscriber);
+        subscriber.request(Long.MAX_VALUE);
+
+        assertThat(subscriber.done.await(200, MILLISECONDS)).isFalse();
+        assertThat(subscriber.values).hasSize(10);
+    }
+
+    @Test
+    public void invalidRequestShouldBeSignalledOnTheExecutor() throws InterruptedException {
+        List<String> threads = new CopyOnWriteArrayList<>();
+        TestSubscriber<Long> subscriber = new TestSubscriber<>(0) {
+            @Override
+            public void onError(Throwable t) {
+                threads.add(Thread.currentThread().getName());
+                super.onError(t);
+            }
+        };
+
+        Flow.fromArray(generate(100)).publishOn(executor, 8).subscribe(subscriber);
+        subscriber.request(-1);
+
+        assertThat(subscriber.await()).isTrue();
+        assertThat(subscriber.errors).hasSize(1).first().isInstanceOf(IllegalArgumentException.class);
+        assertThat(threads).containsExactly("publish-on-test");
+    }
+
+    @Test
+    public void invalidRequestAfterCancelShouldBeIgnored() throws InterruptedException {
+        TestSubscriber<Long> subscriber = new TestSubscriber<>(0);
+
+        Flow.fromArray(generate(100)).publishOn(executor, 8).subscribe(subscriber);
+        subscriber.cancel();
+        subscriber.request(0);
+
+        assertThat(subscriber.done.await(200, MILLISECONDS)).isFalse();
+        assertThat(subscriber.errors).isEmpty();
+    }
+
+    @Test
+    public void cancelFromOnSubscribeShouldNotPrefetch() {
+        List<Long> upstreamRequests = new CopyOnWriteArrayList<>();
+        TestSubscriber<Long> subscriber = new TestSubscriber<>(0) {
+            @Override
+            public void onSubscribe(Subscription s) {
+                super.onSubscribe(s);
+                s.cancel();
+            }
+        };
+
+        new PublishOnFlow<>(recordRequests(new ArrayPublisher<>(generate(100)), upstreamRequests), executor, 16)
+                .subscribe(subscriber);
+
+        assertThat(upstreamRequests).isEmpty();
+    }
+
+    static <T> Publisher<T> recordRequests(Publisher<T> source, List<Long> requests) {
+        return subscriber -> source.subscribe(new Subscriber<T>() {
+            @Override
+            public void onSubscribe(Subscription s) {
+                subscriber.onSubscribe(new Subscription() {
+                    @Override
+                    public void request(long n) {
+                        requests.add(n);
+                        s.request(n);
+                    }
+
+                    @Override
+                    public void cancel() {
+                        s.cancel();
+                    }
+                });
+            }
+
+            @Override
+            public void onNext(T t) {
+                subscriber.onNext(t);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                subscriber.onError(t);
+            }
+
+            @Override
+            public void onComplete() {
+                subscriber.onComplete();
+            }
+        });
+    }
+
+    static Long[] generate(long num) {
+        return LongStream.range(0, num)
+                .boxed()
+                .toArray(Long[]::new);
+    }
+}
@@ -0,0 +1,22 @@
+package mahmoud.fawzy;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.tck.PublisherVerification;
+import org.reactivestreams.tck.TestEnvironment;
+
+public class RangePublisherTCKTests extends PublisherVerification<Integer> {
+
+    public RangePublisherTCKTests(){
+        super(new TestEnvironment());
+    }
+
+    @Override
+    public Publisher<Integer> createPublisher(long elements) {
+        return new RangePublisher(0, elements >= Integer.MAX_VALUE ? 1000000 : (int) elements);
+    }
+
+    @Override
+    public Publisher<Integer> createFailedPublisher() {
+        return null;
+    }
+}
@@ -0,0 +1,70 @@
+package mahmoud.fawzy;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RangePublisherTests {
+
+    @Test
+    public void shouldEmitTheRangeWithBackpressure() {
+        TestSubscriber<Integer> subscriber = new TestSubscriber<>(0);
+
+        Flow.range(5, 10).subscribe(subscriber);
+
+        subscriber.request(3);
+        assertThat(subscriber.values).containsExactly(5, 6, 7);
+        assertThat(subscriber.completions).isZero();
+
+        subscriber.request(7);
+        assertThat(subscriber.values).containsExactly(IntStream.range(5, 15).boxed().toArray(Integer[]::new));
+        assertThat(subscriber.completions).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldReachIntegerMaxValueWithoutOverflowing() {
+        TestSubscriber<Integer> subscriber = new TestSubscriber<>();
+
+        Flow.range(Integer.MAX_VALUE - 2, 3).subscribe(subscriber);
+
+        assertThat(subscriber.values).containsExactly(Integer.MAX_VALUE - 2, Integer.MAX_VALUE - 1, Integer.MAX_VALUE);
+        assertThat(subscriber.completions).isEqualTo(1);
+    }
+
+    @Test
+    public void emptyRangeShouldCompleteOnFirstRequest() {
+        TestSubscriber<Integer> subscriber = new TestSubscriber<>();
+
+        Flow.range(0, 0).subscribe(subscriber);
+
+        assertThat(subscriber.values).isEmpty();
+        assertThat(subscriber.completions).isEqualTo(1);
+    }
+
+    @Test
+    public void filterAndMapShouldUseTheConditionalAndFusedPaths() {
+        TestSubscriber<Integer> subscriber = new TestSubscriber<>(2);
+
+        Flow.range(0, 100).map(i -> i * 3).filter(i -> i % 2 == 0).subscribe(subscriber);
+
+        assertThat(subscriber.values).containsExactly(0, 6);
+
+        subscriber.request(Long.MAX_VALUE);
+        assertThat(subscriber.values).hasSize(50);
+        assertThat(subscriber.completions).isEqualTo(1);
+    }
+
+    @Test
+    public void rangesThatDoNotFitAnIntShouldBeRejected() {
+        assertThatThrownBy(() -> Flow.range(Integer.MAX_VALUE, 2)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> Flow.range(0, -1)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void canceledSubscriptionsShouldReleaseTheSubscriber() throws InterruptedException {
+        assertThat(TestSubscriber.releasedAfterCancel(Flow.range(0, 100))).isTrue();
+    }
+}
@@ -0,0 +1,25 @@
+package mahmoud.fawzy;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.tck.PublisherVerification;
+import org.reactivestreams.tck.TestEnvironment;
+
+import java.nio.ByteBuffer;
+
+public class RecordPublisherTCKTests extends PublisherVerification<Record> {
+
+    public RecordPublisherTCKTests(){
+        super(new TestEnvironment());
+    }
+
+    @Override
+    public Publisher<Record> createPublisher(long elements) {
+        int count = elements >= Integer.MAX_VALUE ? 1000000 : (int) elements;
+        return new RecordPublisher(ByteBuffer.allocate(count * Long.BYTES), Long.BYTES);
+    }
+
+    @Override
+    public Publisher<Record> createFailedPublisher() {
+        return null;
+    }
+}
@@ -0,0 +1,132 @@
+package mahmoud.fawzy;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RecordPublisherTests {
+    // long timestamp, int quantity, double price
+    static final int RECORD_SIZE = 20;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void shouldReadFieldsThroughASingleFlyweight() {
+        ByteBuffer buffer = trades(5).order(ByteOrder.LITTLE_ENDIAN);
+        TestSubscriber<Record> subscriber = new TestSubscriber<>();
+        long[] timestamps = new long[5];
+        int[] quantities = new int[5];
+
+        Flow.fromRecords(buffer, RECORD_SIZE).subscribe(new TestSubscriber<Record>() {
+            @Override
+            public void onNext(Record record) {
+                timestamps[(int) record.index()] = record.getLong(0);
+                quantities[(int) record.index()] = record.getInt(8);
+                subscriber.onNext(record);
+            }
+        });
+
+        assertThat(timestamps).containsExactly(1000, 1001, 1002, 1003, 1004);
+        assertThat(quantities).containsExactly(0, 10, 20, 30, 40);
+        assertThat(subscriber.values).hasSize(5);
+        assertThat(subscriber.values).allSatisfy(record -> assertThat(record).isSameAs(subscriber.values.get(0)));
+    }
+
+    @Test
+    public void mapShouldFuseAndCopiesShouldOutliveTheFlyweight() {
+        TestSubscriber<Double> prices = new TestSubscriber<>();
+        TestSubscriber<Record> copies = new TestSubscriber<>();
+
+        Flow.fromRecords(trades(3).order(ByteOrder.LITTLE_ENDIAN), RECORD_SIZE).map(r -> r.getDouble(12)).subscribe(prices);
+        Flow.fromRecords(trades(3).order(ByteOrder.LITTLE_ENDIAN), RECORD_SIZE).map(Record::copy).subscribe(copies);
+
+        assertThat(prices.values).containsExactly(0.0, 0.5, 1.0);
+        assertThat(copies.values).extracting(r -> r.getLong(0)).containsExactly(1000L, 1001L, 1002L);
+    }
+
+    @Test
+    public void filesShouldBeReadAcrossWindowsWithBackpressure() throws IOException {
+        ByteBuffer trades = trades(10);
+        byte[] bytes = Arrays.copyOf(trades.array(), trades.capacity() + 7); // Partial last record, not emitted
+        Path file = Files.write(dir.resolve("trades.bin"), bytes);
+        TestSubscriber<Long> subscriber = new TestSubscriber<>(4);
+
+        // 3 records per window, the tiny windows stand in for the 2GB limit
+        new RecordPublisher(null, file, RECORD_SIZE, ByteOrder.LITTLE_ENDIAN, 3 * RECORD_SIZE + 5)
+                .map(r -> r.getLong(0))
+                .subscribe(subscriber);
+
+        assertThat(subscriber.values).containsExactly(1000L, 1001L, 1002L, 1003L);
+
+        subscriber.request(Long.MAX_VALUE);
+        assertThat(subscriber.values).containsExactly(LongStream.range(1000, 1010).boxed().toArray(Long[]::new));
+        assertThat(subscriber.completions).isEqualTo(1);
+    }
+
+    @Test
+    public void unfusedSubscribersShouldAlsoCrossWindows() throws IOException {
+        Path file = Files.write(dir.resolve("trades.bin"), trades(10).array());
+        TestSubscriber<Long> subscriber = new TestSubscriber<>(3);
+
+        new RecordPublisher(null, file, RECORD_SIZE, ByteOrder.LITTLE_ENDIAN, 2 * RECORD_SIZE)
+                .subscribe(new TestSubscriber<Record>(0) {
+                    @Override
+                    public void onSubscribe(org.reactivestreams.Subscription s) {
+                        super.onSubscribe(s);
+                        s.request(3);
+                        s.request(Long.MAX_VALUE);
+                    }
+
+                    @Override
+                    public void onNext(Record record) {
+                        subscriber.onNext(record.getLong(0));
+                    }
+                });
+
+        assertThat(subscriber.values).containsExactly(LongStream.range(1000, 1010).boxed().toArray(Long[]::new));
+    }
+
+    @Test
+    public void emptySourcesShouldComplete() throws IOException {
+        TestSubscriber<Record> buffer = new TestSubscriber<>();
+        TestSubscriber<Record> file = new TestSubscriber<>();
+
+        Flow.fromRecords(ByteBuffer.allocate(RECORD_SIZE - 1), RECORD_SIZE).subscribe(buffer);
+        Flow.fromRecords(Files.write(dir.resolve("empty.bin"), new byte[0]), RECORD_SIZE, ByteOrder.BIG_ENDIAN).subscribe(file);
+
+        assertThat(buffer.completions).isEqualTo(1);
+        assertThat(file.completions).isEqualTo(1);
+    }
+
+    @Test
+    public void missingFilesShouldBeSignalled() {
+        TestSubscriber<Record> subscriber = new TestSubscriber<>();
+
+        Flow.fromRecords(dir.resolve("missing.bin"), RECORD_SIZE, ByteOrder.BIG_ENDIAN).subscribe(subscriber);
+
+        assertThat(subscriber.errors).hasSize(1);
+    }
+
+    static ByteBuffer trades(int count) {
+        ByteBuffer buffer = ByteBuffer.allocate(count * RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < count; i++) {
+            buffer.putLong(1000 + i).putInt(i * 10).putDouble(i * 0.5);
+        }
+        return buffer.flip();
+    }
+
+    @Test
+    public void canceledSubscriptionsShouldReleaseTheSubscriber() throws InterruptedException {
+        assertThat(TestSubscriber.releasedAfterCancel(Flow.fromRecords(ByteBuffer.allocate(64), 8))).isTrue();
+    }
+}
@@ -0,0 +1,199 @@
+package mahmoud.fawzy;
+
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReplayFlowTests {
+
+    @Test
+    public void cacheShouldSubscribeOnceAndReplayEverythingToLateSubscribers() throws InterruptedException {
+        Long[] array = generate(1000);
+        AtomicInteger mapped = new AtomicInteger();
+        Flow<Long> flow = Flow.fromArray(array)
+                .map(l -> {
+                    mapped.incrementAndGet();
+                    return l;
+                })
+                .cache();
+
+        assertThat(mapped.get()).isZero(); // Nothing happens before the first subscriber
+
+        for (int i = 0; i < 5; i++) {
+            TestSubscriber<Long> subscriber = new TestSubscriber<>();
+            flow.subscribe(subscriber);
+
+            assertThat(subscriber.await()).isTrue();
+            assertThat(subscriber.values).containsExactly(array);
+            assertThat(subscriber.completions).isEqualTo(1);
+        }
+        assertThat(mapped.get()).isEqualTo(array.length);
+    }
+
+    @Test
+    public void everySubscriberShouldReplayAtItsOwnPace() throws InterruptedException {
+        Long[] array = generate(200);
+        Flow<Long> flow = Flow.fromArray(array).cache();
+        TestSubscriber<Long> slow = new TestSubscriber<>(3);
+        TestSubscriber<Long> fast = new TestSubscriber<>();
+
+        flow.subscribe(slow);
+        flow.subscribe(fast);
+
+        assertThat(fast.await()).isTrue();
+        assertThat(fast.values).containsExactly(array);
+        assertThat(slow.values).containsExactly(0L, 1L, 2L);
+
+        slow.request(100); // Across chunk boundaries
+        assertThat(slow.values).hasSize(103);
+
+        slow.request(Long.MAX_VALUE);
+
+        assertThat(slow.await()).isTrue();
+        assertThat(slow.values).containsExactly(array);
+    }
+
+    @Test
+    public void replayShouldOnlyKeepTheLastHistoryElements() throws InterruptedException {
+        Flow<Long> flow = Flow.fromArray(generate(1000)).replay(10);
+        TestSubscriber<Long> first = new TestSubscriber<>();
+        flow.subscribe(first);
+        assertThat(first.await()).isTrue();
+
+        TestSubscriber<Long> late = new TestSubscriber<>();
+        flow.subscribe(late);
+
+        assertThat(late.await()).isTrue();
+        assertThat(late.values).containsExactly(990L, 991L, 992L, 993L, 994L, 995L, 996L, 997L, 998L, 999L);
+        assertThat(first.values).hasSize(1000);
+    }
+
+    @Test
+    public void lateSubscribersShouldFollowTheLiveElementsAfterTheHistory() throws InterruptedException {
+        // Emits whenever the test calls onNext, like a hot source
+        List<Subscriber<? super Long>> upstream = new ArrayList<>();
+        Publisher<Long> source = subscriber -> {
+            upstream.add(subscriber);
+            subscriber.onSubscribe(EmptySubscription.INSTANCE);
+        };
+        Flow<Long> flow = new ReplayFlow<>(source, 3);
+        TestSubscriber<Long> first = new TestSubscriber<>();
+        flow.subscribe(first);
+        for (long i = 0; i < 10; i++) {
+            upstream.get(0).onNext(i);
+        }
+
+        TestSubscriber<Long> late = new TestSubscriber<>();
+        flow.subscribe(late);
+
+        assertThat(late.values).containsExactly(7L, 8L, 9L);
+
+        upstream.get(0).onNext(10L);
+        upstream.get(0).onComplete();
+
+        assertThat(late.await()).isTrue();
+        assertThat(late.values).containsExactly(7L, 8L, 9L, 10L);
+        assertThat(first.values).containsExactly(generate(11));
+        assertThat(upstream).hasSize(1);
+    }
+
+    @Test
+    public void errorsShouldBeReplayedAfterTheElements() throws InterruptedException {
+        IllegalStateException failure = new IllegalStateException();
+        Flow<Long> flow = Flow.fromArray(generate(5))
+                .map(l -> {
+                    if (l == 3L) throw failure;
+                    return l;
+                })
+                .cache();
+
+        for (int i = 0; i < 2; i++) {
+            TestSubscriber<Long> subscriber = new TestSubscriber<>();
+            flow.subscribe(subscriber);
+
+            assertThat(subscriber.await()).isTrue();
+            assertThat(subscriber.values).containsExactly(0L, 1L, 2L);
+            assertThat(subscriber.errors).containsExactly(failure);
+        }
+    }
+
+    // The upstream appends on its own thread while subscribers replay from theirs
+    @Test
+    public void invalidRequestShouldSignalASingleError() throws InterruptedException {
+        Flow<Long> flow = Flow.fromArray(generate(10)).cache();
+        TestSubscriber<Long> subscriber = new TestSubscriber<>(2);
+        flow.subscribe(subscriber);
+
+        subscriber.request(-1);
+        subscriber.request(0);
+
+        assertThat(subscriber.await()).isTrue();
+        assertThat(subscriber.values).containsExactly(0L, 1L);
+        assertThat(subscriber.errors).hasSize(1).first().isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void invalidRequestAfterTerminationShouldBeIgnored() throws InterruptedException {
+        Flow<Long> flow = Flow.fromArray(generate(10)).cache();
+        TestSubscriber<Long> completed = new TestSubscriber<>();
+        TestSubscriber<Long> canceled = new TestSubscriber<>(1);
+        flow.subscribe(completed);
+        flow.subscribe(canceled);
+
+        assertThat(completed.await()).isTrue();
+        canceled.cancel();
+        completed.request(0);
+        canceled.request(0);
+
+        assertThat(completed.errors).isEmpty();
+        assertThat(completed.completions).isEqualTo(1);
+        assertThat(canceled.errors).isEmpty();
+    }
+
+    @Test
+    public void concurrentSubscribersShouldGetEverythingInOrder() throws InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Long[] array = generate(20_000);
+            Flow<Long> flow = Flow.fromArray(array).subscribeOn(executor).cache();
+            List<TestSubscriber<Long>> subscribers = new ArrayList<>();
+            List<Thread> requesters = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                TestSubscriber<Long> subscriber = new TestSubscriber<>(0);
+                subscribers.add(subscriber);
+                requesters.add(new Thread(() -> {
+                    flow.subscribe(subscriber);
+                    while (subscriber.done.getCount() != 0) {
+                        subscriber.request(7);
+                        Thread.yield();
+                    }
+                }));
+            }
+            requesters.forEach(Thread::start);
+
+            for (TestSubscriber<Long> subscriber : subscribers) {
+                assertThat(subscriber.await()).isTrue();
+                assertThat(subscriber.values).containsExactly(array);
+                assertThat(subscriber.completions).isEqualTo(1);
+            }
+            for (Thread requester : requesters) {
+                requester.join();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    static Long[] generate(long num) {
+        return LongStream.range(0, num).boxed().toArray(Long[]::new);
+    }
+}
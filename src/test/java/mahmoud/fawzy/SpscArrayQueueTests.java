@@ -0,0 +1,74 @@
+package mahmoud.fawzy;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SpscArrayQueueTests {
+
+    @Test
+    public void capacityShouldBeRoundedToAPowerOfTwo() {
+        assertThat(new SpscArrayQueue<>(1).capacity()).isEqualTo(1);
+        assertThat(new SpscArrayQueue<>(3).capacity()).isEqualTo(4);
+        assertThat(new SpscArrayQueue<>(256).capacity()).isEqualTo(256);
+        assertThat(new SpscArrayQueue<>(257).capacity()).isEqualTo(512);
+        assertThatThrownBy(() -> new SpscArrayQueue<>(0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void shouldRefuseOffersWhenFullAndWrapAround() {
+        SpscArrayQueue<Integer> queue = new SpscArrayQueue<>(4);
+
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 4; i++) {
+                assertThat(queue.offer(round * 10 + i)).isTrue();
+            }
+            assertThat(queue.offer(-1)).isFalse();
+            assertThat(queue.size()).isEqualTo(4);
+
+            for (int i = 0; i < 4; i++) {
+                assertThat(queue.poll()).isEqualTo(round * 10 + i);
+            }
+            assertThat(queue.poll()).isNull();
+            assertThat(queue.isEmpty()).isTrue();
+        }
+    }
+
+    @Test
+    public void shouldHandOverElementsInOrderBetweenTwoThreads() throws InterruptedException {
+        final int n = 100_000;
+        SpscArrayQueue<Integer> queue = new SpscArrayQueue<>(128);
+        List<Integer> received = new ArrayList<>(n);
+
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < n; i++) {
+                Integer value = i;
+                while (!queue.offer(value)) {
+                    Thread.yield();
+                }
+            }
+        });
+        producer.start();
+
+        while (received.size() < n) {
+            Integer value = queue.poll();
+            if (value == null) {
+                Thread.yield();
+            } else {
+                received.add(value);
+            }
+        }
+        producer.join();
+
+        for (int i = 0; i < n; i++) {
+            if (received.get(i) != i) {
+                throw new AssertionError("Expected " + i + " but was " + received.get(i));
+            }
+        }
+        assertThat(queue.isEmpty()).isTrue();
+    }
+}
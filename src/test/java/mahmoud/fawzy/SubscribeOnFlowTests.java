@@ -0,0 +1,202 @@
+package mahmoud.fawzy;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.LongStream;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SubscribeOnFlowTests {
+
+    ExecutorService executor;
+
+    @BeforeEach
+    public void setUp() {
+        executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "subscribe-on-test"));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shouldSubscribeAndEmitOnTheExecutor() throws InterruptedException {
+        List<String> threads = new CopyOnWriteArrayList<>();
+        Long[] array = generate(1000);
+        TestSubscriber<Long> subscriber = new TestSubscriber<>() {
+            @Override
+            public void onSubscribe(Subscription s) {
+                threads.add(Thread.currentThread().getName());
+                super.onSubscribe(s);
+            }
+
+            @Override
+            public void onNext(Long aLong) {
+                threads.add(Thread.currentThread().getName());
+                super.onNext(aLong);
+            }
+        };
+
+        Flow.fromArray(array).subscribeOn(executor).subscribe(subscriber);
+
+        assertThat(subscriber.await()).isTrue();
+        assertThat(subscriber.values).containsExactly(array);
+        assertThat(threads).containsOnly("subscribe-on-test");
+    }
+
+    @Test
+    public void requestsFromOtherThreadsShouldRunOnTheExecutor() throws InterruptedException {
+        List<String> threads = new CopyOnWriteArrayList<>();
+        TestSubscriber<Long> subscriber = new TestSubscriber<>(0) {
+            @Override
+            public void onNext(Long aLong) {
+                threads.add(Thread.currentThread().getName());
+                super.onNext(aLong);
+            }
+        };
+
+        Flow.fromArray(generate(100)).subscribeOn(executor).subscribe(subscriber);
+
+        while (subscriber.subscription == null) {
+            Thread.yield();
+        }
+        for (int i = 0; i < 100; i++) {
+            subscriber.request(1);
+        }
+
+        assertThat(subscriber.await()).isTrue();
+        assertThat(subscriber.values).hasSize(100);
+        assertThat(threads).containsOnly("subscribe-on-test");
+    }
+
+    // The upstream's request(n) calls all run on the executor, the invalid one too, never next to a valid one
+    @Test
+    public void invalidRequestsFromOtherThreadsShouldRunOnTheExecutor() throws InterruptedException {
+        List<String> threads = new CopyOnWriteArrayList<>();
+        TestSubscriber<Long> subscriber = new TestSubscriber<>(0) {
+            @Override
+            public void onError(Throwable t) {
+                threads.add(Thread.currentThread().getName());
+                super.onError(t);
+            }
+        };
+
+        Flow.fromArray(generate(100)).subscribeOn(executor).subscribe(subscriber);
+
+        while (subscriber.subscription == null) {
+            Thread.yield();
+        }
+        subscriber.request(0);
+        subscriber.request(1); // Ignored, the stream is failing
+
+        assertThat(subscriber.await()).isTrue();
+        assertThat(subscriber.values).isEmpty();
+        assertThat(subscriber.errors).hasSize(1);
+        assertThat(subscriber.errors.get(0)).isInstanceOf(IllegalArgumentException.class);
+        assertThat(threads).containsOnly("subscribe-on-test");
+    }
+
+    @Test
+    public void requestingOneByOneFromOnNextShouldNotRescheduleEveryElement() throws InterruptedException {
+        AtomicInteger tasks = new AtomicInteger();
+        TestSubscriber<Long> subscriber = new TestSubscriber<>(1) {
+            @Override
+            public void onNext(Long aLong) {
+                super.onNext(aLong);
+                request(1);
+            }
+        };
+
+        Flow.fromArray(generate(10_000))
+                .subscribeOn(task -> {
+                    tasks.incrementAndGet();
+                    executor.execute(task);
+                })
+                .subscribe(subscriber);
+
+        assertThat(subscriber.await()).isTrue();
+        assertThat(subscriber.values).hasSize(10_000);
+        assertThat(tasks).hasValue(1);
+    }
+
+    @Test
+    public void shouldFanOutOnVirtualThreadsOrTheirFallback() throws InterruptedException {
+        int pipelines = 1000;
+        CountDownLatch latch = new CountDownLatch(pipelines);
+        ExecutorService virtualThreads = Schedulers.virtualThreads();
+        try {
+            Flow<Long> flow = Flow.fromArray(generate(10)).map(l -> l + 1).subscribeOn(virtualThreads);
+
+            for (int i = 0; i < pipelines; i++) {
+                flow.subscribe(new TestSubscriber<>() {
+                    @Override
+                    public void onComplete() {
+                        super.onComplete();
+                        if (values.size() == 10) {
+                            latch.countDown();
+                        }
+                    }
+                });
+            }
+
+            assertThat(latch.await(5, SECONDS)).isTrue();
+        } finally {
+            virtualThreads.shutdownNow();
+        }
+    }
+
+    // Shutting down one caller's executor must not take down anyone else's
+    @Test
+    public void everyCallShouldGetItsOwnVirtualThreadExecutor() {
+        ExecutorService first = Schedulers.virtualThreads();
+        ExecutorService second = Schedulers.virtualThreads();
+        try {
+            assertThat(first).isNotSameAs(second);
+            first.shutdownNow();
+            assertThat(second.isShutdown()).isFalse();
+        } finally {
+            first.shutdownNow();
+            second.shutdownNow();
+        }
+    }
+
+    @Test
+    public void boundedSchedulerShouldNotExceedItsThreads() throws InterruptedException {
+        ExecutorService bounded = Schedulers.bounded(2);
+        try {
+            List<String> threads = new CopyOnWriteArrayList<>();
+            CountDownLatch latch = new CountDownLatch(50);
+            for (int i = 0; i < 50; i++) {
+                Flow.fromArray(generate(5)).subscribeOn(bounded).subscribe(new TestSubscriber<>() {
+                    @Override
+                    public void onComplete() {
+                        threads.add(Thread.currentThread().getName());
+                        latch.countDown();
+                    }
+                });
+            }
+
+            assertThat(latch.await(5, SECONDS)).isTrue();
+            assertThat(threads.stream().distinct().count()).isLessThanOrEqualTo(2);
+        } finally {
+            bounded.shutdownNow();
+        }
+    }
+
+    static Long[] generate(long num) {
+        return LongStream.range(0, num)
+                .boxed()
+                .toArray(Long[]::new);
+    }
+}
@@ -0,0 +1,92 @@
+package mahmoud.fawzy;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+// Records every signal it receives so tests don't have to write an anonymous Subscriber each time
+class TestSubscriber<T> implements Subscriber<T> {
+    final List<T> values = new CopyOnWriteArrayList<>();
+    final List<Throwable> errors = new CopyOnWriteArrayList<>();
+    final CountDownLatch done = new CountDownLatch(1);
+    final long initialRequest;
+    volatile int completions;
+    volatile Subscription subscription;
+
+    TestSubscriber() {
+        this(Long.MAX_VALUE);
+    }
+
+    TestSubscriber(long initialRequest) {
+        this.initialRequest = initialRequest;
+    }
+
+    @Override
+    public void onSubscribe(Subscription s) {
+        subscription = s;
+        if (initialRequest > 0) {
+            s.request(initialRequest);
+        }
+    }
+
+    @Override
+    public void onNext(T t) {
+        values.add(t);
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        errors.add(t);
+        done.countDown();
+    }
+
+    @Override
+    public void onComplete() {
+        completions++;
+        done.countDown();
+    }
+
+    void request(long n) {
+        subscription.request(n);
+    }
+
+    void cancel() {
+        subscription.cancel();
+    }
+
+    boolean await() throws InterruptedException {
+        return done.await(5, TimeUnit.SECONDS);
+    }
+
+    // Subscribes, takes one element and cancels, then keeps the canceled subscription around the way a careless operator
+    // would (rule 3.13): true once the GC collected the subscriber, false if the subscription still holds on to it
+    static <T> boolean releasedAfterCancel(Publisher<T> publisher) throws InterruptedException {
+        List<Subscription> held = new ArrayList<>(1);
+        WeakReference<TestSubscriber<T>> reference = subscribeAndCancel(publisher, held);
+        for (int i = 0; i < 50 && reference.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        boolean released = reference.get() == null;
+        Reference.reachabilityFence(held);
+        return released;
+    }
+
+    // Its own method so that no local of the caller's frame keeps the subscriber reachable
+    private static <T> WeakReference<TestSubscriber<T>> subscribeAndCancel(Publisher<T> publisher, List<Subscription> held) {
+        TestSubscriber<T> subscriber = new TestSubscriber<>(0);
+        publisher.subscribe(subscriber);
+        subscriber.request(1);
+        subscriber.cancel();
+        held.add(subscriber.subscription);
+        return new WeakReference<>(subscriber);
+    }
+}
@@ -0,0 +1,174 @@
+package mahmoud.fawzy;
+
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscription;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ZipFlowTests {
+
+    @Test
+    public void alignedColumnsShouldBeZippedRowByRow() throws InterruptedException {
+        Long[] timestamps = generate(1000);
+        Double[] prices = LongStream.range(0, 1000).mapToObj(l -> l * 0.5).toArray(Double[]::new);
+        Integer[] volumes = LongStream.range(0, 1000).mapToObj(l -> (int) l * 10).toArray(Integer[]::new);
+        TestSubscriber<String> subscriber = new TestSubscriber<>();
+
+        Flow.zip(row -> row[0] + "@" + row[1] + "x" + row[2], 16,
+                Flow.fromArray(timestamps), Flow.fromArray(prices), Flow.fromArray(volumes)).subscribe(subscriber);
+
+        assertThat(subscriber.await()).isTrue();
+        assertThat(subscriber.values).hasSize(1000);
+        assertThat(subscriber.values.get(0)).isEqualTo("0@0.0x0");
+        assertThat(subscriber.values.get(999)).isEqualTo("999@499.5x9990");
+        assertThat(subscriber.completions).isEqualTo(1);
+    }
+
+    // Queued sources only get prefetch elements of demand at first, then 75% of it as the rows go out
+    @Test
+    public void queuedSourcesShouldBeRequestedInBatches() throws InterruptedException {
+        List<Long> requests = new CopyOnWriteArrayList<>();
+        TestSubscriber<Long> subscriber = new TestSubscriber<>(0);
+
+        Flow.zip(row -> (Long) row[0] + (Long) row[1], 8,
+                tracked(new ArrayPublisherUnoptimized<>(generate(100)), requests), Flow.fromArray(generate(100))).subscribe(subscriber);
+
+        assertThat(requests).containsExactly(8L);
+
+        subscriber.request(5);
+        assertThat(subscriber.values).containsExactly(0L, 2L, 4L, 6L, 8L);
+        assertThat(requests).containsExactly(8L);
+
+        subscriber.request(1);
+        assertThat(requests).containsExactly(8L, 6L);
+
+        subscriber.request(Long.MAX_VALUE);
+        assertThat(subscriber.await()).isTrue();
+        assertThat(subscriber.values).hasSize(100);
+        assertThat(requests).hasSize(17).allMatch(n -> n <= 8L);
+    }
+
+    @Test
+    public void theShortestSourceShouldEndTheZipAndCancelTheOthers() throws InterruptedException {
+        AtomicBoolean canceled = new AtomicBoolean();
+        Publisher<Long> endless = subscriber -> subscriber.onSubscribe(new Subscription() {
+            long next;
+
+            @Override
+            public void request(long n) {
+                for (long i = 0; i < n && !canceled.get(); i++) {
+                    subscriber.onNext(next++);
+                }
+            }
+
+            @Override
+            public void cancel() {
+                canceled.set(true);
+            }
+        });
+        TestSubscriber<Long> subscriber = new TestSubscriber<>();
+
+        Flow.zip(endless, new ArrayPublisherUnoptimized<>(generate(5)), Long::sum).subscribe(subscriber);
+
+        assertThat(subscriber.await()).isTrue();
+        assertThat(subscriber.values).containsExactly(0L, 2L, 4L, 6L, 8L);
+        assertThat(subscriber.completions).isEqualTo(1);
+        assertThat(canceled).isTrue();
+    }
+
+    @Test
+    public void errorsShouldCutAheadOfQueuedRows() throws InterruptedException {
+        IllegalStateException failure = new IllegalStateException();
+        Flow<Long> failing = Flow.fromArray(generate(10)).map(l -> {
+            if (l == 3L) throw failure;
+            return l;
+        });
+        TestSubscriber<Long> subscriber = new TestSubscriber<>();
+        TestSubscriber<Long> nullZipper = new TestSubscriber<>();
+
+        Flow.zip(Flow.fromArray(generate(10)), failing, Long::sum).subscribe(subscriber);
+        Flow.<Long, Long, Long>zip(Flow.fromArray(generate(10)), Flow.fromArray(generate(10)), (a, b) -> null).subscribe(nullZipper);
+
+        assertThat(subscriber.await()).isTrue();
+        assertThat(nullZipper.await()).isTrue();
+        assertThat(subscriber.values).containsExactly(0L, 2L, 4L);
+        assertThat(subscriber.errors).containsExactly(failure);
+        assertThat(nullZipper.errors).hasSize(1).first().isInstanceOf(NullPointerException.class);
+    }
+
+    // Both sources emit on their own thread, the drain loop may run on either of them or on the requester's
+    @Test
+    public void asynchronousSourcesShouldStayAligned() throws InterruptedException {
+        ExecutorService first = Executors.newSingleThreadExecutor();
+        ExecutorService second = Executors.newSingleThreadExecutor();
+        try {
+            Long[] array = generate(50_000);
+            TestSubscriber<Long> subscriber = new TestSubscriber<>(0);
+            Flow.zip(Flow.fromArray(array).subscribeOn(first), new MapFlow<Long, Long>(new ArrayPublisherUnoptimized<>(array), l -> l).subscribeOn(second),
+                    (a, b) -> a.equals(b) ? a : -1L).subscribe(subscriber);
+
+            Thread requester = new Thread(() -> {
+                while (subscriber.done.getCount() != 0) {
+                    subscriber.request(37);
+                    Thread.yield();
+                }
+            });
+            requester.start();
+
+            assertThat(subscriber.await()).isTrue();
+            assertThat(subscriber.values).containsExactly(array);
+            requester.join();
+        } finally {
+            first.shutdownNow();
+            second.shutdownNow();
+        }
+    }
+
+    // Records every request(n) the zip makes to the source
+    static <T> Publisher<T> tracked(Publisher<T> source, List<Long> requests) {
+        return subscriber -> source.subscribe(new TestSubscriber<T>(0) {
+            @Override
+            public void onSubscribe(Subscription s) {
+                subscriber.onSubscribe(new Subscription() {
+                    @Override
+                    public void request(long n) {
+                        requests.add(n);
+                        s.request(n);
+                    }
+
+                    @Override
+                    public void cancel() {
+                        s.cancel();
+                    }
+                });
+            }
+
+            @Override
+            public void onNext(T t) {
+                subscriber.onNext(t);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                subscriber.onError(t);
+            }
+
+            @Override
+            public void onComplete() {
+                subscriber.onComplete();
+            }
+        });
+    }
+
+    static Long[] generate(long num) {
+        return LongStream.range(0, num).boxed().toArray(Long[]::new);
+    }
+}